@@ -15,6 +15,7 @@ dependencies {
     testRuntimeOnly("org.junit.platform:junit-platform-launcher")
     implementation("io.github.cdimascio:dotenv-java:3.0.0")
     implementation("com.oracle.database.jdbc:ojdbc11:23.4.0.24.05")
+    runtimeOnly("com.h2database:h2:2.2.224")
     implementation("org.flywaydb:flyway-core:10.20.0")
     implementation("org.flywaydb:flyway-database-oracle:10.20.0")
 
@@ -29,6 +30,58 @@ dependencies {
     compileOnly("org.jetbrains:annotations:24.1.0")
 }
 
+sourceSets {
+    create("loadtest") {
+        compileClasspath += sourceSets.main.get().output
+        runtimeClasspath += sourceSets.main.get().output
+    }
+}
+
+configurations["loadtestImplementation"].extendsFrom(configurations.implementation.get())
+configurations["loadtestRuntimeOnly"].extendsFrom(configurations.runtimeOnly.get())
+configurations["loadtestCompileOnly"].extendsFrom(configurations.compileOnly.get())
+
+// ./gradlew loadTest -Pargs="--accounts=50000 --rate=2000 --duration=60"
+tasks.register<JavaExec>("loadTest") {
+    group = "verification"
+    description = "Runs the transfer load generator against the in-memory wallet backend."
+    classpath = sourceSets["loadtest"].runtimeClasspath
+    mainClass.set("com.wallet.loadtest.LoadTestMain")
+    args = (project.findProperty("args") as String?)?.split(" ")?.filter { it.isNotBlank() } ?: emptyList()
+    // ./gradlew loadTest -Pjfr records wallet events to build/loadtest.jfr
+    if (project.hasProperty("jfr")) {
+        jvmArgs("-XX:StartFlightRecording:settings=default,settings=${file("src/main/resources/jfr/wallet.jfc")},"
+                + "filename=${layout.buildDirectory.file("loadtest.jfr").get().asFile}")
+    }
+}
+
+// ./gradlew queryPlans -Pthreshold=10000
+tasks.register<JavaExec>("queryPlans") {
+    group = "verification"
+    description = "Explains the service SQL and fails on full scans of tables above the row threshold."
+    classpath = sourceSets.main.get().runtimeClasspath
+    mainClass.set("com.wallet.database.plan.QueryPlanInspector")
+    args = listOfNotNull(project.findProperty("threshold") as String?)
+}
+
+// ./gradlew convertJournal -PafterEntryId=0
+tasks.register<JavaExec>("convertJournal") {
+    group = "database"
+    description = "Moves two-row transfers from WALLET_JOURNAL to WALLET_TRANSFER in small online chunks."
+    classpath = sourceSets.main.get().runtimeClasspath
+    mainClass.set("com.wallet.journal.JournalConverter")
+    args = listOfNotNull(project.findProperty("afterEntryId") as String?)
+}
+
+// ./gradlew analyzeRecording -Precording=wallet.jfr -Ptop=20
+tasks.register<JavaExec>("analyzeRecording") {
+    group = "verification"
+    description = "Summarises the transfer and SQL events of a flight recording taken with jfr/wallet.jfc."
+    classpath = sourceSets.main.get().runtimeClasspath
+    mainClass.set("com.wallet.diagnostics.RecordingAnalyzer")
+    args = listOfNotNull(project.findProperty("recording") as String?, project.findProperty("top") as String?)
+}
+
 
 
 tasks.test {
@@ -0,0 +1,161 @@
+package com.wallet.loadtest;
+
+import com.wallet.Exceptin.SQLRuntimeException;
+import com.wallet.database.util.SqlTemplate;
+
+import java.math.BigDecimal;
+import java.sql.SQLException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Offline stand-in for the Oracle schema: a {@link SqlTemplate} whose {@code wallet_pkg.transfer} call
+ * runs an in-memory re-implementation of the procedure.
+ * <p>
+ * It keeps the parts that matter under load: per-account row locks taken in ascending id order (with the
+ * same NOWAIT / WAIT n / SKIP policies), request-id idempotency, the same validation order and the same
+ * -20xxx error codes. An optional per-call delay stands in for the network round trip.
+ */
+public class InMemoryWalletBackend extends SqlTemplate {
+
+    private final ConcurrentHashMap<Long, Row> accounts = new ConcurrentHashMap<>();
+    // postings written per request id, what count_postings returns
+    private final ConcurrentHashMap<String, Integer> journal = new ConcurrentHashMap<>();
+    private final long roundTripNanos;
+
+    public InMemoryWalletBackend(long roundTripMicros) {
+        super(() -> {
+            throw new UnsupportedOperationException("InMemoryWalletBackend has no JDBC connection");
+        });
+        this.roundTripNanos = TimeUnit.MICROSECONDS.toNanos(roundTripMicros);
+    }
+
+    public void createAccount(long id, String currency, String status, BigDecimal balance) {
+        accounts.put(id, new Row(currency, status, balance));
+    }
+
+    public BigDecimal balance(long id) {
+        return accounts.get(id).balance;
+    }
+
+    public int journalSize() {
+        return journal.size();
+    }
+
+    @Override
+    public void callProcedure(String procedureCall, Object... params) {
+        if (!procedureCall.startsWith("{call wallet_pkg.transfer(")) {
+            throw new UnsupportedOperationException("Not emulated: " + procedureCall);
+        }
+        if (roundTripNanos > 0) {
+            LockSupport.parkNanos(roundTripNanos);
+        }
+        try {
+            transfer((String) params[0], (Long) params[1], (Long) params[2], (String) params[3],
+                    BigDecimal.valueOf((Double) params[4]), params.length > 5 ? (String) params[5] : null);
+        } catch (SQLException e) {
+            throw SQLRuntimeException.of("Procedure call failed", procedureCall, e);
+        }
+    }
+
+    private void transfer(String requestId, long from, long to, String currency, BigDecimal amount, String lockWait)
+            throws SQLException {
+        if (requestId == null) {
+            throw error(20004, "Request id is required");
+        }
+        if (from == to) {
+            throw error(20003, "Source and destination must differ");
+        }
+        if (amount.signum() <= 0) {
+            throw error(20004, "Amount must be positive");
+        }
+        if (isPosted(requestId)) {
+            return;
+        }
+
+        Row first = accounts.get(Math.min(from, to));
+        Row second = accounts.get(Math.max(from, to));
+        if (first == null || second == null) {
+            throw error(20005, "Account not found");
+        }
+
+        lock(first, lockWait);
+        try {
+            lock(second, lockWait);
+            try {
+                // re-check under the locks: a concurrent duplicate may have posted meanwhile
+                if (isPosted(requestId)) {
+                    return;
+                }
+                Row source = accounts.get(from);
+                Row target = accounts.get(to);
+                if (!"ACTIVE".equals(source.status) || !"ACTIVE".equals(target.status)) {
+                    throw error(20007, "Account status not active");
+                }
+                if (!source.currency.equals(currency) || !target.currency.equals(currency)) {
+                    throw error(20008, "Currency mismatch");
+                }
+                if (source.balance.compareTo(amount) < 0) {
+                    throw error(20006, "Insufficient balance");
+                }
+                source.balance = source.balance.subtract(amount);
+                target.balance = target.balance.add(amount);
+                journal.put(requestId, 2);
+            } finally {
+                second.lock.unlock();
+            }
+        } finally {
+            first.lock.unlock();
+        }
+    }
+
+    // same rule as wallet_pkg.transfer: both postings mean a replay, a single one a clashing request
+    private boolean isPosted(String requestId) throws SQLException {
+        int posted = journal.getOrDefault(requestId, 0);
+        if (posted == 1) {
+            throw error(20009, "Duplicate or partial request");
+        }
+        return posted == 2;
+    }
+
+    private static void lock(Row row, String lockWait) throws SQLException {
+        if (lockWait == null) {
+            row.lock.lock();
+            return;
+        }
+        boolean acquired;
+        if ("NOWAIT".equals(lockWait) || "SKIP".equals(lockWait)) {
+            acquired = row.lock.tryLock();
+        } else {
+            long seconds = Long.parseLong(lockWait.substring("WAIT ".length()));
+            try {
+                acquired = row.lock.tryLock(seconds, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                acquired = false;
+            }
+        }
+        if (!acquired) {
+            throw error(20011, "Account locked by another transaction");
+        }
+    }
+
+    private static SQLException error(int code, String message) {
+        return new SQLException("ORA-" + code + ": " + message, "72000", code);
+    }
+
+    private static final class Row {
+        final ReentrantLock lock = new ReentrantLock();
+        final String currency;
+        final String status;
+        BigDecimal balance;
+
+        Row(String currency, String status, BigDecimal balance) {
+            this.currency = currency;
+            this.status = status;
+            this.balance = balance;
+        }
+    }
+}
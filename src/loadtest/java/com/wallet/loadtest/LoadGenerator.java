@@ -0,0 +1,167 @@
+package com.wallet.loadtest;
+
+import com.wallet.service.WalletService;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Open-loop transfer workload: requests are released on a fixed schedule whether or not earlier ones
+ * have finished, and each runs on its own virtual thread. Latency is measured from the scheduled start,
+ * so time spent queued behind a slow system is counted (no coordinated omission).
+ */
+public class LoadGenerator {
+
+    private static final int RECENT = 1024;
+
+    private final WalletService walletService;
+    private final WorkloadConfig config;
+    private final ZipfSampler sampler;
+    private final AtomicReferenceArray<Transfer> recent = new AtomicReferenceArray<>(RECENT);
+
+    private final LatencyHistogram latency = new LatencyHistogram();
+    private final Map<String, LongAdder> outcomes = new ConcurrentHashMap<>();
+    private final LongAdder dropped = new LongAdder();
+    private volatile boolean measuring;
+
+    public LoadGenerator(WalletService walletService, WorkloadConfig config) {
+        this.walletService = walletService;
+        this.config = config;
+        this.sampler = new ZipfSampler(config.accounts, config.zipfExponent);
+    }
+
+    public Result run() throws InterruptedException {
+        long intervalNanos = TimeUnit.SECONDS.toNanos(1) / config.ratePerSecond;
+        long warmupEnd = System.nanoTime() + config.warmup.toNanos();
+        long end = warmupEnd + config.duration.toNanos();
+        Semaphore inFlight = new Semaphore(config.maxInFlight);
+
+        long measuredStart = warmupEnd;
+        try (ExecutorService threads = Executors.newVirtualThreadPerTaskExecutor()) {
+            long next = System.nanoTime();
+            long seq = 0;
+            while (next < end) {
+                long wait = next - System.nanoTime();
+                if (wait > 0) {
+                    LockSupport.parkNanos(wait);
+                }
+                if (!measuring && next >= warmupEnd) {
+                    measuring = true;
+                    measuredStart = next;
+                }
+                if (!inFlight.tryAcquire()) {
+                    if (measuring) {
+                        dropped.increment();
+                    }
+                } else {
+                    long scheduled = next;
+                    Transfer transfer = nextTransfer(seq++);
+                    threads.execute(() -> {
+                        try {
+                            execute(transfer, scheduled);
+                        } finally {
+                            inFlight.release();
+                        }
+                    });
+                }
+                next += intervalNanos;
+            }
+        }
+        double seconds = (System.nanoTime() - measuredStart) / 1e9;
+        return new Result(latency, new TreeMap<>(snapshot()), dropped.sum(), seconds);
+    }
+
+    private Transfer nextTransfer(long seq) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        if (random.nextDouble() < config.duplicateRatio) {
+            Transfer previous = recent.get(random.nextInt(RECENT));
+            if (previous != null) {
+                return previous;
+            }
+        }
+
+        long from = sampler.next() + 1;
+        long to = random.nextLong(config.accounts) + 1;
+        if (to == from) {
+            to = from % config.accounts + 1;
+        }
+        double amount = random.nextDouble() < config.insufficientFundsRatio
+                ? config.initialBalance.doubleValue() * 10
+                : Math.max(0.01, Math.round(random.nextDouble(config.maxAmount) * 100) / 100.0);
+
+        Transfer transfer = new Transfer(UUID.randomUUID().toString(), from, to, amount);
+        recent.set((int) (seq % RECENT), transfer);
+        return transfer;
+    }
+
+    private void execute(Transfer transfer, long scheduledNanos) {
+        String outcome;
+        try {
+            outcome = walletService.tryTransfer(transfer.requestId, transfer.from, transfer.to, config.currency,
+                    transfer.amount).getStatus().name();
+        } catch (RuntimeException e) {
+            outcome = e.getClass().getSimpleName() + ":" + e.getMessage();
+        }
+        if (measuring) {
+            latency.record(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - scheduledNanos));
+            outcomes.computeIfAbsent(outcome, k -> new LongAdder()).increment();
+        }
+    }
+
+    private Map<String, Long> snapshot() {
+        Map<String, Long> counts = new TreeMap<>();
+        outcomes.forEach((k, v) -> counts.put(k, v.sum()));
+        return counts;
+    }
+
+    private static final class Transfer {
+        final String requestId;
+        final long from;
+        final long to;
+        final double amount;
+
+        Transfer(String requestId, long from, long to, double amount) {
+            this.requestId = requestId;
+            this.from = from;
+            this.to = to;
+            this.amount = amount;
+        }
+    }
+
+    public static final class Result {
+        final LatencyHistogram latency;
+        final Map<String, Long> outcomes;
+        final long dropped;
+        final double seconds;
+
+        Result(LatencyHistogram latency, Map<String, Long> outcomes, long dropped, double seconds) {
+            this.latency = latency;
+            this.outcomes = outcomes;
+            this.dropped = dropped;
+            this.seconds = seconds;
+        }
+
+        public String format() {
+            long completed = latency.count();
+            StringBuilder sb = new StringBuilder();
+            sb.append(String.format("completed   %d in %.1fs (%.0f/s), dropped at client %d%n",
+                    completed, seconds, completed / seconds, dropped));
+            sb.append(String.format("latency us  p50=%d p90=%d p99=%d p99.9=%d max=%d%n",
+                    latency.percentile(50), latency.percentile(90), latency.percentile(99),
+                    latency.percentile(99.9), latency.percentile(100)));
+            sb.append("outcomes").append(System.lineSeparator());
+            outcomes.forEach((k, v) -> sb.append(String.format("  %-60s %10d (%.2f%%)%n", k, v, 100.0 * v / completed)));
+            return sb.toString();
+        }
+    }
+}
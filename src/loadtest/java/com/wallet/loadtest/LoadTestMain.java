@@ -0,0 +1,51 @@
+package com.wallet.loadtest;
+
+import com.wallet.database.embedded.EmbeddedDatabase;
+import com.wallet.database.util.SqlTemplate;
+import com.wallet.service.WalletService;
+import com.wallet.service.admission.AccountRateLimiter;
+import com.wallet.service.admission.AdaptiveConcurrencyLimit;
+import com.wallet.service.admission.AdmissionController;
+import com.wallet.service.retry.TransferRetrier;
+
+/**
+ * Seeds the backend ({@code --backend=memory}, the default, or {@code --backend=embedded} for the
+ * H2-hosted schema and Java {@code wallet_pkg}), drives {@link WalletService#transfer} with the configured workload
+ * and prints throughput, latency percentiles and an outcome breakdown.
+ */
+public class LoadTestMain {
+
+    public static void main(String[] args) throws Exception {
+        WorkloadConfig config = WorkloadConfig.parse(args);
+        System.out.println("workload    " + config);
+
+        SqlTemplate backend;
+        if (config.backend.equals("embedded")) {
+            EmbeddedDatabase database = EmbeddedDatabase.start("loadtest");
+            for (long id = 1; id <= config.accounts; id++) {
+                database.createAccount(id, config.currency, "ACTIVE", config.initialBalance);
+            }
+            backend = new SqlTemplate(database);
+        } else {
+            InMemoryWalletBackend memory = new InMemoryWalletBackend(config.roundTripMicros);
+            for (long id = 1; id <= config.accounts; id++) {
+                memory.createAccount(id, config.currency, "ACTIVE", config.initialBalance);
+            }
+            backend = memory;
+        }
+
+        AdmissionController admission = config.admission
+                ? new AdmissionController()
+                : new AdmissionController(new AccountRateLimiter(1, Integer.MAX_VALUE, 16_000),
+                                          new AdaptiveConcurrencyLimit(Integer.MAX_VALUE, Integer.MAX_VALUE, Integer.MAX_VALUE));
+        WalletService walletService = new WalletService(backend, new TransferRetrier(), admission);
+
+        LoadGenerator.Result result = new LoadGenerator(walletService, config).run();
+
+        System.out.print(result.format());
+        long posted = backend instanceof InMemoryWalletBackend memory
+                ? memory.journalSize()
+                : backend.count("WALLET_TRANSFER", null);
+        System.out.println("journal     " + posted + " transfers posted");
+    }
+}
@@ -0,0 +1,67 @@
+package com.wallet.loadtest;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Knobs for one load-test run, parsed from {@code --name=value} arguments.
+ */
+public class WorkloadConfig {
+
+    int accounts = 10_000;
+    double zipfExponent = 1.0;
+    int ratePerSecond = 1_000;
+    Duration duration = Duration.ofSeconds(30);
+    Duration warmup = Duration.ofSeconds(5);
+    double duplicateRatio = 0.02;
+    double insufficientFundsRatio = 0.01;
+    int maxInFlight = 10_000;
+    long roundTripMicros = 500;
+    BigDecimal initialBalance = new BigDecimal("1000000");
+    double maxAmount = 100.0;
+    String currency = "USD";
+    boolean admission = true;
+    String backend = "memory";
+
+    public static WorkloadConfig parse(String... args) {
+        Map<String, String> values = new HashMap<>();
+        for (String arg : args) {
+            if (!arg.startsWith("--") || !arg.contains("=")) {
+                throw new IllegalArgumentException("Expected --name=value but got " + arg);
+            }
+            int eq = arg.indexOf('=');
+            values.put(arg.substring(2, eq), arg.substring(eq + 1));
+        }
+
+        WorkloadConfig c = new WorkloadConfig();
+        c.accounts = Integer.parseInt(values.getOrDefault("accounts", String.valueOf(c.accounts)));
+        c.zipfExponent = Double.parseDouble(values.getOrDefault("skew", String.valueOf(c.zipfExponent)));
+        c.ratePerSecond = Integer.parseInt(values.getOrDefault("rate", String.valueOf(c.ratePerSecond)));
+        c.duration = Duration.ofSeconds(Long.parseLong(values.getOrDefault("duration", String.valueOf(c.duration.toSeconds()))));
+        c.warmup = Duration.ofSeconds(Long.parseLong(values.getOrDefault("warmup", String.valueOf(c.warmup.toSeconds()))));
+        c.duplicateRatio = Double.parseDouble(values.getOrDefault("duplicates", String.valueOf(c.duplicateRatio)));
+        c.insufficientFundsRatio = Double.parseDouble(values.getOrDefault("insufficient", String.valueOf(c.insufficientFundsRatio)));
+        c.maxInFlight = Integer.parseInt(values.getOrDefault("max-in-flight", String.valueOf(c.maxInFlight)));
+        c.roundTripMicros = Long.parseLong(values.getOrDefault("round-trip-us", String.valueOf(c.roundTripMicros)));
+        c.admission = Boolean.parseBoolean(values.getOrDefault("admission", String.valueOf(c.admission)));
+        c.backend = values.getOrDefault("backend", c.backend);
+        if (!c.backend.equals("memory") && !c.backend.equals("embedded")) {
+            throw new IllegalArgumentException("backend must be memory or embedded");
+        }
+        if (c.accounts < 2) {
+            throw new IllegalArgumentException("accounts must be at least 2");
+        }
+        return c;
+    }
+
+    @Override
+    public String toString() {
+        return "accounts=" + accounts + " skew=" + zipfExponent + " rate=" + ratePerSecond + "/s"
+                + " duration=" + duration.toSeconds() + "s warmup=" + warmup.toSeconds() + "s"
+                + " duplicates=" + duplicateRatio + " insufficient=" + insufficientFundsRatio
+                + " max-in-flight=" + maxInFlight + " round-trip=" + roundTripMicros + "us"
+                + " admission=" + admission + " backend=" + backend;
+    }
+}
@@ -0,0 +1,33 @@
+package com.wallet.Exceptin;
+
+import com.wallet.model.TransferStatus;
+
+/**
+ * Thrown when a transfer is shed before reaching the database.
+ * Rejections are expected under load, so no stack trace is captured.
+ */
+public class AdmissionRejectedException extends WalletException {
+
+    public enum Reason {
+        RATE_LIMITED, OVERLOADED, VELOCITY_LIMITED
+    }
+
+    private final Reason reason;
+
+    public AdmissionRejectedException(Reason reason, String message) {
+        super(message, null, false, false);
+        this.reason = reason;
+    }
+
+    public Reason getReason() {
+        return reason;
+    }
+
+    public TransferStatus getStatus() {
+        return switch (reason) {
+            case RATE_LIMITED -> TransferStatus.RATE_LIMITED;
+            case OVERLOADED -> TransferStatus.OVERLOADED;
+            case VELOCITY_LIMITED -> TransferStatus.VELOCITY_LIMITED;
+        };
+    }
+}
@@ -1,7 +1,9 @@
 package com.wallet.Exceptin;
 
-public class InsufficientBalanceException extends WalletException {
+import com.wallet.model.TransferStatus;
+
+public class InsufficientBalanceException extends TransferRejectedException {
     public InsufficientBalanceException(String message, Throwable cause) {
-        super(message, cause);
+        super(TransferStatus.INSUFFICIENT_BALANCE, message, cause);
     }
-}
\ No newline at end of file
+}
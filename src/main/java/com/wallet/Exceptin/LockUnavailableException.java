@@ -0,0 +1,13 @@
+package com.wallet.Exceptin;
+
+import com.wallet.model.TransferStatus;
+
+/**
+ * The transfer could not lock its accounts within the requested lock-wait policy.
+ * Nothing was posted, so the same request can be submitted again later.
+ */
+public class LockUnavailableException extends TransferRejectedException {
+    public LockUnavailableException(String message, Throwable cause) {
+        super(TransferStatus.LOCK_UNAVAILABLE, message, cause);
+    }
+}
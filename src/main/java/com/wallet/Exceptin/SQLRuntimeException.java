@@ -1,16 +1,63 @@
 package com.wallet.Exceptin;
 
+import java.sql.SQLException;
+
 public class SQLRuntimeException extends RuntimeException {
+
+    // raise_application_error range: business rejections from PL/SQL, not faults
+    private static final int FIRST_APPLICATION_ERROR = 20000;
+    private static final int LAST_APPLICATION_ERROR = 20999;
+
+    private final String operation;
+    private final String sql;
+
     public SQLRuntimeException(String message) {
         super(message);
+        this.operation = null;
+        this.sql = null;
     }
     public SQLRuntimeException(String message, Throwable cause) {
         super(message, cause);
+        this.operation = null;
+        this.sql = null;
     }
     public SQLRuntimeException(Throwable cause) {
         super(cause);
+        this.operation = null;
+        this.sql = null;
     }
     public SQLRuntimeException(String message, Throwable cause, boolean enableSuppression, boolean writableStackTrace) {
         super(message, cause, enableSuppression, writableStackTrace);
+        this.operation = null;
+        this.sql = null;
+    }
+
+    private SQLRuntimeException(String operation, String sql, SQLException cause, boolean writableStackTrace) {
+        super(null, cause, true, writableStackTrace);
+        this.operation = operation;
+        this.sql = sql;
+    }
+
+    /**
+     * Wrap a failed statement. The message ({@code operation + ": " + sql}) is only built if it is read,
+     * and application errors raised by {@code wallet_pkg} skip the stack trace since callers map them
+     * to business outcomes by error code.
+     */
+    public static SQLRuntimeException of(String operation, String sql, SQLException cause) {
+        return new SQLRuntimeException(operation, sql, cause, !isApplicationError(cause));
+    }
+
+    /**
+     * @return true for errors raised through {@code raise_application_error}; the statement failed
+     * by design and the session is still healthy
+     */
+    public static boolean isApplicationError(SQLException e) {
+        int code = e.getErrorCode();
+        return code >= FIRST_APPLICATION_ERROR && code <= LAST_APPLICATION_ERROR;
+    }
+
+    @Override
+    public String getMessage() {
+        return operation == null ? super.getMessage() : operation + ": " + sql;
     }
 }
@@ -0,0 +1,25 @@
+package com.wallet.Exceptin;
+
+import com.wallet.model.TransferStatus;
+
+/**
+ * A transfer was refused by a business rule in {@code wallet_pkg}. These are expected outcomes
+ * on the hot path, so no stack trace is captured; the cause still carries the driver's exception.
+ */
+public class TransferRejectedException extends WalletException {
+
+    private final TransferStatus status;
+
+    public TransferRejectedException(TransferStatus status, Throwable cause) {
+        this(status, status.getMessage(), cause);
+    }
+
+    public TransferRejectedException(TransferStatus status, String message, Throwable cause) {
+        super(message, cause, false, false);
+        this.status = status;
+    }
+
+    public TransferStatus getStatus() {
+        return status;
+    }
+}
@@ -8,4 +8,8 @@ public class WalletException extends RuntimeException {
     public WalletException(String message, Throwable cause) {
         super(message, cause);
     }
-}
\ No newline at end of file
+
+    protected WalletException(String message, Throwable cause, boolean enableSuppression, boolean writableStackTrace) {
+        super(message, cause, enableSuppression, writableStackTrace);
+    }
+}
@@ -0,0 +1,79 @@
+package com.wallet.config;
+
+import com.google.inject.AbstractModule;
+import com.google.inject.Provides;
+import com.google.inject.Singleton;
+import com.wallet.database.util.SqlTemplate;
+import com.wallet.service.admission.AccountRateLimiter;
+import com.wallet.service.admission.AdaptiveConcurrencyLimit;
+import com.wallet.service.admission.AdmissionController;
+import com.wallet.service.admission.VelocityLimiter;
+import com.wallet.service.admission.VelocityLimits;
+import io.github.cdimascio.dotenv.Dotenv;
+
+import java.time.Duration;
+
+/**
+ * Binds the limits of {@link AdmissionController} from the environment, falling back to its defaults:
+ * <ul>
+ *     <li>{@code WALLET_RATE_LIMIT_PER_SECOND}, {@code WALLET_RATE_LIMIT_BURST}: transfers per second and
+ *     burst allowed out of one account; {@code WALLET_RATE_LIMIT_SLOTS}: size of the bucket table</li>
+ *     <li>{@code WALLET_CONCURRENCY_INITIAL}, {@code WALLET_CONCURRENCY_MIN}, {@code WALLET_CONCURRENCY_MAX}:
+ *     bounds of the adaptive in-flight limit</li>
+ *     <li>{@code WALLET_VELOCITY_CAPS}: outbound caps as {@code STATUS:CURRENCY:HOURLY:DAILY} tiers separated
+ *     by commas, see {@link VelocityLimits#parse}; blank for none. {@code WALLET_VELOCITY_REBUILD_SECONDS}:
+ *     how often the velocity windows are rebuilt from the journal</li>
+ * </ul>
+ * The velocity limiter is started here, so its windows are rebuilt from the first transfer on.
+ */
+public class AdmissionModule extends AbstractModule {
+
+    private final Dotenv dotenv;
+
+    public AdmissionModule() {
+        this(Dotenv.configure().ignoreIfMissing().load());
+    }
+
+    public AdmissionModule(Dotenv dotenv) {
+        this.dotenv = dotenv;
+    }
+
+    @Provides
+    @Singleton
+    AccountRateLimiter accountRateLimiter() {
+        return new AccountRateLimiter(
+                intValue("WALLET_RATE_LIMIT_SLOTS", AdmissionController.DEFAULT_RATE_LIMIT_SLOTS),
+                doubleValue("WALLET_RATE_LIMIT_PER_SECOND", AdmissionController.DEFAULT_RATE_LIMIT_PER_SECOND),
+                intValue("WALLET_RATE_LIMIT_BURST", AdmissionController.DEFAULT_RATE_LIMIT_BURST));
+    }
+
+    @Provides
+    @Singleton
+    AdaptiveConcurrencyLimit adaptiveConcurrencyLimit() {
+        return new AdaptiveConcurrencyLimit(
+                intValue("WALLET_CONCURRENCY_INITIAL", AdmissionController.DEFAULT_CONCURRENCY_INITIAL),
+                intValue("WALLET_CONCURRENCY_MIN", AdmissionController.DEFAULT_CONCURRENCY_MIN),
+                intValue("WALLET_CONCURRENCY_MAX", AdmissionController.DEFAULT_CONCURRENCY_MAX));
+    }
+
+    @Provides
+    @Singleton
+    VelocityLimiter velocityLimiter(SqlTemplate sqlTemplate) {
+        String caps = dotenv.get("WALLET_VELOCITY_CAPS");
+        VelocityLimiter limiter = new VelocityLimiter(sqlTemplate,
+                caps == null ? VelocityLimits.defaults() : VelocityLimits.parse(caps));
+        limiter.start(Duration.ofSeconds(intValue("WALLET_VELOCITY_REBUILD_SECONDS",
+                (int) VelocityLimiter.DEFAULT_REBUILD_INTERVAL.toSeconds())));
+        return limiter;
+    }
+
+    private int intValue(String key, int defaultValue) {
+        String value = dotenv.get(key);
+        return value == null ? defaultValue : Integer.parseInt(value.trim());
+    }
+
+    private double doubleValue(String key, double defaultValue) {
+        String value = dotenv.get(key);
+        return value == null ? defaultValue : Double.parseDouble(value.trim());
+    }
+}
@@ -1,6 +1,7 @@
 package com.wallet.config;
 
 import com.google.inject.AbstractModule;
+import com.wallet.database.embedded.EmbeddedDatabase;
 import io.github.cdimascio.dotenv.Dotenv;
 import oracle.jdbc.pool.OracleDataSource;
 
@@ -8,11 +9,25 @@ import javax.sql.DataSource;
 import java.sql.Connection;
 import java.sql.SQLException;
 
+/**
+ * Binds the JDBC connection. {@code WALLET_BACKEND=embedded} swaps Oracle for an in-memory
+ * database hosting the same schema and a Java {@code wallet_pkg}, so the service layer
+ * can run without an Oracle instance.
+ */
 public class DataSourceModule extends AbstractModule {
 
+    public static final String BACKEND_EMBEDDED = "embedded";
+
     @Override
     protected void configure() {
-        bind(Connection.class).toInstance(createOracleDataSource());
+        Dotenv dotenv = Dotenv.configure().ignoreIfMissing().load();
+        if (BACKEND_EMBEDDED.equalsIgnoreCase(dotenv.get("WALLET_BACKEND", "oracle"))) {
+            EmbeddedDatabase database = EmbeddedDatabase.start("wallet");
+            bind(EmbeddedDatabase.class).toInstance(database);
+            bind(Connection.class).toProvider(database);
+        } else {
+            bind(Connection.class).toInstance(createOracleDataSource());
+        }
     }
 
     private Connection createOracleDataSource() {
@@ -47,4 +62,4 @@ public class DataSourceModule extends AbstractModule {
             throw new RuntimeException("Failed to create OracleDataSource", e);
         }
     }
-}
\ No newline at end of file
+}
@@ -3,6 +3,8 @@ package com.wallet.database;
 import io.github.cdimascio.dotenv.Dotenv;
 import org.flywaydb.core.Flyway;
 
+import java.util.Map;
+
 public class DatabaseMigrator {
 
     public static void migrate() {
@@ -21,6 +23,10 @@ public class DatabaseMigrator {
                     .locations("classpath:db/migration")
                     .baselineOnMigrate(true)
                     .baselineVersion("0") // Set baseline to version 0
+                    // primary key layouts applied by V9: STANDARD, REVERSE (account only) or HASH
+                    .placeholders(Map.of(
+                            "accountIdIndex", dotenv.get("WALLET_ACCOUNT_ID_INDEX", "STANDARD"),
+                            "entryIdIndex", dotenv.get("WALLET_ENTRY_ID_INDEX", "STANDARD")))
                     .load();
 
             flyway.migrate();
@@ -0,0 +1,132 @@
+package com.wallet.database.embedded;
+
+import com.google.inject.Provider;
+import com.wallet.Exceptin.SQLRuntimeException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.Locale;
+import java.util.UUID;
+
+/**
+ * In-memory H2 database that hosts the wallet schema and {@link EmbeddedWalletPkg}, for tests,
+ * benchmarks and local runs without Oracle. Every {@link #get()} opens a new connection to the same
+ * named database, so concurrent callers get independent sessions and real row locks.
+ */
+public class EmbeddedDatabase implements Provider<Connection> {
+
+    private static final String SCHEMA = "db/embedded/schema.sql";
+
+    // long enough that contended transfers queue on the row lock instead of timing out under test load
+    private static final int LOCK_TIMEOUT_MILLIS = 10_000;
+
+    private final String url;
+
+    private EmbeddedDatabase(String name) {
+        this.url = "jdbc:h2:mem:" + name + ";MODE=Oracle;DB_CLOSE_DELAY=-1;LOCK_TIMEOUT=" + LOCK_TIMEOUT_MILLIS;
+    }
+
+    /**
+     * Create the named database and load the schema into it.
+     */
+    public static EmbeddedDatabase start(String name) {
+        EmbeddedDatabase db = new EmbeddedDatabase(name);
+        db.loadSchema();
+        return db;
+    }
+
+    /**
+     * Fresh, isolated database; intended for tests.
+     */
+    public static EmbeddedDatabase startIsolated() {
+        return start("wallet_" + UUID.randomUUID().toString().replace("-", ""));
+    }
+
+    @Override
+    public Connection get() {
+        try {
+            return DriverManager.getConnection(url, "sa", "");
+        } catch (SQLException e) {
+            throw new SQLRuntimeException("Failed to open embedded connection: " + url, e);
+        }
+    }
+
+    public void createAccount(long id, String currency, String status, BigDecimal balance) {
+        try (Connection conn = get();
+             PreparedStatement stmt = conn.prepareStatement(
+                     "insert into WALLET_ACCOUNT (ID, CURRENCY, STATUS, BALANCE) values (?, ?, ?, ?)")) {
+            stmt.setLong(1, id);
+            stmt.setString(2, currency);
+            stmt.setString(3, status);
+            stmt.setBigDecimal(4, balance);
+            stmt.executeUpdate();
+        } catch (SQLException e) {
+            throw new SQLRuntimeException("Failed to create account " + id, e);
+        }
+    }
+
+    /**
+     * Oracle's {@code NUMTODSINTERVAL}, which H2 lacks; registered by the schema so queries such as
+     * {@code JournalTailer}'s poll run unchanged.
+     */
+    public static Duration numToDsInterval(BigDecimal amount, String unit) {
+        long nanosPerUnit = switch (unit.trim().toUpperCase(Locale.ROOT)) {
+            case "DAY" -> 86_400_000_000_000L;
+            case "HOUR" -> 3_600_000_000_000L;
+            case "MINUTE" -> 60_000_000_000L;
+            case "SECOND" -> 1_000_000_000L;
+            default -> throw new IllegalArgumentException("Invalid interval unit: " + unit);
+        };
+        return Duration.ofNanos(amount.multiply(BigDecimal.valueOf(nanosPerUnit)).longValue());
+    }
+
+    /**
+     * Drop the database and everything in it.
+     */
+    public void shutdown() {
+        try (Connection conn = get();
+             Statement stmt = conn.createStatement()) {
+            stmt.execute("shutdown");
+        } catch (SQLException e) {
+            throw new SQLRuntimeException("Failed to shut down embedded database", e);
+        }
+    }
+
+    private void loadSchema() {
+        String script;
+        try (InputStream in = EmbeddedDatabase.class.getClassLoader().getResourceAsStream(SCHEMA)) {
+            if (in == null) {
+                throw new IllegalStateException("Missing classpath resource " + SCHEMA);
+            }
+            script = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed to read " + SCHEMA, e);
+        }
+
+        StringBuilder withoutComments = new StringBuilder();
+        for (String line : script.split("\n")) {
+            if (!line.trim().startsWith("--")) {
+                withoutComments.append(line).append('\n');
+            }
+        }
+
+        try (Connection conn = get();
+             Statement stmt = conn.createStatement()) {
+            for (String ddl : withoutComments.toString().split(";")) {
+                if (!ddl.isBlank()) {
+                    stmt.execute(ddl);
+                }
+            }
+        } catch (SQLException e) {
+            throw new SQLRuntimeException("Failed to load embedded schema", e);
+        }
+    }
+}
@@ -0,0 +1,1198 @@
+package com.wallet.database.embedded;
+
+import org.intellij.lang.annotations.Language;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Savepoint;
+import java.time.OffsetDateTime;
+import java.time.temporal.TemporalAdjusters;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * Java port of {@code wallet_pkg} for the embedded database, registered as
+ * {@code WALLET_PKG.TRANSFER} / {@code WALLET_PKG.TRANSFER_MULTI} / {@code WALLET_PKG.TRANSFER_FX} /
+ * {@code WALLET_PKG.PLACE_HOLD} / {@code WALLET_PKG.CAPTURE_HOLD} / {@code WALLET_PKG.RELEASE_HOLD} /
+ * {@code WALLET_PKG.EXPIRE_HOLDS} / {@code WALLET_PKG.RUN_SCHEDULES} / {@code WALLET_PKG.POST_ACCRUALS} /
+ * {@code WALLET_PKG.SETTLE_ACCRUALS} / {@code WALLET_PKG.CONVERT_JOURNAL} aliases so that
+ * {@code {call wallet_pkg.transfer(...)}} resolves unchanged. Validation order, locking order
+ * and error codes follow {@code R__pkg_wallet.sql}; errors are raised with the positive
+ * {@code raise_application_error} code, which is what the Oracle driver reports.
+ */
+public final class EmbeddedWalletPkg {
+
+    static final int ERR_SAME_ACCOUNT = 20003;
+    static final int ERR_INVALID_AMOUNT = 20004;
+    static final int ERR_ACCT_MISSING = 20005;
+    static final int ERR_INSUFFICIENT = 20006;
+    static final int ERR_STATUS_INVALID = 20007;
+    static final int ERR_CURRENCY_MISMATCH = 20008;
+    static final int ERR_DUPLICATE_REQUEST = 20009;
+    static final int ERR_UNBALANCED = 20010;
+    static final int ERR_LOCK_UNAVAILABLE = 20011;
+    static final int ERR_STALE_SEQUENCE = 20012;
+    static final int ERR_RATE_UNAVAILABLE = 20013;
+    static final int ERR_HOLD_NOT_ACTIVE = 20014;
+
+    private static final String SQL_STATE = "72000";
+
+    // H2 LOCK_TIMEOUT_1, raised for NOWAIT, WAIT n and the session lock timeout alike
+    private static final int H2_LOCK_TIMEOUT = 50200;
+    // H2 DUPLICATE_KEY_1
+    private static final int H2_DUPLICATE_KEY = 23505;
+
+    // furthest a converted credit posting may sit from its debit; see WALLET_TRANSFER.CREDIT_ENTRY_ID
+    static final int MAX_CREDIT_GAP = 64;
+
+    // ISO 4217 currencies without the usual two decimal places; must match fx_scale in wallet_pkg
+    private static final Set<String> FX_SCALE_0 = Set.of("BIF", "CLP", "DJF", "GNF", "ISK", "JPY", "KMF", "KRW",
+            "PYG", "RWF", "UGX", "UYI", "VND", "VUV", "XAF", "XOF", "XPF");
+    private static final Set<String> FX_SCALE_3 = Set.of("BHD", "IQD", "JOD", "KWD", "LYD", "OMR", "TND");
+
+    // c_fx_quote_grace
+    static final long FX_QUOTE_GRACE_SECONDS = 30;
+
+    @Language("SQL")
+    private static final String INSERT_TRANSFER_SQL = "insert into WALLET_TRANSFER "
+            + "(REQUEST_ID, FROM_ACCOUNT_ID, TO_ACCOUNT_ID, CURRENCY, AMOUNT, DESCRIPTION) values (?, ?, ?, ?, ?, ?)";
+
+    private EmbeddedWalletPkg() {
+    }
+
+    public static void transfer(Connection conn, String requestId, Long from, Long to,
+                                String currency, BigDecimal amount) throws SQLException {
+        transfer(conn, requestId, from, to, currency, amount, null);
+    }
+
+    public static void transfer(Connection conn, String requestId, Long from, Long to,
+                                String currency, BigDecimal amount, String lockWait) throws SQLException {
+        transfer(conn, requestId, from, to, currency, amount, lockWait, null);
+    }
+
+    public static void transfer(Connection conn, String requestId, Long from, Long to,
+                                String currency, BigDecimal amount, String lockWait, Long clientSeq)
+            throws SQLException {
+        String lockClause = lockClause(lockWait);
+        if (requestId == null) {
+            throw error(ERR_INVALID_AMOUNT, "Request id is required");
+        }
+        if (from == null || to == null) {
+            throw error(ERR_ACCT_MISSING, "Account not found");
+        }
+        if (from.equals(to)) {
+            throw error(ERR_SAME_ACCOUNT, "Source and destination must differ");
+        }
+        if (amount == null || amount.signum() <= 0) {
+            throw error(ERR_INVALID_AMOUNT, "Amount must be positive");
+        }
+
+        int posted = countPostings(conn, requestId);
+        if (posted == 2) {
+            return;
+        } else if (posted == 1) {
+            throw error(ERR_DUPLICATE_REQUEST, "Duplicate or partial request");
+        }
+
+        long minId = Math.min(from, to);
+        long maxId = Math.max(from, to);
+
+        @Language("SQL")
+        String lockSql = "select ID, CURRENCY, STATUS, BALANCE - HELD_AMOUNT, LAST_CLIENT_SEQ from WALLET_ACCOUNT "
+                + "where ID in (?, ?) order by ID for update" + lockClause;
+
+        int locked = 0;
+        String fromCurrency = null, toCurrency = null, fromStatus = null, toStatus = null;
+        BigDecimal fromAvailable = null;
+        Long fromLastSeq = null;
+        try (PreparedStatement stmt = conn.prepareStatement(lockSql)) {
+            stmt.setLong(1, minId);
+            stmt.setLong(2, maxId);
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    locked++;
+                    if (rs.getLong(1) == from) {
+                        fromCurrency = rs.getString(2);
+                        fromStatus = rs.getString(3);
+                        fromAvailable = rs.getBigDecimal(4);
+                        fromLastSeq = rs.getObject(5) == null ? null : rs.getLong(5);
+                    } else {
+                        toCurrency = rs.getString(2);
+                        toStatus = rs.getString(3);
+                    }
+                }
+            }
+        } catch (SQLException e) {
+            throw lockError(e);
+        }
+
+        if (locked != 2) {
+            if (" skip locked".equals(lockClause) && countAccounts(conn, minId, maxId) == 2) {
+                throw error(ERR_LOCK_UNAVAILABLE, "Account locked by another transaction");
+            }
+            throw error(ERR_ACCT_MISSING, "Account not found");
+        }
+        if (!"ACTIVE".equals(fromStatus) || !"ACTIVE".equals(toStatus)) {
+            throw error(ERR_STATUS_INVALID, "Account status not active");
+        }
+        if (!currency.equals(fromCurrency) || !currency.equals(toCurrency)) {
+            throw error(ERR_CURRENCY_MISMATCH, "Currency mismatch");
+        }
+        if (clientSeq != null && fromLastSeq != null && clientSeq <= fromLastSeq) {
+            throw error(ERR_STALE_SEQUENCE, "Client sequence " + clientSeq + " is not after " + fromLastSeq);
+        }
+        if (fromAvailable.compareTo(amount) < 0) {
+            throw error(ERR_INSUFFICIENT, "Insufficient balance");
+        }
+
+        // a concurrent duplicate that passed the first check before we held the locks is caught here
+        posted = countPostings(conn, requestId);
+        if (posted == 2) {
+            return;
+        } else if (posted == 1) {
+            throw error(ERR_DUPLICATE_REQUEST, "Duplicate or partial request");
+        }
+
+        // one row for both sides; WALLET_POSTING_V shows it as the DEBIT and CREDIT postings
+        try (PreparedStatement stmt = conn.prepareStatement(INSERT_TRANSFER_SQL)) {
+            addTransfer(stmt, requestId, from, to, currency, amount, null);
+            stmt.executeBatch();
+        }
+        adjustBalance(conn, from, amount.negate());
+        adjustBalance(conn, to, amount);
+        if (clientSeq != null) {
+            try (PreparedStatement stmt = conn.prepareStatement(
+                    "update WALLET_ACCOUNT set LAST_CLIENT_SEQ = ? where ID = ?")) {
+                stmt.setLong(1, clientSeq);
+                stmt.setLong(2, from);
+                stmt.executeUpdate();
+            }
+        }
+
+        enqueueEvent(conn, requestId, "TRANSFER_COMPLETED",
+                "{\"requestId\":" + quote(requestId)
+                        + ",\"fromAccountId\":" + from
+                        + ",\"toAccountId\":" + to
+                        + ",\"currency\":" + quote(currency)
+                        + ",\"amount\":" + amount.toPlainString() + "}");
+    }
+
+    public static void transferFx(Connection conn, String requestId, Long from, Long to, BigDecimal amount,
+                                  Long rateVersion) throws SQLException {
+        transferFx(conn, requestId, from, to, amount, rateVersion, null);
+    }
+
+    public static void transferFx(Connection conn, String requestId, Long from, Long to, BigDecimal amount,
+                                  Long rateVersion, String lockWait) throws SQLException {
+        String lockClause = lockClause(lockWait);
+        if (requestId == null) {
+            throw error(ERR_INVALID_AMOUNT, "Request id is required");
+        }
+        if (from == null || to == null) {
+            throw error(ERR_ACCT_MISSING, "Account not found");
+        }
+        if (from.equals(to)) {
+            throw error(ERR_SAME_ACCOUNT, "Source and destination must differ");
+        }
+        if (amount == null || amount.signum() <= 0) {
+            throw error(ERR_INVALID_AMOUNT, "Amount must be positive");
+        }
+
+        int posted = countPostings(conn, requestId);
+        if (posted == 2) {
+            return;
+        } else if (posted == 1) {
+            throw error(ERR_DUPLICATE_REQUEST, "Duplicate or partial request");
+        }
+
+        String base;
+        String quote;
+        BigDecimal rate;
+        try (PreparedStatement stmt = conn.prepareStatement(
+                "select BASE_CCY, QUOTE_CCY, RATE from WALLET_FX_RATE where RATE_VERSION = ?")) {
+            stmt.setObject(1, rateVersion);
+            try (ResultSet rs = stmt.executeQuery()) {
+                if (!rs.next()) {
+                    throw error(ERR_RATE_UNAVAILABLE, "Unknown rate version " + rateVersion);
+                }
+                base = rs.getString(1);
+                quote = rs.getString(2);
+                rate = rs.getBigDecimal(3);
+            }
+        }
+
+        // a quote taken just before a newer rate was published still posts; past the grace period, counted
+        // from the pair's latest rate, it does not
+        try (PreparedStatement stmt = conn.prepareStatement("select TS_CREATED from WALLET_FX_RATE "
+                + "where ((BASE_CCY = ? and QUOTE_CCY = ?) or (BASE_CCY = ? and QUOTE_CCY = ?)) and RATE_VERSION > ? "
+                + "order by RATE_VERSION desc fetch first 1 rows only")) {
+            stmt.setString(1, base);
+            stmt.setString(2, quote);
+            stmt.setString(3, quote);
+            stmt.setString(4, base);
+            stmt.setObject(5, rateVersion);
+            try (ResultSet rs = stmt.executeQuery()) {
+                OffsetDateTime supersededAt = rs.next() ? rs.getObject(1, OffsetDateTime.class) : null;
+                if (supersededAt != null && supersededAt.isBefore(OffsetDateTime.now().minusSeconds(FX_QUOTE_GRACE_SECONDS))) {
+                    throw error(ERR_RATE_UNAVAILABLE, "Rate version " + rateVersion + " superseded");
+                }
+            }
+        }
+
+        @Language("SQL")
+        String lockSql = "select ID, CURRENCY, STATUS, BALANCE - HELD_AMOUNT from WALLET_ACCOUNT "
+                + "where ID in (?, ?) order by ID for update" + lockClause;
+
+        int locked = 0;
+        String fromCurrency = null, toCurrency = null, fromStatus = null, toStatus = null;
+        BigDecimal fromAvailable = null;
+        try (PreparedStatement stmt = conn.prepareStatement(lockSql)) {
+            stmt.setLong(1, Math.min(from, to));
+            stmt.setLong(2, Math.max(from, to));
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    locked++;
+                    if (rs.getLong(1) == from) {
+                        fromCurrency = rs.getString(2);
+                        fromStatus = rs.getString(3);
+                        fromAvailable = rs.getBigDecimal(4);
+                    } else {
+                        toCurrency = rs.getString(2);
+                        toStatus = rs.getString(3);
+                    }
+                }
+            }
+        } catch (SQLException e) {
+            throw lockError(e);
+        }
+
+        if (locked != 2) {
+            if (" skip locked".equals(lockClause) && countAccounts(conn, Math.min(from, to), Math.max(from, to)) == 2) {
+                throw error(ERR_LOCK_UNAVAILABLE, "Account locked by another transaction");
+            }
+            throw error(ERR_ACCT_MISSING, "Account not found");
+        }
+        if (!"ACTIVE".equals(fromStatus) || !"ACTIVE".equals(toStatus)) {
+            throw error(ERR_STATUS_INVALID, "Account status not active");
+        }
+
+        BigDecimal credit;
+        if (fromCurrency.equals(base) && toCurrency.equals(quote)) {
+            credit = amount.multiply(rate).setScale(fxScale(toCurrency), RoundingMode.HALF_UP);
+        } else if (fromCurrency.equals(quote) && toCurrency.equals(base)) {
+            credit = amount.divide(rate, fxScale(toCurrency), RoundingMode.HALF_UP);
+        } else {
+            throw error(ERR_CURRENCY_MISMATCH, "Rate version " + rateVersion + " does not quote "
+                    + fromCurrency + "/" + toCurrency);
+        }
+        if (credit.signum() <= 0) {
+            throw error(ERR_INVALID_AMOUNT, "Converted amount rounds to zero");
+        }
+        if (fromAvailable.compareTo(amount) < 0) {
+            throw error(ERR_INSUFFICIENT, "Insufficient balance");
+        }
+
+        // a concurrent duplicate that passed the first check before we held the locks is caught here
+        posted = countPostings(conn, requestId);
+        if (posted == 2) {
+            return;
+        } else if (posted == 1) {
+            throw error(ERR_DUPLICATE_REQUEST, "Duplicate or partial request");
+        }
+
+        adjustBalance(conn, from, amount.negate());
+        adjustBalance(conn, to, credit);
+        // two currencies, so two journal rows rather than one WALLET_TRANSFER row
+        insertPosting(conn, requestId, 1, from, fromCurrency, amount, "DEBIT", "FX transfer out", rateVersion);
+        insertPosting(conn, requestId, 2, to, toCurrency, credit, "CREDIT", "FX transfer in", rateVersion);
+
+        enqueueEvent(conn, requestId, "FX_TRANSFER_COMPLETED",
+                "{\"requestId\":" + quote(requestId)
+                        + ",\"fromAccountId\":" + from
+                        + ",\"toAccountId\":" + to
+                        + ",\"fromCurrency\":" + quote(fromCurrency)
+                        + ",\"toCurrency\":" + quote(toCurrency)
+                        + ",\"debitAmount\":" + amount.toPlainString()
+                        + ",\"creditAmount\":" + credit.toPlainString()
+                        + ",\"rateVersion\":" + rateVersion + "}");
+    }
+
+    public static void transferMulti(Connection conn, String requestId, String currency,
+                                     BigDecimal[] accounts, String[] sides, BigDecimal[] amounts) throws SQLException {
+        if (requestId == null) {
+            throw error(ERR_INVALID_AMOUNT, "Request id is required");
+        }
+        if (accounts == null || sides == null || amounts == null
+                || accounts.length < 2
+                || sides.length != accounts.length
+                || amounts.length != accounts.length) {
+            throw error(ERR_INVALID_AMOUNT, "At least two legs of matching length are required");
+        }
+
+        int legs = accounts.length;
+        long[] accountIds = new long[legs];
+        BigDecimal[] legAmounts = new BigDecimal[legs];
+        BigDecimal debits = BigDecimal.ZERO;
+        BigDecimal credits = BigDecimal.ZERO;
+        for (int i = 0; i < legs; i++) {
+            legAmounts[i] = amounts[i];
+            if (legAmounts[i] == null || legAmounts[i].signum() <= 0) {
+                throw error(ERR_INVALID_AMOUNT, "Amount must be positive");
+            }
+            if ("DEBIT".equals(sides[i])) {
+                debits = debits.add(legAmounts[i]);
+            } else if ("CREDIT".equals(sides[i])) {
+                credits = credits.add(legAmounts[i]);
+            } else {
+                throw error(ERR_INVALID_AMOUNT, "Side must be DEBIT or CREDIT");
+            }
+            if (accounts[i] == null) {
+                throw error(ERR_ACCT_MISSING, "Account not found");
+            }
+            accountIds[i] = accounts[i].longValueExact();
+        }
+
+        if (debits.compareTo(credits) != 0) {
+            throw error(ERR_UNBALANCED, "Debits and credits must balance");
+        }
+
+        Set<Long> distinct = new HashSet<>();
+        for (long id : accountIds) {
+            distinct.add(id);
+        }
+        if (distinct.size() != legs) {
+            throw error(ERR_SAME_ACCOUNT, "Each account may appear in one leg only");
+        }
+
+        int posted = countPostings(conn, requestId);
+        if (posted == legs) {
+            return;
+        } else if (posted > 0) {
+            throw error(ERR_DUPLICATE_REQUEST, "Duplicate or partial request");
+        }
+
+        // one statement locks every leg in ascending id order, as the PL/SQL version does
+        StringBuilder lockSql = new StringBuilder("select ID, CURRENCY, STATUS, BALANCE - HELD_AMOUNT from WALLET_ACCOUNT where ID in (");
+        for (int i = 0; i < legs; i++) {
+            lockSql.append(i == 0 ? "?" : ", ?");
+        }
+        lockSql.append(") order by ID for update");
+
+        int locked = 0;
+        boolean inactive = false;
+        boolean wrongCurrency = false;
+        Map<Long, BigDecimal> available = new HashMap<>();
+        try (PreparedStatement stmt = conn.prepareStatement(lockSql.toString())) {
+            for (int i = 0; i < legs; i++) {
+                stmt.setLong(i + 1, accountIds[i]);
+            }
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    locked++;
+                    inactive |= !"ACTIVE".equals(rs.getString(3));
+                    wrongCurrency |= !currency.equals(rs.getString(2));
+                    available.put(rs.getLong(1), rs.getBigDecimal(4));
+                }
+            }
+        } catch (SQLException e) {
+            throw lockError(e);
+        }
+
+        if (locked != legs) {
+            throw error(ERR_ACCT_MISSING, "Account not found");
+        }
+        if (inactive) {
+            throw error(ERR_STATUS_INVALID, "Account status not active");
+        }
+        if (wrongCurrency) {
+            throw error(ERR_CURRENCY_MISMATCH, "Currency mismatch");
+        }
+        for (int i = 0; i < legs; i++) {
+            if ("DEBIT".equals(sides[i]) && available.get(accountIds[i]).compareTo(legAmounts[i]) < 0) {
+                throw error(ERR_INSUFFICIENT, "Insufficient balance");
+            }
+        }
+        posted = countPostings(conn, requestId);
+        if (posted == legs) {
+            return;
+        } else if (posted > 0) {
+            throw error(ERR_DUPLICATE_REQUEST, "Duplicate or partial request");
+        }
+
+        StringBuilder legList = new StringBuilder();
+        for (int i = 0; i < legs; i++) {
+            String side = sides[i];
+            insertPosting(conn, requestId, i + 1, accountIds[i], currency, legAmounts[i], side);
+            adjustBalance(conn, accountIds[i], "DEBIT".equals(side) ? legAmounts[i].negate() : legAmounts[i]);
+            legList.append(i == 0 ? "" : ",")
+                    .append("{\"accountId\":").append(accountIds[i])
+                    .append(",\"side\":").append(quote(side))
+                    .append(",\"amount\":").append(legAmounts[i].toPlainString()).append('}');
+        }
+
+        enqueueEvent(conn, requestId, "MULTI_TRANSFER_COMPLETED",
+                "{\"requestId\":" + quote(requestId)
+                        + ",\"currency\":" + quote(currency)
+                        + ",\"legs\":[" + legList + "]}");
+    }
+
+    public static Long placeHold(Connection conn, String requestId, Long account, String currency, BigDecimal amount,
+                                 Long ttlSeconds) throws SQLException {
+        if (requestId == null) {
+            throw error(ERR_INVALID_AMOUNT, "Request id is required");
+        }
+        if (amount == null || amount.signum() <= 0) {
+            throw error(ERR_INVALID_AMOUNT, "Amount must be positive");
+        }
+        if (ttlSeconds == null || ttlSeconds <= 0) {
+            throw error(ERR_INVALID_AMOUNT, "Hold lifetime must be positive");
+        }
+
+        Long holdId = findHold(conn, requestId, account, amount);
+        if (holdId != null) {
+            return holdId;
+        }
+
+        String accountCurrency;
+        String status;
+        BigDecimal available;
+        try (PreparedStatement stmt = conn.prepareStatement(
+                "select CURRENCY, STATUS, BALANCE - HELD_AMOUNT from WALLET_ACCOUNT where ID = ? for update")) {
+            stmt.setObject(1, account);
+            try (ResultSet rs = stmt.executeQuery()) {
+                if (!rs.next()) {
+                    throw error(ERR_ACCT_MISSING, "Account not found");
+                }
+                accountCurrency = rs.getString(1);
+                status = rs.getString(2);
+                available = rs.getBigDecimal(3);
+            }
+        } catch (SQLException e) {
+            throw lockError(e);
+        }
+
+        if (!"ACTIVE".equals(status)) {
+            throw error(ERR_STATUS_INVALID, "Account status not active");
+        }
+        if (!accountCurrency.equals(currency)) {
+            throw error(ERR_CURRENCY_MISMATCH, "Currency mismatch");
+        }
+
+        // a concurrent replay that passed the first check before we held the lock is caught here
+        holdId = findHold(conn, requestId, account, amount);
+        if (holdId != null) {
+            return holdId;
+        }
+        if (available.compareTo(amount) < 0) {
+            throw error(ERR_INSUFFICIENT, "Insufficient balance");
+        }
+
+        adjustHeld(conn, account, amount);
+        try (PreparedStatement stmt = conn.prepareStatement(
+                "insert into WALLET_HOLD (REQUEST_ID, ACCOUNT_ID, CURRENCY, AMOUNT, EXPIRES_AT) "
+                        + "values (?, ?, ?, ?, dateadd(second, ?, current_timestamp))", new String[]{"HOLD_ID"})) {
+            stmt.setString(1, requestId);
+            stmt.setLong(2, account);
+            stmt.setString(3, currency);
+            stmt.setBigDecimal(4, amount);
+            stmt.setLong(5, ttlSeconds);
+            stmt.executeUpdate();
+            try (ResultSet keys = stmt.getGeneratedKeys()) {
+                keys.next();
+                return keys.getLong(1);
+            }
+        }
+    }
+
+    public static void captureHold(Connection conn, String requestId, Long holdId, Long to, BigDecimal amount)
+            throws SQLException {
+        if (requestId == null) {
+            throw error(ERR_INVALID_AMOUNT, "Request id is required");
+        }
+        if (amount == null || amount.signum() <= 0) {
+            throw error(ERR_INVALID_AMOUNT, "Amount must be positive");
+        }
+
+        long account;
+        String currency;
+        BigDecimal held;
+        String status;
+        boolean expired;
+        String captureRequestId;
+        try (PreparedStatement stmt = conn.prepareStatement(
+                "select ACCOUNT_ID, CURRENCY, AMOUNT, STATUS, EXPIRES_AT <= current_timestamp, CAPTURE_REQUEST_ID "
+                        + "from WALLET_HOLD where HOLD_ID = ? for update")) {
+            stmt.setObject(1, holdId);
+            try (ResultSet rs = stmt.executeQuery()) {
+                if (!rs.next()) {
+                    throw error(ERR_HOLD_NOT_ACTIVE, "Hold not found");
+                }
+                account = rs.getLong(1);
+                currency = rs.getString(2);
+                held = rs.getBigDecimal(3);
+                status = rs.getString(4);
+                expired = rs.getBoolean(5);
+                captureRequestId = rs.getString(6);
+            }
+        } catch (SQLException e) {
+            throw lockError(e);
+        }
+
+        if ("CAPTURED".equals(status) && requestId.equals(captureRequestId)) {
+            return;
+        }
+        if (!"ACTIVE".equals(status) || expired) {
+            throw error(ERR_HOLD_NOT_ACTIVE, "Hold " + holdId + " is not active");
+        }
+        if (amount.compareTo(held) > 0) {
+            throw error(ERR_INVALID_AMOUNT, "Capture exceeds the held amount");
+        }
+        if (countPostings(conn, requestId) > 0) {
+            throw error(ERR_DUPLICATE_REQUEST, "Duplicate request");
+        }
+
+        // the hold is closed before transfer runs its checks; undo that if the transfer is refused
+        Savepoint start = conn.setSavepoint();
+        try {
+            if (to != null) {
+                try (PreparedStatement stmt = conn.prepareStatement(
+                        "select ID from WALLET_ACCOUNT where ID in (?, ?) order by ID for update")) {
+                    stmt.setLong(1, Math.min(account, to));
+                    stmt.setLong(2, Math.max(account, to));
+                    stmt.executeQuery().close();
+                } catch (SQLException e) {
+                    throw lockError(e);
+                }
+            }
+            adjustHeld(conn, account, held.negate());
+            try (PreparedStatement stmt = conn.prepareStatement(
+                    "update WALLET_HOLD set STATUS = 'CAPTURED', CAPTURE_REQUEST_ID = ?, TS_CLOSED = current_timestamp "
+                            + "where HOLD_ID = ?")) {
+                stmt.setString(1, requestId);
+                stmt.setLong(2, holdId);
+                stmt.executeUpdate();
+            }
+            transfer(conn, requestId, account, to, currency, amount);
+        } catch (SQLException | RuntimeException e) {
+            conn.rollback(start);
+            throw e;
+        }
+    }
+
+    public static void releaseHold(Connection conn, Long holdId) throws SQLException {
+        long account;
+        BigDecimal held;
+        String status;
+        try (PreparedStatement stmt = conn.prepareStatement(
+                "select ACCOUNT_ID, AMOUNT, STATUS from WALLET_HOLD where HOLD_ID = ? for update")) {
+            stmt.setObject(1, holdId);
+            try (ResultSet rs = stmt.executeQuery()) {
+                if (!rs.next()) {
+                    throw error(ERR_HOLD_NOT_ACTIVE, "Hold not found");
+                }
+                account = rs.getLong(1);
+                held = rs.getBigDecimal(2);
+                status = rs.getString(3);
+            }
+        } catch (SQLException e) {
+            throw lockError(e);
+        }
+
+        if ("RELEASED".equals(status) || "EXPIRED".equals(status)) {
+            return;
+        } else if (!"ACTIVE".equals(status)) {
+            throw error(ERR_HOLD_NOT_ACTIVE, "Hold " + holdId + " is not active");
+        }
+
+        adjustHeld(conn, account, held.negate());
+        closeHolds(conn, "RELEASED", List.of(holdId));
+    }
+
+    public static Integer expireHolds(Connection conn, BigDecimal[] holdIds) throws SQLException {
+        if (holdIds == null || holdIds.length == 0) {
+            return 0;
+        }
+        StringBuilder lockSql = new StringBuilder(
+                "select HOLD_ID, ACCOUNT_ID, AMOUNT from WALLET_HOLD "
+                        + "where STATUS = 'ACTIVE' and EXPIRES_AT <= current_timestamp and HOLD_ID in (");
+        for (int i = 0; i < holdIds.length; i++) {
+            lockSql.append(i == 0 ? "?" : ", ?");
+        }
+        lockSql.append(") order by HOLD_ID for update");
+
+        // hold rows first, then accounts in id order, as captureHold locks them
+        List<Long> expiring = new ArrayList<>();
+        Map<Long, BigDecimal> heldByAccount = new TreeMap<>();
+        try (PreparedStatement stmt = conn.prepareStatement(lockSql.toString())) {
+            for (int i = 0; i < holdIds.length; i++) {
+                stmt.setBigDecimal(i + 1, holdIds[i]);
+            }
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    expiring.add(rs.getLong(1));
+                    heldByAccount.merge(rs.getLong(2), rs.getBigDecimal(3), BigDecimal::add);
+                }
+            }
+        } catch (SQLException e) {
+            throw lockError(e);
+        }
+        if (expiring.isEmpty()) {
+            return 0;
+        }
+
+        // one update per account, however many of its holds expire
+        for (Map.Entry<Long, BigDecimal> e : heldByAccount.entrySet()) {
+            adjustHeld(conn, e.getKey(), e.getValue().negate());
+        }
+        closeHolds(conn, "EXPIRED", expiring);
+        return expiring.size();
+    }
+
+    public static Integer runSchedules(Connection conn, BigDecimal[] scheduleIds) throws SQLException {
+        if (scheduleIds == null || scheduleIds.length == 0) {
+            return 0;
+        }
+        StringBuilder placeholders = new StringBuilder();
+        for (int i = 0; i < scheduleIds.length; i++) {
+            placeholders.append(i == 0 ? "?" : ", ?");
+        }
+
+        // every account of the batch in one pass in id order, as the PL/SQL version does
+        Set<Long> accountIds = new TreeSet<>();
+        try (PreparedStatement stmt = conn.prepareStatement("select FROM_ACCOUNT_ID, TO_ACCOUNT_ID from WALLET_SCHEDULE "
+                + "where STATUS = 'ACTIVE' and SCHEDULE_ID in (" + placeholders + ")")) {
+            for (int i = 0; i < scheduleIds.length; i++) {
+                stmt.setBigDecimal(i + 1, scheduleIds[i]);
+            }
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    accountIds.add(rs.getLong(1));
+                    accountIds.add(rs.getLong(2));
+                }
+            }
+        }
+        if (accountIds.isEmpty()) {
+            return 0;
+        }
+        StringBuilder lockSql = new StringBuilder("select ID from WALLET_ACCOUNT where ID in (");
+        for (int i = 0; i < accountIds.size(); i++) {
+            lockSql.append(i == 0 ? "?" : ", ?");
+        }
+        lockSql.append(") order by ID for update");
+        try (PreparedStatement stmt = conn.prepareStatement(lockSql.toString())) {
+            int i = 0;
+            for (long accountId : accountIds) {
+                stmt.setLong(++i, accountId);
+            }
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    // the rows stay locked until the caller commits
+                }
+            }
+        } catch (SQLException e) {
+            throw lockError(e);
+        }
+
+        String selectSql = "select SCHEDULE_ID, FROM_ACCOUNT_ID, TO_ACCOUNT_ID, CURRENCY, AMOUNT, PERIOD, START_AT, "
+                + "END_AT, SPREAD_SECONDS, OCCURRENCE from WALLET_SCHEDULE where STATUS = 'ACTIVE' and SCHEDULE_ID in ("
+                + placeholders + ") order by SCHEDULE_ID";
+
+        int posted = 0;
+        try (PreparedStatement select = conn.prepareStatement(selectSql);
+             PreparedStatement advance = conn.prepareStatement(
+                     "update WALLET_SCHEDULE set OCCURRENCE = OCCURRENCE + 1, NEXT_RUN_AT = coalesce(?, NEXT_RUN_AT), "
+                             + "DUE_AT = coalesce(?, DUE_AT), STATUS = ?, LAST_ERROR_CODE = ?, "
+                             + "TS_LAST_RUN = current_timestamp where SCHEDULE_ID = ?")) {
+            for (int i = 0; i < scheduleIds.length; i++) {
+                select.setBigDecimal(i + 1, scheduleIds[i]);
+            }
+            try (ResultSet rs = select.executeQuery()) {
+                while (rs.next()) {
+                    long scheduleId = rs.getLong(1);
+                    long occurrence = rs.getLong(10);
+                    String requestId = "sched-" + scheduleId + "-" + occurrence;
+                    int code = 0;
+                    Savepoint before = conn.setSavepoint();
+                    try {
+                        // with both accounts locked no one else can post it in between; a replay only moves on
+                        if (countPostings(conn, requestId) != 2) {
+                            transfer(conn, requestId, rs.getLong(2), rs.getLong(3), rs.getString(4),
+                                    rs.getBigDecimal(5));
+                            posted++;
+                        }
+                    } catch (SQLException e) {
+                        // only a refusal skips the occurrence; anything else fails the whole batch
+                        if (e.getErrorCode() < 20000 || e.getErrorCode() > 20999) {
+                            throw e;
+                        }
+                        conn.rollback(before);
+                        code = -e.getErrorCode();
+                    }
+
+                    OffsetDateTime next = nominalRun(rs.getString(6), rs.getObject(7, OffsetDateTime.class),
+                            occurrence + 1);
+                    OffsetDateTime endAt = rs.getObject(8, OffsetDateTime.class);
+                    advance.setObject(1, next);
+                    advance.setObject(2, next == null ? null : next.plusSeconds(rs.getLong(9)));
+                    advance.setString(3, next == null || endAt != null && next.isAfter(endAt) ? "DONE" : "ACTIVE");
+                    advance.setInt(4, code);
+                    advance.setLong(5, scheduleId);
+                    advance.executeUpdate();
+                }
+            }
+        }
+        return posted;
+    }
+
+    public static void postAccruals(Connection conn, String runId, String kind, String currency, Long systemAccount,
+                                    Long fromId, Long toId, BigDecimal rate, BigDecimal fixed) throws SQLException {
+        // unlike a PL/SQL call, a failing alias keeps the rows it already wrote, and this one writes before
+        // its last check; roll back to the start so a failed chunk stays unclaimed
+        Savepoint start = conn.setSavepoint();
+        try {
+            postAccrualChunk(conn, runId, kind, currency, systemAccount, fromId, toId, rate, fixed);
+        } catch (SQLException | RuntimeException e) {
+            conn.rollback(start);
+            throw e;
+        }
+    }
+
+    private static void postAccrualChunk(Connection conn, String runId, String kind, String currency,
+                                         Long systemAccount, Long fromId, Long toId, BigDecimal rate,
+                                         BigDecimal fixed) throws SQLException {
+        if (runId == null || runId.length() > 40) {
+            throw error(ERR_INVALID_AMOUNT, "Run id is required and at most 40 characters");
+        }
+        if (!"INTEREST".equals(kind) && !"FEE".equals(kind)) {
+            throw error(ERR_INVALID_AMOUNT, "Accrual kind must be INTEREST or FEE");
+        }
+        if (rate == null || rate.signum() < 0 || fixed == null || fixed.signum() < 0
+                || fromId == null || toId == null || fromId >= toId) {
+            throw error(ERR_INVALID_AMOUNT, "Invalid accrual arguments");
+        }
+        boolean interest = "INTEREST".equals(kind);
+
+        // claim the chunk before touching any account, as the PL/SQL version does
+        try (PreparedStatement stmt = conn.prepareStatement(
+                "insert into WALLET_ACCRUAL_CHUNK (RUN_ID, CHUNK_FROM, CHUNK_TO, ACCOUNTS, TOTAL) values (?, ?, ?, 0, 0)")) {
+            stmt.setString(1, runId);
+            stmt.setLong(2, fromId);
+            stmt.setLong(3, toId);
+            stmt.executeUpdate();
+        } catch (SQLException e) {
+            if (e.getErrorCode() == H2_DUPLICATE_KEY) {
+                return;
+            }
+            throw e;
+        }
+
+        // the chunk's accounts in id order, leaving the system account alone, as the PL/SQL version does
+        try (PreparedStatement stmt = conn.prepareStatement("select ID from WALLET_ACCOUNT "
+                + "where ID >= ? and ID < ? and ID != ? and CURRENCY = ? order by ID for update")) {
+            stmt.setLong(1, fromId);
+            stmt.setLong(2, toId);
+            stmt.setLong(3, systemAccount);
+            stmt.setString(4, currency);
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    // the rows stay locked until the caller commits
+                }
+            }
+        } catch (SQLException e) {
+            throw lockError(e);
+        }
+
+        @Language("SQL")
+        String eligibleSql = "select ID, case when ? = 'FEE' then least(BALANCE - HELD_AMOUNT, round(BALANCE * ? + ?, 2)) "
+                + "else round(BALANCE * ? + ?, 2) end "
+                + "from WALLET_ACCOUNT "
+                + "where ID >= ? and ID < ? and ID != ? and CURRENCY = ? and STATUS = 'ACTIVE' "
+                + "and case when ? = 'FEE' then BALANCE - HELD_AMOUNT else BALANCE end > 0 "
+                + "and round(BALANCE * ? + ?, 2) > 0 "
+                + "order by ID";
+
+        List<Long> ids = new ArrayList<>();
+        List<BigDecimal> amounts = new ArrayList<>();
+        BigDecimal total = BigDecimal.ZERO;
+        try (PreparedStatement stmt = conn.prepareStatement(eligibleSql)) {
+            stmt.setString(1, kind);
+            stmt.setBigDecimal(2, rate);
+            stmt.setBigDecimal(3, fixed);
+            stmt.setBigDecimal(4, rate);
+            stmt.setBigDecimal(5, fixed);
+            stmt.setLong(6, fromId);
+            stmt.setLong(7, toId);
+            stmt.setLong(8, systemAccount);
+            stmt.setString(9, currency);
+            stmt.setString(10, kind);
+            stmt.setBigDecimal(11, rate);
+            stmt.setBigDecimal(12, fixed);
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    ids.add(rs.getLong(1));
+                    amounts.add(rs.getBigDecimal(2));
+                    total = total.add(rs.getBigDecimal(2));
+                }
+            }
+        }
+
+        // read without a lock, net of what the run's unsettled chunks have paid, as the PL/SQL version does
+        try (PreparedStatement stmt = conn.prepareStatement(
+                "select CURRENCY, STATUS, BALANCE - (select coalesce(sum(TOTAL), 0) from WALLET_ACCRUAL_CHUNK "
+                        + "where RUN_ID = ? and SETTLED = 0) from WALLET_ACCOUNT where ID = ?")) {
+            stmt.setString(1, runId);
+            stmt.setLong(2, systemAccount);
+            try (ResultSet rs = stmt.executeQuery()) {
+                if (!rs.next()) {
+                    throw error(ERR_ACCT_MISSING, "System account not found");
+                }
+                if (!"ACTIVE".equals(rs.getString(2))) {
+                    throw error(ERR_STATUS_INVALID, "System account status not active");
+                }
+                if (!currency.equals(rs.getString(1))) {
+                    throw error(ERR_CURRENCY_MISMATCH, "Currency mismatch");
+                }
+                if (interest && rs.getBigDecimal(3).compareTo(total) < 0) {
+                    throw error(ERR_INSUFFICIENT, "Insufficient balance");
+                }
+            }
+        }
+
+        String description = interest ? "Interest accrual" : "Fee accrual";
+        try (PreparedStatement update = conn.prepareStatement(
+                "update WALLET_ACCOUNT set BALANCE = BALANCE + ? where ID = ?");
+             PreparedStatement insert = conn.prepareStatement(INSERT_TRANSFER_SQL)) {
+            for (int i = 0; i < ids.size(); i++) {
+                long id = ids.get(i);
+                BigDecimal amount = amounts.get(i);
+                update.setBigDecimal(1, interest ? amount : amount.negate());
+                update.setLong(2, id);
+                update.addBatch();
+                addTransfer(insert, runId + ":" + id, interest ? systemAccount : id, interest ? id : systemAccount,
+                        currency, amount, description);
+            }
+            update.executeBatch();
+            insert.executeBatch();
+        }
+
+        try (PreparedStatement stmt = conn.prepareStatement(
+                "update WALLET_ACCRUAL_CHUNK set ACCOUNTS = ?, TOTAL = ? where RUN_ID = ? and CHUNK_FROM = ?")) {
+            stmt.setInt(1, ids.size());
+            stmt.setBigDecimal(2, total);
+            stmt.setString(3, runId);
+            stmt.setLong(4, fromId);
+            stmt.executeUpdate();
+        }
+
+        enqueueEvent(conn, runId + ":" + fromId, "ACCRUAL_POSTED",
+                "{\"runId\":" + quote(runId)
+                        + ",\"kind\":" + quote(kind)
+                        + ",\"currency\":" + quote(currency)
+                        + ",\"fromId\":" + fromId
+                        + ",\"toId\":" + toId
+                        + ",\"accounts\":" + ids.size()
+                        + ",\"total\":" + total.toPlainString() + "}");
+    }
+
+    /**
+     * Port of {@code wallet_pkg.settle_accruals}: moves the total of every unsettled chunk of {@code runId}
+     * through the system account.
+     */
+    public static void settleAccruals(Connection conn, String runId, String kind, Long systemAccount)
+            throws SQLException {
+        if (!"INTEREST".equals(kind) && !"FEE".equals(kind)) {
+            throw error(ERR_INVALID_AMOUNT, "Accrual kind must be INTEREST or FEE");
+        }
+        List<Long> chunks = new ArrayList<>();
+        BigDecimal total = BigDecimal.ZERO;
+        try (PreparedStatement stmt = conn.prepareStatement("select CHUNK_FROM, TOTAL from WALLET_ACCRUAL_CHUNK "
+                + "where RUN_ID = ? and SETTLED = 0 for update")) {
+            stmt.setString(1, runId);
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    chunks.add(rs.getLong(1));
+                    total = total.add(rs.getBigDecimal(2));
+                }
+            }
+        }
+        // the balance first: a failing alias keeps what it wrote, and this is the only write that can fail
+        if (total.signum() != 0) {
+            try (PreparedStatement stmt = conn.prepareStatement(
+                    "update WALLET_ACCOUNT set BALANCE = BALANCE + ? where ID = ?")) {
+                stmt.setBigDecimal(1, "INTEREST".equals(kind) ? total.negate() : total);
+                stmt.setLong(2, systemAccount);
+                if (stmt.executeUpdate() == 0) {
+                    throw error(ERR_ACCT_MISSING, "System account not found");
+                }
+            }
+        }
+        try (PreparedStatement stmt = conn.prepareStatement(
+                "update WALLET_ACCRUAL_CHUNK set SETTLED = 1 where RUN_ID = ? and CHUNK_FROM = ?")) {
+            for (long chunkFrom : chunks) {
+                stmt.setString(1, runId);
+                stmt.setLong(2, chunkFrom);
+                stmt.addBatch();
+            }
+            stmt.executeBatch();
+        }
+    }
+
+    /**
+     * Port of {@code wallet_pkg.convert_journal}: moves the convertible DEBIT/CREDIT pairs among the next
+     * {@code limit} journal rows after {@code afterEntryId} into WALLET_TRANSFER.
+     *
+     * @return the ENTRY_ID to continue after, or null once the journal has been walked
+     */
+    public static Long convertJournal(Connection conn, Long afterEntryId, Integer limit) throws SQLException {
+        if (afterEntryId == null || limit == null || limit <= 0) {
+            throw error(ERR_INVALID_AMOUNT, "Invalid conversion arguments");
+        }
+
+        Long last;
+        try (PreparedStatement stmt = conn.prepareStatement(
+                "select max(ENTRY_ID) from (select ENTRY_ID from WALLET_JOURNAL where ENTRY_ID > ? "
+                        + "order by ENTRY_ID fetch first ? rows only)")) {
+            stmt.setLong(1, afterEntryId);
+            stmt.setInt(2, limit);
+            try (ResultSet rs = stmt.executeQuery()) {
+                rs.next();
+                last = rs.getObject(1) == null ? null : rs.getLong(1);
+            }
+        }
+        if (last == null) {
+            return null;
+        }
+
+        // same pairing rules as the PL/SQL version: only pairs the view reproduces exactly are moved
+        @Language("SQL")
+        String pairsSql = "select d.ENTRY_ID, c.ENTRY_ID from WALLET_JOURNAL d "
+                + "join WALLET_JOURNAL c on c.REQUEST_ID = d.REQUEST_ID and c.POSTING_SEQ = 2 "
+                + "where d.ENTRY_ID > ? and d.ENTRY_ID <= ? "
+                + "and d.POSTING_SEQ = 1 and d.SIDE = 'DEBIT' and c.SIDE = 'CREDIT' "
+                + "and c.ACCOUNT_ID != d.ACCOUNT_ID and c.CURRENCY = d.CURRENCY and c.AMOUNT = d.AMOUNT "
+                + "and c.ENTRY_ID between d.ENTRY_ID + 1 and d.ENTRY_ID + ? "
+                + "and (c.DESCRIPTION = d.DESCRIPTION or (d.DESCRIPTION = 'Transfer out' and c.DESCRIPTION = 'Transfer in')) "
+                + "and not exists (select 1 from WALLET_JOURNAL x where x.REQUEST_ID = d.REQUEST_ID and x.POSTING_SEQ > 2) "
+                + "order by d.ENTRY_ID for update";
+
+        List<long[]> pairs = new ArrayList<>();
+        try (PreparedStatement stmt = conn.prepareStatement(pairsSql)) {
+            stmt.setLong(1, afterEntryId);
+            stmt.setLong(2, last);
+            stmt.setInt(3, MAX_CREDIT_GAP);
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    pairs.add(new long[]{rs.getLong(1), rs.getLong(2)});
+                }
+            }
+        }
+
+        @Language("SQL")
+        String moveSql = "insert into WALLET_TRANSFER (ENTRY_ID, REQUEST_ID, TS_CREATED, FROM_ACCOUNT_ID, TO_ACCOUNT_ID, "
+                + "CURRENCY, AMOUNT, DESCRIPTION, CREDIT_ENTRY_ID, CREDIT_TS_CREATED) "
+                + "select d.ENTRY_ID, d.REQUEST_ID, d.TS_CREATED, d.ACCOUNT_ID, c.ACCOUNT_ID, d.CURRENCY, d.AMOUNT, "
+                + "case when d.DESCRIPTION = 'Transfer out' and c.DESCRIPTION = 'Transfer in' then null else d.DESCRIPTION end, "
+                + "case when c.ENTRY_ID != d.ENTRY_ID + 1 then c.ENTRY_ID end, "
+                + "case when c.TS_CREATED != d.TS_CREATED then c.TS_CREATED end "
+                + "from WALLET_JOURNAL d, WALLET_JOURNAL c where d.ENTRY_ID = ? and c.ENTRY_ID = ?";
+
+        Savepoint start = conn.setSavepoint();
+        try (PreparedStatement move = conn.prepareStatement(moveSql);
+             PreparedStatement delete = conn.prepareStatement("delete from WALLET_JOURNAL where ENTRY_ID = ?")) {
+            for (long[] pair : pairs) {
+                move.setLong(1, pair[0]);
+                move.setLong(2, pair[1]);
+                move.addBatch();
+                delete.setLong(1, pair[0]);
+                delete.addBatch();
+                delete.setLong(1, pair[1]);
+                delete.addBatch();
+            }
+            move.executeBatch();
+            delete.executeBatch();
+        } catch (SQLException | RuntimeException e) {
+            conn.rollback(start);
+            throw e;
+        }
+        return last;
+    }
+
+    // p_lock_wait: null = wait up to the session lock timeout, 'NOWAIT', 'WAIT <seconds>' or 'SKIP'
+    static String lockClause(String lockWait) throws SQLException {
+        if (lockWait == null || lockWait.isBlank()) {
+            return "";
+        }
+        String mode = lockWait.trim().toUpperCase(Locale.ROOT);
+        if (mode.equals("NOWAIT")) {
+            return " nowait";
+        } else if (mode.equals("SKIP")) {
+            return " skip locked";
+        } else if (mode.matches("WAIT [0-9]{1,5}")) {
+            return " " + mode.toLowerCase(Locale.ROOT);
+        }
+        throw error(ERR_INVALID_AMOUNT, "Invalid lock wait policy: " + lockWait);
+    }
+
+    private static int countPostings(Connection conn, String requestId) throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement(
+                "select count(*) from WALLET_POSTING_V where REQUEST_ID = ?")) {
+            stmt.setString(1, requestId);
+            try (ResultSet rs = stmt.executeQuery()) {
+                rs.next();
+                return rs.getInt(1);
+            }
+        }
+    }
+
+    private static int countAccounts(Connection conn, long minId, long maxId) throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement(
+                "select count(*) from WALLET_ACCOUNT where ID in (?, ?)")) {
+            stmt.setLong(1, minId);
+            stmt.setLong(2, maxId);
+            try (ResultSet rs = stmt.executeQuery()) {
+                rs.next();
+                return rs.getInt(1);
+            }
+        }
+    }
+
+    private static void insertPosting(Connection conn, String requestId, int postingSeq, long accountId,
+                                      String currency, BigDecimal amount, String side) throws SQLException {
+        insertPosting(conn, requestId, postingSeq, accountId, currency, amount, side,
+                "DEBIT".equals(side) ? "Transfer out" : "Transfer in", null);
+    }
+
+    private static void insertPosting(Connection conn, String requestId, int postingSeq, long accountId,
+                                      String currency, BigDecimal amount, String side, String description,
+                                      Long rateVersion) throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement(
+                "insert into WALLET_JOURNAL (REQUEST_ID, POSTING_SEQ, ACCOUNT_ID, CURRENCY, AMOUNT, SIDE, DESCRIPTION, "
+                        + "RATE_VERSION) values (?, ?, ?, ?, ?, ?, ?, ?)")) {
+            stmt.setString(1, requestId);
+            stmt.setInt(2, postingSeq);
+            stmt.setLong(3, accountId);
+            stmt.setString(4, currency);
+            stmt.setBigDecimal(5, amount);
+            stmt.setString(6, side);
+            stmt.setString(7, description);
+            stmt.setObject(8, rateVersion);
+            stmt.executeUpdate();
+        }
+    }
+
+    private static void addTransfer(PreparedStatement insert, String requestId, long fromAccountId, long toAccountId,
+                                    String currency, BigDecimal amount, String description) throws SQLException {
+        insert.setString(1, requestId);
+        insert.setLong(2, fromAccountId);
+        insert.setLong(3, toAccountId);
+        insert.setString(4, currency);
+        insert.setBigDecimal(5, amount);
+        insert.setString(6, description);
+        insert.addBatch();
+    }
+
+    private static void adjustBalance(Connection conn, long accountId, BigDecimal delta) throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement(
+                "update WALLET_ACCOUNT set BALANCE = BALANCE + ? where ID = ?")) {
+            stmt.setBigDecimal(1, delta);
+            stmt.setLong(2, accountId);
+            stmt.executeUpdate();
+        }
+    }
+
+    private static void adjustHeld(Connection conn, long accountId, BigDecimal delta) throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement(
+                "update WALLET_ACCOUNT set HELD_AMOUNT = HELD_AMOUNT + ? where ID = ?")) {
+            stmt.setBigDecimal(1, delta);
+            stmt.setLong(2, accountId);
+            stmt.executeUpdate();
+        }
+    }
+
+    private static void closeHolds(Connection conn, String status, List<Long> holdIds) throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement(
+                "update WALLET_HOLD set STATUS = ?, TS_CLOSED = current_timestamp where HOLD_ID = ?")) {
+            for (Long holdId : holdIds) {
+                stmt.setString(1, status);
+                stmt.setLong(2, holdId);
+                stmt.addBatch();
+            }
+            stmt.executeBatch();
+        }
+    }
+
+    // the hold placed under requestId, or null; a different hold under the same request id is a duplicate
+    private static Long findHold(Connection conn, String requestId, Long account, BigDecimal amount)
+            throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement(
+                "select HOLD_ID, ACCOUNT_ID, AMOUNT from WALLET_HOLD where REQUEST_ID = ?")) {
+            stmt.setString(1, requestId);
+            try (ResultSet rs = stmt.executeQuery()) {
+                if (!rs.next()) {
+                    return null;
+                }
+                if (!Long.valueOf(rs.getLong(2)).equals(account) || rs.getBigDecimal(3).compareTo(amount) != 0) {
+                    throw error(ERR_DUPLICATE_REQUEST, "Duplicate request");
+                }
+                return rs.getLong(1);
+            }
+        }
+    }
+
+    // occurrence n counted from startAt, as run_schedules does; null for a one-off schedule
+    private static OffsetDateTime nominalRun(String period, OffsetDateTime startAt, long occurrence) {
+        return switch (period) {
+            case "DAILY" -> startAt.plusDays(occurrence);
+            case "WEEKLY" -> startAt.plusWeeks(occurrence);
+            // add_months maps the last day of a month to the last day of the target month
+            case "MONTHLY" -> startAt.getDayOfMonth() == startAt.toLocalDate().lengthOfMonth()
+                    ? startAt.plusMonths(occurrence).with(TemporalAdjusters.lastDayOfMonth())
+                    : startAt.plusMonths(occurrence);
+            default -> null;
+        };
+    }
+
+    private static void enqueueEvent(Connection conn, String requestId, String eventType, String payload)
+            throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement(
+                "insert into WALLET_OUTBOX (REQUEST_ID, EVENT_TYPE, PAYLOAD) values (?, ?, ?)")) {
+            stmt.setString(1, requestId);
+            stmt.setString(2, eventType);
+            stmt.setString(3, payload);
+            stmt.executeUpdate();
+        }
+    }
+
+    private static String quote(String value) {
+        return "\"" + value.replace("\\", "\\\\").replace("\"", "\\\"") + "\"";
+    }
+
+    static int fxScale(String currency) {
+        if (FX_SCALE_0.contains(currency)) {
+            return 0;
+        }
+        return FX_SCALE_3.contains(currency) ? 3 : 2;
+    }
+
+    private static SQLException lockError(SQLException e) {
+        if (e.getErrorCode() == H2_LOCK_TIMEOUT) {
+            return new SQLException("Account locked by another transaction", SQL_STATE, ERR_LOCK_UNAVAILABLE, e);
+        }
+        return e;
+    }
+
+    private static SQLException error(int code, String message) {
+        return new SQLException("ORA-" + code + ": " + message, SQL_STATE, code);
+    }
+}
@@ -0,0 +1,77 @@
+package com.wallet.database.plan;
+
+import org.intellij.lang.annotations.Language;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Registry of the SQL the services run, so {@link QueryPlanInspector} can explain every statement.
+ * <p>
+ * Services wrap their statement constants in {@link #register} (or {@link #registerFullScan} for the
+ * few that scan a table by design); registration happens when the owning class is initialised and
+ * returns the SQL unchanged.
+ */
+public final class QueryCatalog {
+
+    private static final Map<String, RegisteredQuery> QUERIES = new ConcurrentHashMap<>();
+
+    private QueryCatalog() {
+    }
+
+    /**
+     * Register a statement that is expected to be served by an index.
+     *
+     * @return {@code sql}, for use in a constant initialiser
+     */
+    public static String register(String name, @Language("SQL") String sql) {
+        QUERIES.put(name, new RegisteredQuery(name, sql, false));
+        return sql;
+    }
+
+    /**
+     * Register a statement that reads a whole table on purpose; the inspector does not flag it.
+     *
+     * @return {@code sql}, for use in a constant initialiser
+     */
+    public static String registerFullScan(String name, @Language("SQL") String sql) {
+        QUERIES.put(name, new RegisteredQuery(name, sql, true));
+        return sql;
+    }
+
+    /**
+     * @return every registered statement, ordered by name
+     */
+    public static List<RegisteredQuery> all() {
+        List<RegisteredQuery> queries = new ArrayList<>(QUERIES.values());
+        queries.sort(Comparator.comparing(RegisteredQuery::getName));
+        return queries;
+    }
+
+    public static final class RegisteredQuery {
+        private final String name;
+        private final String sql;
+        private final boolean fullScanExpected;
+
+        public RegisteredQuery(String name, String sql, boolean fullScanExpected) {
+            this.name = name;
+            this.sql = sql;
+            this.fullScanExpected = fullScanExpected;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public String getSql() {
+            return sql;
+        }
+
+        public boolean isFullScanExpected() {
+            return fullScanExpected;
+        }
+    }
+}
@@ -0,0 +1,317 @@
+package com.wallet.database.plan;
+
+import com.google.inject.Guice;
+import com.google.inject.Provider;
+import com.wallet.Exceptin.SQLRuntimeException;
+import com.wallet.config.DataSourceModule;
+import com.wallet.database.plan.QueryCatalog.RegisteredQuery;
+import com.wallet.digest.BalanceDigest;
+import com.wallet.journal.JournalTailer;
+import com.wallet.outbox.OutboxRelay;
+import com.wallet.service.AccountService;
+import com.wallet.service.BalanceService;
+import com.wallet.service.HoldService;
+import com.wallet.service.ScheduledTransferService;
+import com.wallet.service.accrual.AccrualEngine;
+import com.wallet.service.admission.VelocityLimiter;
+import com.wallet.service.fx.FxRateCache;
+import com.wallet.service.statement.StatementService;
+import org.intellij.lang.annotations.Language;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Explains every statement in {@link QueryCatalog} and reports full table scans of tables larger than
+ * a row threshold, so a dropped or unused index shows up before the query reaches production.
+ * <p>
+ * On Oracle the plan comes from {@code EXPLAIN PLAN} into {@code PLAN_TABLE} and table sizes from
+ * optimizer statistics ({@code ALL_TABLES.NUM_ROWS}); tables without statistics count as empty, so
+ * gather stats first. On the embedded backend the plan comes from H2's {@code EXPLAIN}. Statements
+ * that cannot be explained (e.g. Oracle-only syntax on H2) are reported but never fail the check.
+ * <pre>
+ * ./gradlew queryPlans -Pthreshold=10000
+ * </pre>
+ */
+public class QueryPlanInspector {
+
+    public static final long DEFAULT_TABLE_SIZE_THRESHOLD = 10_000;
+
+    // classes that register their statements in QueryCatalog when initialised
+    private static final List<Class<?>> REGISTRANTS = List.of(AccountService.class, BalanceService.class,
+            StatementService.class, AccrualEngine.class, JournalTailer.class, OutboxRelay.class,
+            VelocityLimiter.class, FxRateCache.class, HoldService.class, ScheduledTransferService.class,
+            BalanceDigest.class);
+
+    private final Provider<Connection> connectionProvider;
+    private final long tableSizeThreshold;
+
+    public QueryPlanInspector(Provider<Connection> connectionProvider, long tableSizeThreshold) {
+        this.connectionProvider = connectionProvider;
+        this.tableSizeThreshold = tableSizeThreshold;
+    }
+
+    /**
+     * @return every statement the services register, whether or not they have been used yet
+     */
+    public static List<RegisteredQuery> serviceQueries() {
+        for (Class<?> registrant : REGISTRANTS) {
+            try {
+                Class.forName(registrant.getName(), true, registrant.getClassLoader());
+            } catch (ClassNotFoundException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+        return QueryCatalog.all();
+    }
+
+    /**
+     * Explain {@code queries} and return full scans of tables above the threshold, plus any statement
+     * that could not be explained. Statements registered as full scans are explained but not flagged.
+     */
+    public List<Finding> inspect(Collection<RegisteredQuery> queries) {
+        List<Finding> findings = new ArrayList<>();
+        try (Connection conn = connectionProvider.get()) {
+            Explainer explainer = conn.getMetaData().getDatabaseProductName().startsWith("Oracle")
+                    ? new OracleExplainer(conn)
+                    : new H2Explainer(conn);
+            Map<String, Long> tableSizes = new HashMap<>();
+
+            for (RegisteredQuery query : queries) {
+                Set<String> scanned;
+                try {
+                    scanned = explainer.fullScans(query.getSql());
+                } catch (SQLException e) {
+                    findings.add(new Finding(Finding.Kind.NOT_EXPLAINED, query, null, 0, e.getMessage()));
+                    continue;
+                }
+                if (query.isFullScanExpected()) {
+                    continue;
+                }
+                for (String table : scanned) {
+                    Long rows = tableSizes.get(table);
+                    if (rows == null) {
+                        rows = explainer.tableSize(table);
+                        tableSizes.put(table, rows);
+                    }
+                    if (rows > tableSizeThreshold) {
+                        findings.add(new Finding(Finding.Kind.FULL_SCAN, query, table, rows, null));
+                    }
+                }
+            }
+        } catch (SQLException e) {
+            throw new SQLRuntimeException("Query plan inspection failed", e);
+        }
+        return findings;
+    }
+
+    public static void main(String[] args) {
+        long threshold = args.length > 0 ? Long.parseLong(args[0]) : DEFAULT_TABLE_SIZE_THRESHOLD;
+        Provider<Connection> connections = Guice.createInjector(new DataSourceModule()).getProvider(Connection.class);
+
+        List<RegisteredQuery> queries = serviceQueries();
+        List<Finding> findings = new QueryPlanInspector(connections, threshold).inspect(queries);
+        long fullScans = findings.stream().filter(f -> f.getKind() == Finding.Kind.FULL_SCAN).count();
+
+        findings.forEach(System.out::println);
+        System.out.printf("%d statements explained, %d full scans above %d rows%n", queries.size(), fullScans, threshold);
+        if (fullScans > 0) {
+            System.exit(1);
+        }
+    }
+
+    private interface Explainer {
+        /**
+         * @return qualified names ({@code SCHEMA.TABLE}) of the tables the plan reads in full
+         */
+        Set<String> fullScans(String sql) throws SQLException;
+
+        long tableSize(String qualifiedTable) throws SQLException;
+    }
+
+    private static final class OracleExplainer implements Explainer {
+
+        @Language("SQL")
+        private static final String FULL_SCANS_SQL =
+                "select distinct OBJECT_OWNER, OBJECT_NAME from PLAN_TABLE " +
+                "where STATEMENT_ID = ? and OPERATION = 'TABLE ACCESS' and OPTIONS like '%FULL'";
+
+        @Language("SQL")
+        private static final String CLEAR_SQL = "delete from PLAN_TABLE where STATEMENT_ID = ?";
+
+        @Language("SQL")
+        private static final String TABLE_SIZE_SQL = "select NUM_ROWS from ALL_TABLES where OWNER = ? and TABLE_NAME = ?";
+
+        private final Connection conn;
+        private int statementSeq;
+
+        OracleExplainer(Connection conn) {
+            this.conn = conn;
+        }
+
+        @Override
+        public Set<String> fullScans(String sql) throws SQLException {
+            String statementId = "QPI" + (++statementSeq);
+            try {
+                try (Statement stmt = conn.createStatement()) {
+                    // EXPLAIN PLAN does not need bind values, but JDBC placeholders must become named binds
+                    stmt.execute("explain plan set statement_id = '" + statementId + "' for " + namedBinds(sql));
+                }
+                Set<String> tables = new LinkedHashSet<>();
+                try (PreparedStatement stmt = conn.prepareStatement(FULL_SCANS_SQL)) {
+                    stmt.setString(1, statementId);
+                    try (ResultSet rs = stmt.executeQuery()) {
+                        while (rs.next()) {
+                            tables.add(rs.getString(1) + "." + rs.getString(2));
+                        }
+                    }
+                }
+                return tables;
+            } finally {
+                try (PreparedStatement stmt = conn.prepareStatement(CLEAR_SQL)) {
+                    stmt.setString(1, statementId);
+                    stmt.executeUpdate();
+                }
+            }
+        }
+
+        @Override
+        public long tableSize(String qualifiedTable) throws SQLException {
+            int dot = qualifiedTable.indexOf('.');
+            try (PreparedStatement stmt = conn.prepareStatement(TABLE_SIZE_SQL)) {
+                stmt.setString(1, qualifiedTable.substring(0, dot));
+                stmt.setString(2, qualifiedTable.substring(dot + 1));
+                try (ResultSet rs = stmt.executeQuery()) {
+                    return rs.next() ? rs.getLong(1) : 0;
+                }
+            }
+        }
+
+        private static String namedBinds(String sql) {
+            StringBuilder out = new StringBuilder(sql.length() + 16);
+            boolean inLiteral = false;
+            int bind = 0;
+            for (int i = 0; i < sql.length(); i++) {
+                char c = sql.charAt(i);
+                if (c == '\'') {
+                    inLiteral = !inLiteral;
+                }
+                if (c == '?' && !inLiteral) {
+                    out.append(":b").append(++bind);
+                } else {
+                    out.append(c);
+                }
+            }
+            return out.toString();
+        }
+    }
+
+    private static final class H2Explainer implements Explainer {
+
+        // H2 prints the access path of each table as a comment, e.g. /* PUBLIC.WALLET_OUTBOX.tableScan */
+        private static final Pattern TABLE_SCAN = Pattern.compile("/\\* ([\\w$]+)\\.([\\w$]+)\\.tableScan \\*/");
+
+        @Language("SQL")
+        private static final String TABLE_SIZE_SQL =
+                "select ROW_COUNT_ESTIMATE from INFORMATION_SCHEMA.TABLES where TABLE_SCHEMA = ? and TABLE_NAME = ?";
+
+        private final Connection conn;
+
+        H2Explainer(Connection conn) {
+            this.conn = conn;
+        }
+
+        @Override
+        public Set<String> fullScans(String sql) throws SQLException {
+            StringBuilder plan = new StringBuilder();
+            try (PreparedStatement stmt = conn.prepareStatement("explain " + sql);
+                 ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    plan.append(rs.getString(1)).append('\n');
+                }
+            }
+            Set<String> tables = new LinkedHashSet<>();
+            Matcher matcher = TABLE_SCAN.matcher(plan);
+            while (matcher.find()) {
+                tables.add(matcher.group(1) + "." + matcher.group(2));
+            }
+            return tables;
+        }
+
+        @Override
+        public long tableSize(String qualifiedTable) throws SQLException {
+            int dot = qualifiedTable.indexOf('.');
+            try (PreparedStatement stmt = conn.prepareStatement(TABLE_SIZE_SQL)) {
+                stmt.setString(1, qualifiedTable.substring(0, dot));
+                stmt.setString(2, qualifiedTable.substring(dot + 1));
+                try (ResultSet rs = stmt.executeQuery()) {
+                    return rs.next() ? rs.getLong(1) : 0;
+                }
+            }
+        }
+    }
+
+    /**
+     * A full scan above the threshold, or a statement the database could not explain.
+     */
+    public static final class Finding {
+
+        public enum Kind {
+            FULL_SCAN,
+            NOT_EXPLAINED
+        }
+
+        private final Kind kind;
+        private final RegisteredQuery query;
+        private final String table;
+        private final long tableRows;
+        private final String error;
+
+        Finding(Kind kind, RegisteredQuery query, String table, long tableRows, String error) {
+            this.kind = kind;
+            this.query = query;
+            this.table = table;
+            this.tableRows = tableRows;
+            this.error = error;
+        }
+
+        public Kind getKind() {
+            return kind;
+        }
+
+        public RegisteredQuery getQuery() {
+            return query;
+        }
+
+        public String getTable() {
+            return table;
+        }
+
+        public long getTableRows() {
+            return tableRows;
+        }
+
+        public String getError() {
+            return error;
+        }
+
+        @Override
+        public String toString() {
+            return kind == Kind.FULL_SCAN
+                    ? String.format("FULL_SCAN     %s: %s (%d rows)", query.getName(), table, tableRows)
+                    : String.format("NOT_EXPLAINED %s: %s", query.getName(), error);
+        }
+    }
+}
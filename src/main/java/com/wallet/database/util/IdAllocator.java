@@ -0,0 +1,101 @@
+package com.wallet.database.util;
+
+import com.wallet.Exceptin.SQLRuntimeException;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+
+/**
+ * Hands out primary keys from blocks reserved with one {@code nextval} each, so inserts carry their own key
+ * and no generated-key round trip is needed. The sequence must step by the block size: a {@code nextval} of
+ * {@code n} reserves {@code n .. n + blockSize - 1}.
+ * <p>
+ * Platform threads draw from a block of their own with no synchronisation at all. Virtual threads are too
+ * many and too short-lived for that, so they share one block and take ids from it with a CAS; only the
+ * refill of the shared block is serialised. Ids are unique but neither dense nor ordered across threads,
+ * and a block a thread does not use up is lost when the thread ends.
+ */
+public class IdAllocator {
+
+    private static final Pattern SEQUENCE_NAME = Pattern.compile("[A-Za-z][A-Za-z0-9_$#]*");
+
+    private final SqlTemplate sqlTemplate;
+    private final String nextvalSql;
+    private final int blockSize;
+    private final ThreadLocal<Block> threadBlock = ThreadLocal.withInitial(Block::new);
+    private final Object sharedRefill = new Object();
+    private volatile SharedBlock sharedBlock = new SharedBlock(0, 0);
+
+    public IdAllocator(SqlTemplate sqlTemplate, String sequenceName, int blockSize) {
+        if (!SEQUENCE_NAME.matcher(sequenceName).matches()) {
+            throw new IllegalArgumentException("Invalid sequence name: " + sequenceName);
+        }
+        if (blockSize < 1) {
+            throw new IllegalArgumentException("blockSize must be positive");
+        }
+        this.sqlTemplate = sqlTemplate;
+        this.nextvalSql = "select " + sequenceName + ".nextval from dual";
+        this.blockSize = blockSize;
+    }
+
+    public long nextId() {
+        if (Thread.currentThread().isVirtual()) {
+            return nextShared();
+        }
+        Block block = threadBlock.get();
+        if (block.next == block.limit) {
+            block.next = reserveBlock();
+            block.limit = block.next + blockSize;
+        }
+        return block.next++;
+    }
+
+    /**
+     * @return {@code count} ids for a batch insert, taken from the caller's block(s)
+     */
+    public long[] nextIds(int count) {
+        long[] ids = new long[count];
+        for (int i = 0; i < count; i++) {
+            ids[i] = nextId();
+        }
+        return ids;
+    }
+
+    private long nextShared() {
+        while (true) {
+            SharedBlock block = sharedBlock;
+            long id = block.next.getAndIncrement();
+            if (id < block.limit) {
+                return id;
+            }
+            synchronized (sharedRefill) {
+                if (sharedBlock == block) {
+                    long start = reserveBlock();
+                    sharedBlock = new SharedBlock(start, start + blockSize);
+                }
+            }
+        }
+    }
+
+    private long reserveBlock() {
+        return sqlTemplate.selectScalar(nextvalSql, Number.class)
+                .orElseThrow(() -> new SQLRuntimeException("Sequence returned no value: " + nextvalSql))
+                .longValue();
+    }
+
+    // confined to its thread
+    private static final class Block {
+        long next;
+        long limit;
+    }
+
+    private static final class SharedBlock {
+        final AtomicLong next;
+        final long limit;
+
+        SharedBlock(long start, long limit) {
+            this.next = new AtomicLong(start);
+            this.limit = limit;
+        }
+    }
+}
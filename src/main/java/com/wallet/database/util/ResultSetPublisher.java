@@ -0,0 +1,160 @@
+package com.wallet.database.util;
+
+import com.wallet.Exceptin.SQLRuntimeException;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Publisher behind {@link SqlTemplate#publish}. Each subscription owns one virtual thread that opens the
+ * connection on first demand, then alternates between parking until demand is available and pulling
+ * that many rows from the result set. All subscriber signals are issued from that thread, so they are
+ * serial as the {@link Flow} contract requires.
+ */
+final class ResultSetPublisher<T> implements Flow.Publisher<T> {
+
+    private final SqlTemplate sqlTemplate;
+    private final String sql;
+    private final int fetchSize;
+    private final SqlTemplate.RowMapper<T> mapper;
+    private final Object[] params;
+
+    ResultSetPublisher(SqlTemplate sqlTemplate, String sql, int fetchSize, SqlTemplate.RowMapper<T> mapper,
+                       Object[] params) {
+        this.sqlTemplate = sqlTemplate;
+        this.sql = sql;
+        this.fetchSize = fetchSize;
+        this.mapper = mapper;
+        this.params = params;
+    }
+
+    @Override
+    public void subscribe(Flow.Subscriber<? super T> subscriber) {
+        RowSubscription subscription = new RowSubscription(subscriber);
+        subscriber.onSubscribe(subscription);
+        subscription.start();
+    }
+
+    private final class RowSubscription implements Flow.Subscription, Runnable {
+        private final Flow.Subscriber<? super T> subscriber;
+        private final AtomicLong demand = new AtomicLong();
+        private final AtomicBoolean cancelled = new AtomicBoolean();
+        private volatile Thread worker;
+        private volatile PreparedStatement statement;
+        private volatile Throwable invalidRequest;
+
+        RowSubscription(Flow.Subscriber<? super T> subscriber) {
+            this.subscriber = subscriber;
+        }
+
+        void start() {
+            if (!cancelled.get()) {
+                worker = Thread.ofVirtual().name("sql-publisher").start(this);
+            }
+        }
+
+        @Override
+        public void request(long n) {
+            if (n <= 0) {
+                invalidRequest = new IllegalArgumentException("Flow.Subscription.request: n must be positive, got " + n);
+            } else {
+                // saturate at Long.MAX_VALUE, which means unbounded
+                demand.getAndAccumulate(n, (current, add) -> current + add < 0 ? Long.MAX_VALUE : current + add);
+            }
+            LockSupport.unpark(worker);
+        }
+
+        @Override
+        public void cancel() {
+            if (cancelled.compareAndSet(false, true)) {
+                PreparedStatement running = statement;
+                if (running != null) {
+                    try {
+                        running.cancel();
+                    } catch (SQLException ignored) {
+                    }
+                }
+                LockSupport.unpark(worker);
+            }
+        }
+
+        @Override
+        public void run() {
+            if (!awaitDemand()) {
+                signalInvalidRequest();
+                return;
+            }
+
+            try (Connection conn = sqlTemplate.openConnection();
+                 PreparedStatement stmt = sqlTemplate.prepareStatement(conn, sql, params)) {
+                statement = stmt;
+                stmt.setFetchSize(fetchSize);
+                try (ResultSet rs = stmt.executeQuery()) {
+                    while (awaitDemand()) {
+                        if (!rs.next()) {
+                            subscriber.onComplete();
+                            return;
+                        }
+                        T row;
+                        try {
+                            row = mapper.map(rs);
+                        } catch (RuntimeException e) {
+                            fail(e);
+                            return;
+                        }
+                        if (demand.get() != Long.MAX_VALUE) {
+                            demand.decrementAndGet();
+                        }
+                        try {
+                            subscriber.onNext(row);
+                        } catch (RuntimeException e) {
+                            // a subscriber that throws has cancelled itself; just release the resources
+                            cancelled.set(true);
+                            return;
+                        }
+                    }
+                }
+                signalInvalidRequest();
+            } catch (SQLException e) {
+                fail(SQLRuntimeException.of("Streaming query failed", sql, e));
+            } catch (RuntimeException e) {
+                fail(e);
+            } finally {
+                statement = null;
+            }
+        }
+
+        /**
+         * @return true once there is demand, false if the subscription was cancelled or misused
+         */
+        private boolean awaitDemand() {
+            while (demand.get() == 0) {
+                if (cancelled.get() || invalidRequest != null) {
+                    return false;
+                }
+                LockSupport.park(this);
+            }
+            return !cancelled.get() && invalidRequest == null;
+        }
+
+        private void signalInvalidRequest() {
+            Throwable error = invalidRequest;
+            if (error != null) {
+                fail(error);
+            }
+        }
+
+        // errors after cancel() are dropped: the subscriber asked for no further signals
+        private void fail(Throwable error) {
+            if (cancelled.compareAndSet(false, true)) {
+                subscriber.onError(error);
+            }
+        }
+    }
+}
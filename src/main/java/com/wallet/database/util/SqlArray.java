@@ -0,0 +1,63 @@
+package com.wallet.database.util;
+
+import java.sql.Array;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.Collection;
+
+/**
+ * Parameter value that binds a Java collection to a schema-level SQL collection type
+ * (e.g. {@code WALLET_NUM_TAB}). The array is materialised by {@link SqlTemplate}
+ * on the connection that executes the statement; connections that are not Oracle
+ * (the embedded backend) get a plain JDBC array of the matching element type.
+ */
+public final class SqlArray {
+
+    public static final String NUM_TAB = "WALLET_NUM_TAB";
+    public static final String SIDE_TAB = "WALLET_SIDE_TAB";
+
+    private final String typeName;
+    private final Object[] elements;
+
+    private SqlArray(String typeName, Object[] elements) {
+        this.typeName = typeName;
+        this.elements = elements;
+    }
+
+    public static SqlArray of(String typeName, Collection<?> elements) {
+        return new SqlArray(typeName, elements.toArray());
+    }
+
+    public String getTypeName() {
+        return typeName;
+    }
+
+    public int size() {
+        return elements.length;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (o == null || getClass() != o.getClass()) return false;
+        SqlArray that = (SqlArray) o;
+        return typeName.equals(that.typeName) && Arrays.equals(elements, that.elements);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * typeName.hashCode() + Arrays.hashCode(elements);
+    }
+
+    @Override
+    public String toString() {
+        return typeName + Arrays.toString(elements);
+    }
+
+    Array toArray(Connection conn) throws SQLException {
+        if (conn.isWrapperFor(oracle.jdbc.OracleConnection.class)) {
+            return conn.unwrap(oracle.jdbc.OracleConnection.class).createOracleArray(typeName, elements);
+        }
+        return conn.createArrayOf(SIDE_TAB.equals(typeName) ? "VARCHAR" : "NUMERIC", elements);
+    }
+}
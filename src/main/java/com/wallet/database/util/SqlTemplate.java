@@ -3,15 +3,18 @@ package com.wallet.database.util;
 import com.google.inject.Inject;
 import com.google.inject.Provider;
 import com.wallet.Exceptin.SQLRuntimeException;
+import com.wallet.diagnostics.SqlEvent;
 import org.intellij.lang.annotations.Language;
 
 import java.sql.*;
 import java.util.*;
+import java.util.concurrent.Flow;
 
 /**
  * SQL utility class for managing database operations.
  * Provides fluent API for SELECT, INSERT, UPDATE, DELETE operations
  * with proper resource management and exception handling.
+ * Every statement is reported as a {@link SqlEvent} to Java Flight Recorder.
  */
 public class SqlTemplate {
 
@@ -32,8 +35,9 @@ public class SqlTemplate {
      * @return List of mapped objects
      */
     public <T> List<T> select(@Language("SQL")  String sql, RowMapper<T> mapper, Object... params) {
+        SqlEvent event = SqlEvent.start(SqlEvent.QUERY);
         List<T> results = new ArrayList<>();
-        try (Connection conn = connectionProvider.get();
+        try (Connection conn = acquire(event);
              PreparedStatement stmt = prepareStatement(conn, sql, params);
              ResultSet rs = stmt.executeQuery()) {
 
@@ -41,7 +45,11 @@ public class SqlTemplate {
                 results.add(mapper.map(rs));
             }
         } catch (SQLException e) {
-            throw new SQLRuntimeException("SELECT query failed: " + sql, e);
+            event.failed(e);
+            throw SQLRuntimeException.of("SELECT query failed", sql, e);
+        } finally {
+            event.rows(results.size());
+            event.finish(sql);
         }
         return results;
     }
@@ -56,19 +64,84 @@ public class SqlTemplate {
      * @return Optional containing the result or empty if no rows
      */
     public <T> Optional<T> selectOne(@Language("SQL")  String sql, RowMapper<T> mapper, Object... params) {
-        try (Connection conn = connectionProvider.get();
+        SqlEvent event = SqlEvent.start(SqlEvent.QUERY);
+        try (Connection conn = acquire(event);
              PreparedStatement stmt = prepareStatement(conn, sql, params);
              ResultSet rs = stmt.executeQuery()) {
 
             if (rs.next()) {
+                event.rows(1);
                 return Optional.ofNullable(mapper.map(rs));
             }
         } catch (SQLException e) {
-            throw new SQLRuntimeException("SELECT query failed: " + sql, e);
+            event.failed(e);
+            throw SQLRuntimeException.of("SELECT query failed", sql, e);
+        } finally {
+            event.finish(sql);
         }
         return Optional.empty();
     }
 
+    /**
+     * Execute a SELECT query and hand each row to a callback as it is fetched,
+     * without collecting the result set in memory.
+     *
+     * @param sql       The SQL query
+     * @param fetchSize Rows fetched per round trip
+     * @param callback  Called once per row, in result order
+     * @param params    Query parameters
+     * @return Number of rows processed
+     */
+    public long forEach(@Language("SQL")  String sql, int fetchSize, RowCallback callback, Object... params) {
+        SqlEvent event = SqlEvent.start(SqlEvent.QUERY);
+        long rows = 0;
+        try (Connection conn = acquire(event);
+             PreparedStatement stmt = prepareStatement(conn, sql, params)) {
+
+            stmt.setFetchSize(fetchSize);
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    callback.accept(rs);
+                    rows++;
+                }
+            }
+        } catch (SQLException e) {
+            event.failed(e);
+            throw SQLRuntimeException.of("SELECT query failed", sql, e);
+        } finally {
+            event.rows(rows);
+            event.finish(sql);
+        }
+        return rows;
+    }
+
+    /**
+     * Stream a SELECT query as a {@link Flow.Publisher}. Nothing is executed until a subscriber requests
+     * rows; each subscription then runs the query on its own virtual thread and advances the result set
+     * only as far as the outstanding demand, so at most one fetch of rows is held in memory. Cancelling the
+     * subscription cancels the statement, and the connection is closed however the stream ends.
+     *
+     * @param sql       The SQL query
+     * @param fetchSize Rows fetched per round trip
+     * @param mapper    Function to map ResultSet row to object
+     * @param params    Query parameters
+     * @param <T>       Type of result object
+     * @return Cold publisher; every subscriber gets its own execution of the query
+     */
+    public <T> Flow.Publisher<T> publish(@Language("SQL")  String sql, int fetchSize, RowMapper<T> mapper, Object... params) {
+        return new ResultSetPublisher<>(this, sql, fetchSize, mapper, params);
+    }
+
+    Connection openConnection() {
+        return connectionProvider.get();
+    }
+
+    private Connection acquire(SqlEvent event) {
+        Connection conn = connectionProvider.get();
+        event.connected();
+        return conn;
+    }
+
     /**
      * Execute a SELECT query and return the first column as a single value.
      *
@@ -136,11 +209,12 @@ public class SqlTemplate {
      * @return Generated key value
      */
     public Optional<Long> insertAndGetKey(@Language("SQL")  String sql, String keyColumn, Object... params) {
-        try (Connection conn = connectionProvider.get();
+        SqlEvent event = SqlEvent.start(SqlEvent.UPDATE);
+        try (Connection conn = acquire(event);
              PreparedStatement stmt = conn.prepareStatement(sql, new String[]{keyColumn})) {
 
             setParameters(stmt, params);
-            stmt.executeUpdate();
+            event.rows(stmt.executeUpdate());
 
             try (ResultSet keys = stmt.getGeneratedKeys()) {
                 if (keys.next()) {
@@ -148,7 +222,10 @@ public class SqlTemplate {
                 }
             }
         } catch (SQLException e) {
-            throw new SQLRuntimeException("INSERT with key generation failed: " + sql, e);
+            event.failed(e);
+            throw SQLRuntimeException.of("INSERT with key generation failed", sql, e);
+        } finally {
+            event.finish(sql);
         }
         return Optional.empty();
     }
@@ -232,6 +309,9 @@ public class SqlTemplate {
         } catch (SQLException e) {
             rollbackQuietly(conn);
             throw new SQLRuntimeException("Transaction failed", e);
+        } catch (RuntimeException e) {
+            rollbackQuietly(conn);
+            throw e;
         } finally {
             closeQuietly(conn);
         }
@@ -256,14 +336,47 @@ public class SqlTemplate {
      * @param params        Procedure parameters
      */
     public void callProcedure(String procedureCall, Object... params) {
-        try (Connection conn = connectionProvider.get();
+        SqlEvent event = SqlEvent.start(SqlEvent.CALL);
+        try (Connection conn = acquire(event);
              CallableStatement stmt = conn.prepareCall(procedureCall)) {
 
             setParameters(stmt, params);
             stmt.execute();
 
         } catch (SQLException e) {
-            throw new SQLRuntimeException("Procedure call failed: " + procedureCall, e);
+            event.failed(e);
+            throw SQLRuntimeException.of("Procedure call failed", procedureCall, e);
+        } finally {
+            event.finish(procedureCall);
+        }
+    }
+
+    /**
+     * Call a stored function.
+     *
+     * @param functionCall The function call, with the result as the first placeholder
+     *                     (e.g., "{? = call my_func(?, ?)}")
+     * @param resultType   SQL type of the result (from {@link java.sql.Types})
+     * @param params       Function parameters, bound from the second placeholder on
+     * @return The function result, or null
+     */
+    public Object callFunction(String functionCall, int resultType, Object... params) {
+        SqlEvent event = SqlEvent.start(SqlEvent.CALL);
+        try (Connection conn = acquire(event);
+             CallableStatement stmt = conn.prepareCall(functionCall)) {
+
+            stmt.registerOutParameter(1, resultType);
+            for (int i = 0; i < params.length; i++) {
+                setParameter(stmt, i + 2, params[i]);
+            }
+            stmt.execute();
+            return stmt.getObject(1);
+
+        } catch (SQLException e) {
+            event.failed(e);
+            throw SQLRuntimeException.of("Function call failed", functionCall, e);
+        } finally {
+            event.finish(functionCall);
         }
     }
 
@@ -278,7 +391,8 @@ public class SqlTemplate {
     public Map<Integer, Object> callProcedureWithOut(String procedureCall,
                                                       Map<Integer, Integer> outParams,
                                                       Object... inParams) {
-        try (Connection conn = connectionProvider.get();
+        SqlEvent event = SqlEvent.start(SqlEvent.CALL);
+        try (Connection conn = acquire(event);
              CallableStatement stmt = conn.prepareCall(procedureCall)) {
 
             // Register OUT parameters
@@ -298,10 +412,24 @@ public class SqlTemplate {
             return results;
 
         } catch (SQLException e) {
-            throw new SQLRuntimeException("Procedure call failed: " + procedureCall, e);
+            event.failed(e);
+            throw SQLRuntimeException.of("Procedure call failed", procedureCall, e);
+        } finally {
+            event.finish(procedureCall);
         }
     }
 
+    /**
+     * Prepare a procedure call once and keep it, together with its own connection, for repeated
+     * execution. The handle is not thread-safe; it is meant to be owned by a single worker thread.
+     *
+     * @param procedureCall The procedure call (e.g., "{call my_proc(?, ?)}")
+     * @return Handle that must be closed to release the connection
+     */
+    public PreparedCall prepareCall(String procedureCall) {
+        return new PreparedCall(procedureCall);
+    }
+
     /**
      * Create a new SELECT query builder.
      *
@@ -312,16 +440,24 @@ public class SqlTemplate {
     }
 
     private int executeUpdate(@Language("SQL")  String sql, Object... params) {
-        try (Connection conn = connectionProvider.get();
+        SqlEvent event = SqlEvent.start(SqlEvent.UPDATE);
+        try (Connection conn = acquire(event);
              PreparedStatement stmt = prepareStatement(conn, sql, params)) {
-            return stmt.executeUpdate();
+            int rows = stmt.executeUpdate();
+            event.rows(rows);
+            return rows;
         } catch (SQLException e) {
-            throw new SQLRuntimeException("Execute update failed: " + sql, e);
+            event.failed(e);
+            throw SQLRuntimeException.of("Execute update failed", sql, e);
+        } finally {
+            event.finish(sql);
         }
     }
 
     private int[] executeBatch(@Language("SQL")  String sql, List<Object[]> batchData) {
-        try (Connection conn = connectionProvider.get();
+        SqlEvent event = SqlEvent.start(SqlEvent.BATCH);
+        event.rows(batchData.size());
+        try (Connection conn = acquire(event);
              PreparedStatement stmt = conn.prepareStatement(sql)) {
 
             for (Object[] params : batchData) {
@@ -331,11 +467,14 @@ public class SqlTemplate {
             return stmt.executeBatch();
 
         } catch (SQLException e) {
-            throw new SQLRuntimeException("Batch execution failed: " + sql, e);
+            event.failed(e);
+            throw SQLRuntimeException.of("Batch execution failed", sql, e);
+        } finally {
+            event.finish(sql);
         }
     }
 
-    private PreparedStatement prepareStatement(Connection conn, @Language("SQL")  String sql, Object... params)
+    PreparedStatement prepareStatement(Connection conn, @Language("SQL")  String sql, Object... params)
             throws SQLException {
         PreparedStatement stmt = conn.prepareStatement(sql);
         setParameters(stmt, params);
@@ -371,6 +510,8 @@ public class SqlTemplate {
             stmt.setTimestamp(index, new Timestamp(((java.util.Date) value).getTime()));
         } else if (value instanceof byte[]) {
             stmt.setBytes(index, (byte[]) value);
+        } else if (value instanceof SqlArray) {
+            stmt.setArray(index, ((SqlArray) value).toArray(stmt.getConnection()));
         } else {
             stmt.setObject(index, value);
         }
@@ -399,6 +540,11 @@ public class SqlTemplate {
         T map(ResultSet rs) throws SQLException;
     }
 
+    @FunctionalInterface
+    public interface RowCallback {
+        void accept(ResultSet rs) throws SQLException;
+    }
+
     @FunctionalInterface
     public interface TransactionCallback<T> {
         T execute(TransactionContext ctx) throws SQLException;
@@ -417,22 +563,61 @@ public class SqlTemplate {
         }
 
         public <T> List<T> select(@Language("SQL")  String sql, RowMapper<T> mapper, Object... params) throws SQLException {
+            SqlEvent event = inTransaction(SqlEvent.QUERY);
             List<T> results = new ArrayList<>();
             try (PreparedStatement stmt = prepareStatement(connection, sql, params);
                  ResultSet rs = stmt.executeQuery()) {
                 while (rs.next()) {
                     results.add(mapper.map(rs));
                 }
+            } catch (SQLException e) {
+                event.failed(e);
+                throw e;
+            } finally {
+                event.rows(results.size());
+                event.finish(sql);
+            }
+            return results;
+        }
+
+        /**
+         * Select at most {@code maxRows} rows. Unlike a FETCH FIRST clause this can be combined with
+         * {@code FOR UPDATE SKIP LOCKED}: Oracle only locks the rows actually fetched.
+         */
+        public <T> List<T> select(@Language("SQL")  String sql, int maxRows, RowMapper<T> mapper, Object... params) throws SQLException {
+            SqlEvent event = inTransaction(SqlEvent.QUERY);
+            List<T> results = new ArrayList<>(maxRows);
+            try (PreparedStatement stmt = prepareStatement(connection, sql, params)) {
+                stmt.setMaxRows(maxRows);
+                stmt.setFetchSize(maxRows);
+                try (ResultSet rs = stmt.executeQuery()) {
+                    while (rs.next()) {
+                        results.add(mapper.map(rs));
+                    }
+                }
+            } catch (SQLException e) {
+                event.failed(e);
+                throw e;
+            } finally {
+                event.rows(results.size());
+                event.finish(sql);
             }
             return results;
         }
 
         public <T> Optional<T> selectOne(@Language("SQL")  String sql, RowMapper<T> mapper, Object... params) throws SQLException {
+            SqlEvent event = inTransaction(SqlEvent.QUERY);
             try (PreparedStatement stmt = prepareStatement(connection, sql, params);
                  ResultSet rs = stmt.executeQuery()) {
                 if (rs.next()) {
+                    event.rows(1);
                     return Optional.ofNullable(mapper.map(rs));
                 }
+            } catch (SQLException e) {
+                event.failed(e);
+                throw e;
+            } finally {
+                event.finish(sql);
             }
             return Optional.empty();
         }
@@ -449,17 +634,120 @@ public class SqlTemplate {
             return executeUpdateInTx(sql, params);
         }
 
+        /**
+         * Run one statement for each parameter array as a single JDBC batch in this transaction.
+         *
+         * @see SqlTemplate#batchUpdate(String, List)
+         */
+        public int[] batchUpdate(@Language("SQL")  String sql, List<Object[]> batchData) throws SQLException {
+            SqlEvent event = inTransaction(SqlEvent.BATCH);
+            event.rows(batchData.size());
+            try (PreparedStatement stmt = connection.prepareStatement(sql)) {
+                for (Object[] params : batchData) {
+                    setParameters(stmt, params);
+                    stmt.addBatch();
+                }
+                return stmt.executeBatch();
+            } catch (SQLException e) {
+                event.failed(e);
+                throw e;
+            } finally {
+                event.finish(sql);
+            }
+        }
+
+        /**
+         * Call a stored function in this transaction, e.g. on rows the transaction has just locked.
+         *
+         * @see SqlTemplate#callFunction(String, int, Object...)
+         */
+        public Object callFunction(String functionCall, int resultType, Object... params) throws SQLException {
+            SqlEvent event = inTransaction(SqlEvent.CALL);
+            try (CallableStatement stmt = connection.prepareCall(functionCall)) {
+                stmt.registerOutParameter(1, resultType);
+                for (int i = 0; i < params.length; i++) {
+                    setParameter(stmt, i + 2, params[i]);
+                }
+                stmt.execute();
+                return stmt.getObject(1);
+            } catch (SQLException e) {
+                event.failed(e);
+                throw e;
+            } finally {
+                event.finish(functionCall);
+            }
+        }
+
         private int executeUpdateInTx(@Language("SQL")  String sql, Object... params) throws SQLException {
+            SqlEvent event = inTransaction(SqlEvent.UPDATE);
             try (PreparedStatement stmt = prepareStatement(connection, sql, params)) {
-                return stmt.executeUpdate();
+                int rows = stmt.executeUpdate();
+                event.rows(rows);
+                return rows;
+            } catch (SQLException e) {
+                event.failed(e);
+                throw e;
+            } finally {
+                event.finish(sql);
             }
         }
 
+        // the transaction already holds its connection, so there is no acquire time
+        private SqlEvent inTransaction(String operation) {
+            SqlEvent event = SqlEvent.start(operation);
+            event.connected();
+            return event;
+        }
+
         public Connection getConnection() {
             return connection;
         }
     }
 
+    public class PreparedCall implements AutoCloseable {
+        private final String procedureCall;
+        private Connection connection;
+        private CallableStatement statement;
+
+        PreparedCall(String procedureCall) {
+            this.procedureCall = procedureCall;
+        }
+
+        /**
+         * Execute the call with fresh parameters. The connection and statement are opened lazily
+         * and dropped after any failure other than an application error, so the next execution
+         * reconnects.
+         */
+        public void execute(Object... params) {
+            SqlEvent event = SqlEvent.start(SqlEvent.CALL);
+            try {
+                if (statement == null) {
+                    connection = connectionProvider.get();
+                    statement = connection.prepareCall(procedureCall);
+                }
+                event.connected();
+                setParameters(statement, params);
+                statement.execute();
+            } catch (SQLException e) {
+                event.failed(e);
+                if (!SQLRuntimeException.isApplicationError(e)) {
+                    close();
+                }
+                throw SQLRuntimeException.of("Procedure call failed", procedureCall, e);
+            } finally {
+                event.finish(procedureCall);
+            }
+        }
+
+        @Override
+        public void close() {
+            closeQuietly(statement);
+            closeQuietly(connection);
+            statement = null;
+            connection = null;
+        }
+    }
+
     public static class SelectBuilder {
         private final SqlTemplate sqlTemplate;
         private final List<String> columns = new ArrayList<>();
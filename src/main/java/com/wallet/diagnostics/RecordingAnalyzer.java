@@ -0,0 +1,359 @@
+package com.wallet.diagnostics;
+
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordedThread;
+import jdk.jfr.consumer.RecordingFile;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.TreeMap;
+
+/**
+ * Offline summary of a flight recording taken with {@code jfr/wallet.jfc}: transfer latency per outcome,
+ * the statements that took the most total time and the slowest transfers with the share of their time
+ * spent in SQL (the {@link SqlEvent}s recorded on the same thread inside the transfer).
+ * <p>
+ * The recording is read twice so that memory stays at one {@code long} per event: the first pass builds the
+ * per-outcome and per-statement figures and keeps the slowest transfers, the second sums their SQL time.
+ * Statements below the SQL threshold of the profile are not in the recording, so the SQL share of a
+ * transfer is a lower bound.
+ * <pre>
+ * ./gradlew analyzeRecording -Precording=wallet.jfr -Ptop=20
+ * </pre>
+ */
+public class RecordingAnalyzer {
+
+    public static final int DEFAULT_TOP = 10;
+
+    private final int top;
+
+    public RecordingAnalyzer(int top) {
+        this.top = top;
+    }
+
+    public Report analyze(Path recording) {
+        Map<String, Samples> byOutcome = new TreeMap<>();
+        Map<String, StatementStats> byFingerprint = new HashMap<>();
+        PriorityQueue<SlowTransfer> slowest = new PriorityQueue<>(Comparator.comparingLong(SlowTransfer::getDurationNanos));
+
+        try (RecordingFile file = new RecordingFile(recording)) {
+            while (file.hasMoreEvents()) {
+                RecordedEvent event = file.readEvent();
+                String name = event.getEventType().getName();
+                if (TransferEvent.NAME.equals(name)) {
+                    SlowTransfer transfer = new SlowTransfer(event);
+                    byOutcome.computeIfAbsent(transfer.outcome, k -> new Samples()).add(transfer.durationNanos);
+                    slowest.add(transfer);
+                    if (slowest.size() > top) {
+                        slowest.poll();
+                    }
+                } else if (SqlEvent.NAME.equals(name)) {
+                    byFingerprint.computeIfAbsent(event.getString("fingerprint"), StatementStats::new).add(event);
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot read recording " + recording, e);
+        }
+
+        List<SlowTransfer> slow = new ArrayList<>(slowest);
+        slow.sort(Comparator.comparingLong(SlowTransfer::getDurationNanos).reversed());
+        attributeSql(recording, slow);
+
+        List<OutcomeStats> outcomes = new ArrayList<>();
+        byOutcome.forEach((outcome, samples) -> outcomes.add(new OutcomeStats(outcome, samples)));
+        List<StatementStats> statements = new ArrayList<>(byFingerprint.values());
+        statements.sort(Comparator.comparingLong(StatementStats::getTotalNanos).reversed());
+        if (statements.size() > top) {
+            statements = new ArrayList<>(statements.subList(0, top));
+        }
+        return new Report(outcomes, statements, slow);
+    }
+
+    private static void attributeSql(Path recording, List<SlowTransfer> transfers) {
+        if (transfers.isEmpty()) {
+            return;
+        }
+        Map<Long, List<SlowTransfer>> byThread = new HashMap<>();
+        for (SlowTransfer transfer : transfers) {
+            byThread.computeIfAbsent(transfer.threadId, k -> new ArrayList<>()).add(transfer);
+        }
+
+        try (RecordingFile file = new RecordingFile(recording)) {
+            while (file.hasMoreEvents()) {
+                RecordedEvent event = file.readEvent();
+                if (!SqlEvent.NAME.equals(event.getEventType().getName())) {
+                    continue;
+                }
+                List<SlowTransfer> candidates = byThread.get(threadId(event));
+                if (candidates == null) {
+                    continue;
+                }
+                for (SlowTransfer transfer : candidates) {
+                    if (!event.getStartTime().isBefore(transfer.start) && !event.getEndTime().isAfter(transfer.end)) {
+                        transfer.sqlNanos += event.getDuration().toNanos();
+                        transfer.statements++;
+                    }
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot read recording " + recording, e);
+        }
+    }
+
+    private static long threadId(RecordedEvent event) {
+        RecordedThread thread = event.getThread();
+        return thread == null ? -1 : thread.getJavaThreadId();
+    }
+
+    private static double millis(long nanos) {
+        return nanos / 1_000_000.0;
+    }
+
+    public static void main(String[] args) {
+        if (args.length == 0) {
+            System.err.println("usage: RecordingAnalyzer <recording.jfr> [top]");
+            System.exit(2);
+        }
+        int top = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_TOP;
+        new RecordingAnalyzer(top).analyze(Path.of(args[0])).print(System.out);
+    }
+
+    /**
+     * Durations of one group of events, sorted on first read.
+     */
+    private static final class Samples {
+        private long[] values = new long[64];
+        private int size;
+        private boolean sorted = true;
+
+        void add(long value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+            sorted = false;
+        }
+
+        long percentile(double p) {
+            if (size == 0) {
+                return 0;
+            }
+            if (!sorted) {
+                Arrays.sort(values, 0, size);
+                sorted = true;
+            }
+            int index = (int) Math.ceil(p / 100.0 * size) - 1;
+            return values[Math.max(0, Math.min(size - 1, index))];
+        }
+    }
+
+    public static final class OutcomeStats {
+        private final String outcome;
+        private final int count;
+        private final long p50Nanos;
+        private final long p99Nanos;
+        private final long maxNanos;
+
+        private OutcomeStats(String outcome, Samples samples) {
+            this.outcome = outcome;
+            this.count = samples.size;
+            this.p50Nanos = samples.percentile(50);
+            this.p99Nanos = samples.percentile(99);
+            this.maxNanos = samples.percentile(100);
+        }
+
+        public String getOutcome() {
+            return outcome;
+        }
+
+        public int getCount() {
+            return count;
+        }
+
+        public long getP50Nanos() {
+            return p50Nanos;
+        }
+
+        public long getP99Nanos() {
+            return p99Nanos;
+        }
+
+        public long getMaxNanos() {
+            return maxNanos;
+        }
+    }
+
+    public static final class StatementStats {
+        private final String fingerprint;
+        private final Samples durations = new Samples();
+        private long totalNanos;
+        private long acquireNanos;
+        private long executeNanos;
+        private long rows;
+        private int errors;
+
+        private StatementStats(String fingerprint) {
+            this.fingerprint = fingerprint;
+        }
+
+        private void add(RecordedEvent event) {
+            long duration = event.getDuration().toNanos();
+            durations.add(duration);
+            totalNanos += duration;
+            acquireNanos += event.getLong("acquireTime");
+            executeNanos += event.getLong("executeTime");
+            rows += event.getLong("rows");
+            if (event.getInt("errorCode") != 0) {
+                errors++;
+            }
+        }
+
+        public String getFingerprint() {
+            return fingerprint;
+        }
+
+        public int getCount() {
+            return durations.size;
+        }
+
+        public long getTotalNanos() {
+            return totalNanos;
+        }
+
+        public long getP99Nanos() {
+            return durations.percentile(99);
+        }
+
+        public long getMeanAcquireNanos() {
+            return acquireNanos / durations.size;
+        }
+
+        public long getMeanExecuteNanos() {
+            return executeNanos / durations.size;
+        }
+
+        public long getRows() {
+            return rows;
+        }
+
+        public int getErrors() {
+            return errors;
+        }
+    }
+
+    public static final class SlowTransfer {
+        private final String requestId;
+        private final String outcome;
+        private final int errorCode;
+        private final long threadId;
+        private final Instant start;
+        private final Instant end;
+        private final long durationNanos;
+        private long sqlNanos;
+        private int statements;
+
+        private SlowTransfer(RecordedEvent event) {
+            this.requestId = event.getString("requestId");
+            this.outcome = String.valueOf(event.getString("outcome"));
+            this.errorCode = event.getInt("errorCode");
+            this.threadId = threadId(event);
+            this.start = event.getStartTime();
+            this.end = event.getEndTime();
+            this.durationNanos = event.getDuration().toNanos();
+        }
+
+        public String getRequestId() {
+            return requestId;
+        }
+
+        public String getOutcome() {
+            return outcome;
+        }
+
+        public int getErrorCode() {
+            return errorCode;
+        }
+
+        public long getDurationNanos() {
+            return durationNanos;
+        }
+
+        /**
+         * @return time spent in recorded statements on the transfer's thread while it ran
+         */
+        public long getSqlNanos() {
+            return sqlNanos;
+        }
+
+        public int getStatements() {
+            return statements;
+        }
+    }
+
+    public static final class Report {
+        private final List<OutcomeStats> outcomes;
+        private final List<StatementStats> statements;
+        private final List<SlowTransfer> slowest;
+
+        private Report(List<OutcomeStats> outcomes, List<StatementStats> statements, List<SlowTransfer> slowest) {
+            this.outcomes = List.copyOf(outcomes);
+            this.statements = List.copyOf(statements);
+            this.slowest = List.copyOf(slowest);
+        }
+
+        public List<OutcomeStats> getOutcomes() {
+            return outcomes;
+        }
+
+        /**
+         * @return statements by total time, most expensive first
+         */
+        public List<StatementStats> getStatements() {
+            return statements;
+        }
+
+        /**
+         * @return the slowest transfers, slowest first
+         */
+        public List<SlowTransfer> getSlowest() {
+            return slowest;
+        }
+
+        public void print(PrintStream out) {
+            out.println("Transfers by outcome");
+            out.printf("  %-22s %8s %10s %10s %10s%n", "outcome", "count", "p50 ms", "p99 ms", "max ms");
+            for (OutcomeStats o : outcomes) {
+                out.printf("  %-22s %8d %10.3f %10.3f %10.3f%n", o.outcome, o.count,
+                        millis(o.p50Nanos), millis(o.p99Nanos), millis(o.maxNanos));
+            }
+
+            out.println();
+            out.println("Statements by total time");
+            out.printf("  %8s %10s %10s %12s %12s %10s %6s  %s%n", "count", "total ms", "p99 ms",
+                    "acquire ms", "execute ms", "rows", "errors", "sql");
+            for (StatementStats s : statements) {
+                out.printf("  %8d %10.3f %10.3f %12.3f %12.3f %10d %6d  %s%n", s.getCount(), millis(s.totalNanos),
+                        millis(s.getP99Nanos()), millis(s.getMeanAcquireNanos()), millis(s.getMeanExecuteNanos()),
+                        s.rows, s.errors, s.fingerprint);
+            }
+
+            out.println();
+            out.println("Slowest transfers");
+            out.printf("  %10s %10s %6s  %-22s %s%n", "total ms", "sql ms", "stmts", "outcome", "request");
+            for (SlowTransfer t : slowest) {
+                out.printf("  %10.3f %10.3f %6d  %-22s %s%n", millis(t.durationNanos), millis(t.sqlNanos),
+                        t.statements, t.outcome, t.requestId);
+            }
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package com.wallet.diagnostics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+import java.sql.SQLException;
+
+/**
+ * One statement run by {@code SqlTemplate}: connection acquisition, execution and, for queries, reading the
+ * rows. The SQL is recorded as a fingerprint (literals and IN-lists folded), computed once per statement
+ * text and only for events that are committed.
+ */
+@Name(SqlEvent.NAME)
+@Label("SQL Execution")
+@Category({"Wallet", "SQL"})
+@Description("A statement run through SqlTemplate")
+@StackTrace(false)
+public final class SqlEvent extends Event {
+
+    public static final String NAME = "com.wallet.Sql";
+
+    public static final String QUERY = "QUERY";
+    public static final String UPDATE = "UPDATE";
+    public static final String BATCH = "BATCH";
+    public static final String CALL = "CALL";
+
+    @Label("Operation")
+    String operation;
+
+    @Label("SQL Fingerprint")
+    String fingerprint;
+
+    @Label("Rows")
+    @Description("Rows read or affected; batch entries for a batch")
+    long rows;
+
+    @Label("Connection Acquire Time")
+    @Timespan(Timespan.NANOSECONDS)
+    long acquireTime;
+
+    @Label("Execute Time")
+    @Description("Time after the connection was acquired")
+    @Timespan(Timespan.NANOSECONDS)
+    long executeTime;
+
+    @Label("Error Code")
+    @Description("Vendor error code if the statement failed, 0 otherwise")
+    int errorCode;
+
+    private transient long startNanos;
+    private transient long connectedNanos;
+
+    public static SqlEvent start(String operation) {
+        SqlEvent event = new SqlEvent();
+        if (event.isEnabled()) {
+            event.operation = operation;
+            event.startNanos = System.nanoTime();
+            event.begin();
+        }
+        return event;
+    }
+
+    /**
+     * Call once the connection is in hand; statements on an already-open connection call it right away.
+     */
+    public void connected() {
+        if (startNanos != 0) {
+            connectedNanos = System.nanoTime();
+        }
+    }
+
+    public void rows(long rows) {
+        this.rows = rows;
+    }
+
+    public void failed(SQLException e) {
+        errorCode = e.getErrorCode();
+    }
+
+    public void finish(String sql) {
+        end();
+        if (shouldCommit()) {
+            long now = System.nanoTime();
+            long connected = connectedNanos == 0 ? now : connectedNanos;
+            acquireTime = connected - startNanos;
+            executeTime = now - connected;
+            fingerprint = SqlFingerprint.of(sql);
+            commit();
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package com.wallet.diagnostics;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+
+/**
+ * Normalised SQL text used to group statements: whitespace collapsed, string and numeric literals replaced
+ * by {@code ?} and bind IN-lists of any length folded to one form. Statement texts are almost all
+ * constants, so results are cached; the cache stops growing at {@value #MAX_CACHED} entries.
+ */
+final class SqlFingerprint {
+
+    static final int MAX_CACHED = 4096;
+    static final int MAX_LENGTH = 1000;
+
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+    private static final Pattern STRING_LITERAL = Pattern.compile("'(?:[^']|'')*'");
+    private static final Pattern NUMBER_LITERAL = Pattern.compile("(?<![\\w.$])\\d+(?:\\.\\d+)?(?![\\w.])");
+    private static final Pattern IN_LIST = Pattern.compile("(?i)\\b(in)\\s*\\(\\s*\\?(?:\\s*,\\s*\\?)+\\s*\\)");
+
+    private static final Map<String, String> CACHE = new ConcurrentHashMap<>();
+
+    private SqlFingerprint() {
+    }
+
+    static String of(String sql) {
+        if (sql == null) {
+            return null;
+        }
+        String cached = CACHE.get(sql);
+        if (cached != null) {
+            return cached;
+        }
+        String fingerprint = normalise(sql);
+        if (CACHE.size() < MAX_CACHED) {
+            CACHE.put(sql, fingerprint);
+        }
+        return fingerprint;
+    }
+
+    static String normalise(String sql) {
+        String text = WHITESPACE.matcher(sql.trim()).replaceAll(" ");
+        text = STRING_LITERAL.matcher(text).replaceAll("?");
+        text = NUMBER_LITERAL.matcher(text).replaceAll("?");
+        text = IN_LIST.matcher(text).replaceAll("$1 (?, ...)");
+        return text.length() > MAX_LENGTH ? text.substring(0, MAX_LENGTH) : text;
+    }
+}
@@ -0,0 +1,108 @@
+package com.wallet.diagnostics;
+
+import com.wallet.Exceptin.AdmissionRejectedException;
+import com.wallet.model.TransferStatus;
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+import java.sql.SQLException;
+
+/**
+ * One transfer through {@code WalletService}, from admission to the final outcome, including retries and
+ * lock waits. The {@link SqlEvent}s of the same thread inside this event's time span are its database work.
+ * <p>
+ * Fields are only filled in when the event is enabled, and it is only committed above the configured
+ * threshold, so the disabled cost is an allocation the JIT removes.
+ */
+@Name(TransferEvent.NAME)
+@Label("Transfer")
+@Category({"Wallet"})
+@Description("A wallet transfer, from admission to outcome")
+@StackTrace(false)
+public final class TransferEvent extends Event {
+
+    public static final String NAME = "com.wallet.Transfer";
+
+    @Label("Request ID")
+    String requestId;
+
+    @Label("From Account")
+    @Description("The first debited account of a multi-leg transfer")
+    long fromAccountId;
+
+    @Label("To Account")
+    @Description("The first credited account of a multi-leg transfer")
+    long toAccountId;
+
+    @Label("Currency")
+    String currency;
+
+    @Label("Amount")
+    @Description("Amount debited from the source account, or from all debited accounts of a multi-leg transfer")
+    double amount;
+
+    @Label("Legs")
+    int legs;
+
+    @Label("Outcome")
+    @Description("TransferStatus name, or FAILED for a fault")
+    String outcome;
+
+    @Label("Error Code")
+    @Description("raise_application_error or vendor error code, 0 if none")
+    int errorCode;
+
+    public static TransferEvent start(String requestId, long fromAccountId, long toAccountId, String currency,
+                                      double amount, int legs) {
+        TransferEvent event = new TransferEvent();
+        if (event.isEnabled()) {
+            event.requestId = requestId;
+            event.fromAccountId = fromAccountId;
+            event.toAccountId = toAccountId;
+            event.currency = currency;
+            event.amount = amount;
+            event.legs = legs;
+            event.begin();
+        }
+        return event;
+    }
+
+    public void finish(TransferStatus status) {
+        end();
+        if (shouldCommit()) {
+            outcome = status.name();
+            errorCode = status.getErrorCode();
+            commit();
+        }
+    }
+
+    /**
+     * Record a transfer that ended in an exception: a business rejection is recorded under its status,
+     * anything else as FAILED with the database error code, if there is one.
+     */
+    public void fail(Throwable failure) {
+        end();
+        if (shouldCommit()) {
+            outcome = "FAILED";
+            for (Throwable t = failure; t != null; t = t.getCause()) {
+                if (t instanceof AdmissionRejectedException rejected) {
+                    outcome = rejected.getStatus().name();
+                    break;
+                }
+                if (t instanceof SQLException sqlException) {
+                    errorCode = sqlException.getErrorCode();
+                    TransferStatus status = TransferStatus.fromErrorCode(errorCode);
+                    if (status != null) {
+                        outcome = status.name();
+                    }
+                    break;
+                }
+            }
+            commit();
+        }
+    }
+}
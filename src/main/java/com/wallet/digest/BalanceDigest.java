@@ -0,0 +1,371 @@
+package com.wallet.digest;
+
+import com.wallet.database.plan.QueryCatalog;
+import com.wallet.database.util.SqlTemplate;
+import com.wallet.journal.JournalSubscriber;
+import com.wallet.model.JournalEntry;
+import org.intellij.lang.annotations.Language;
+
+import javax.annotation.concurrent.Immutable;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.RoundingMode;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Merkle tree over account-id ranges of (ID, CURRENCY, BALANCE), for comparing balances with the journal,
+ * a replica or a restored backup without reading every account.
+ * <p>
+ * Leaf {@code i} covers the ids {@code [i * leafWidth, (i + 1) * leafWidth)}; the last leaf also takes every
+ * id above. A leaf holds {@code sum(h(id, currency) * balance) mod 2^61 - 1}, with balances in units of
+ * {@code 10^-}{@value #SCALE}. Being linear in the balance, a leaf follows a posting from its amount alone,
+ * so the digest is kept up to date as a {@link JournalSubscriber} without reading balances. Inner nodes hash
+ * their two children. Digits beyond {@value #SCALE} decimals are rounded away and not covered.
+ * <p>
+ * {@link #diff} walks two trees from the root and descends only into nodes that differ, one level per call
+ * to the other side, and returns the leaf ranges that diverge; an audit then checks those ranges only.
+ * <p>
+ * The digest persists itself, with the ENTRY_ID of the last posting it applied, in a compact file; it is
+ * registered with {@code JournalTailer.subscribe(digest, digest.getOffset())} so that it resumes from its
+ * own checkpoint after a restart. The caller schedules {@link #save}. Postings the tailer delivers late are
+ * applied as they come, but the tailer only tracks them in memory: one still outstanding when the process
+ * stops, or given up by the tailer, is missed. Rebuild the digest, or diff it against a rebuild, on a
+ * schedule; a missed posting shows up as a diverging range.
+ */
+public class BalanceDigest implements JournalSubscriber, DigestSource {
+
+    public static final int MAGIC = 0x57444754;
+    public static final byte VERSION = 1;
+
+    public static final int DEFAULT_DEPTH = 16;
+    public static final long DEFAULT_LEAF_WIDTH = 1024;
+
+    // decimal places of a balance that the leaves cover
+    static final int SCALE = 8;
+    // Mersenne prime 2^61 - 1: leaves are sums modulo it
+    static final long MODULUS = (1L << 61) - 1;
+    private static final BigInteger BIG_MODULUS = BigInteger.valueOf(MODULUS);
+    private static final int FETCH_SIZE = 1_000;
+
+    // one statement, so the balances and the high-water mark are read at the same point in time
+    @Language("SQL")
+    private static final String BALANCES_SQL = QueryCatalog.registerFullScan("BalanceDigest.balances",
+            "select ID, CURRENCY, BALANCE, (select max(ENTRY_ID) from WALLET_POSTING_V) as LAST_ENTRY_ID "
+                    + "from WALLET_ACCOUNT");
+
+    private final int depth;
+    private final long leafWidth;
+    private final int leafCount;
+    // heap order: nodes[1] is the root, the leaves are nodes[leafCount .. 2 * leafCount - 1]
+    private final long[] nodes;
+    private long offset;
+
+    public BalanceDigest() {
+        this(DEFAULT_DEPTH, DEFAULT_LEAF_WIDTH);
+    }
+
+    public BalanceDigest(int depth, long leafWidth) {
+        if (depth < 1 || depth > 24) {
+            throw new IllegalArgumentException("depth must be between 1 and 24");
+        }
+        if (leafWidth < 1) {
+            throw new IllegalArgumentException("leafWidth must be positive");
+        }
+        this.depth = depth;
+        this.leafWidth = leafWidth;
+        this.leafCount = 1 << depth;
+        this.nodes = new long[2 * leafCount];
+        hashInnerNodes();
+    }
+
+    /**
+     * Build a digest from the balances in WALLET_ACCOUNT, with the journal's current last ENTRY_ID as
+     * offset. A posting below that id that commits after the read is missed; build while the journal
+     * is quiet, or expect its range to show up in the next {@link #diff}.
+     */
+    public static BalanceDigest rebuild(SqlTemplate sqlTemplate, int depth, long leafWidth) {
+        BalanceDigest digest = new BalanceDigest(depth, leafWidth);
+        long[] lastEntryId = {0};
+        sqlTemplate.forEach(BALANCES_SQL, FETCH_SIZE, rs -> {
+            digest.addToLeaf(rs.getLong(1), rs.getString(2), rs.getBigDecimal(3));
+            lastEntryId[0] = rs.getLong(4);
+        });
+        digest.offset = lastEntryId[0];
+        digest.hashInnerNodes();
+        return digest;
+    }
+
+    @Override
+    public String name() {
+        return "balance-digest";
+    }
+
+    /**
+     * Apply the postings after {@link #getOffset()}; redelivered ones are skipped.
+     */
+    @Override
+    public synchronized void onEntries(List<JournalEntry> entries) {
+        for (JournalEntry entry : entries) {
+            if (entry.getEntryId() > offset) {
+                apply(entry.getAccountId(), entry.getCurrency(), entry.getSignedAmount());
+                offset = entry.getEntryId();
+            }
+        }
+    }
+
+    /**
+     * Apply postings below {@link #getOffset()} that committed after the tailer had moved past them.
+     */
+    @Override
+    public synchronized void onLateEntries(List<JournalEntry> entries) {
+        for (JournalEntry entry : entries) {
+            apply(entry.getAccountId(), entry.getCurrency(), entry.getSignedAmount());
+        }
+    }
+
+    /**
+     * Account for {@code delta} on the balance of {@code accountId}.
+     */
+    public synchronized void apply(long accountId, String currency, BigDecimal delta) {
+        int p = addToLeaf(accountId, currency, delta);
+        for (p >>>= 1; p >= 1; p >>>= 1) {
+            nodes[p] = combine(nodes[2 * p], nodes[2 * p + 1]);
+        }
+    }
+
+    /**
+     * @return the ENTRY_ID of the last posting applied
+     */
+    public synchronized long getOffset() {
+        return offset;
+    }
+
+    public synchronized long root() {
+        return nodes[1];
+    }
+
+    @Override
+    public int depth() {
+        return depth;
+    }
+
+    @Override
+    public long leafWidth() {
+        return leafWidth;
+    }
+
+    @Override
+    public synchronized long[] nodes(int[] positions) {
+        long[] result = new long[positions.length];
+        for (int i = 0; i < positions.length; i++) {
+            result[i] = nodes[positions[i]];
+        }
+        return result;
+    }
+
+    /**
+     * @return the account-id range of leaf {@code leaf}
+     */
+    public Range range(int leaf) {
+        long toId = leaf == leafCount - 1 ? Long.MAX_VALUE : (leaf + 1) * leafWidth - 1;
+        return new Range(leaf, leaf * leafWidth, toId);
+    }
+
+    /**
+     * Compare with {@code other}, which must have the same shape, reading one level of its tree per call.
+     *
+     * @return the ranges whose balances differ, in id order
+     */
+    public List<Range> diff(DigestSource other) {
+        if (other.depth() != depth || other.leafWidth() != leafWidth) {
+            throw new IllegalArgumentException("Digest shapes differ: depth " + other.depth() + ", leaf width "
+                    + other.leafWidth() + " against depth " + depth + ", leaf width " + leafWidth);
+        }
+        List<Range> diverging = new ArrayList<>();
+        int[] level = {1};
+        while (level.length > 0) {
+            long[] mine = nodes(level);
+            long[] theirs = other.nodes(level);
+            int[] next = new int[2 * level.length];
+            int n = 0;
+            for (int i = 0; i < level.length; i++) {
+                if (mine[i] == theirs[i]) {
+                    continue;
+                }
+                if (level[i] >= leafCount) {
+                    diverging.add(range(level[i] - leafCount));
+                } else {
+                    next[n++] = 2 * level[i];
+                    next[n++] = 2 * level[i] + 1;
+                }
+            }
+            level = Arrays.copyOf(next, n);
+        }
+        return diverging;
+    }
+
+    /**
+     * Write the digest to {@code file}, replacing it atomically.
+     * <pre>
+     * header: int magic 'WDGT', byte version, byte depth, long leafWidth, long offset, int leaves
+     * leaf  : int index, long value   (non-empty leaves only, in index order)
+     * </pre>
+     * Inner nodes are not stored; {@link #load} recomputes them.
+     */
+    public void save(Path file) throws IOException {
+        long savedOffset;
+        long[] leaves;
+        synchronized (this) {
+            savedOffset = offset;
+            leaves = Arrays.copyOfRange(nodes, leafCount, 2 * leafCount);
+        }
+        int nonEmpty = 0;
+        for (long leaf : leaves) {
+            if (leaf != 0) {
+                nonEmpty++;
+            }
+        }
+
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp), 8192))) {
+            out.writeInt(MAGIC);
+            out.writeByte(VERSION);
+            out.writeByte(depth);
+            out.writeLong(leafWidth);
+            out.writeLong(savedOffset);
+            out.writeInt(nonEmpty);
+            for (int i = 0; i < leaves.length; i++) {
+                if (leaves[i] != 0) {
+                    out.writeInt(i);
+                    out.writeLong(leaves[i]);
+                }
+            }
+        }
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    public static BalanceDigest load(Path file) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file), 8192))) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException("Not a balance digest: " + file);
+            }
+            byte version = in.readByte();
+            if (version != VERSION) {
+                throw new IOException("Unsupported balance digest version " + version + ": " + file);
+            }
+            BalanceDigest digest = new BalanceDigest(in.readByte(), in.readLong());
+            digest.offset = in.readLong();
+            int nonEmpty = in.readInt();
+            for (int i = 0; i < nonEmpty; i++) {
+                digest.nodes[digest.leafCount + in.readInt()] = in.readLong();
+            }
+            digest.hashInnerNodes();
+            return digest;
+        }
+    }
+
+    private void hashInnerNodes() {
+        for (int p = leafCount - 1; p >= 1; p--) {
+            nodes[p] = combine(nodes[2 * p], nodes[2 * p + 1]);
+        }
+    }
+
+    // adds to the leaf without touching the inner nodes; returns the leaf's heap position
+    private int addToLeaf(long accountId, String currency, BigDecimal delta) {
+        int p = leafCount + (int) Math.min(accountId / leafWidth, leafCount - 1);
+        long term = multiplyMod(accountHash(accountId, currency), units(delta));
+        long sum = nodes[p] + term;
+        nodes[p] = sum >= MODULUS ? sum - MODULUS : sum;
+        return p;
+    }
+
+    // the balance in units of 10^-SCALE, modulo MODULUS
+    static long units(BigDecimal amount) {
+        return amount.setScale(SCALE, RoundingMode.HALF_EVEN).unscaledValue().mod(BIG_MODULUS).longValue();
+    }
+
+    // per-account coefficient in [1, MODULUS)
+    static long accountHash(long accountId, String currency) {
+        long h = mix(accountId * 0x9E3779B97F4A7C15L + currency.hashCode());
+        return h % (MODULUS - 1) + 1;
+    }
+
+    static long multiplyMod(long a, long b) {
+        long lo = a * b;
+        long hi = Math.multiplyHigh(a, b);
+        // 2^61 = 1 (mod 2^61 - 1), so the bits above 61 fold onto the low ones
+        long folded = (lo & MODULUS) + ((hi << 3) | (lo >>> 61));
+        folded = (folded & MODULUS) + (folded >>> 61);
+        return folded >= MODULUS ? folded - MODULUS : folded;
+    }
+
+    private static long combine(long left, long right) {
+        return mix(mix(left) * 31 + right);
+    }
+
+    // MurmurHash3 fmix64 finaliser, kept non-negative
+    private static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xFF51AFD7ED558CCDL;
+        h ^= h >>> 33;
+        h *= 0xC4CEB9FE1A85EC53L;
+        h ^= h >>> 33;
+        return h & Long.MAX_VALUE;
+    }
+
+    /**
+     * Account ids {@code fromId} to {@code toId}, both inclusive, covered by one leaf.
+     */
+    @Immutable
+    public static final class Range {
+        private final int leaf;
+        private final long fromId;
+        private final long toId;
+
+        Range(int leaf, long fromId, long toId) {
+            this.leaf = leaf;
+            this.fromId = fromId;
+            this.toId = toId;
+        }
+
+        public int getLeaf() {
+            return leaf;
+        }
+
+        public long getFromId() {
+            return fromId;
+        }
+
+        public long getToId() {
+            return toId;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (o == null || getClass() != o.getClass()) return false;
+            Range that = (Range) o;
+            return leaf == that.leaf && fromId == that.fromId && toId == that.toId;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(leaf, fromId, toId);
+        }
+
+        @Override
+        public String toString() {
+            return "Range[" + fromId + ".." + toId + "]";
+        }
+    }
+}
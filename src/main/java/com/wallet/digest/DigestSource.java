@@ -0,0 +1,26 @@
+package com.wallet.digest;
+
+/**
+ * Read access to the nodes of a {@link BalanceDigest}, local or held by another process. Nodes are
+ * addressed in heap order: 1 is the root and the children of {@code p} are {@code 2p} and {@code 2p + 1}.
+ * <p>
+ * {@link BalanceDigest#diff} asks for one level of nodes per call, so a remote implementation costs one
+ * round trip per level of the tree.
+ */
+public interface DigestSource {
+
+    /**
+     * Levels below the root; the tree has {@code 2^depth} leaves.
+     */
+    int depth();
+
+    /**
+     * Account ids per leaf.
+     */
+    long leafWidth();
+
+    /**
+     * @return the hash of each node in {@code positions}, in the same order
+     */
+    long[] nodes(int[] positions);
+}
@@ -0,0 +1,97 @@
+package com.wallet.journal;
+
+import com.google.inject.Guice;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import com.wallet.Exceptin.WalletException;
+import com.wallet.config.DataSourceModule;
+import com.wallet.database.util.SqlTemplate;
+import com.wallet.service.retry.TransferRetrier;
+import org.intellij.lang.annotations.Language;
+
+import java.sql.Types;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+/**
+ * Converts two-row transfers in WALLET_JOURNAL to the single-row WALLET_TRANSFER format while the wallet
+ * keeps running.
+ * <p>
+ * The journal is walked in ENTRY_ID order, {@code chunkSize} rows per {@code wallet_pkg.convert_journal}
+ * call, each call in its own short transaction so undo and lock footprint stay small. Readers see the same
+ * postings through WALLET_POSTING_V before and after a pair is moved. A pause between chunks limits the
+ * redo rate. The returned ENTRY_ID can be passed back in to resume an interrupted conversion; starting
+ * over from 0 is also safe, since converted pairs are no longer in the journal.
+ */
+@Singleton
+public class JournalConverter {
+
+    private static final Logger LOG = Logger.getLogger(JournalConverter.class.getName());
+
+    public static final int DEFAULT_CHUNK_SIZE = 5_000;
+    public static final Duration DEFAULT_PAUSE = Duration.ofMillis(50);
+
+    @Language("SQL")
+    private static final String CONVERT_CALL = "{? = call wallet_pkg.convert_journal(?, ?)}";
+
+    private final SqlTemplate sqlTemplate;
+    private final TransferRetrier retrier;
+    private final int chunkSize;
+    private final long pauseMillis;
+
+    @Inject
+    public JournalConverter(SqlTemplate sqlTemplate, TransferRetrier retrier) {
+        this(sqlTemplate, retrier, DEFAULT_CHUNK_SIZE, DEFAULT_PAUSE);
+    }
+
+    public JournalConverter(SqlTemplate sqlTemplate, TransferRetrier retrier, int chunkSize, Duration pause) {
+        if (chunkSize < 1) {
+            throw new IllegalArgumentException("chunkSize must be positive");
+        }
+        this.sqlTemplate = sqlTemplate;
+        this.retrier = retrier;
+        this.chunkSize = chunkSize;
+        this.pauseMillis = pause.toMillis();
+    }
+
+    /**
+     * Convert every journal row after {@code afterEntryId}.
+     *
+     * @return the last ENTRY_ID examined, to resume from
+     * @throws WalletException if interrupted between chunks
+     */
+    public long convert(long afterEntryId) {
+        long position = afterEntryId;
+        long chunks = 0;
+        while (true) {
+            Long next = convertChunk(position);
+            if (next == null) {
+                LOG.info("Journal conversion done: " + chunks + " chunks after ENTRY_ID " + afterEntryId);
+                return position;
+            }
+            position = next;
+            chunks++;
+            if (pauseMillis > 0) {
+                try {
+                    TimeUnit.MILLISECONDS.sleep(pauseMillis);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new WalletException("Journal conversion interrupted after ENTRY_ID " + position, e);
+                }
+            }
+        }
+    }
+
+    public static void main(String[] args) {
+        long afterEntryId = args.length > 0 ? Long.parseLong(args[0]) : 0L;
+        JournalConverter converter = Guice.createInjector(new DataSourceModule()).getInstance(JournalConverter.class);
+        System.out.println("converted up to ENTRY_ID " + converter.convert(afterEntryId));
+    }
+
+    private Long convertChunk(long afterEntryId) {
+        Object[] next = new Object[1];
+        retrier.run(() -> next[0] = sqlTemplate.callFunction(CONVERT_CALL, Types.NUMERIC, afterEntryId, chunkSize));
+        return next[0] == null ? null : ((Number) next[0]).longValue();
+    }
+}
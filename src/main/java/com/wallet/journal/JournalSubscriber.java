@@ -0,0 +1,34 @@
+package com.wallet.journal;
+
+import com.wallet.model.JournalEntry;
+
+import java.util.List;
+
+/**
+ * In-process consumer of new journal postings.
+ * <p>
+ * Delivery is at-least-once: a batch is redelivered until {@link #onEntries} returns normally, and
+ * after a restart the subscriber resumes from its last persisted offset, so handlers must be idempotent
+ * (REQUEST_ID + POSTING_SEQ identify a posting). A posting that commits after the offset has moved past
+ * its ENTRY_ID arrives later through {@link #onLateEntries}.
+ */
+public interface JournalSubscriber {
+
+    /**
+     * Stable name under which the subscriber's offset is persisted.
+     */
+    String name();
+
+    /**
+     * @param entries postings in ENTRY_ID order, all newer than the subscriber's offset
+     */
+    void onEntries(List<JournalEntry> entries) throws Exception;
+
+    /**
+     * @param entries postings in ENTRY_ID order at or below the subscriber's offset that were not delivered
+     *                when the offset moved past them
+     */
+    default void onLateEntries(List<JournalEntry> entries) throws Exception {
+        onEntries(entries);
+    }
+}
@@ -0,0 +1,404 @@
+package com.wallet.journal;
+
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import com.wallet.database.plan.QueryCatalog;
+import com.wallet.database.util.SqlTemplate;
+import com.wallet.model.JournalEntry;
+import com.wallet.model.Leg;
+import org.intellij.lang.annotations.Language;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Single reader that tails the postings in WALLET_POSTING_V by ENTRY_ID and fans new postings out to
+ * registered {@link JournalSubscriber}s.
+ * <p>
+ * Each poll is one primary-key range read of WALLET_JOURNAL and WALLET_TRANSFER (first {@code batchSize}
+ * postings after the offset). A transfer's credit posting has a slightly higher ENTRY_ID than the row it
+ * comes from, so the range on the underlying key starts {@value #MAX_CREDIT_GAP} ids early.
+ * The poll interval doubles while the journal is idle and drops back to the minimum as soon as rows
+ * show up; a full batch is followed immediately by the next read.
+ * <p>
+ * ENTRY_IDs are allocated at insert time, not at commit, and each instance takes them from its own cached
+ * block of WALLET_ENTRY_SEQ, so a posting can become visible after one with a higher id. A batch is cut at
+ * the first row younger than {@code commitLag}, which keeps most postings in order. Where an offset still
+ * moves over ids that could hold a posting (two ids apart for a journal row, one for the credit after its
+ * transfer's debit), the subscription keeps those ids as a gap; every poll re-reads the open gaps by primary
+ * key and hands what has appeared to {@link JournalSubscriber#onLateEntries}. A gap is given up, with a
+ * warning, once it has been open for {@code gapTimeout}: size it above the longest posting transaction and
+ * the time an instance takes to use up its sequence block.
+ * <p>
+ * Gaps are kept in memory. The offset persisted for a subscriber stays below its oldest open gap, so after
+ * a restart the postings from there on are delivered again rather than lost.
+ */
+@Singleton
+public class JournalTailer implements AutoCloseable {
+
+    private static final Logger LOG = Logger.getLogger(JournalTailer.class.getName());
+
+    // upper bound of CREDIT_ENTRY_ID - ENTRY_ID on WALLET_TRANSFER, enforced by ck_transfer_credit_id
+    static final int MAX_CREDIT_GAP = 64;
+
+    // WALLET_ENTRY_SEQ steps by 2; a transfer's credit posting takes the id after its debit
+    private static final int ENTRY_ID_STEP = 2;
+
+    public static final Duration DEFAULT_GAP_TIMEOUT = Duration.ofHours(1);
+
+    @Language("SQL")
+    private static final String POLL_SQL = QueryCatalog.register("JournalTailer.poll",
+            "select ENTRY_ID, REQUEST_ID, TS_CREATED, POSTING_SEQ, ACCOUNT_ID, CURRENCY, AMOUNT, SIDE, DESCRIPTION, " +
+            "case when TS_CREATED < systimestamp - numtodsinterval(?, 'SECOND') then 1 else 0 end as SETTLED " +
+            "from WALLET_POSTING_V " +
+            "where SOURCE_ENTRY_ID > ? and ENTRY_ID > ? " +
+            "order by ENTRY_ID " +
+            "fetch first ? rows only");
+
+    @Language("SQL")
+    private static final String GAP_SQL = QueryCatalog.register("JournalTailer.gap",
+            "select ENTRY_ID, REQUEST_ID, TS_CREATED, POSTING_SEQ, ACCOUNT_ID, CURRENCY, AMOUNT, SIDE, DESCRIPTION " +
+            "from WALLET_POSTING_V " +
+            "where SOURCE_ENTRY_ID >= ? and SOURCE_ENTRY_ID <= ? and ENTRY_ID >= ? and ENTRY_ID <= ? " +
+            "order by ENTRY_ID");
+
+    @Language("SQL")
+    private static final String LOAD_OFFSET_SQL = QueryCatalog.register("JournalTailer.loadOffset",
+            "select LAST_ENTRY_ID from WALLET_JOURNAL_OFFSET where SUBSCRIBER = ?");
+
+    @Language("SQL")
+    private static final String SAVE_OFFSET_SQL = QueryCatalog.register("JournalTailer.saveOffset",
+            "merge into WALLET_JOURNAL_OFFSET o " +
+            "using (select cast(? as varchar2(100)) as SUBSCRIBER, cast(? as number) as LAST_ENTRY_ID from dual) s " +
+            "on (o.SUBSCRIBER = s.SUBSCRIBER) " +
+            "when matched then update set o.LAST_ENTRY_ID = s.LAST_ENTRY_ID, o.TS_UPDATED = systimestamp " +
+            "when not matched then insert (SUBSCRIBER, LAST_ENTRY_ID) values (s.SUBSCRIBER, s.LAST_ENTRY_ID)");
+
+    private final SqlTemplate sqlTemplate;
+    private final int batchSize;
+    private final long minIntervalMillis;
+    private final long maxIntervalMillis;
+    private final double commitLagSeconds;
+    private final long gapTimeoutMillis;
+
+    private final List<Subscription> subscriptions = new CopyOnWriteArrayList<>();
+    private volatile boolean running;
+    private Thread worker;
+
+    @Inject
+    public JournalTailer(SqlTemplate sqlTemplate) {
+        this(sqlTemplate, 500, Duration.ofMillis(50), Duration.ofSeconds(5), Duration.ofSeconds(2));
+    }
+
+    public JournalTailer(SqlTemplate sqlTemplate, int batchSize, Duration minInterval, Duration maxInterval,
+                         Duration commitLag) {
+        this(sqlTemplate, batchSize, minInterval, maxInterval, commitLag, DEFAULT_GAP_TIMEOUT);
+    }
+
+    public JournalTailer(SqlTemplate sqlTemplate, int batchSize, Duration minInterval, Duration maxInterval,
+                         Duration commitLag, Duration gapTimeout) {
+        this.sqlTemplate = sqlTemplate;
+        this.batchSize = batchSize;
+        this.minIntervalMillis = minInterval.toMillis();
+        this.maxIntervalMillis = maxInterval.toMillis();
+        this.commitLagSeconds = commitLag.toMillis() / 1000.0;
+        this.gapTimeoutMillis = gapTimeout.toMillis();
+    }
+
+    /**
+     * Register a subscriber; it resumes after its persisted offset, or from the start of the journal.
+     */
+    public void subscribe(JournalSubscriber subscriber) {
+        long offset = sqlTemplate.selectScalar(LOAD_OFFSET_SQL, Number.class, subscriber.name())
+                .map(Number::longValue)
+                .orElse(0L);
+        subscriptions.add(new Subscription(subscriber, offset));
+    }
+
+    /**
+     * Register a subscriber that keeps its own checkpoint; it resumes after {@code offset}, whatever
+     * offset was persisted for it.
+     */
+    public void subscribe(JournalSubscriber subscriber, long offset) {
+        subscriptions.add(new Subscription(subscriber, offset));
+    }
+
+    public synchronized void start() {
+        if (running) {
+            return;
+        }
+        running = true;
+        worker = new Thread(this::run, "journal-tailer");
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    @Override
+    public synchronized void close() {
+        running = false;
+        if (worker != null) {
+            worker.interrupt();
+            worker = null;
+        }
+    }
+
+    private void run() {
+        long interval = minIntervalMillis;
+        while (running) {
+            int fetched;
+            try {
+                fetched = pollOnce();
+            } catch (RuntimeException e) {
+                LOG.log(Level.WARNING, "Journal poll failed", e);
+                fetched = 0;
+            }
+
+            if (fetched >= batchSize) {
+                interval = minIntervalMillis;
+                continue;
+            }
+            interval = fetched > 0 ? minIntervalMillis : Math.min(maxIntervalMillis, interval * 2);
+            try {
+                TimeUnit.MILLISECONDS.sleep(interval);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    /**
+     * Read one batch after the slowest subscriber's offset and deliver it, then re-read the open gaps.
+     *
+     * @return number of rows read from the journal
+     */
+    int pollOnce() {
+        if (subscriptions.isEmpty()) {
+            return 0;
+        }
+        long from = Long.MAX_VALUE;
+        for (Subscription s : subscriptions) {
+            from = Math.min(from, s.offset);
+        }
+
+        List<JournalEntry> batch = new ArrayList<>(batchSize);
+        boolean[] unsettled = {false};
+        long rows = sqlTemplate.forEach(POLL_SQL, batchSize, rs -> {
+            if (unsettled[0] || rs.getInt("SETTLED") == 0) {
+                unsettled[0] = true;
+                return;
+            }
+            batch.add(entry(rs));
+        }, commitLagSeconds, from - MAX_CREDIT_GAP, from, batchSize);
+
+        boolean allDelivered = true;
+        if (!batch.isEmpty()) {
+            for (Subscription s : subscriptions) {
+                allDelivered &= deliver(s, batch);
+            }
+        }
+        fillGaps();
+        // a failing subscriber makes the tailer back off instead of re-reading the same batch in a tight loop
+        if (!allDelivered) {
+            return 0;
+        }
+        return unsettled[0] ? batch.size() : (int) rows;
+    }
+
+    private static JournalEntry entry(ResultSet rs) throws SQLException {
+        return new JournalEntry(
+                rs.getLong("ENTRY_ID"),
+                rs.getString("REQUEST_ID"),
+                rs.getTimestamp("TS_CREATED").toInstant(),
+                rs.getInt("POSTING_SEQ"),
+                rs.getLong("ACCOUNT_ID"),
+                rs.getString("CURRENCY"),
+                rs.getBigDecimal("AMOUNT"),
+                Leg.Side.valueOf(rs.getString("SIDE")),
+                rs.getString("DESCRIPTION"));
+    }
+
+    private boolean deliver(Subscription subscription, List<JournalEntry> batch) {
+        int start = 0;
+        while (start < batch.size() && batch.get(start).getEntryId() <= subscription.offset) {
+            start++;
+        }
+        if (start == batch.size()) {
+            return true;
+        }
+        List<JournalEntry> pending = batch.subList(start, batch.size());
+        long last = pending.get(pending.size() - 1).getEntryId();
+        try {
+            subscription.subscriber.onEntries(pending);
+        } catch (Exception e) {
+            LOG.log(Level.WARNING, "Subscriber " + subscription.subscriber.name() + " failed; batch will be redelivered", e);
+            return false;
+        }
+        long now = System.currentTimeMillis();
+        long previous = subscription.offset;
+        for (JournalEntry entry : pending) {
+            // a fresh subscription has nothing before its first posting to wait for
+            if (previous > 0) {
+                subscription.addGap(previous, entry.getEntryId(), now);
+            }
+            previous = entry.getEntryId();
+        }
+        subscription.offset = last;
+        saveCheckpoint(subscription);
+        return true;
+    }
+
+    /**
+     * Drop the gaps open for longer than the gap timeout, read the rest and hand what appeared in them to
+     * the subscriptions that stepped over it.
+     */
+    private void fillGaps() {
+        long now = System.currentTimeMillis();
+        List<Gap> open = new ArrayList<>();
+        for (Subscription s : subscriptions) {
+            if (s.expireGaps(now - gapTimeoutMillis)) {
+                saveCheckpoint(s);
+            }
+            open.addAll(s.gaps.values());
+        }
+        if (open.isEmpty()) {
+            return;
+        }
+        open.sort((a, b) -> Long.compare(a.lo, b.lo));
+
+        // subscriptions share most of their gaps; read each id range once
+        List<JournalEntry> found = new ArrayList<>();
+        long lo = open.get(0).lo;
+        long hi = open.get(0).hi;
+        for (Gap gap : open) {
+            if (gap.lo > hi + 1) {
+                readGap(lo, hi, found);
+                lo = gap.lo;
+            }
+            hi = Math.max(hi, gap.hi);
+        }
+        readGap(lo, hi, found);
+        for (Subscription s : subscriptions) {
+            List<JournalEntry> late = new ArrayList<>();
+            for (JournalEntry entry : found) {
+                if (s.inGap(entry.getEntryId())) {
+                    late.add(entry);
+                }
+            }
+            if (late.isEmpty()) {
+                continue;
+            }
+            try {
+                s.subscriber.onLateEntries(late);
+            } catch (Exception e) {
+                LOG.log(Level.WARNING, "Subscriber " + s.subscriber.name() + " failed on late postings; they will be "
+                        + "redelivered", e);
+                continue;
+            }
+            for (JournalEntry entry : late) {
+                s.fill(entry.getEntryId());
+            }
+            saveCheckpoint(s);
+        }
+    }
+
+    private void readGap(long lo, long hi, List<JournalEntry> found) {
+        sqlTemplate.forEach(GAP_SQL, batchSize, rs -> found.add(entry(rs)), lo - MAX_CREDIT_GAP, hi, lo, hi);
+    }
+
+    // below the oldest open gap, so a restart delivers again what a gap may still receive
+    private void saveCheckpoint(Subscription subscription) {
+        long checkpoint = subscription.gaps.isEmpty()
+                ? subscription.offset
+                : Math.min(subscription.offset, subscription.gaps.firstKey() - 1);
+        sqlTemplate.update(SAVE_OFFSET_SQL, subscription.subscriber.name(), checkpoint);
+    }
+
+    int openGaps(String subscriberName) {
+        return find(subscriberName).gaps.size();
+    }
+
+    public long getOffset(String subscriberName) {
+        return find(subscriberName).offset;
+    }
+
+    private Subscription find(String subscriberName) {
+        for (Subscription s : subscriptions) {
+            if (s.subscriber.name().equals(subscriberName)) {
+                return s;
+            }
+        }
+        throw new IllegalArgumentException("Unknown subscriber: " + subscriberName);
+    }
+
+    private static final class Subscription {
+        final JournalSubscriber subscriber;
+        volatile long offset;
+        // ids below the offset that could still receive a posting, by first id; touched by the poller only
+        final TreeMap<Long, Gap> gaps = new TreeMap<>();
+
+        Subscription(JournalSubscriber subscriber, long offset) {
+            this.subscriber = subscriber;
+            this.offset = offset;
+        }
+
+        // the ids strictly between two postings seen next to each other, if a posting fits there
+        void addGap(long before, long after, long openedAt) {
+            if (after - before > ENTRY_ID_STEP) {
+                gaps.put(before + 1, new Gap(before + 1, after - 1, openedAt));
+            }
+        }
+
+        boolean inGap(long entryId) {
+            Map.Entry<Long, Gap> e = gaps.floorEntry(entryId);
+            return e != null && entryId <= e.getValue().hi;
+        }
+
+        // split the gap holding entryId around it, keeping the parts a posting still fits in
+        void fill(long entryId) {
+            Map.Entry<Long, Gap> e = gaps.floorEntry(entryId);
+            if (e == null || entryId > e.getValue().hi) {
+                return;
+            }
+            Gap gap = gaps.remove(e.getKey());
+            addGap(gap.lo - 1, entryId, gap.openedAt);
+            addGap(entryId, gap.hi + 1, gap.openedAt);
+        }
+
+        boolean expireGaps(long openedBefore) {
+            boolean expired = false;
+            for (Iterator<Gap> it = gaps.values().iterator(); it.hasNext(); ) {
+                Gap gap = it.next();
+                if (gap.openedAt <= openedBefore) {
+                    LOG.warning("Subscriber " + subscriber.name() + " gave up waiting for postings " + gap.lo
+                            + ".." + gap.hi);
+                    it.remove();
+                    expired = true;
+                }
+            }
+            return expired;
+        }
+    }
+
+    private static final class Gap {
+        final long lo;
+        final long hi;
+        final long openedAt;
+
+        Gap(long lo, long hi, long openedAt) {
+            this.lo = lo;
+            this.hi = hi;
+            this.openedAt = openedAt;
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package com.wallet.model;
+
+import javax.annotation.concurrent.Immutable;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.Set;
+
+/**
+ * One published WALLET_FX_RATE row: {@code rate} units of {@code quoteCurrency} buy one unit of
+ * {@code baseCurrency}. The version identifies the row and is what {@code wallet_pkg.transfer_fx} posts with.
+ */
+@Immutable
+public class FxRate {
+    // ISO 4217 currencies without the usual two decimal places; must match fx_scale in wallet_pkg
+    private static final Set<String> SCALE_0 = Set.of("BIF", "CLP", "DJF", "GNF", "ISK", "JPY", "KMF", "KRW",
+            "PYG", "RWF", "UGX", "UYI", "VND", "VUV", "XAF", "XOF", "XPF");
+    private static final Set<String> SCALE_3 = Set.of("BHD", "IQD", "JOD", "KWD", "LYD", "OMR", "TND");
+
+    private final long version;
+    private final String baseCurrency;
+    private final String quoteCurrency;
+    private final BigDecimal rate;
+
+    public FxRate(long version, String baseCurrency, String quoteCurrency, BigDecimal rate) {
+        this.version = version;
+        this.baseCurrency = baseCurrency;
+        this.quoteCurrency = quoteCurrency;
+        this.rate = rate;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public String getBaseCurrency() {
+        return baseCurrency;
+    }
+
+    public String getQuoteCurrency() {
+        return quoteCurrency;
+    }
+
+    public BigDecimal getRate() {
+        return rate;
+    }
+
+    /**
+     * @return the decimal places {@code wallet_pkg.transfer_fx} rounds a credit in {@code currency} to
+     */
+    public static int scale(String currency) {
+        if (SCALE_0.contains(currency)) {
+            return 0;
+        }
+        return SCALE_3.contains(currency) ? 3 : 2;
+    }
+
+    /**
+     * @return {@code amount} of {@code fromCurrency} in the other currency of the pair, rounded the way
+     * {@code wallet_pkg.transfer_fx} rounds the credit
+     */
+    public BigDecimal convert(BigDecimal amount, String fromCurrency) {
+        if (baseCurrency.equals(fromCurrency)) {
+            return amount.multiply(rate).setScale(scale(quoteCurrency), RoundingMode.HALF_UP);
+        }
+        if (quoteCurrency.equals(fromCurrency)) {
+            return amount.divide(rate, scale(baseCurrency), RoundingMode.HALF_UP);
+        }
+        throw new IllegalArgumentException(fromCurrency + " is not part of " + baseCurrency + "/" + quoteCurrency);
+    }
+}
@@ -0,0 +1,90 @@
+package com.wallet.model;
+
+import javax.annotation.concurrent.Immutable;
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.Objects;
+
+/**
+ * One posting, as presented by WALLET_POSTING_V.
+ */
+@Immutable
+public class JournalEntry {
+    private final long entryId;
+    private final String requestId;
+    private final Instant tsCreated;
+    private final int postingSeq;
+    private final long accountId;
+    private final String currency;
+    private final BigDecimal amount;
+    private final Leg.Side side;
+    private final String description;
+
+    public JournalEntry(long entryId, String requestId, Instant tsCreated, int postingSeq, long accountId,
+                        String currency, BigDecimal amount, Leg.Side side, String description) {
+        this.entryId = entryId;
+        this.requestId = requestId;
+        this.tsCreated = tsCreated;
+        this.postingSeq = postingSeq;
+        this.accountId = accountId;
+        this.currency = currency;
+        this.amount = amount;
+        this.side = side;
+        this.description = description;
+    }
+
+    public long getEntryId() {
+        return entryId;
+    }
+
+    public String getRequestId() {
+        return requestId;
+    }
+
+    public Instant getTsCreated() {
+        return tsCreated;
+    }
+
+    public int getPostingSeq() {
+        return postingSeq;
+    }
+
+    public long getAccountId() {
+        return accountId;
+    }
+
+    public String getCurrency() {
+        return currency;
+    }
+
+    public BigDecimal getAmount() {
+        return amount;
+    }
+
+    public Leg.Side getSide() {
+        return side;
+    }
+
+    public String getDescription() {
+        return description;
+    }
+
+    /**
+     * @return the amount with the sign it has on the account balance (credits positive, debits negative)
+     */
+    public BigDecimal getSignedAmount() {
+        return side == Leg.Side.CREDIT ? amount : amount.negate();
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (o == null || getClass() != o.getClass()) return false;
+        JournalEntry that = (JournalEntry) o;
+        return entryId == that.entryId && postingSeq == that.postingSeq;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(entryId, postingSeq);
+    }
+}
@@ -0,0 +1,66 @@
+package com.wallet.model;
+
+import javax.annotation.concurrent.Immutable;
+import java.util.Objects;
+
+/**
+ * One side of a multi-leg transfer: a debit or credit of {@code amount} on a single wallet account.
+ */
+@Immutable
+public class Leg {
+
+    public enum Side {
+        DEBIT, CREDIT
+    }
+
+    private final long accountId;
+    private final Side side;
+    private final String currency;
+    private final double amount;
+
+    public Leg(long accountId, Side side, String currency, double amount) {
+        this.accountId = accountId;
+        this.side = Objects.requireNonNull(side, "side");
+        this.currency = Objects.requireNonNull(currency, "currency");
+        this.amount = amount;
+    }
+
+    public static Leg debit(long accountId, String currency, double amount) {
+        return new Leg(accountId, Side.DEBIT, currency, amount);
+    }
+
+    public static Leg credit(long accountId, String currency, double amount) {
+        return new Leg(accountId, Side.CREDIT, currency, amount);
+    }
+
+    public long getAccountId() {
+        return accountId;
+    }
+
+    public Side getSide() {
+        return side;
+    }
+
+    public String getCurrency() {
+        return currency;
+    }
+
+    public double getAmount() {
+        return amount;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (o == null || getClass() != o.getClass()) return false;
+        Leg leg = (Leg) o;
+        return accountId == leg.accountId
+                && Double.compare(amount, leg.amount) == 0
+                && side == leg.side
+                && currency.equals(leg.currency);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(accountId, side, currency, amount);
+    }
+}
@@ -0,0 +1,57 @@
+package com.wallet.model;
+
+import javax.annotation.concurrent.Immutable;
+import java.util.Objects;
+
+/**
+ * Result of a transfer submitted through the outcome-based API: either {@link TransferStatus#COMPLETED}
+ * or the business rule that rejected it. Faults are still thrown.
+ */
+@Immutable
+public class TransferResult {
+
+    private final String requestId;
+    private final TransferStatus status;
+
+    public TransferResult(String requestId, TransferStatus status) {
+        this.requestId = requestId;
+        this.status = Objects.requireNonNull(status, "status");
+    }
+
+    public static TransferResult completed(String requestId) {
+        return new TransferResult(requestId, TransferStatus.COMPLETED);
+    }
+
+    public static TransferResult rejected(String requestId, TransferStatus status) {
+        return new TransferResult(requestId, status);
+    }
+
+    public String getRequestId() {
+        return requestId;
+    }
+
+    public TransferStatus getStatus() {
+        return status;
+    }
+
+    public boolean isCompleted() {
+        return status == TransferStatus.COMPLETED;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (o == null || getClass() != o.getClass()) return false;
+        TransferResult that = (TransferResult) o;
+        return Objects.equals(requestId, that.requestId) && status == that.status;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(requestId, status);
+    }
+
+    @Override
+    public String toString() {
+        return "TransferResult{requestId='" + requestId + "', status=" + status + '}';
+    }
+}
@@ -0,0 +1,60 @@
+package com.wallet.model;
+
+/**
+ * Outcome of a transfer. Everything except {@link #COMPLETED} is an expected business rejection
+ * raised by {@code wallet_pkg} (or by admission control) rather than a fault.
+ */
+public enum TransferStatus {
+    COMPLETED(0, "Completed"),
+    SAME_ACCOUNT(20003, "Source and destination accounts must differ"),
+    INVALID_AMOUNT(20004, "Invalid amount"),
+    ACCOUNT_NOT_FOUND(20005, "Account not found"),
+    INSUFFICIENT_BALANCE(20006, "Insufficient balance"),
+    ACCOUNT_NOT_ACTIVE(20007, "Account is not active"),
+    CURRENCY_MISMATCH(20008, "Currency mismatch"),
+    DUPLICATE_REQUEST(20009, "Duplicate request"),
+    UNBALANCED(20010, "Debits and credits must balance"),
+    LOCK_UNAVAILABLE(20011, "Account locked by another transfer"),
+    STALE_SEQUENCE(20012, "Stale client sequence"),
+    RATE_UNAVAILABLE(20013, "No exchange rate for the currency pair"),
+    HOLD_NOT_ACTIVE(20014, "Hold not found or no longer active"),
+    RATE_LIMITED(0, "Rate limited"),
+    OVERLOADED(0, "Overloaded"),
+    VELOCITY_LIMITED(0, "Outbound transfer limit reached");
+
+    private static final int FIRST_CODE = 20000;
+    private static final TransferStatus[] BY_CODE = new TransferStatus[1000];
+
+    static {
+        for (TransferStatus status : values()) {
+            if (status.errorCode != 0) {
+                BY_CODE[status.errorCode - FIRST_CODE] = status;
+            }
+        }
+    }
+
+    private final int errorCode;
+    private final String message;
+
+    TransferStatus(int errorCode, String message) {
+        this.errorCode = errorCode;
+        this.message = message;
+    }
+
+    /**
+     * @return the status for a {@code raise_application_error} code, or {@code null} if the
+     * code is not a known business rejection
+     */
+    public static TransferStatus fromErrorCode(int errorCode) {
+        int index = errorCode - FIRST_CODE;
+        return index >= 0 && index < BY_CODE.length ? BY_CODE[index] : null;
+    }
+
+    public int getErrorCode() {
+        return errorCode;
+    }
+
+    public String getMessage() {
+        return message;
+    }
+}
@@ -0,0 +1,77 @@
+package com.wallet.model;
+
+import javax.annotation.concurrent.Immutable;
+import java.math.BigDecimal;
+import java.util.Objects;
+
+/**
+ * Materialized balance of one WALLET_ACCOUNT row, with the part of it reserved by active holds.
+ */
+@Immutable
+public class WalletBalance {
+    private final long accountId;
+    private final String currency;
+    private final String status;
+    private final BigDecimal balance;
+    private final BigDecimal heldAmount;
+
+    public WalletBalance(long accountId, String currency, String status, BigDecimal balance) {
+        this(accountId, currency, status, balance, BigDecimal.ZERO);
+    }
+
+    public WalletBalance(long accountId, String currency, String status, BigDecimal balance, BigDecimal heldAmount) {
+        this.accountId = accountId;
+        this.currency = currency;
+        this.status = status;
+        this.balance = balance;
+        this.heldAmount = heldAmount;
+    }
+
+    public long getAccountId() {
+        return accountId;
+    }
+
+    public String getCurrency() {
+        return currency;
+    }
+
+    public String getStatus() {
+        return status;
+    }
+
+    public BigDecimal getBalance() {
+        return balance;
+    }
+
+    public BigDecimal getHeldAmount() {
+        return heldAmount;
+    }
+
+    /**
+     * @return what debits may still take: the balance less active holds
+     */
+    public BigDecimal getAvailableBalance() {
+        return balance.subtract(heldAmount);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (o == null || getClass() != o.getClass()) return false;
+        WalletBalance that = (WalletBalance) o;
+        return accountId == that.accountId
+                && Objects.equals(currency, that.currency)
+                && Objects.equals(status, that.status)
+                && sameAmount(balance, that.balance)
+                && sameAmount(heldAmount, that.heldAmount);
+    }
+
+    private static boolean sameAmount(BigDecimal a, BigDecimal b) {
+        return a == null ? b == null : b != null && a.compareTo(b) == 0;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(accountId, currency, status, balance == null ? null : balance.stripTrailingZeros(),
+                heldAmount == null ? null : heldAmount.stripTrailingZeros());
+    }
+}
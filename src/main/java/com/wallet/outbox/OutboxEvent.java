@@ -0,0 +1,59 @@
+package com.wallet.outbox;
+
+import javax.annotation.concurrent.Immutable;
+import java.time.Instant;
+import java.util.Objects;
+
+/**
+ * A row of WALLET_OUTBOX: an event written by wallet_pkg in the same transaction as the postings.
+ */
+@Immutable
+public class OutboxEvent {
+    private final long eventId;
+    private final String requestId;
+    private final String eventType;
+    private final String payload;
+    private final Instant tsCreated;
+
+    public OutboxEvent(long eventId, String requestId, String eventType, String payload, Instant tsCreated) {
+        this.eventId = eventId;
+        this.requestId = requestId;
+        this.eventType = eventType;
+        this.payload = payload;
+        this.tsCreated = tsCreated;
+    }
+
+    public long getEventId() {
+        return eventId;
+    }
+
+    public String getRequestId() {
+        return requestId;
+    }
+
+    public String getEventType() {
+        return eventType;
+    }
+
+    /**
+     * @return the event body as a JSON document
+     */
+    public String getPayload() {
+        return payload;
+    }
+
+    public Instant getTsCreated() {
+        return tsCreated;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (o == null || getClass() != o.getClass()) return false;
+        return eventId == ((OutboxEvent) o).eventId;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hashCode(eventId);
+    }
+}
@@ -0,0 +1,14 @@
+package com.wallet.outbox;
+
+import java.util.List;
+
+/**
+ * Sends outbox events to the outside world (message broker, webhook, ...).
+ * <p>
+ * If this method throws, the batch stays in the outbox and is handed out again later, so a
+ * publisher sees every event at least once and must tolerate duplicates (keyed by event id or request id).
+ */
+@FunctionalInterface
+public interface OutboxPublisher {
+    void publish(List<OutboxEvent> events) throws Exception;
+}
@@ -0,0 +1,152 @@
+package com.wallet.outbox;
+
+import com.wallet.Exceptin.WalletException;
+import com.wallet.database.plan.QueryCatalog;
+import com.wallet.database.util.SqlTemplate;
+import org.intellij.lang.annotations.Language;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Drains WALLET_OUTBOX and hands the events to an {@link OutboxPublisher}.
+ * <p>
+ * Every worker claims a batch with {@code FOR UPDATE SKIP LOCKED}, so any number of workers, in this
+ * process or on other nodes, take disjoint batches without coordinating. A batch is published and then
+ * deleted by primary key in one JDBC batch in the same transaction; if publishing fails the transaction
+ * rolls back and the rows become claimable again. Events are unordered across workers.
+ */
+public class OutboxRelay implements AutoCloseable {
+
+    private static final Logger LOG = Logger.getLogger(OutboxRelay.class.getName());
+
+    // no ORDER BY: sorting would read every row of the outbox before the first one is returned, while the
+    // unordered scan stops once batchSize unlocked rows are found; the relay keeps the table short anyway
+    @Language("SQL")
+    private static final String CLAIM_SQL = QueryCatalog.registerFullScan("OutboxRelay.claim",
+            "select EVENT_ID, REQUEST_ID, EVENT_TYPE, PAYLOAD, TS_CREATED " +
+            "from WALLET_OUTBOX " +
+            "for update skip locked");
+
+    @Language("SQL")
+    private static final String DELETE_SQL = QueryCatalog.register("OutboxRelay.delete",
+            "delete from WALLET_OUTBOX where EVENT_ID = ?");
+
+    private final SqlTemplate sqlTemplate;
+    private final OutboxPublisher publisher;
+    private final int workers;
+    private final int batchSize;
+    private final long idleMillis;
+
+    private final LongAdder published = new LongAdder();
+    private final LongAdder failedBatches = new LongAdder();
+    private volatile boolean running;
+    private ExecutorService pool;
+
+    public OutboxRelay(SqlTemplate sqlTemplate, OutboxPublisher publisher) {
+        this(sqlTemplate, publisher, 4, 200, Duration.ofMillis(200));
+    }
+
+    public OutboxRelay(SqlTemplate sqlTemplate, OutboxPublisher publisher, int workers, int batchSize, Duration idle) {
+        this.sqlTemplate = sqlTemplate;
+        this.publisher = publisher;
+        this.workers = workers;
+        this.batchSize = batchSize;
+        this.idleMillis = idle.toMillis();
+    }
+
+    public synchronized void start() {
+        if (running) {
+            return;
+        }
+        running = true;
+        AtomicInteger n = new AtomicInteger();
+        pool = Executors.newFixedThreadPool(workers, r -> {
+            Thread t = new Thread(r, "outbox-relay-" + n.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        for (int i = 0; i < workers; i++) {
+            pool.execute(this::work);
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        running = false;
+        if (pool != null) {
+            pool.shutdownNow();
+            pool = null;
+        }
+    }
+
+    private void work() {
+        while (running) {
+            int drained;
+            try {
+                drained = drainOnce();
+            } catch (RuntimeException e) {
+                failedBatches.increment();
+                LOG.log(Level.WARNING, "Outbox batch failed; it will be retried", e);
+                drained = 0;
+            }
+            if (drained < batchSize) {
+                try {
+                    TimeUnit.MILLISECONDS.sleep(idleMillis);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Claim, publish and delete one batch.
+     *
+     * @return number of events published
+     */
+    public int drainOnce() {
+        return sqlTemplate.executeInTransaction(ctx -> {
+            List<OutboxEvent> events = ctx.select(CLAIM_SQL, batchSize, rs -> new OutboxEvent(
+                    rs.getLong("EVENT_ID"),
+                    rs.getString("REQUEST_ID"),
+                    rs.getString("EVENT_TYPE"),
+                    rs.getString("PAYLOAD"),
+                    rs.getTimestamp("TS_CREATED").toInstant()));
+            if (events.isEmpty()) {
+                return 0;
+            }
+
+            try {
+                publisher.publish(events);
+            } catch (Exception e) {
+                throw new WalletException("Outbox publish failed", e);
+            }
+
+            List<Object[]> ids = new ArrayList<>(events.size());
+            for (OutboxEvent event : events) {
+                ids.add(new Object[]{event.getEventId()});
+            }
+            ctx.batchUpdate(DELETE_SQL, ids);
+            published.add(events.size());
+            return events.size();
+        });
+    }
+
+    public long getPublishedCount() {
+        return published.sum();
+    }
+
+    public long getFailedBatchCount() {
+        return failedBatches.sum();
+    }
+}
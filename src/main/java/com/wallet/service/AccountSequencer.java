@@ -0,0 +1,145 @@
+package com.wallet.service;
+
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import com.wallet.model.TransferResult;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Serialises sequenced transfers per source account in Java, so a bursty client does not pile
+ * concurrent sessions onto the same {@code FOR UPDATE} row lock.
+ * <p>
+ * Each active account has a small queue with a work-in-progress counter: the submitter that moves the
+ * counter off zero schedules a drain, and the drain runs everything queued for that account one transfer
+ * at a time, in ascending client sequence within each batch it picks up. Idle queues retire themselves
+ * from the map. No locks are taken on the submit path.
+ * <p>
+ * {@code wallet_pkg} persists the last applied sequence in {@code WALLET_ACCOUNT.LAST_CLIENT_SEQ} and
+ * rejects anything not after it, so a transfer that arrives after a higher sequence has already been
+ * applied completes as {@link com.wallet.model.TransferStatus#STALE_SEQUENCE} rather than running out
+ * of order. Gaps are not waited for.
+ */
+@Singleton
+public class AccountSequencer {
+
+    private static final Comparator<Task> BY_SEQUENCE = Comparator.comparingLong(t -> t.clientSeq);
+
+    private final WalletService walletService;
+    private final Executor executor;
+    private final Map<Long, AccountQueue> queues = new ConcurrentHashMap<>();
+
+    @Inject
+    public AccountSequencer(WalletService walletService) {
+        this(walletService, Executors.newVirtualThreadPerTaskExecutor());
+    }
+
+    public AccountSequencer(WalletService walletService, Executor executor) {
+        this.walletService = walletService;
+        this.executor = executor;
+    }
+
+    public CompletableFuture<TransferResult> submit(long clientSeq, String requestId, long fromAccountId,
+                                                    long toAccountId, String currency, double amount) {
+        Task task = new Task(clientSeq, requestId, fromAccountId, toAccountId, currency, amount);
+        while (true) {
+            AccountQueue queue = queues.computeIfAbsent(fromAccountId, AccountQueue::new);
+            int wip = queue.wip.get();
+            if (wip < 0) {
+                // retired by its drain, which removes it from the map right after
+                Thread.onSpinWait();
+                continue;
+            }
+            if (queue.wip.compareAndSet(wip, wip + 1)) {
+                queue.tasks.offer(task);
+                if (wip == 0) {
+                    executor.execute(() -> drain(queue));
+                }
+                return task.result;
+            }
+        }
+    }
+
+    /**
+     * @return accounts with queued or running transfers
+     */
+    public int activeAccounts() {
+        return queues.size();
+    }
+
+    private void drain(AccountQueue queue) {
+        List<Task> batch = new ArrayList<>();
+        while (true) {
+            Task task;
+            while ((task = queue.tasks.poll()) != null) {
+                batch.add(task);
+            }
+            if (batch.isEmpty()) {
+                // a submitter has counted itself in but not offered yet
+                Thread.onSpinWait();
+                continue;
+            }
+
+            batch.sort(BY_SEQUENCE);
+            for (Task next : batch) {
+                run(next);
+            }
+
+            int remaining = queue.wip.addAndGet(-batch.size());
+            batch.clear();
+            if (remaining == 0 && queue.wip.compareAndSet(0, -1)) {
+                queues.remove(queue.accountId, queue);
+                return;
+            }
+        }
+    }
+
+    private void run(Task task) {
+        try {
+            task.result.complete(walletService.tryTransfer(task.requestId, task.fromAccountId, task.toAccountId,
+                    task.currency, task.amount, LockWaitPolicy.WAIT, task.clientSeq));
+        } catch (RuntimeException e) {
+            task.result.completeExceptionally(e);
+        }
+    }
+
+    private static final class AccountQueue {
+        final long accountId;
+        final Queue<Task> tasks = new ConcurrentLinkedQueue<>();
+        // transfers submitted and not yet finished; -1 once the queue has retired
+        final AtomicInteger wip = new AtomicInteger();
+
+        AccountQueue(long accountId) {
+            this.accountId = accountId;
+        }
+    }
+
+    private static final class Task {
+        final long clientSeq;
+        final String requestId;
+        final long fromAccountId;
+        final long toAccountId;
+        final String currency;
+        final double amount;
+        final CompletableFuture<TransferResult> result = new CompletableFuture<>();
+
+        Task(long clientSeq, String requestId, long fromAccountId, long toAccountId, String currency, double amount) {
+            this.clientSeq = clientSeq;
+            this.requestId = requestId;
+            this.fromAccountId = fromAccountId;
+            this.toAccountId = toAccountId;
+            this.currency = currency;
+            this.amount = amount;
+        }
+    }
+}
@@ -1,25 +1,71 @@
 package com.wallet.service;
 
 import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import com.wallet.database.plan.QueryCatalog;
+import com.wallet.database.util.IdAllocator;
 import com.wallet.database.util.SqlTemplate;
 import com.wallet.model.Account;
 import org.intellij.lang.annotations.Language;
 
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
 
+/**
+ * Account ids are assigned here from blocks of {@code ACCOUNT_ID_SEQ} (see {@link IdAllocator}) rather than
+ * generated by the insert, so adding accounts needs no generated-key round trip and can be batched.
+ */
+@Singleton
 public class AccountService {
 
+    public static final String ACCOUNT_ID_SEQUENCE = "ACCOUNT_ID_SEQ";
+
+    // must match the INCREMENT BY of ACCOUNT_ID_SEQ (V9)
+    public static final int ACCOUNT_ID_BLOCK = 100;
+
+    @Language("SQL")
+    private static final String FIND_ALL_SQL = QueryCatalog.registerFullScan("AccountService.findAll",
+            "select * from account");
+
+    // one branch per name column, so each is a range scan of its own index (ix_account_name, ix_account_fname)
+    // for a pattern without a leading wildcard; union drops an account both branches match
+    @Language("SQL")
+    private static final String FIND_BY_NAME_SQL = QueryCatalog.register("AccountService.findByName",
+            "select * from account where lName like ? union select * from account where fName like ?");
+
+    @Language("SQL")
+    private static final String FIND_BY_ID_SQL = QueryCatalog.register("AccountService.findById",
+            "select * from account where id = ?");
+
+    @Language("SQL")
+    private static final String FIND_BY_EMAIL_SQL = QueryCatalog.register("AccountService.findByEmail",
+            "select * from account where email = ?");
+
+    @Language("SQL")
+    private static final String UPDATE_PASSWORD_SQL = QueryCatalog.register("AccountService.updatePassword",
+            "update account set password = ? where id = ?");
+
+    @Language("SQL")
+    private static final String INSERT_SQL = QueryCatalog.register("AccountService.addAccount",
+            "insert into account (id, fName, lName, email, password, wallet_id) values (?, ?, ?, ?, ?, ?)");
+
     private final SqlTemplate sqlTemplate;
+    private final IdAllocator ids;
 
     @Inject
     public AccountService(SqlTemplate sqlTemplate) {
+        this(sqlTemplate, new IdAllocator(sqlTemplate, ACCOUNT_ID_SEQUENCE, ACCOUNT_ID_BLOCK));
+    }
+
+    public AccountService(SqlTemplate sqlTemplate, IdAllocator ids) {
         this.sqlTemplate = sqlTemplate;
+        this.ids = ids;
     }
 
     public List<Account> findAll() {
 
-        List<Account> accounts = sqlTemplate.select("select * from account", rs -> new Account(
+        List<Account> accounts = sqlTemplate.select(FIND_ALL_SQL, rs -> new Account(
                 rs.getInt("id"),
                 rs.getString("fName"),
                 rs.getString("lName"),
@@ -32,7 +78,7 @@ public class AccountService {
 
     public List<Account> findByName(String name) {
 
-        List<Account> accounts = sqlTemplate.select("select * from account where fName like ? or lName like ?", rs -> new Account(
+        List<Account> accounts = sqlTemplate.select(FIND_BY_NAME_SQL, rs -> new Account(
                 rs.getInt("id"),
                 rs.getString("fName"),
                 rs.getString("lName"),
@@ -46,10 +92,7 @@ public class AccountService {
 
     public Optional<Account> findById(int id) {
 
-        @Language("SQL")
-        String sql = "select * from account where id = ?";
-
-        Optional<Account> accounts = sqlTemplate.selectOne(sql, rs -> new Account(
+        Optional<Account> accounts = sqlTemplate.selectOne(FIND_BY_ID_SQL, rs -> new Account(
                         rs.getInt("id"),
                         rs.getString("fName"),
                         rs.getString("lName"),
@@ -61,14 +104,52 @@ public class AccountService {
         return accounts;
     }
 
+    public Optional<Account> findByEmail(String email) {
+
+        Optional<Account> account = sqlTemplate.selectOne(FIND_BY_EMAIL_SQL, rs -> new Account(
+                        rs.getInt("id"),
+                        rs.getString("fName"),
+                        rs.getString("lName"),
+                        rs.getString("email"),
+                        rs.getString("password"),
+                        rs.getInt("wallet_id")),
+                email);
+
+        return account;
+    }
+
+    // passwordHash must already be hashed, see CredentialService
+    public boolean updatePassword(int id, String passwordHash) {
+        return sqlTemplate.update(UPDATE_PASSWORD_SQL, passwordHash, id) == 1;
+    }
+
     // make sure a hash the password before call this method
     public Account addAccount(Account account) {
 
-        @Language("SQL")
-        String sql = "insert into account (fName, lName, email, password, wallet_id) values (?, ?, ?, ?, ?)";
+        Account withId = account.withId(Math.toIntExact(ids.nextId()));
+        sqlTemplate.insert(INSERT_SQL, insertParams(withId));
+
+        return withId;
+    }
 
-        Optional<Long> id = sqlTemplate.insertAndGetKey(sql, account.getfName(), account.getlName(), account.getEmail(), account.getPassword(), account.getWalletId());
+    // passwords must already be hashed, as for addAccount; one batch, ids assigned before the insert
+    public List<Account> addAccounts(List<Account> accounts) {
+
+        long[] assigned = ids.nextIds(accounts.size());
+        List<Account> added = new ArrayList<>(accounts.size());
+        List<Object[]> batch = new ArrayList<>(accounts.size());
+        for (int i = 0; i < accounts.size(); i++) {
+            Account withId = accounts.get(i).withId(Math.toIntExact(assigned[i]));
+            added.add(withId);
+            batch.add(insertParams(withId));
+        }
+        sqlTemplate.batchInsert(INSERT_SQL, batch);
+
+        return added;
+    }
 
-        return account.withId(id.get().intValue());
+    private static Object[] insertParams(Account account) {
+        return new Object[]{account.getId(), account.getfName(), account.getlName(), account.getEmail(),
+                account.getPassword(), account.getWalletId()};
     }
 }
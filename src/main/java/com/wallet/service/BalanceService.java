@@ -0,0 +1,264 @@
+package com.wallet.service;
+
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import com.wallet.database.plan.QueryCatalog;
+import com.wallet.database.util.SqlTemplate;
+import com.wallet.model.WalletBalance;
+import org.intellij.lang.annotations.Language;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.LongSupplier;
+
+/**
+ * Reads materialized balances for many wallets at once.
+ * <p>
+ * Ids are sent as IN-lists of up to {@value #MAX_IN_LIST} binds, one statement per chunk. Lists are
+ * padded (by repeating the last id) to a handful of fixed sizes so the shared pool only ever sees a few
+ * distinct statements. Plain reads go through a short-TTL near-cache, which {@link WalletService} clears for
+ * the accounts of every transfer it posts; snapshot reads bypass it and use
+ * {@code AS OF SCN}, so every chunk sees the database at the same instant. Snapshot reads need
+ * {@code EXECUTE} on {@code DBMS_FLASHBACK} and are Oracle-only.
+ */
+@Singleton
+public class BalanceService {
+
+    static final int MAX_IN_LIST = 1000;
+    private static final int[] IN_LIST_SIZES = {1, 4, 16, 64, 256, MAX_IN_LIST};
+
+    public static final Duration DEFAULT_TTL = Duration.ofMillis(500);
+    public static final int DEFAULT_MAX_CACHED = 100_000;
+
+    @Language("SQL")
+    private static final String CURRENT_SCN_SQL = "select dbms_flashback.get_system_change_number from dual";
+
+    private static final String[] CURRENT_SQL = new String[IN_LIST_SIZES.length];
+    private static final String[] AS_OF_SQL = new String[IN_LIST_SIZES.length];
+
+    static {
+        for (int i = 0; i < IN_LIST_SIZES.length; i++) {
+            CURRENT_SQL[i] = QueryCatalog.register("BalanceService.balances" + IN_LIST_SIZES[i],
+                    inListSql("", IN_LIST_SIZES[i]));
+            AS_OF_SQL[i] = inListSql(" as of scn ?", IN_LIST_SIZES[i]);
+        }
+    }
+
+    private final SqlTemplate sqlTemplate;
+    private final long ttlNanos;
+    private final int maxCached;
+    private final LongSupplier nanoClock;
+    private final Map<Long, CachedBalance> cache = new ConcurrentHashMap<>();
+
+    @Inject
+    public BalanceService(SqlTemplate sqlTemplate) {
+        this(sqlTemplate, DEFAULT_TTL, DEFAULT_MAX_CACHED);
+    }
+
+    public BalanceService(SqlTemplate sqlTemplate, Duration ttl, int maxCached) {
+        this(sqlTemplate, ttl, maxCached, System::nanoTime);
+    }
+
+    BalanceService(SqlTemplate sqlTemplate, Duration ttl, int maxCached, LongSupplier nanoClock) {
+        this.sqlTemplate = sqlTemplate;
+        this.ttlNanos = ttl.toNanos();
+        this.maxCached = maxCached;
+        this.nanoClock = nanoClock;
+    }
+
+    /**
+     * Balances for {@code accountIds}, in the order given; unknown ids are left out. Entries may be
+     * up to the cache TTL old.
+     */
+    public Map<Long, WalletBalance> getBalances(Collection<Long> accountIds) {
+        Set<Long> ids = new LinkedHashSet<>(accountIds);
+        Map<Long, WalletBalance> found = new LinkedHashMap<>();
+        List<Long> misses = new ArrayList<>();
+        long now = nanoClock.getAsLong();
+        for (Long id : ids) {
+            CachedBalance cached = cache.get(id);
+            if (cached != null && cached.expiresAt - now > 0) {
+                found.put(id, cached.balance);
+            } else {
+                misses.add(id);
+            }
+        }
+
+        if (!misses.isEmpty()) {
+            long expiresAt = nanoClock.getAsLong() + ttlNanos;
+            for (WalletBalance balance : fetch(misses, null)) {
+                found.put(balance.getAccountId(), balance);
+                cache.put(balance.getAccountId(), new CachedBalance(balance, expiresAt));
+            }
+            evictIfFull(now);
+        }
+
+        Map<Long, WalletBalance> ordered = new LinkedHashMap<>();
+        for (Long id : ids) {
+            WalletBalance balance = found.get(id);
+            if (balance != null) {
+                ordered.put(id, balance);
+            }
+        }
+        return ordered;
+    }
+
+    /**
+     * Read-consistent balances: every account is read as of one SCN, however many chunks that takes.
+     */
+    public Snapshot getSnapshot(Collection<Long> accountIds) {
+        long scn = sqlTemplate.selectScalar(CURRENT_SCN_SQL, Number.class)
+                .map(Number::longValue)
+                .orElseThrow(() -> new IllegalStateException("Could not read the current SCN"));
+        return getSnapshot(accountIds, scn);
+    }
+
+    /**
+     * Balances as of a previously returned {@link Snapshot#getScn()}, e.g. to page through a large
+     * portfolio against the same point in time. The SCN must still be within undo retention.
+     */
+    public Snapshot getSnapshot(Collection<Long> accountIds, long scn) {
+        Map<Long, WalletBalance> byId = new LinkedHashMap<>();
+        for (WalletBalance balance : fetch(new ArrayList<>(new LinkedHashSet<>(accountIds)), scn)) {
+            byId.put(balance.getAccountId(), balance);
+        }
+        Map<Long, WalletBalance> ordered = new LinkedHashMap<>();
+        for (Long id : accountIds) {
+            WalletBalance balance = byId.get(id);
+            if (balance != null) {
+                ordered.put(id, balance);
+            }
+        }
+        return new Snapshot(scn, ordered);
+    }
+
+    public void invalidate(long accountId) {
+        cache.remove(accountId);
+    }
+
+    public void invalidate(long fromAccountId, long toAccountId) {
+        cache.remove(fromAccountId);
+        cache.remove(toAccountId);
+    }
+
+    public void invalidate(Collection<Long> accountIds) {
+        for (Long accountId : accountIds) {
+            cache.remove(accountId);
+        }
+    }
+
+    public void invalidateAll() {
+        cache.clear();
+    }
+
+    int cachedCount() {
+        return cache.size();
+    }
+
+    private List<WalletBalance> fetch(List<Long> ids, Long scn) {
+        List<WalletBalance> balances = new ArrayList<>(ids.size());
+        for (int from = 0; from < ids.size(); from += MAX_IN_LIST) {
+            List<Long> chunk = ids.subList(from, Math.min(ids.size(), from + MAX_IN_LIST));
+            int bucket = bucketFor(chunk.size());
+            int size = IN_LIST_SIZES[bucket];
+
+            Object[] params = new Object[size + (scn == null ? 0 : 1)];
+            int p = 0;
+            if (scn != null) {
+                params[p++] = scn;
+            }
+            for (int i = 0; i < size; i++) {
+                params[p++] = chunk.get(Math.min(i, chunk.size() - 1));
+            }
+            balances.addAll(sqlTemplate.select(scn == null ? CURRENT_SQL[bucket] : AS_OF_SQL[bucket],
+                    BalanceService::mapBalance, params));
+        }
+        return balances;
+    }
+
+    // expired entries first; if live ones alone are over the limit, drop the excess plus a tenth of the
+    // limit in hash order, so a full cache sheds a slice instead of starting cold
+    private void evictIfFull(long now) {
+        if (cache.size() <= maxCached) {
+            return;
+        }
+        cache.values().removeIf(cached -> cached.expiresAt - now <= 0);
+        int excess = cache.size() - maxCached;
+        if (excess <= 0) {
+            return;
+        }
+        int toEvict = excess + maxCached / 10;
+        Iterator<Long> it = cache.keySet().iterator();
+        while (toEvict > 0 && it.hasNext()) {
+            it.next();
+            it.remove();
+            toEvict--;
+        }
+    }
+
+    private static int bucketFor(int count) {
+        for (int i = 0; i < IN_LIST_SIZES.length; i++) {
+            if (count <= IN_LIST_SIZES[i]) {
+                return i;
+            }
+        }
+        throw new IllegalArgumentException("IN-list larger than " + MAX_IN_LIST);
+    }
+
+    private static String inListSql(String flashback, int size) {
+        StringBuilder sql = new StringBuilder("select ID, CURRENCY, STATUS, BALANCE, HELD_AMOUNT from WALLET_ACCOUNT")
+                .append(flashback)
+                .append(" where ID in (");
+        for (int i = 0; i < size; i++) {
+            sql.append(i == 0 ? "?" : ", ?");
+        }
+        return sql.append(')').toString();
+    }
+
+    private static WalletBalance mapBalance(ResultSet rs) throws SQLException {
+        return new WalletBalance(rs.getLong("ID"), rs.getString("CURRENCY"), rs.getString("STATUS"),
+                rs.getBigDecimal("BALANCE"), rs.getBigDecimal("HELD_AMOUNT"));
+    }
+
+    private static final class CachedBalance {
+        final WalletBalance balance;
+        final long expiresAt;
+
+        CachedBalance(WalletBalance balance, long expiresAt) {
+            this.balance = balance;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    /**
+     * Balances read as of one system change number.
+     */
+    public static final class Snapshot {
+        private final long scn;
+        private final Map<Long, WalletBalance> balances;
+
+        public Snapshot(long scn, Map<Long, WalletBalance> balances) {
+            this.scn = scn;
+            this.balances = Collections.unmodifiableMap(balances);
+        }
+
+        public long getScn() {
+            return scn;
+        }
+
+        public Map<Long, WalletBalance> getBalances() {
+            return balances;
+        }
+    }
+}
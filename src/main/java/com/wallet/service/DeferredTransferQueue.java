@@ -0,0 +1,164 @@
+package com.wallet.service;
+
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import com.wallet.Exceptin.AdmissionRejectedException;
+import com.wallet.Exceptin.LockUnavailableException;
+
+import java.time.Duration;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs transfers with a non-blocking lock policy and, when the accounts are busy, parks them
+ * for a later attempt instead of holding a connection while waiting on the row lock.
+ * <p>
+ * Each attempt reuses the original request id, so a transfer is never posted twice. The queue is
+ * bounded; when it is full new contended transfers are rejected right away. Closing the queue fails
+ * the transfers still waiting for a retry with their last {@link LockUnavailableException}.
+ */
+@Singleton
+public class DeferredTransferQueue implements AutoCloseable {
+
+    private final WalletService walletService;
+    private final ScheduledExecutorService scheduler;
+    private final LockWaitPolicy lockWait;
+    private final int capacity;
+    private final int maxAttempts;
+    private final long baseDelayMillis;
+
+    private final AtomicInteger pending = new AtomicInteger();
+    private final Set<Attempt> deferred = ConcurrentHashMap.newKeySet();
+
+    @Inject
+    public DeferredTransferQueue(WalletService walletService) {
+        this(walletService, LockWaitPolicy.NOWAIT, 10_000, 8, Duration.ofMillis(25));
+    }
+
+    public DeferredTransferQueue(WalletService walletService, LockWaitPolicy lockWait, int capacity,
+                                 int maxAttempts, Duration baseDelay) {
+        this.walletService = walletService;
+        this.lockWait = lockWait;
+        this.capacity = capacity;
+        this.maxAttempts = maxAttempts;
+        this.baseDelayMillis = baseDelay.toMillis();
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "deferred-transfers");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * Attempt the transfer now on the calling thread; if its accounts are locked, complete the
+     * returned future later from the deferral thread.
+     */
+    public CompletableFuture<String> transfer(String requestId, long fromAccountId, long toAccountId,
+                                              String currency, double amount) {
+        CompletableFuture<String> result = new CompletableFuture<>();
+        Runnable attempt = new Attempt(result, requestId, fromAccountId, toAccountId, currency, amount);
+        attempt.run();
+        return result;
+    }
+
+    public int getPendingCount() {
+        return pending.get();
+    }
+
+    @Override
+    public void close() {
+        scheduler.shutdownNow();
+        try {
+            // an attempt already talking to the database gets to finish and complete its own future
+            scheduler.awaitTermination(1, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        for (Attempt attempt : deferred) {
+            attempt.abandon();
+        }
+    }
+
+    private final class Attempt implements Runnable {
+        private final CompletableFuture<String> result;
+        private final String requestId;
+        private final long fromAccountId;
+        private final long toAccountId;
+        private final String currency;
+        private final double amount;
+        private int attempts;
+        private volatile LockUnavailableException lastCause;
+
+        Attempt(CompletableFuture<String> result, String requestId, long fromAccountId, long toAccountId,
+                String currency, double amount) {
+            this.result = result;
+            this.requestId = requestId;
+            this.fromAccountId = fromAccountId;
+            this.toAccountId = toAccountId;
+            this.currency = currency;
+            this.amount = amount;
+        }
+
+        @Override
+        public void run() {
+            attempts++;
+            try {
+                String id = walletService.transfer(requestId, fromAccountId, toAccountId, currency, amount, lockWait);
+                dequeue();
+                result.complete(id);
+            } catch (LockUnavailableException e) {
+                defer(e);
+            } catch (RuntimeException e) {
+                dequeue();
+                result.completeExceptionally(e);
+            }
+        }
+
+        private void defer(LockUnavailableException cause) {
+            lastCause = cause;
+            if (attempts >= maxAttempts) {
+                dequeue();
+                result.completeExceptionally(cause);
+                return;
+            }
+            if (!deferred.contains(this)) {
+                if (pending.incrementAndGet() > capacity) {
+                    pending.decrementAndGet();
+                    result.completeExceptionally(new AdmissionRejectedException(
+                            AdmissionRejectedException.Reason.OVERLOADED, "Deferred transfer queue is full"));
+                    return;
+                }
+                deferred.add(this);
+            }
+            long ceiling = baseDelayMillis << Math.min(attempts - 1, 10);
+            long delay = ceiling / 2 + ThreadLocalRandom.current().nextLong(ceiling / 2 + 1);
+            try {
+                scheduler.schedule(this, delay, TimeUnit.MILLISECONDS);
+            } catch (RejectedExecutionException e) {
+                dequeue();
+                result.completeExceptionally(cause);
+            }
+        }
+
+        private void abandon() {
+            if (dequeue()) {
+                result.completeExceptionally(lastCause);
+            }
+        }
+
+        private boolean dequeue() {
+            if (deferred.remove(this)) {
+                pending.decrementAndGet();
+                return true;
+            }
+            return false;
+        }
+    }
+}
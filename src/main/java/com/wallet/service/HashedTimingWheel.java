@@ -0,0 +1,147 @@
+package com.wallet.service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Hashed timing wheel: each timeout is hashed by its deadline tick into a ring of buckets, so scheduling and
+ * cancelling are O(1) and each tick visits one bucket, however many timeouts are pending. A deadline more than
+ * one rotation away waits out the extra rotations in its bucket.
+ * <p>
+ * Deadlines are rounded up to the end of their tick: a timeout never fires early and at most one tick late.
+ * Any thread may schedule or cancel; new timeouts are queued and moved into their buckets by {@link #advance},
+ * which must be called by one thread at a time. A cancelled timeout is dropped the next time the wheel passes
+ * its bucket, at most one rotation later.
+ */
+public final class HashedTimingWheel<T> {
+
+    private static final int PENDING = 0;
+    private static final int CANCELLED = 1;
+    private static final int EXPIRED = 2;
+
+    private final long tickMillis;
+    private final int mask;
+    private final List<List<Timeout<T>>> buckets;
+    private final Queue<Timeout<T>> scheduled = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger pending = new AtomicInteger();
+    // the next tick to process; owned by the advancing thread
+    private long tick;
+
+    /**
+     * @param ticksPerWheel buckets in the ring, a power of two
+     * @param startMillis   time the wheel starts at, on the clock later passed to {@link #advance}
+     */
+    public HashedTimingWheel(long tickMillis, int ticksPerWheel, long startMillis) {
+        if (tickMillis < 1) {
+            throw new IllegalArgumentException("tickMillis must be positive");
+        }
+        if (ticksPerWheel < 1 || Integer.bitCount(ticksPerWheel) != 1) {
+            throw new IllegalArgumentException("ticksPerWheel must be a power of two");
+        }
+        this.tickMillis = tickMillis;
+        this.mask = ticksPerWheel - 1;
+        this.buckets = new ArrayList<>(ticksPerWheel);
+        for (int i = 0; i < ticksPerWheel; i++) {
+            buckets.add(new ArrayList<>());
+        }
+        this.tick = startMillis / tickMillis;
+    }
+
+    public Timeout<T> schedule(T item, long deadlineMillis) {
+        Timeout<T> timeout = new Timeout<>(this, item, deadlineMillis);
+        pending.incrementAndGet();
+        scheduled.add(timeout);
+        return timeout;
+    }
+
+    /**
+     * Move the wheel up to {@code nowMillis}.
+     *
+     * @return the items of the timeouts that fell due, in deadline-tick order
+     */
+    public List<T> advance(long nowMillis) {
+        for (Timeout<T> timeout = scheduled.poll(); timeout != null; timeout = scheduled.poll()) {
+            if (timeout.state.get() == PENDING) {
+                long deadlineTick = Math.max(timeout.deadlineMillis / tickMillis, tick);
+                timeout.rounds = (deadlineTick - tick) / buckets.size();
+                buckets.get((int) (deadlineTick & mask)).add(timeout);
+            }
+        }
+
+        List<T> expired = new ArrayList<>();
+        if (pending.get() == 0) {
+            // only cancelled timeouts are left in the buckets; skip the idle ticks
+            tick = Math.max(tick, nowMillis / tickMillis);
+        }
+        while ((tick + 1) * tickMillis <= nowMillis) {
+            expire(buckets.get((int) (tick & mask)), expired);
+            tick++;
+        }
+        return expired;
+    }
+
+    /**
+     * @return timeouts scheduled and neither fired nor cancelled
+     */
+    public int pending() {
+        return pending.get();
+    }
+
+    private static <T> void expire(List<Timeout<T>> bucket, List<T> expired) {
+        int kept = 0;
+        for (int i = 0; i < bucket.size(); i++) {
+            Timeout<T> timeout = bucket.get(i);
+            if (timeout.state.get() != PENDING) {
+                continue;
+            }
+            if (timeout.rounds > 0) {
+                timeout.rounds--;
+                bucket.set(kept++, timeout);
+            } else if (timeout.transition(EXPIRED)) {
+                expired.add(timeout.item);
+            }
+        }
+        bucket.subList(kept, bucket.size()).clear();
+    }
+
+    public static final class Timeout<T> {
+        private final HashedTimingWheel<T> wheel;
+        private final T item;
+        private final long deadlineMillis;
+        private final AtomicInteger state = new AtomicInteger(PENDING);
+        // rotations left before it fires; owned by the advancing thread
+        private long rounds;
+
+        private Timeout(HashedTimingWheel<T> wheel, T item, long deadlineMillis) {
+            this.wheel = wheel;
+            this.item = item;
+            this.deadlineMillis = deadlineMillis;
+        }
+
+        /**
+         * @return {@code false} if it already fired or was cancelled
+         */
+        public boolean cancel() {
+            return transition(CANCELLED);
+        }
+
+        public T getItem() {
+            return item;
+        }
+
+        public long getDeadlineMillis() {
+            return deadlineMillis;
+        }
+
+        private boolean transition(int to) {
+            if (state.compareAndSet(PENDING, to)) {
+                wheel.pending.decrementAndGet();
+                return true;
+            }
+            return false;
+        }
+    }
+}
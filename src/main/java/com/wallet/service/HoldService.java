@@ -0,0 +1,311 @@
+package com.wallet.service;
+
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import com.wallet.Exceptin.SQLRuntimeException;
+import com.wallet.database.plan.QueryCatalog;
+import com.wallet.database.util.SqlArray;
+import com.wallet.database.util.SqlTemplate;
+import com.wallet.service.retry.TransferRetrier;
+import org.intellij.lang.annotations.Language;
+
+import java.sql.Types;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Funds holds: {@code wallet_pkg.place_hold} reserves part of an account's balance without posting anything,
+ * and the hold ends in a {@link #capture} (one ordinary transfer), a {@link #release} or expiry.
+ * <p>
+ * Most authorisations are never captured, so expiry is the common way out, and it is driven from memory
+ * rather than by polling WALLET_HOLD: each hold is scheduled on a {@link HashedTimingWheel} at its expiry,
+ * capture and release cancel the timer, and one worker advances the wheel every tick and expires what fell
+ * due with one {@code wallet_pkg.expire_holds} call per {@code batchSize} holds. A batch that fails is
+ * scheduled again a tick later. The database decides races: {@code expire_holds} skips holds that are no
+ * longer active or not yet past EXPIRES_AT, and {@code capture_hold} refuses a hold past its EXPIRES_AT even
+ * before it is expired.
+ * <p>
+ * {@link #start()} schedules every hold that is still active, so holds placed before a restart expire as
+ * well. After that a {@link #sweep()} every sweep interval schedules, at their EXPIRES_AT, the active holds
+ * falling due before the next sweep that have no timer: holds placed by another process, and holds whose
+ * timer fired before the database clock reached EXPIRES_AT.
+ * <p>
+ * Place, capture and release drop the {@link BalanceService} near-cache entries of the accounts they touch,
+ * as {@link WalletService} does for transfers; expiry does not, and shows within the cache TTL.
+ */
+@Singleton
+public class HoldService implements AutoCloseable {
+
+    private static final Logger LOG = Logger.getLogger(HoldService.class.getName());
+
+    public static final Duration DEFAULT_TICK = Duration.ofSeconds(1);
+    public static final Duration DEFAULT_SWEEP_INTERVAL = Duration.ofSeconds(30);
+    public static final int DEFAULT_BATCH_SIZE = 500;
+    // one rotation is ~8.5 minutes at the default tick; longer holds wait out extra rotations
+    static final int TICKS_PER_WHEEL = 512;
+    private static final int FETCH_SIZE = 1_000;
+
+    @Language("SQL")
+    private static final String PLACE_CALL = "{? = call wallet_pkg.place_hold(?, ?, ?, ?, ?)}";
+    @Language("SQL")
+    private static final String CAPTURE_CALL = "{call wallet_pkg.capture_hold(?, ?, ?, ?)}";
+    @Language("SQL")
+    private static final String RELEASE_CALL = "{call wallet_pkg.release_hold(?)}";
+    @Language("SQL")
+    private static final String EXPIRE_CALL = "{? = call wallet_pkg.expire_holds(?)}";
+
+    @Language("SQL")
+    private static final String ACTIVE_HOLDS_SQL = QueryCatalog.register("HoldService.activeHolds",
+            "select HOLD_ID, EXPIRES_AT from WALLET_HOLD where STATUS = 'ACTIVE'");
+
+    // a range of ix_hold_status_expiry
+    @Language("SQL")
+    private static final String DUE_HOLDS_SQL = QueryCatalog.register("HoldService.dueHolds",
+            "select HOLD_ID, EXPIRES_AT from WALLET_HOLD "
+                    + "where STATUS = 'ACTIVE' and EXPIRES_AT < systimestamp + numtodsinterval(?, 'SECOND')");
+
+    @Language("SQL")
+    private static final String HOLD_ACCOUNT_SQL = QueryCatalog.register("HoldService.holdAccount",
+            "select ACCOUNT_ID from WALLET_HOLD where HOLD_ID = ?");
+
+    private final SqlTemplate sqlTemplate;
+    private final TransferRetrier retrier;
+    private final BalanceService balances;
+    private final long tickMillis;
+    private final long sweepMillis;
+    private final int batchSize;
+    private final LongSupplier clockMillis;
+    private final HashedTimingWheel<Long> wheel;
+    private final Map<Long, HashedTimingWheel.Timeout<Long>> timers = new ConcurrentHashMap<>();
+
+    private final LongAdder expired = new LongAdder();
+    private final LongAdder failedBatches = new LongAdder();
+    private ScheduledExecutorService ticker;
+
+    public HoldService(SqlTemplate sqlTemplate, TransferRetrier retrier) {
+        this(sqlTemplate, retrier, new BalanceService(sqlTemplate));
+    }
+
+    @Inject
+    public HoldService(SqlTemplate sqlTemplate, TransferRetrier retrier, BalanceService balances) {
+        this(sqlTemplate, retrier, balances, DEFAULT_TICK, DEFAULT_SWEEP_INTERVAL, DEFAULT_BATCH_SIZE,
+                System::currentTimeMillis);
+    }
+
+    public HoldService(SqlTemplate sqlTemplate, TransferRetrier retrier, Duration tick, int batchSize,
+                       LongSupplier clockMillis) {
+        this(sqlTemplate, retrier, tick, DEFAULT_SWEEP_INTERVAL, batchSize, clockMillis);
+    }
+
+    public HoldService(SqlTemplate sqlTemplate, TransferRetrier retrier, Duration tick, Duration sweepInterval,
+                       int batchSize, LongSupplier clockMillis) {
+        this(sqlTemplate, retrier, new BalanceService(sqlTemplate), tick, sweepInterval, batchSize, clockMillis);
+    }
+
+    public HoldService(SqlTemplate sqlTemplate, TransferRetrier retrier, BalanceService balances, Duration tick,
+                       Duration sweepInterval, int batchSize, LongSupplier clockMillis) {
+        this.sqlTemplate = sqlTemplate;
+        this.retrier = retrier;
+        this.balances = balances;
+        this.tickMillis = tick.toMillis();
+        this.sweepMillis = sweepInterval.toMillis();
+        this.batchSize = batchSize;
+        this.clockMillis = clockMillis;
+        this.wheel = new HashedTimingWheel<>(tickMillis, TICKS_PER_WHEEL, clockMillis.getAsLong());
+    }
+
+    /**
+     * Reserve {@code amount} of {@code accountId}'s available balance for {@code ttl}, rounded up to whole
+     * seconds. Replaying {@code requestId} returns the same hold.
+     *
+     * @return the hold id
+     * @throws com.wallet.Exceptin.InsufficientBalanceException if the available balance is short
+     * @throws com.wallet.Exceptin.TransferRejectedException    for the other {@code wallet_pkg} rejections
+     */
+    public long placeHold(String requestId, long accountId, String currency, double amount, Duration ttl) {
+        long ttlSeconds = (ttl.toMillis() + 999) / 1000;
+        Object[] holdId = new Object[1];
+        try {
+            retrier.run(() -> holdId[0] = sqlTemplate.callFunction(PLACE_CALL, Types.NUMERIC, requestId, accountId,
+                    currency, amount, ttlSeconds));
+        } catch (SQLRuntimeException e) {
+            throw WalletService.translate(e);
+        }
+        balances.invalidate(accountId);
+
+        // EXPIRES_AT was set during the call, so a deadline taken after it is not earlier, clock skew aside
+        long expiresAt = clockMillis.getAsLong() + TimeUnit.SECONDS.toMillis(ttlSeconds);
+        long id = ((Number) holdId[0]).longValue();
+        timers.computeIfAbsent(id, key -> wheel.schedule(key, expiresAt));
+        return id;
+    }
+
+    /**
+     * Close the hold and post {@code amount}, at most the held amount, to {@code toAccountId} as the transfer
+     * {@code requestId}; the rest is released. Replaying {@code requestId} is a no-op.
+     *
+     * @throws com.wallet.Exceptin.TransferRejectedException ({@code HOLD_NOT_ACTIVE}) if the hold was already
+     *                                                        closed or is past its expiry
+     */
+    public void capture(String requestId, long holdId, long toAccountId, double amount) {
+        try {
+            retrier.run(() -> sqlTemplate.callProcedure(CAPTURE_CALL, requestId, holdId, toAccountId, amount));
+        } catch (SQLRuntimeException e) {
+            throw WalletService.translate(e);
+        }
+        cancelTimer(holdId);
+        invalidateHoldAccount(holdId);
+        balances.invalidate(toAccountId);
+    }
+
+    /**
+     * Give the held amount back. Releasing a hold that was already released or expired is a no-op.
+     */
+    public void release(long holdId) {
+        try {
+            retrier.run(() -> sqlTemplate.callProcedure(RELEASE_CALL, holdId));
+        } catch (SQLRuntimeException e) {
+            throw WalletService.translate(e);
+        }
+        cancelTimer(holdId);
+        invalidateHoldAccount(holdId);
+    }
+
+    /**
+     * Schedule every active hold that has no timer yet.
+     *
+     * @return holds read
+     */
+    public long scheduleActive() {
+        long rows = sqlTemplate.forEach(ACTIVE_HOLDS_SQL, FETCH_SIZE, rs -> {
+            long holdId = rs.getLong(1);
+            long expiresAt = rs.getTimestamp(2).getTime();
+            timers.computeIfAbsent(holdId, key -> wheel.schedule(key, expiresAt));
+        });
+        LOG.info(() -> "Scheduled expiry of " + rows + " active holds");
+        return rows;
+    }
+
+    /**
+     * Schedule at its EXPIRES_AT every active hold without a timer that falls due before the next sweep.
+     *
+     * @return holds read
+     */
+    public long sweep() {
+        long horizonSeconds = (2 * sweepMillis + 999) / 1000;
+        return sqlTemplate.forEach(DUE_HOLDS_SQL, FETCH_SIZE, rs -> {
+            long holdId = rs.getLong(1);
+            long expiresAt = rs.getTimestamp(2).getTime();
+            timers.computeIfAbsent(holdId, key -> wheel.schedule(key, expiresAt));
+        }, horizonSeconds);
+    }
+
+    /**
+     * Advance the wheel to now and expire the holds that fell due.
+     *
+     * @return holds expired
+     */
+    public int expireDue() {
+        List<Long> due = wheel.advance(clockMillis.getAsLong());
+        int count = 0;
+        for (int from = 0; from < due.size(); from += batchSize) {
+            List<Long> batch = due.subList(from, Math.min(due.size(), from + batchSize));
+            for (Long holdId : batch) {
+                timers.remove(holdId);
+            }
+            try {
+                count += expire(batch);
+            } catch (RuntimeException e) {
+                failedBatches.increment();
+                LOG.log(Level.WARNING, "Expiring " + batch.size() + " holds failed; retrying next tick", e);
+                long retryAt = clockMillis.getAsLong() + tickMillis;
+                for (Long holdId : batch) {
+                    timers.computeIfAbsent(holdId, key -> wheel.schedule(key, retryAt));
+                }
+            }
+        }
+        expired.add(count);
+        return count;
+    }
+
+    public synchronized void start() {
+        if (ticker != null) {
+            return;
+        }
+        scheduleActive();
+        ticker = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "hold-expiry");
+            t.setDaemon(true);
+            return t;
+        });
+        ticker.scheduleWithFixedDelay(this::tick, tickMillis, tickMillis, TimeUnit.MILLISECONDS);
+        ticker.scheduleWithFixedDelay(this::sweepQuietly, sweepMillis, sweepMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public synchronized void close() {
+        if (ticker != null) {
+            ticker.shutdownNow();
+            ticker = null;
+        }
+    }
+
+    /**
+     * @return holds waiting on the wheel
+     */
+    public int getPendingCount() {
+        return wheel.pending();
+    }
+
+    public long getExpiredCount() {
+        return expired.sum();
+    }
+
+    public long getFailedBatchCount() {
+        return failedBatches.sum();
+    }
+
+    private void tick() {
+        try {
+            expireDue();
+        } catch (RuntimeException e) {
+            LOG.log(Level.WARNING, "Hold expiry tick failed", e);
+        }
+    }
+
+    private void sweepQuietly() {
+        try {
+            sweep();
+        } catch (RuntimeException e) {
+            LOG.log(Level.WARNING, "Hold sweep failed", e);
+        }
+    }
+
+    private int expire(List<Long> holdIds) {
+        Object[] count = new Object[1];
+        retrier.run(() -> count[0] = sqlTemplate.callFunction(EXPIRE_CALL, Types.INTEGER,
+                SqlArray.of(SqlArray.NUM_TAB, holdIds)));
+        return ((Number) count[0]).intValue();
+    }
+
+    private void invalidateHoldAccount(long holdId) {
+        sqlTemplate.selectScalar(HOLD_ACCOUNT_SQL, Number.class, holdId)
+                .ifPresent(accountId -> balances.invalidate(accountId.longValue()));
+    }
+
+    private void cancelTimer(long holdId) {
+        HashedTimingWheel.Timeout<Long> timer = timers.remove(holdId);
+        if (timer != null) {
+            timer.cancel();
+        }
+    }
+}
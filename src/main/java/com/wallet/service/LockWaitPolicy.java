@@ -0,0 +1,55 @@
+package com.wallet.service;
+
+import java.util.Objects;
+
+/**
+ * How long wallet_pkg.transfer may wait for the account row locks, passed as {@code p_lock_wait}.
+ * If the locks cannot be taken in time the procedure raises -20011, which is mapped to
+ * {@link com.wallet.Exceptin.LockUnavailableException}.
+ */
+public final class LockWaitPolicy {
+
+    /** Block until the locks are granted (FOR UPDATE). */
+    public static final LockWaitPolicy WAIT = new LockWaitPolicy(null);
+    /** Fail immediately if either row is locked (FOR UPDATE NOWAIT). */
+    public static final LockWaitPolicy NOWAIT = new LockWaitPolicy("NOWAIT");
+    /** Skip locked rows and report the transfer as not lockable (FOR UPDATE SKIP LOCKED). */
+    public static final LockWaitPolicy SKIP = new LockWaitPolicy("SKIP");
+
+    private final String sqlValue;
+
+    private LockWaitPolicy(String sqlValue) {
+        this.sqlValue = sqlValue;
+    }
+
+    /** Wait at most {@code seconds} for the locks (FOR UPDATE WAIT n). */
+    public static LockWaitPolicy waitSeconds(int seconds) {
+        if (seconds < 0) {
+            throw new IllegalArgumentException("seconds must not be negative");
+        }
+        return seconds == 0 ? NOWAIT : new LockWaitPolicy("WAIT " + seconds);
+    }
+
+    /**
+     * @return the value of {@code p_lock_wait}, or null for an unbounded wait
+     */
+    public String toSql() {
+        return sqlValue;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (o == null || getClass() != o.getClass()) return false;
+        return Objects.equals(sqlValue, ((LockWaitPolicy) o).sqlValue);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hashCode(sqlValue);
+    }
+
+    @Override
+    public String toString() {
+        return sqlValue == null ? "WAIT" : sqlValue;
+    }
+}
@@ -0,0 +1,283 @@
+package com.wallet.service;
+
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import com.wallet.model.TransferResult;
+import com.wallet.model.TransferStatus;
+
+import java.time.Duration;
+import java.util.Currency;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Routes transfers to single-threaded worker queues: one set of queues per currency, and within a
+ * currency by hash of the source account. Transfers from the same account therefore run one at a time
+ * in submission order and never compete for that account's row lock, while unrelated accounts and
+ * other currencies proceed in parallel. Each worker owns a {@link WalletService.TransferSession}, i.e.
+ * one connection and one prepared call reused for every transfer it runs.
+ * <p>
+ * Destination accounts are not partitioned, so two queues can still meet on a credited row; the
+ * ordered locking in {@code wallet_pkg} keeps that safe. Queues are bounded; a transfer that does not
+ * fit is completed immediately as {@link TransferStatus#OVERLOADED}.
+ * <p>
+ * The currency comes from the caller, so it is checked against the ISO 4217 codes before it can start
+ * threads; an unknown code is completed as {@link TransferStatus#CURRENCY_MISMATCH}, as wallet_pkg would
+ * answer it. At most {@code maxCurrencies} currencies get queues of their own; any further ones share one
+ * overflow set, which keeps the thread count at {@code (maxCurrencies + 1) × queuesPerCurrency}.
+ */
+@Singleton
+public class PartitionedTransferExecutor implements AutoCloseable {
+
+    public static final int DEFAULT_QUEUE_CAPACITY = 1024;
+    public static final int DEFAULT_MAX_CURRENCIES = 16;
+    public static final Duration DEFAULT_CLOSE_TIMEOUT = Duration.ofSeconds(30);
+
+    private static final Task POISON = new Task(null, 0, 0, null, 0, null);
+    private static final Set<String> KNOWN_CURRENCIES = knownCurrencies();
+
+    private final WalletService walletService;
+    private final int queuesPerCurrency;
+    private final int queueCapacity;
+    private final int maxCurrencies;
+    private final long closeTimeoutNanos;
+    // currency -> its queues; currencies beyond maxCurrencies all map to the same overflow set
+    private final Map<String, Worker[]> routes = new ConcurrentHashMap<>();
+    private final List<Worker[]> partitions = new CopyOnWriteArrayList<>();
+    private Worker[] overflow;
+    private volatile boolean closed;
+
+    @Inject
+    public PartitionedTransferExecutor(WalletService walletService) {
+        this(walletService, Runtime.getRuntime().availableProcessors(), DEFAULT_QUEUE_CAPACITY);
+    }
+
+    public PartitionedTransferExecutor(WalletService walletService, int queuesPerCurrency, int queueCapacity) {
+        this(walletService, queuesPerCurrency, queueCapacity, DEFAULT_MAX_CURRENCIES, DEFAULT_CLOSE_TIMEOUT);
+    }
+
+    /**
+     * @param maxCurrencies currencies that get queues of their own; the rest share one overflow set
+     * @param closeTimeout  how long {@link #close()} waits for queued transfers before interrupting the workers
+     */
+    public PartitionedTransferExecutor(WalletService walletService, int queuesPerCurrency, int queueCapacity,
+                                       int maxCurrencies, Duration closeTimeout) {
+        if (queuesPerCurrency < 1 || queueCapacity < 1 || maxCurrencies < 0) {
+            throw new IllegalArgumentException("queuesPerCurrency and queueCapacity must be positive, "
+                    + "maxCurrencies must not be negative");
+        }
+        this.walletService = walletService;
+        this.queuesPerCurrency = queuesPerCurrency;
+        this.queueCapacity = queueCapacity;
+        this.maxCurrencies = maxCurrencies;
+        this.closeTimeoutNanos = closeTimeout.toNanos();
+    }
+
+    public CompletableFuture<TransferResult> submit(String requestId, long fromAccountId, long toAccountId,
+                                                    String currency, double amount) {
+        return submit(requestId, fromAccountId, toAccountId, currency, amount, LockWaitPolicy.WAIT);
+    }
+
+    public CompletableFuture<TransferResult> submit(String requestId, long fromAccountId, long toAccountId,
+                                                    String currency, double amount, LockWaitPolicy lockWait) {
+        if (closed) {
+            throw new IllegalStateException("Executor is closed");
+        }
+        if (currency == null || !KNOWN_CURRENCIES.contains(currency)) {
+            return CompletableFuture.completedFuture(TransferResult.rejected(requestId, TransferStatus.CURRENCY_MISMATCH));
+        }
+        Worker worker = route(currency, fromAccountId);
+        Task task = new Task(requestId, fromAccountId, toAccountId, currency, amount, lockWait);
+        if (!worker.queue.offer(task)) {
+            return CompletableFuture.completedFuture(TransferResult.rejected(requestId, TransferStatus.OVERLOADED));
+        }
+        if (worker.exited) {
+            // lost a race with close(); the worker will not see this task
+            worker.failRemaining();
+        }
+        return task.result;
+    }
+
+    /**
+     * @return transfers queued but not yet started, across all partitions
+     */
+    public int pending() {
+        int pending = 0;
+        for (Worker[] workers : partitions) {
+            for (Worker worker : workers) {
+                pending += worker.queue.size();
+            }
+        }
+        return pending;
+    }
+
+    /**
+     * Stop accepting transfers, let every worker finish what is already queued, and release the sessions.
+     * Workers that have not drained their queue within the close timeout are interrupted; the transfers
+     * they leave queued complete exceptionally.
+     */
+    @Override
+    public void close() {
+        List<Worker[]> started;
+        // no partition can start once closed is set under the lock partitionFor starts them under
+        synchronized (this) {
+            closed = true;
+            started = List.copyOf(partitions);
+        }
+        long deadline = System.nanoTime() + closeTimeoutNanos;
+        try {
+            for (Worker[] workers : started) {
+                for (Worker worker : workers) {
+                    if (!worker.queue.offer(POISON, remaining(deadline), TimeUnit.NANOSECONDS)) {
+                        worker.abandon();
+                    }
+                }
+            }
+            for (Worker[] workers : started) {
+                for (Worker worker : workers) {
+                    worker.thread.join(Math.max(1, TimeUnit.NANOSECONDS.toMillis(remaining(deadline))));
+                    if (worker.thread.isAlive()) {
+                        worker.abandon();
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static long remaining(long deadline) {
+        return Math.max(0, deadline - System.nanoTime());
+    }
+
+    private Worker route(String currency, long fromAccountId) {
+        Worker[] workers = routes.get(currency);
+        if (workers == null) {
+            workers = partitionFor(currency);
+        }
+        // Fibonacci hashing spreads sequential account ids evenly over the queues
+        int hash = Long.hashCode(fromAccountId * 0x9E3779B97F4A7C15L);
+        return workers[Math.floorMod(hash, workers.length)];
+    }
+
+    private synchronized Worker[] partitionFor(String currency) {
+        Worker[] workers = routes.get(currency);
+        if (workers != null) {
+            return workers;
+        }
+        // a submit that passed its check before close() must not start workers close() will not stop
+        if (closed) {
+            throw new IllegalStateException("Executor is closed");
+        }
+        if (routes.size() < maxCurrencies) {
+            workers = startWorkers(currency);
+        } else {
+            if (overflow == null) {
+                overflow = startWorkers("other");
+            }
+            workers = overflow;
+        }
+        routes.put(currency, workers);
+        return workers;
+    }
+
+    private Worker[] startWorkers(String currency) {
+        Worker[] workers = new Worker[queuesPerCurrency];
+        for (int i = 0; i < workers.length; i++) {
+            workers[i] = new Worker("transfer-" + currency + "-" + i);
+        }
+        partitions.add(workers);
+        return workers;
+    }
+
+    private static Set<String> knownCurrencies() {
+        Set<String> codes = new HashSet<>();
+        for (Currency currency : Currency.getAvailableCurrencies()) {
+            codes.add(currency.getCurrencyCode());
+        }
+        return Set.copyOf(codes);
+    }
+
+    private final class Worker implements Runnable {
+        private final BlockingQueue<Task> queue = new ArrayBlockingQueue<>(queueCapacity);
+        private final Thread thread;
+        private volatile boolean exited;
+        private volatile boolean abandoned;
+
+        Worker(String name) {
+            thread = new Thread(this, name);
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        @Override
+        public void run() {
+            try (WalletService.TransferSession session = walletService.openSession()) {
+                while (!abandoned) {
+                    Task task = queue.take();
+                    if (task == POISON) {
+                        break;
+                    }
+                    if (abandoned) {
+                        task.result.completeExceptionally(new IllegalStateException("Executor is closed"));
+                        break;
+                    }
+                    try {
+                        task.result.complete(session.tryTransfer(task.requestId, task.fromAccountId,
+                                task.toAccountId, task.currency, task.amount, task.lockWait));
+                    } catch (RuntimeException e) {
+                        task.result.completeExceptionally(e);
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                exited = true;
+                failRemaining();
+            }
+        }
+
+        // stop after the transfer in progress; the database call itself may not react to the interrupt
+        void abandon() {
+            abandoned = true;
+            thread.interrupt();
+        }
+
+        void failRemaining() {
+            Task task;
+            while ((task = queue.poll()) != null) {
+                if (task != POISON) {
+                    task.result.completeExceptionally(new IllegalStateException("Executor is closed"));
+                }
+            }
+        }
+    }
+
+    private static final class Task {
+        final String requestId;
+        final long fromAccountId;
+        final long toAccountId;
+        final String currency;
+        final double amount;
+        final LockWaitPolicy lockWait;
+        final CompletableFuture<TransferResult> result = new CompletableFuture<>();
+
+        Task(String requestId, long fromAccountId, long toAccountId, String currency, double amount,
+             LockWaitPolicy lockWait) {
+            this.requestId = requestId;
+            this.fromAccountId = fromAccountId;
+            this.toAccountId = toAccountId;
+            this.currency = currency;
+            this.amount = amount;
+            this.lockWait = lockWait;
+        }
+    }
+}
@@ -0,0 +1,250 @@
+package com.wallet.service;
+
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import com.wallet.Exceptin.SQLRuntimeException;
+import com.wallet.database.plan.QueryCatalog;
+import com.wallet.database.util.SqlArray;
+import com.wallet.database.util.SqlTemplate;
+import com.wallet.service.retry.TransferRetrier;
+import org.intellij.lang.annotations.Language;
+
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Scheduled and recurring transfers kept in WALLET_SCHEDULE and run from a local poller.
+ * <p>
+ * Standing orders cluster on the same nominal times, so each schedule gets a fixed offset within
+ * {@code spreadWindow}, derived from its key, and falls due at its nominal time plus that offset: the
+ * schedules of midnight are run over the window instead of all at once. Every poll claims due schedules in
+ * batches of {@code batchSize} with {@code FOR UPDATE SKIP LOCKED}, so pollers in this process or on other
+ * nodes take disjoint batches, and runs each batch with one {@code wallet_pkg.run_schedules} call in the
+ * claiming transaction. That call locks every account of the batch in id order, posts every occurrence as
+ * the transfer {@code sched-<id>-<occurrence>} and moves the schedule on to its next occurrence; a batch that
+ * fails rolls back as a whole and is claimed again, and replaying an occurrence that did post is a no-op that
+ * {@link #getPostedCount()} does not count.
+ * <p>
+ * An occurrence that {@code wallet_pkg.transfer} refuses, e.g. for an insufficient balance, is skipped and
+ * its error code kept in LAST_ERROR_CODE. Occurrences missed while no poller ran are posted one per poll
+ * until the schedule has caught up.
+ * <p>
+ * Occurrences do not pass through the {@link com.wallet.service.admission.AdmissionController} that
+ * {@link WalletService} applies to callers. Their load is bounded already: one poller per node, batches of
+ * {@code batchSize} spread over {@code spreadWindow}. The per-account velocity caps limit what a caller can
+ * move on demand, and a standing order was agreed when it was created; its postings still count against
+ * the caps once the {@link com.wallet.service.admission.VelocityLimiter} next rebuilds its windows.
+ */
+@Singleton
+public class ScheduledTransferService implements AutoCloseable {
+
+    private static final Logger LOG = Logger.getLogger(ScheduledTransferService.class.getName());
+
+    public static final Duration DEFAULT_SPREAD_WINDOW = Duration.ofHours(1);
+    public static final Duration DEFAULT_POLL_INTERVAL = Duration.ofSeconds(1);
+    public static final int DEFAULT_BATCH_SIZE = 200;
+
+    public enum Period {
+        ONCE, DAILY, WEEKLY, MONTHLY
+    }
+
+    @Language("SQL")
+    private static final String RUN_CALL = "{? = call wallet_pkg.run_schedules(?)}";
+
+    @Language("SQL")
+    private static final String CLAIM_SQL = QueryCatalog.register("ScheduledTransferService.claim",
+            "select SCHEDULE_ID from WALLET_SCHEDULE where STATUS = 'ACTIVE' and DUE_AT <= ? "
+                    + "order by DUE_AT for update skip locked");
+
+    @Language("SQL")
+    private static final String FIND_SQL = QueryCatalog.register("ScheduledTransferService.find",
+            "select SCHEDULE_ID from WALLET_SCHEDULE where SCHEDULE_KEY = ?");
+
+    @Language("SQL")
+    private static final String INSERT_SQL = "insert into WALLET_SCHEDULE (SCHEDULE_KEY, FROM_ACCOUNT_ID, "
+            + "TO_ACCOUNT_ID, CURRENCY, AMOUNT, PERIOD, START_AT, END_AT, SPREAD_SECONDS, NEXT_RUN_AT, DUE_AT) "
+            + "values (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+
+    @Language("SQL")
+    private static final String CANCEL_SQL =
+            "update WALLET_SCHEDULE set STATUS = 'CANCELLED' where SCHEDULE_ID = ? and STATUS = 'ACTIVE'";
+
+    private final SqlTemplate sqlTemplate;
+    private final TransferRetrier retrier;
+    private final long spreadSeconds;
+    private final long pollMillis;
+    private final int batchSize;
+    private final LongSupplier clockMillis;
+
+    private final LongAdder run = new LongAdder();
+    private final LongAdder posted = new LongAdder();
+    private final LongAdder failedBatches = new LongAdder();
+    private ScheduledExecutorService poller;
+
+    @Inject
+    public ScheduledTransferService(SqlTemplate sqlTemplate, TransferRetrier retrier) {
+        this(sqlTemplate, retrier, DEFAULT_SPREAD_WINDOW, DEFAULT_POLL_INTERVAL, DEFAULT_BATCH_SIZE,
+                System::currentTimeMillis);
+    }
+
+    /**
+     * @param spreadWindow applies to schedules created from now on; existing ones keep their offset
+     */
+    public ScheduledTransferService(SqlTemplate sqlTemplate, TransferRetrier retrier, Duration spreadWindow,
+                                    Duration pollInterval, int batchSize, LongSupplier clockMillis) {
+        this.sqlTemplate = sqlTemplate;
+        this.retrier = retrier;
+        this.spreadSeconds = spreadWindow.getSeconds();
+        this.pollMillis = pollInterval.toMillis();
+        this.batchSize = batchSize;
+        this.clockMillis = clockMillis;
+    }
+
+    /**
+     * Schedule {@code amount} from {@code fromAccountId} to {@code toAccountId}, first at {@code startAt} and
+     * then every {@code period} until {@code endAt}, if given. Creating {@code scheduleKey} again returns the
+     * existing schedule unchanged.
+     *
+     * @return the schedule id
+     */
+    public long create(String scheduleKey, long fromAccountId, long toAccountId, String currency, double amount,
+                       Period period, Instant startAt, Instant endAt) {
+        Optional<Long> existing = find(scheduleKey);
+        if (existing.isPresent()) {
+            return existing.get();
+        }
+        long spread = spreadOffset(scheduleKey);
+        try {
+            return sqlTemplate.insertAndGetKey(INSERT_SQL, "SCHEDULE_ID", scheduleKey, fromAccountId, toAccountId,
+                            currency, amount, period.name(), Timestamp.from(startAt),
+                            endAt == null ? null : Timestamp.from(endAt), spread, Timestamp.from(startAt),
+                            Timestamp.from(startAt.plusSeconds(spread)))
+                    .orElseThrow(() -> new IllegalStateException("No schedule id generated for " + scheduleKey));
+        } catch (SQLRuntimeException e) {
+            // a concurrent create of the same key won the insert (uq_schedule_key); any other constraint
+            // violation finds no schedule and is rethrown
+            if (isConstraintViolation(e)) {
+                existing = find(scheduleKey);
+                if (existing.isPresent()) {
+                    return existing.get();
+                }
+            }
+            throw e;
+        }
+    }
+
+    // SQLState class 23: ORA-00001 reports 23000, H2 23505
+    private static boolean isConstraintViolation(SQLRuntimeException e) {
+        String state = e.getCause() instanceof SQLException ? ((SQLException) e.getCause()).getSQLState() : null;
+        return state != null && state.startsWith("23");
+    }
+
+    /**
+     * Stop a schedule; an occurrence already claimed by a poller still runs.
+     *
+     * @return {@code false} if it was not active
+     */
+    public boolean cancel(long scheduleId) {
+        return sqlTemplate.update(CANCEL_SQL, scheduleId) > 0;
+    }
+
+    /**
+     * Seconds after its nominal times that the schedule {@code scheduleKey} falls due; the same for every
+     * process with the same window.
+     */
+    long spreadOffset(String scheduleKey) {
+        if (spreadSeconds <= 0) {
+            return 0;
+        }
+        // String.hashCode is stable across JVMs; the finaliser keeps similar keys apart
+        long h = scheduleKey.hashCode() * 0x9E3779B97F4A7C15L;
+        h ^= h >>> 32;
+        return Math.floorMod(h, spreadSeconds);
+    }
+
+    /**
+     * Claim and run one batch of due schedules.
+     *
+     * @return occurrences run, posted or skipped
+     */
+    public int runDue() {
+        Timestamp now = new Timestamp(clockMillis.getAsLong());
+        int[] result = new int[2];
+        retrier.run(() -> {
+            int[] batch = sqlTemplate.executeInTransaction(ctx -> {
+                List<Long> ids = ctx.select(CLAIM_SQL, batchSize, rs -> rs.getLong(1), now);
+                if (ids.isEmpty()) {
+                    return new int[2];
+                }
+                Object count = ctx.callFunction(RUN_CALL, Types.INTEGER, SqlArray.of(SqlArray.NUM_TAB, ids));
+                return new int[]{ids.size(), ((Number) count).intValue()};
+            });
+            result[0] = batch[0];
+            result[1] = batch[1];
+        });
+        run.add(result[0]);
+        posted.add(result[1]);
+        return result[0];
+    }
+
+    public synchronized void start() {
+        if (poller != null) {
+            return;
+        }
+        poller = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "scheduled-transfers");
+            t.setDaemon(true);
+            return t;
+        });
+        poller.scheduleWithFixedDelay(this::poll, 0, pollMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public synchronized void close() {
+        if (poller != null) {
+            poller.shutdownNow();
+            poller = null;
+        }
+    }
+
+    public long getRunCount() {
+        return run.sum();
+    }
+
+    public long getPostedCount() {
+        return posted.sum();
+    }
+
+    public long getFailedBatchCount() {
+        return failedBatches.sum();
+    }
+
+    private void poll() {
+        try {
+            // the spread keeps what is due at any moment small; a full batch means a backlog to drain
+            int claimed;
+            do {
+                claimed = runDue();
+            } while (claimed == batchSize && !Thread.currentThread().isInterrupted());
+        } catch (RuntimeException e) {
+            failedBatches.increment();
+            LOG.log(Level.WARNING, "Scheduled transfer batch failed; it will be claimed again", e);
+        }
+    }
+
+    private Optional<Long> find(String scheduleKey) {
+        return sqlTemplate.selectScalar(FIND_SQL, Number.class, scheduleKey).map(Number::longValue);
+    }
+}
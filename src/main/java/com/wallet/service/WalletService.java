@@ -1,22 +1,75 @@
 package com.wallet.service;
 
 import com.google.inject.Inject;
+import com.wallet.Exceptin.AdmissionRejectedException;
 import com.wallet.Exceptin.InsufficientBalanceException;
+import com.wallet.Exceptin.LockUnavailableException;
 import com.wallet.Exceptin.SQLRuntimeException;
+import com.wallet.Exceptin.TransferRejectedException;
 import com.wallet.Exceptin.WalletException;
+import com.wallet.database.util.SqlArray;
 import com.wallet.database.util.SqlTemplate;
+import com.wallet.diagnostics.TransferEvent;
+import com.wallet.model.FxRate;
+import com.wallet.model.Leg;
+import com.wallet.model.TransferResult;
+import com.wallet.model.TransferStatus;
+import com.wallet.service.admission.AdmissionController;
+import com.wallet.service.fx.FxRateCache;
+import com.wallet.service.retry.TransferRetrier;
 import org.intellij.lang.annotations.Language;
 
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
 import java.util.UUID;
+import java.util.function.Supplier;
 
+/**
+ * Every transfer, successful or not, is reported as a {@link TransferEvent} to Java Flight Recorder.
+ */
 public class WalletService {
 
+    @Language("SQL")
+    private static final String TRANSFER_CALL = "{call wallet_pkg.transfer(?, ?, ?, ?, ?, ?, ?)}";
+
+    @Language("SQL")
+    private static final String TRANSFER_FX_CALL = "{call wallet_pkg.transfer_fx(?, ?, ?, ?, ?, ?)}";
+
     private final SqlTemplate sqlTemplate;
+    private final TransferRetrier retrier;
+    private final AdmissionController admission;
+    private final FxRateCache fxRates;
+    private final BalanceService balances;
 
-    @Inject
     public WalletService(SqlTemplate sqlTemplate) {
+        this(sqlTemplate, new TransferRetrier(), new AdmissionController());
+    }
+
+    public WalletService(SqlTemplate sqlTemplate, TransferRetrier retrier, AdmissionController admission) {
+        this(sqlTemplate, retrier, admission, new FxRateCache(sqlTemplate));
+    }
+
+    public WalletService(SqlTemplate sqlTemplate, TransferRetrier retrier, AdmissionController admission,
+                         FxRateCache fxRates) {
+        this(sqlTemplate, retrier, admission, fxRates, new BalanceService(sqlTemplate));
+    }
+
+    /**
+     * @param balances near-cache whose entries for both sides of a posted transfer are dropped, so this
+     *                 node reads its own writes; other nodes still see the old balance for up to the TTL
+     */
+    @Inject
+    public WalletService(SqlTemplate sqlTemplate, TransferRetrier retrier, AdmissionController admission,
+                         FxRateCache fxRates, BalanceService balances) {
         this.sqlTemplate = sqlTemplate;
+        this.retrier = retrier;
+        this.admission = admission;
+        this.fxRates = fxRates;
+        this.balances = balances;
     }
 
     public String transfer(long fromAccountId, long toAccountId, String currency, double amount) {
@@ -26,32 +79,326 @@ public class WalletService {
 
     public String transfer(String requestId, long fromAccountId, long toAccountId,
                            String currency, double amount) {
+        return transfer(requestId, fromAccountId, toAccountId, currency, amount, LockWaitPolicy.WAIT);
+    }
 
-        @Language("SQL")
-        String sql = "{call wallet_pkg.transfer(?, ?, ?, ?, ?)}";
-        try {
-            sqlTemplate.callProcedure(sql, requestId, fromAccountId, toAccountId, currency, amount);
+    /**
+     * Transfer with a bounded wait for the account row locks. If the locks are not granted under
+     * {@code lockWait} a {@link LockUnavailableException} is thrown and nothing is posted.
+     */
+    public String transfer(String requestId, long fromAccountId, long toAccountId,
+                           String currency, double amount, LockWaitPolicy lockWait) {
+        TransferEvent event = TransferEvent.start(requestId, fromAccountId, toAccountId, currency, amount, 2);
+        try (AdmissionController.Permit permit = admission.acquire(fromAccountId, currency, amount)) {
+            callTransfer(permit, requestId, fromAccountId, toAccountId, currency, amount, lockWait, null);
+            permit.posted();
+            balances.invalidate(fromAccountId, toAccountId);
         } catch (SQLRuntimeException e) {
-            if (e.getCause() != null && e.getCause() instanceof SQLException)
-                throw mapSqlException((SQLException) e.getCause());
-            else
-                throw new WalletException("Unknown Error", e);
+            event.fail(e);
+            throw translate(e);
+        } catch (RuntimeException e) {
+            event.fail(e);
+            throw e;
         }
 
+        event.finish(TransferStatus.COMPLETED);
         return requestId;
     }
 
-    private WalletException mapSqlException(SQLException e) {
-        int errorCode = e.getErrorCode();
-        return switch (errorCode) {
-            case 20003 -> new WalletException("Source and destination accounts must differ", e);
-            case 20004 -> new WalletException("Invalid amount", e);
-            case 20005 -> new WalletException("Account not found", e);
-            case 20006 -> new InsufficientBalanceException("Insufficient balance", e);
-            case 20007 -> new WalletException("Account is not active", e);
-            case 20008 -> new WalletException("Currency mismatch", e);
-            case 20009 -> new WalletException("Duplicate request", e);
-            default -> new WalletException("Transfer failed: " + e.getMessage(), e);
+    public TransferResult tryTransfer(String requestId, long fromAccountId, long toAccountId,
+                                      String currency, double amount) {
+        return tryTransfer(requestId, fromAccountId, toAccountId, currency, amount, LockWaitPolicy.WAIT);
+    }
+
+    /**
+     * Same as {@link #transfer(String, long, long, String, double, LockWaitPolicy)}, but business rejections
+     * (insufficient balance, duplicate request, admission shedding, ...) come back as a {@link TransferResult}
+     * instead of an exception. Only faults are thrown.
+     */
+    public TransferResult tryTransfer(String requestId, long fromAccountId, long toAccountId,
+                                      String currency, double amount, LockWaitPolicy lockWait) {
+        return tryTransfer(requestId, fromAccountId, toAccountId, currency, amount, lockWait, null);
+    }
+
+    /**
+     * Sequenced variant: {@code clientSeq} must be greater than the last sequence applied for
+     * {@code fromAccountId}, otherwise the transfer is rejected as {@link TransferStatus#STALE_SEQUENCE}.
+     * A {@code null} sequence skips the check. See {@link AccountSequencer}.
+     */
+    public TransferResult tryTransfer(String requestId, long fromAccountId, long toAccountId,
+                                      String currency, double amount, LockWaitPolicy lockWait, Long clientSeq) {
+        TransferEvent event = TransferEvent.start(requestId, fromAccountId, toAccountId, currency, amount, 2);
+        return recorded(event, () -> {
+            try (AdmissionController.Permit permit = admission.acquire(fromAccountId, currency, amount)) {
+                callTransfer(permit, requestId, fromAccountId, toAccountId, currency, amount, lockWait, clientSeq);
+                permit.posted();
+                balances.invalidate(fromAccountId, toAccountId);
+            } catch (AdmissionRejectedException e) {
+                return TransferResult.rejected(requestId, rejectionStatus(e));
+            } catch (SQLRuntimeException e) {
+                return TransferResult.rejected(requestId, rejectionStatus(e));
+            }
+
+            return TransferResult.completed(requestId);
+        });
+    }
+
+    private void callTransfer(AdmissionController.Permit permit, String requestId, long fromAccountId,
+                              long toAccountId, String currency, double amount, LockWaitPolicy lockWait,
+                              Long clientSeq) {
+        retrier.run(permit.timed(() -> sqlTemplate.callProcedure(TRANSFER_CALL, requestId, fromAccountId,
+                toAccountId, currency, amount, lockWait.toSql(), clientSeq)));
+    }
+
+    /**
+     * Open a session that keeps one connection and one prepared {@code wallet_pkg.transfer} call for its
+     * lifetime. Retries, admission control and error mapping are the same as {@link #tryTransfer}.
+     * A session is confined to one thread.
+     */
+    public TransferSession openSession() {
+        return new TransferSession(sqlTemplate.prepareCall(TRANSFER_CALL));
+    }
+
+    public final class TransferSession implements AutoCloseable {
+        private final SqlTemplate.PreparedCall call;
+
+        private TransferSession(SqlTemplate.PreparedCall call) {
+            this.call = call;
+        }
+
+        public TransferResult tryTransfer(String requestId, long fromAccountId, long toAccountId,
+                                          String currency, double amount, LockWaitPolicy lockWait) {
+            TransferEvent event = TransferEvent.start(requestId, fromAccountId, toAccountId, currency, amount, 2);
+            return recorded(event, () -> {
+                try (AdmissionController.Permit permit = admission.acquire(fromAccountId, currency, amount)) {
+                    retrier.run(permit.timed(() -> call.execute(requestId, fromAccountId, toAccountId, currency,
+                            amount, lockWait.toSql(), null)));
+                    permit.posted();
+                    balances.invalidate(fromAccountId, toAccountId);
+                } catch (AdmissionRejectedException e) {
+                    return TransferResult.rejected(requestId, rejectionStatus(e));
+                } catch (SQLRuntimeException e) {
+                    return TransferResult.rejected(requestId, rejectionStatus(e));
+                }
+
+                return TransferResult.completed(requestId);
+            });
+        }
+
+        @Override
+        public void close() {
+            call.close();
+        }
+    }
+
+    public String transferMulti(List<Leg> legs) {
+        String requestId = UUID.randomUUID().toString();
+        return transferMulti(requestId, legs);
+    }
+
+    /**
+     * Post all legs of a split payment (e.g. payer -> merchant + fee + tax) as one atomic transfer.
+     * Every account is locked once, in ascending id order, and debits must equal credits. Each debited
+     * account is admitted with the sum of its debit legs.
+     */
+    public String transferMulti(String requestId, List<Leg> legs) {
+        MultiTransferCall call = new MultiTransferCall(legs);
+        TransferEvent event = call.startEvent(requestId);
+        try (AdmissionController.Permit permit = admission.acquire(call.currency, call.debits)) {
+            call.execute(permit, requestId);
+            permit.posted();
+            balances.invalidate(call.accounts);
+        } catch (SQLRuntimeException e) {
+            event.fail(e);
+            throw translate(e);
+        } catch (RuntimeException e) {
+            event.fail(e);
+            throw e;
+        }
+
+        event.finish(TransferStatus.COMPLETED);
+        return requestId;
+    }
+
+    /**
+     * Outcome-based variant of {@link #transferMulti(String, List)}; malformed leg lists are still thrown.
+     */
+    public TransferResult tryTransferMulti(String requestId, List<Leg> legs) {
+        MultiTransferCall call = new MultiTransferCall(legs);
+        return recorded(call.startEvent(requestId), () -> {
+            try (AdmissionController.Permit permit = admission.acquire(call.currency, call.debits)) {
+                call.execute(permit, requestId);
+                permit.posted();
+                balances.invalidate(call.accounts);
+            } catch (AdmissionRejectedException e) {
+                return TransferResult.rejected(requestId, rejectionStatus(e));
+            } catch (SQLRuntimeException e) {
+                return TransferResult.rejected(requestId, rejectionStatus(e));
+            }
+
+            return TransferResult.completed(requestId);
+        });
+    }
+
+    /**
+     * Cross-currency transfer: debits {@code amount} of {@code fromCurrency} and credits {@code toAccountId}
+     * with it converted at the latest cached rate of the pair. Both postings record the rate version used.
+     *
+     * @throws TransferRejectedException ({@code RATE_UNAVAILABLE}) if no rate is published for the pair
+     */
+    public String transferFx(String requestId, long fromAccountId, long toAccountId,
+                             String fromCurrency, String toCurrency, double amount) {
+        TransferEvent event = TransferEvent.start(requestId, fromAccountId, toAccountId, fromCurrency, amount, 2);
+        try (AdmissionController.Permit permit = admission.acquire(fromAccountId, fromCurrency, amount)) {
+            FxRate rate = fxRates.quote(fromCurrency, toCurrency)
+                    .orElseThrow(() -> new TransferRejectedException(TransferStatus.RATE_UNAVAILABLE, null));
+            callTransferFx(permit, requestId, fromAccountId, toAccountId, amount, rate);
+            permit.posted();
+            balances.invalidate(fromAccountId, toAccountId);
+        } catch (SQLRuntimeException e) {
+            event.fail(e);
+            throw translate(e);
+        } catch (RuntimeException e) {
+            event.fail(e);
+            throw e;
+        }
+
+        event.finish(TransferStatus.COMPLETED);
+        return requestId;
+    }
+
+    /**
+     * Outcome-based variant of {@link #transferFx}.
+     */
+    public TransferResult tryTransferFx(String requestId, long fromAccountId, long toAccountId,
+                                        String fromCurrency, String toCurrency, double amount) {
+        TransferEvent event = TransferEvent.start(requestId, fromAccountId, toAccountId, fromCurrency, amount, 2);
+        return recorded(event, () -> {
+            Optional<FxRate> rate = fxRates.quote(fromCurrency, toCurrency);
+            if (rate.isEmpty()) {
+                return TransferResult.rejected(requestId, TransferStatus.RATE_UNAVAILABLE);
+            }
+            try (AdmissionController.Permit permit = admission.acquire(fromAccountId, fromCurrency, amount)) {
+                callTransferFx(permit, requestId, fromAccountId, toAccountId, amount, rate.get());
+                permit.posted();
+                balances.invalidate(fromAccountId, toAccountId);
+            } catch (AdmissionRejectedException e) {
+                return TransferResult.rejected(requestId, rejectionStatus(e));
+            } catch (SQLRuntimeException e) {
+                return TransferResult.rejected(requestId, rejectionStatus(e));
+            }
+
+            return TransferResult.completed(requestId);
+        });
+    }
+
+    private void callTransferFx(AdmissionController.Permit permit, String requestId, long fromAccountId,
+                                long toAccountId, double amount, FxRate rate) {
+        retrier.run(permit.timed(() -> sqlTemplate.callProcedure(TRANSFER_FX_CALL, requestId, fromAccountId,
+                toAccountId, amount, rate.getVersion(), LockWaitPolicy.WAIT.toSql())));
+    }
+
+    private static TransferResult recorded(TransferEvent event, Supplier<TransferResult> attempt) {
+        TransferResult result;
+        try {
+            result = attempt.get();
+        } catch (RuntimeException e) {
+            event.fail(e);
+            throw e;
+        }
+        event.finish(result.getStatus());
+        return result;
+    }
+
+    private final class MultiTransferCall {
+        private final String currency;
+        private final List<Long> accounts;
+        private final List<String> sides;
+        private final List<Double> amounts;
+        // what each debited account sends, in leg order; each is admitted on its own
+        private final Map<Long, Double> debits;
+        private final long firstCredit;
+        private final double totalDebit;
+
+        MultiTransferCall(List<Leg> legs) {
+            if (legs == null || legs.size() < 2) {
+                throw new WalletException("A multi-leg transfer needs at least two legs");
+            }
+
+            currency = legs.get(0).getCurrency();
+            accounts = new ArrayList<>(legs.size());
+            sides = new ArrayList<>(legs.size());
+            amounts = new ArrayList<>(legs.size());
+            debits = new LinkedHashMap<>();
+            long credit = 0;
+            double debit = 0;
+            for (Leg leg : legs) {
+                if (!currency.equals(leg.getCurrency())) {
+                    throw new WalletException("Currency mismatch");
+                }
+                accounts.add(leg.getAccountId());
+                sides.add(leg.getSide().name());
+                amounts.add(leg.getAmount());
+                if (leg.getSide() == Leg.Side.DEBIT) {
+                    debits.merge(leg.getAccountId(), leg.getAmount(), Double::sum);
+                    debit += leg.getAmount();
+                } else if (credit == 0) {
+                    credit = leg.getAccountId();
+                }
+            }
+            firstCredit = credit;
+            totalDebit = debit;
+        }
+
+        TransferEvent startEvent(String requestId) {
+            long firstDebit = debits.isEmpty() ? 0 : debits.keySet().iterator().next();
+            return TransferEvent.start(requestId, firstDebit, firstCredit, currency, totalDebit, accounts.size());
+        }
+
+        void execute(AdmissionController.Permit permit, String requestId) {
+            @Language("SQL")
+            String sql = "{call wallet_pkg.transfer_multi(?, ?, ?, ?, ?)}";
+            retrier.run(permit.timed(() -> sqlTemplate.callProcedure(sql, requestId, currency,
+                    SqlArray.of(SqlArray.NUM_TAB, accounts),
+                    SqlArray.of(SqlArray.SIDE_TAB, sides),
+                    SqlArray.of(SqlArray.NUM_TAB, amounts))));
+        }
+    }
+
+    private static TransferStatus rejectionStatus(AdmissionRejectedException e) {
+        return e.getStatus();
+    }
+
+    /**
+     * @return the business status carried by {@code e}; anything that is not a known
+     * {@code wallet_pkg} rejection is a fault and is rethrown, translated
+     */
+    static TransferStatus rejectionStatus(SQLRuntimeException e) {
+        if (e.getCause() instanceof SQLException sqlException) {
+            TransferStatus status = TransferStatus.fromErrorCode(sqlException.getErrorCode());
+            if (status != null) {
+                return status;
+            }
+        }
+        throw translate(e);
+    }
+
+    static WalletException translate(SQLRuntimeException e) {
+        if (e.getCause() != null && e.getCause() instanceof SQLException)
+            return mapSqlException((SQLException) e.getCause());
+        else
+            return new WalletException("Unknown Error", e);
+    }
+
+    private static WalletException mapSqlException(SQLException e) {
+        TransferStatus status = TransferStatus.fromErrorCode(e.getErrorCode());
+        if (status == null) {
+            return new WalletException("Transfer failed: " + e.getMessage(), e);
+        }
+        return switch (status) {
+            case INSUFFICIENT_BALANCE -> new InsufficientBalanceException(status.getMessage(), e);
+            case LOCK_UNAVAILABLE -> new LockUnavailableException(status.getMessage(), e);
+            default -> new TransferRejectedException(status, e);
         };
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,92 @@
+package com.wallet.service.accrual;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.Objects;
+
+/**
+ * One accrual run: what to post, in which currency, against which system account.
+ * <p>
+ * Each eligible account is charged or paid {@code round(balance * rate + fixedAmount, 2)}; fees are capped
+ * at the available balance (balance less held funds), so a fee never takes money an open hold reserved.
+ * The run id keys the checkpoint and every posting's request id ({@code <runId>:<accountId>}), so running
+ * the same accrual twice posts it once.
+ */
+public final class Accrual {
+
+    static final int MAX_RUN_ID_LENGTH = 40;
+
+    public enum Kind {
+        INTEREST,
+        FEE
+    }
+
+    private final String runId;
+    private final Kind kind;
+    private final String currency;
+    private final long systemAccountId;
+    private final BigDecimal rate;
+    private final BigDecimal fixedAmount;
+
+    public Accrual(String runId, Kind kind, String currency, long systemAccountId, BigDecimal rate,
+                   BigDecimal fixedAmount) {
+        if (runId == null || runId.isEmpty() || runId.length() > MAX_RUN_ID_LENGTH) {
+            throw new IllegalArgumentException("runId must be 1.." + MAX_RUN_ID_LENGTH + " characters");
+        }
+        if (rate.signum() < 0 || fixedAmount.signum() < 0) {
+            throw new IllegalArgumentException("rate and fixedAmount must not be negative");
+        }
+        this.runId = runId;
+        this.kind = Objects.requireNonNull(kind);
+        this.currency = Objects.requireNonNull(currency);
+        this.systemAccountId = systemAccountId;
+        this.rate = rate;
+        this.fixedAmount = fixedAmount;
+    }
+
+    /**
+     * Daily interest paid out of {@code systemAccountId}; the run id is {@code INTEREST:<currency>:<date>}.
+     */
+    public static Accrual interest(LocalDate date, String currency, long systemAccountId, BigDecimal dailyRate) {
+        return new Accrual("INTEREST:" + currency + ":" + date, Kind.INTEREST, currency, systemAccountId,
+                dailyRate, BigDecimal.ZERO);
+    }
+
+    /**
+     * Daily fee collected into {@code systemAccountId}; the run id is {@code FEE:<currency>:<date>}.
+     */
+    public static Accrual fee(LocalDate date, String currency, long systemAccountId, BigDecimal rate,
+                              BigDecimal fixedAmount) {
+        return new Accrual("FEE:" + currency + ":" + date, Kind.FEE, currency, systemAccountId, rate, fixedAmount);
+    }
+
+    public String getRunId() {
+        return runId;
+    }
+
+    public Kind getKind() {
+        return kind;
+    }
+
+    public String getCurrency() {
+        return currency;
+    }
+
+    public long getSystemAccountId() {
+        return systemAccountId;
+    }
+
+    public BigDecimal getRate() {
+        return rate;
+    }
+
+    public BigDecimal getFixedAmount() {
+        return fixedAmount;
+    }
+
+    @Override
+    public String toString() {
+        return "Accrual{runId='" + runId + "', kind=" + kind + ", currency='" + currency + "', rate=" + rate
+                + ", fixedAmount=" + fixedAmount + '}';
+    }
+}
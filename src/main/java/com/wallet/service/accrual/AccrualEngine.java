@@ -0,0 +1,172 @@
+package com.wallet.service.accrual;
+
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import com.wallet.Exceptin.WalletException;
+import com.wallet.database.plan.QueryCatalog;
+import com.wallet.database.util.SqlTemplate;
+import com.wallet.service.retry.TransferRetrier;
+import org.intellij.lang.annotations.Language;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Posts interest and fee accruals for every wallet of a currency without a round trip per account.
+ * <p>
+ * The ID space is cut into fixed-width ranges aligned to multiples of the chunk size, and chunks are
+ * posted in parallel by {@code wallet_pkg.post_accruals}. Each call locks the accounts of its range in id
+ * order, the order transfers lock in, prices the eligible accounts in one statement, writes their postings
+ * with bulk DML and records the chunk and its total in {@code WALLET_ACCRUAL_CHUNK}, all in one
+ * transaction. The system account is not locked by any chunk, so chunks do not wait for each other and
+ * transfers to or from it are not held up by a run; once the chunks are done,
+ * {@code wallet_pkg.settle_accruals} moves their totals through it in one short transaction. Until then its
+ * balance lags the postings the run wrote against it.
+ * <p>
+ * A failed or interrupted run is resumed by running it again: checkpointed chunks are skipped, the
+ * deterministic request ids make a chunk impossible to post twice, and chunks committed but not settled
+ * are settled by the resumed run.
+ */
+@Singleton
+public class AccrualEngine {
+
+    public static final int DEFAULT_CHUNK_SIZE = 10_000;
+    public static final int DEFAULT_PARALLELISM = 8;
+
+    @Language("SQL")
+    private static final String POST_CALL = "{call wallet_pkg.post_accruals(?, ?, ?, ?, ?, ?, ?, ?)}";
+
+    @Language("SQL")
+    private static final String SETTLE_CALL = "{call wallet_pkg.settle_accruals(?, ?, ?)}";
+
+    // min/max of the primary key are single index probes, whatever the table size
+    @Language("SQL")
+    private static final String ID_RANGE_SQL = QueryCatalog.register("AccrualEngine.idRange",
+            "select min(ID), max(ID) from WALLET_ACCOUNT");
+
+    @Language("SQL")
+    private static final String POSTED_CHUNKS_SQL = QueryCatalog.register("AccrualEngine.postedChunks",
+            "select CHUNK_FROM, CHUNK_TO - CHUNK_FROM from WALLET_ACCRUAL_CHUNK where RUN_ID = ?");
+
+    @Language("SQL")
+    private static final String SUMMARY_SQL = QueryCatalog.register("AccrualEngine.summary",
+            "select coalesce(sum(ACCOUNTS), 0), coalesce(sum(TOTAL), 0) from WALLET_ACCRUAL_CHUNK where RUN_ID = ?");
+
+    private final SqlTemplate sqlTemplate;
+    private final TransferRetrier retrier;
+    private final int chunkSize;
+    private final int parallelism;
+
+    @Inject
+    public AccrualEngine(SqlTemplate sqlTemplate, TransferRetrier retrier) {
+        this(sqlTemplate, retrier, DEFAULT_CHUNK_SIZE, DEFAULT_PARALLELISM);
+    }
+
+    public AccrualEngine(SqlTemplate sqlTemplate, TransferRetrier retrier, int chunkSize, int parallelism) {
+        if (chunkSize < 1 || parallelism < 1) {
+            throw new IllegalArgumentException("chunkSize and parallelism must be positive");
+        }
+        this.sqlTemplate = sqlTemplate;
+        this.retrier = retrier;
+        this.chunkSize = chunkSize;
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * Post {@code accrual} for every eligible account, skipping chunks an earlier invocation of the same
+     * run already committed, and settle the system account for the chunks committed so far. Chunks that fail
+     * are left unposted and reported together once every other chunk has finished and been settled; running
+     * the accrual again retries just those.
+     *
+     * @throws WalletException if any chunk failed
+     */
+    public AccrualResult run(Accrual accrual) {
+        Optional<long[]> idRange = sqlTemplate.selectOne(ID_RANGE_SQL, rs -> {
+            long min = rs.getLong(1);
+            return rs.wasNull() ? null : new long[]{min, rs.getLong(2)};
+        });
+
+        // chunk start -> width of every chunk the run already committed
+        Map<Long, Long> posted = new HashMap<>();
+        sqlTemplate.forEach(POSTED_CHUNKS_SQL, 1_000, rs -> posted.put(rs.getLong(1), rs.getLong(2)), accrual.getRunId());
+        return run(accrual, idRange, posted.keySet(), chunkWidth(accrual, posted));
+    }
+
+    // a resumed run keeps the chunk boundaries it started with, whatever this engine is configured for
+    private long chunkWidth(Accrual accrual, Map<Long, Long> posted) {
+        long width = posted.isEmpty() ? chunkSize : posted.values().iterator().next();
+        for (long postedWidth : posted.values()) {
+            if (postedWidth != width) {
+                throw new WalletException("Accrual run " + accrual.getRunId()
+                        + " has checkpointed chunks of different widths: " + width + " and " + postedWidth);
+            }
+        }
+        return width;
+    }
+
+    private AccrualResult run(Accrual accrual, Optional<long[]> idRange, Set<Long> posted, long width) {
+        List<Future<?>> chunks = new ArrayList<>();
+        int skipped = 0;
+        ExecutorService pool = Executors.newFixedThreadPool(parallelism,
+                Thread.ofPlatform().name("accrual-", 0).factory());
+        try {
+            if (idRange.isPresent()) {
+                long first = Math.floorDiv(idRange.get()[0], width) * width;
+                for (long from = first; from <= idRange.get()[1]; from += width) {
+                    if (posted.contains(from)) {
+                        skipped++;
+                        continue;
+                    }
+                    long chunkFrom = from;
+                    long chunkTo = from + width;
+                    chunks.add(pool.submit(() -> retrier.run(() -> sqlTemplate.callProcedure(POST_CALL,
+                            accrual.getRunId(), accrual.getKind().name(), accrual.getCurrency(),
+                            accrual.getSystemAccountId(), chunkFrom, chunkTo, accrual.getRate(),
+                            accrual.getFixedAmount()))));
+                }
+            }
+            return summarize(accrual, chunks, skipped);
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    private AccrualResult summarize(Accrual accrual, List<Future<?>> chunks, int skipped) {
+        WalletException failure = null;
+        int failed = 0;
+        for (Future<?> chunk : chunks) {
+            try {
+                chunk.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new WalletException("Interrupted waiting for accrual run " + accrual.getRunId(), e);
+            } catch (ExecutionException e) {
+                failed++;
+                if (failure == null) {
+                    failure = new WalletException("Accrual chunk failed", e.getCause());
+                } else {
+                    failure.addSuppressed(e.getCause());
+                }
+            }
+        }
+        retrier.run(() -> sqlTemplate.callProcedure(SETTLE_CALL, accrual.getRunId(), accrual.getKind().name(),
+                accrual.getSystemAccountId()));
+        if (failure != null) {
+            throw new WalletException("Accrual run " + accrual.getRunId() + ": " + failed + " of " + chunks.size()
+                    + " chunks failed; run it again to resume", failure);
+        }
+
+        Object[] totals = sqlTemplate.selectOne(SUMMARY_SQL,
+                rs -> new Object[]{rs.getLong(1), rs.getBigDecimal(2)}, accrual.getRunId()).orElseThrow();
+        return new AccrualResult(accrual.getRunId(), chunks.size(), skipped, (Long) totals[0], (BigDecimal) totals[1]);
+    }
+}
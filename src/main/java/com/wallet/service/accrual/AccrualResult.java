@@ -0,0 +1,56 @@
+package com.wallet.service.accrual;
+
+import java.math.BigDecimal;
+
+/**
+ * Outcome of {@link AccrualEngine#run}. Chunk and account totals cover the whole run, including chunks
+ * posted by earlier, interrupted invocations.
+ */
+public final class AccrualResult {
+
+    private final String runId;
+    private final int chunksPosted;
+    private final int chunksSkipped;
+    private final long accounts;
+    private final BigDecimal total;
+
+    public AccrualResult(String runId, int chunksPosted, int chunksSkipped, long accounts, BigDecimal total) {
+        this.runId = runId;
+        this.chunksPosted = chunksPosted;
+        this.chunksSkipped = chunksSkipped;
+        this.accounts = accounts;
+        this.total = total;
+    }
+
+    public String getRunId() {
+        return runId;
+    }
+
+    /**
+     * @return chunks posted by this invocation
+     */
+    public int getChunksPosted() {
+        return chunksPosted;
+    }
+
+    /**
+     * @return chunks already checkpointed by an earlier invocation
+     */
+    public int getChunksSkipped() {
+        return chunksSkipped;
+    }
+
+    public long getAccounts() {
+        return accounts;
+    }
+
+    public BigDecimal getTotal() {
+        return total;
+    }
+
+    @Override
+    public String toString() {
+        return "AccrualResult{runId='" + runId + "', chunksPosted=" + chunksPosted + ", chunksSkipped="
+                + chunksSkipped + ", accounts=" + accounts + ", total=" + total + '}';
+    }
+}
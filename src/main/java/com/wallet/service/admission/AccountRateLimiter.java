@@ -0,0 +1,95 @@
+package com.wallet.service.admission;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.LongSupplier;
+
+/**
+ * Per-account token buckets packed into a fixed-size {@link AtomicLongArray}.
+ * <p>
+ * Each slot holds one bucket as a single long: the last refill time in milliseconds (upper 40 bits)
+ * and the remaining tokens in thousandths (lower 24 bits), so a bucket is updated with one CAS and
+ * the table never grows no matter how many accounts show up. Accounts are hashed onto slots; two
+ * accounts sharing a slot share a budget, so size the table well above the number of active wallets.
+ * <p>
+ * A refill only moves the stored time forward by the milliseconds it turned into whole thousandths, so
+ * at low rates the fraction left over keeps accruing instead of being dropped on every call.
+ */
+public class AccountRateLimiter {
+
+    private static final int TOKEN_BITS = 24;
+    private static final long TOKEN_MASK = (1L << TOKEN_BITS) - 1;
+    private static final long MILLI = 1000;
+
+    private final AtomicLongArray buckets;
+    private final int mask;
+    private final long capacityMilli;
+    private final double refillMilliPerMs;
+    private final long originMs;
+    private final LongSupplier clockMillis;
+
+    /**
+     * @param slots         table size, rounded up to a power of two
+     * @param ratePerSecond sustained transfers per second allowed for one account
+     * @param burst         bucket capacity, at most 16 777 tokens
+     */
+    public AccountRateLimiter(int slots, double ratePerSecond, int burst) {
+        this(slots, ratePerSecond, burst, System::currentTimeMillis);
+    }
+
+    public AccountRateLimiter(int slots, double ratePerSecond, int burst, LongSupplier clockMillis) {
+        if (burst < 1 || burst * MILLI > TOKEN_MASK) {
+            throw new IllegalArgumentException("burst must be between 1 and " + TOKEN_MASK / MILLI);
+        }
+        int size = Integer.highestOneBit(Math.max(1, slots - 1)) << 1;
+        this.buckets = new AtomicLongArray(size);
+        this.mask = size - 1;
+        this.capacityMilli = burst * MILLI;
+        this.refillMilliPerMs = ratePerSecond;
+        this.clockMillis = clockMillis;
+        this.originMs = clockMillis.getAsLong() - 1;
+    }
+
+    /**
+     * Take one token from the account's bucket.
+     *
+     * @return false if the account has used up its budget
+     */
+    public boolean tryAcquire(long accountId) {
+        int slot = slot(accountId);
+        long now = clockMillis.getAsLong() - originMs;
+        while (true) {
+            long state = buckets.get(slot);
+            long tokens;
+            long refilledTo;
+            if (state == 0) {
+                tokens = capacityMilli;
+                refilledTo = now;
+            } else {
+                long last = state >>> TOKEN_BITS;
+                long elapsed = Math.max(0, now - last);
+                long added = (long) (elapsed * refillMilliPerMs);
+                tokens = state & TOKEN_MASK;
+                if (added >= capacityMilli - tokens) {
+                    tokens = capacityMilli;
+                    refilledTo = now;
+                } else {
+                    tokens += added;
+                    // only the time the whole thousandths were earned in is used up; the rest carries over
+                    refilledTo = Math.min(now, last + (long) Math.ceil(added / refillMilliPerMs));
+                }
+            }
+            if (tokens < MILLI) {
+                return false;
+            }
+            long next = (refilledTo << TOKEN_BITS) | (tokens - MILLI);
+            if (buckets.compareAndSet(slot, state, next)) {
+                return true;
+            }
+        }
+    }
+
+    private int slot(long accountId) {
+        long h = accountId * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32)) & mask;
+    }
+}
@@ -0,0 +1,84 @@
+package com.wallet.service.admission;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Global in-flight limit that follows database latency (AIMD).
+ * <p>
+ * The fastest recently observed call is the baseline. While calls complete within
+ * {@code tolerance × baseline} the limit grows by roughly one per limit-worth of calls; a slower
+ * call shrinks it by {@code backoffRatio}. Queueing inside Oracle (row locks, a saturated pool)
+ * shows up as latency first, so the limit drops before connections run out.
+ * <p>
+ * Every completed call feeds a sample, so the state is updated with CAS loops rather than a lock; the
+ * estimate is kept as the raw bits of a double in an {@link AtomicLong}.
+ */
+public class AdaptiveConcurrencyLimit {
+
+    private final int minLimit;
+    private final int maxLimit;
+    private final double tolerance;
+    private final double backoffRatio;
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicLong estimatedLimit;
+    private final AtomicLong baselineNanos = new AtomicLong(Long.MAX_VALUE);
+    private final AtomicLong samples = new AtomicLong();
+
+    public AdaptiveConcurrencyLimit(int initialLimit, int minLimit, int maxLimit) {
+        this(initialLimit, minLimit, maxLimit, 2.0, 0.9);
+    }
+
+    public AdaptiveConcurrencyLimit(int initialLimit, int minLimit, int maxLimit, double tolerance, double backoffRatio) {
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.tolerance = tolerance;
+        this.backoffRatio = backoffRatio;
+        this.estimatedLimit = new AtomicLong(Double.doubleToRawLongBits(initialLimit));
+    }
+
+    public boolean tryAcquire() {
+        while (true) {
+            int current = inFlight.get();
+            if (current >= getLimit()) {
+                return false;
+            }
+            if (inFlight.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+    }
+
+    public void release(long latencyNanos) {
+        inFlight.decrementAndGet();
+        onSample(latencyNanos);
+    }
+
+    void onSample(long latencyNanos) {
+        // let the baseline drift upwards slowly so a single lucky sample does not pin it forever
+        if (samples.incrementAndGet() % 1000 == 0) {
+            baselineNanos.updateAndGet(b -> b == Long.MAX_VALUE ? b : b + b / 10);
+        }
+        long baseline = baselineNanos.accumulateAndGet(latencyNanos, Math::min);
+        boolean fast = latencyNanos <= baseline * tolerance;
+
+        while (true) {
+            long bits = estimatedLimit.get();
+            double estimate = Double.longBitsToDouble(bits);
+            double next = fast ? estimate + 1.0 / estimate : estimate * backoffRatio;
+            next = Math.max(minLimit, Math.min(maxLimit, next));
+            if (estimatedLimit.compareAndSet(bits, Double.doubleToRawLongBits(next))) {
+                return;
+            }
+        }
+    }
+
+    public int getLimit() {
+        return (int) Double.longBitsToDouble(estimatedLimit.get());
+    }
+
+    public int getInFlight() {
+        return inFlight.get();
+    }
+}
@@ -0,0 +1,185 @@
+package com.wallet.service.admission;
+
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import com.wallet.Exceptin.AdmissionRejectedException;
+import com.wallet.Exceptin.AdmissionRejectedException.Reason;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Gatekeeper in front of wallet_pkg: a per-source-account rate limit, the account's outbound velocity
+ * caps and a global, latency-adaptive concurrency limit. All checks are non-blocking; a request that does
+ * not fit fails immediately with {@link AdmissionRejectedException} instead of waiting on a row lock.
+ */
+@Singleton
+public class AdmissionController {
+
+    public static final int DEFAULT_RATE_LIMIT_SLOTS = 1 << 16;
+    public static final double DEFAULT_RATE_LIMIT_PER_SECOND = 50;
+    public static final int DEFAULT_RATE_LIMIT_BURST = 100;
+    public static final int DEFAULT_CONCURRENCY_INITIAL = 32;
+    public static final int DEFAULT_CONCURRENCY_MIN = 4;
+    public static final int DEFAULT_CONCURRENCY_MAX = 256;
+
+    private final AccountRateLimiter rateLimiter;
+    private final AdaptiveConcurrencyLimit concurrencyLimit;
+    private final VelocityLimiter velocityLimiter;
+
+    private final LongAdder rateLimited = new LongAdder();
+    private final LongAdder overloaded = new LongAdder();
+    private final LongAdder velocityLimited = new LongAdder();
+
+    public AdmissionController() {
+        this(VelocityLimiter.unlimited());
+    }
+
+    /**
+     * Default limits; injection takes them from {@link com.wallet.config.AdmissionModule} instead.
+     */
+    public AdmissionController(VelocityLimiter velocityLimiter) {
+        this(new AccountRateLimiter(DEFAULT_RATE_LIMIT_SLOTS, DEFAULT_RATE_LIMIT_PER_SECOND, DEFAULT_RATE_LIMIT_BURST),
+                new AdaptiveConcurrencyLimit(DEFAULT_CONCURRENCY_INITIAL, DEFAULT_CONCURRENCY_MIN,
+                        DEFAULT_CONCURRENCY_MAX), velocityLimiter);
+    }
+
+    public AdmissionController(AccountRateLimiter rateLimiter, AdaptiveConcurrencyLimit concurrencyLimit) {
+        this(rateLimiter, concurrencyLimit, VelocityLimiter.unlimited());
+    }
+
+    @Inject
+    public AdmissionController(AccountRateLimiter rateLimiter, AdaptiveConcurrencyLimit concurrencyLimit,
+                               VelocityLimiter velocityLimiter) {
+        this.rateLimiter = rateLimiter;
+        this.concurrencyLimit = concurrencyLimit;
+        this.velocityLimiter = velocityLimiter;
+    }
+
+    /**
+     * Admit one transfer from {@code accountId} without an amount to cap, see
+     * {@link #acquire(long, String, double)}.
+     */
+    public Permit acquire(long accountId) {
+        return acquire(accountId, null, 0);
+    }
+
+    /**
+     * Admit one transfer of {@code amount} of {@code currency} out of {@code accountId}. Run each attempt of the database call
+     * through {@link Permit#timed} and close the permit when the transfer is done, so the latency of the
+     * last attempt, without retry backoff, feeds the concurrency limit; call {@link Permit#posted()} first if
+     * the transfer was posted, otherwise the amount is taken off the velocity windows again.
+     */
+    public Permit acquire(long accountId, String currency, double amount) {
+        return acquire(currency, Map.of(accountId, amount));
+    }
+
+    /**
+     * Admit one transfer that debits each account of {@code debits} by its amount of {@code currency}, e.g. the payers of a
+     * multi-leg transfer: every account is rate limited and reserved against its own caps, and the whole
+     * transfer takes one slot of the concurrency limit. If any account is refused, the reservations already
+     * taken for the others are handed back.
+     */
+    public Permit acquire(String currency, Map<Long, Double> debits) {
+        for (long accountId : debits.keySet()) {
+            if (!rateLimiter.tryAcquire(accountId)) {
+                rateLimited.increment();
+                throw new AdmissionRejectedException(Reason.RATE_LIMITED,
+                        "Too many transfers from account " + accountId);
+            }
+        }
+        List<VelocityLimiter.Reservation> reservations = new ArrayList<>(debits.size());
+        try {
+            for (Map.Entry<Long, Double> debit : debits.entrySet()) {
+                if (debit.getValue() > 0) {
+                    reservations.add(velocityLimiter.reserve(debit.getKey(), currency, debit.getValue()));
+                }
+            }
+        } catch (AdmissionRejectedException e) {
+            cancel(reservations);
+            velocityLimited.increment();
+            throw e;
+        }
+        if (!concurrencyLimit.tryAcquire()) {
+            cancel(reservations);
+            overloaded.increment();
+            throw new AdmissionRejectedException(Reason.OVERLOADED, "Transfer capacity exceeded, retry later");
+        }
+        return new Permit(System.nanoTime(), reservations);
+    }
+
+    private static void cancel(List<VelocityLimiter.Reservation> reservations) {
+        for (VelocityLimiter.Reservation reservation : reservations) {
+            reservation.cancel();
+        }
+    }
+
+    public long getRateLimitedCount() {
+        return rateLimited.sum();
+    }
+
+    public long getOverloadedCount() {
+        return overloaded.sum();
+    }
+
+    public long getVelocityLimitedCount() {
+        return velocityLimited.sum();
+    }
+
+    public int getConcurrencyLimit() {
+        return concurrencyLimit.getLimit();
+    }
+
+    public final class Permit implements AutoCloseable {
+        private final long startNanos;
+        private final List<VelocityLimiter.Reservation> reservations;
+        // the last attempt's, -1 before the first one
+        private long attemptNanos = -1;
+        private boolean posted;
+        private boolean released;
+
+        private Permit(long startNanos, List<VelocityLimiter.Reservation> reservations) {
+            this.startNanos = startNanos;
+            this.reservations = reservations;
+        }
+
+        /**
+         * @return {@code call}, timing each run as one attempt; sleeps between attempts are not sampled, so
+         * the limit does not shrink because a transient error was retried
+         */
+        public Runnable timed(Runnable call) {
+            return () -> {
+                long start = System.nanoTime();
+                try {
+                    call.run();
+                } finally {
+                    attemptNanos = System.nanoTime() - start;
+                }
+            };
+        }
+
+        /**
+         * The transfer was posted: keep its amount in the velocity windows.
+         */
+        public void posted() {
+            posted = true;
+        }
+
+        @Override
+        public void close() {
+            if (!released) {
+                released = true;
+                for (VelocityLimiter.Reservation reservation : reservations) {
+                    if (posted) {
+                        reservation.posted();
+                    } else {
+                        reservation.cancel();
+                    }
+                }
+                concurrencyLimit.release(attemptNanos >= 0 ? attemptNanos : System.nanoTime() - startNanos);
+            }
+        }
+    }
+}
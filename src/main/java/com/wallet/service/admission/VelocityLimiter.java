@@ -0,0 +1,437 @@
+package com.wallet.service.admission;
+
+import com.google.inject.Singleton;
+import com.wallet.Exceptin.AdmissionRejectedException;
+import com.wallet.Exceptin.AdmissionRejectedException.Reason;
+import com.wallet.database.plan.QueryCatalog;
+import com.wallet.database.util.SqlTemplate;
+import org.intellij.lang.annotations.Language;
+
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Hourly and daily outbound caps per account and currency, checked in memory before a transfer reaches
+ * {@code wallet_pkg}.
+ * <p>
+ * Each account that sent something in the last day has a {@link Window}: two small rings of sums, twelve
+ * 5-minute slots for the hour and twenty-four 1-hour slots for the day. The windows slide a slot at a time,
+ * so a cap covers between 55 and 60 minutes (23 and 24 hours) of history. An accepted amount is reserved
+ * up front, so concurrent transfers cannot pass the same check twice, and handed back if the transfer is
+ * not posted.
+ * <p>
+ * The windows start from one streaming scan of the last day's debit postings, run by the first
+ * {@link #reserve} and again by every {@link #rebuild()}; debits posted outside {@code WalletService}
+ * (multi-leg, accruals) count too. {@link #start()} rebuilds and drops idle windows on a schedule, so the
+ * windows follow other nodes' postings and do not grow with every account that ever sent something. A
+ * rebuild replaces each window with what the scan read plus the reservations it could not have seen: those
+ * still in flight and those posted while it ran. Account statuses are read with it and must be kept current
+ * through {@link #statusChanged}.
+ * <p>
+ * The caps never fail a transfer for a reason of their own: until the first scan succeeds, transfers are
+ * admitted uncapped and the scan is retried by a transfer at most every five seconds.
+ * <p>
+ * The caps are enforced per node. Between rebuilds a node sees only its own reservations on top of what the
+ * last scan read, so with {@code n} nodes an account can send up to {@code n} times a cap within a window
+ * before the next rebuild pulls in the other nodes' postings. Route an account's transfers to one node, or
+ * rebuild often enough for that overshoot to be acceptable.
+ */
+@Singleton
+public class VelocityLimiter implements AutoCloseable {
+
+    private static final Logger LOGGER = Logger.getLogger(VelocityLimiter.class.getName());
+
+    static final long HOUR_SLOT_MILLIS = TimeUnit.MINUTES.toMillis(5);
+    static final int HOUR_SLOTS = 12;
+    static final long DAY_SLOT_MILLIS = TimeUnit.HOURS.toMillis(1);
+    static final int DAY_SLOTS = 24;
+    static final long LOAD_RETRY_MILLIS = TimeUnit.SECONDS.toMillis(5);
+
+    public static final Duration DEFAULT_REBUILD_INTERVAL = Duration.ofMinutes(1);
+
+    private static final String DEFAULT_STATUS = "ACTIVE";
+    private static final int FETCH_SIZE = 1_000;
+
+    @Language("SQL")
+    private static final String RECENT_DEBITS_SQL = QueryCatalog.register("VelocityLimiter.recentDebits",
+            "select ACCOUNT_ID, TS_CREATED, AMOUNT from WALLET_POSTING_V where SIDE = 'DEBIT' and TS_CREATED >= ?");
+
+    // few rows: almost every account is ACTIVE
+    @Language("SQL")
+    private static final String STATUSES_SQL = QueryCatalog.registerFullScan("VelocityLimiter.statuses",
+            "select ID, STATUS from WALLET_ACCOUNT where STATUS <> 'ACTIVE'");
+
+    private static final VelocityLimiter UNLIMITED = new VelocityLimiter(null, VelocityLimits.none(),
+            System::currentTimeMillis);
+
+    private final SqlTemplate sqlTemplate;
+    private final VelocityLimits limits;
+    private final LongSupplier clockMillis;
+    private final Map<Long, Window> windows = new ConcurrentHashMap<>();
+    private final Map<Long, String> statuses = new ConcurrentHashMap<>();
+    private volatile boolean loaded;
+    // no load is tried before this, after one failed
+    private volatile long nextLoadMillis;
+    // the rebuild in progress, 0 when none is
+    private volatile long rebuilding;
+    private long rebuilds;
+    private ScheduledExecutorService scheduler;
+
+    public VelocityLimiter(SqlTemplate sqlTemplate, VelocityLimits limits) {
+        this(sqlTemplate, limits, System::currentTimeMillis);
+    }
+
+    /**
+     * @param sqlTemplate where the windows are rebuilt from; {@code null} starts with empty windows
+     */
+    public VelocityLimiter(SqlTemplate sqlTemplate, VelocityLimits limits, LongSupplier clockMillis) {
+        this.sqlTemplate = sqlTemplate;
+        this.limits = limits;
+        this.clockMillis = clockMillis;
+        this.loaded = sqlTemplate == null || limits.isEmpty();
+    }
+
+    /**
+     * @return a limiter with no caps, which never touches the database
+     */
+    public static VelocityLimiter unlimited() {
+        return UNLIMITED;
+    }
+
+    /**
+     * Rebuild the windows and drop the idle ones every {@link #DEFAULT_REBUILD_INTERVAL}.
+     */
+    public void start() {
+        start(DEFAULT_REBUILD_INTERVAL);
+    }
+
+    /**
+     * Rebuild the windows now and every {@code interval} after, dropping the idle ones each time; a failed
+     * rebuild is logged and retried on the next one.
+     */
+    public synchronized void start(Duration interval) {
+        if (scheduler != null || sqlTemplate == null || limits.isEmpty()) {
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "velocity-rebuild");
+            t.setDaemon(true);
+            return t;
+        });
+        scheduler.scheduleWithFixedDelay(this::rebuildQuietly, 0, interval.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public synchronized void close() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            scheduler = null;
+        }
+    }
+
+    // a throwing task would cancel the schedule
+    private void rebuildQuietly() {
+        try {
+            rebuild();
+            purgeIdle();
+        } catch (RuntimeException e) {
+            LOGGER.log(Level.WARNING, "Velocity window rebuild failed", e);
+        }
+    }
+
+    /**
+     * Reserve {@code amount} of {@code currency} against the caps of {@code accountId}. Loads the windows
+     * first if no scan has succeeded yet, and admits uncapped if that fails.
+     *
+     * @throws AdmissionRejectedException ({@code VELOCITY_LIMITED}) if either cap would be exceeded
+     */
+    public Reservation reserve(long accountId, String currency, double amount) {
+        if (limits.isEmpty() || (!loaded && !load())) {
+            return Reservation.NONE;
+        }
+        VelocityLimits.Tier tier = limits.tier(statuses.getOrDefault(accountId, DEFAULT_STATUS), currency)
+                .orElse(null);
+        if (tier == null) {
+            return Reservation.NONE;
+        }
+        long now = clockMillis.getAsLong();
+        Reservation[] admitted = new Reservation[1];
+        // under the map's lock, so purgeIdle cannot drop the window between the check and the reservation
+        windows.compute(accountId, (id, existing) -> {
+            Window window = existing == null ? new Window() : existing;
+            Reservation reservation = new Reservation(this, window, now, amount);
+            if (window.tryAdd(now, reservation, tier)) {
+                admitted[0] = reservation;
+            }
+            return window;
+        });
+        if (admitted[0] == null) {
+            throw new AdmissionRejectedException(Reason.VELOCITY_LIMITED,
+                    "Outbound transfer limit reached for account " + accountId);
+        }
+        return admitted[0];
+    }
+
+    // the first scan, taken by whichever transfer gets here first; false to admit uncapped for now
+    private boolean load() {
+        if (clockMillis.getAsLong() < nextLoadMillis) {
+            return false;
+        }
+        synchronized (this) {
+            if (loaded) {
+                return true;
+            }
+            try {
+                rebuild();
+                return true;
+            } catch (RuntimeException e) {
+                nextLoadMillis = clockMillis.getAsLong() + LOAD_RETRY_MILLIS;
+                LOGGER.log(Level.WARNING, "Velocity windows could not be loaded; admitting uncapped", e);
+                return false;
+            }
+        }
+    }
+
+    public void statusChanged(long accountId, String status) {
+        if (DEFAULT_STATUS.equals(status)) {
+            statuses.remove(accountId);
+        } else {
+            statuses.put(accountId, status);
+        }
+    }
+
+    /**
+     * @return what {@code accountId} has sent in the current hour and day windows
+     */
+    public double[] outflow(long accountId) {
+        Window window = windows.get(accountId);
+        return window == null ? new double[2] : window.sums(clockMillis.getAsLong());
+    }
+
+    /**
+     * Reload statuses and windows from the database. Reservations the scan cannot have seen, in flight or
+     * posted while it ran, are carried over into the reloaded windows.
+     */
+    public synchronized void rebuild() {
+        long generation = ++rebuilds;
+        // from here on a posted reservation stays pending until its window is reloaded
+        rebuilding = generation;
+        try {
+            long now = clockMillis.getAsLong();
+            Map<Long, Window> scanned = new HashMap<>();
+            long rows = sqlTemplate.forEach(RECENT_DEBITS_SQL, FETCH_SIZE,
+                    rs -> scanned.computeIfAbsent(rs.getLong(1), id -> new Window())
+                            .add(rs.getTimestamp(2).getTime(), now, rs.getDouble(3)),
+                    new Timestamp(now - DAY_SLOTS * DAY_SLOT_MILLIS));
+            Map<Long, String> nonDefault = new HashMap<>();
+            sqlTemplate.forEach(STATUSES_SQL, FETCH_SIZE, rs -> nonDefault.put(rs.getLong(1), rs.getString(2)));
+
+            statuses.keySet().retainAll(nonDefault.keySet());
+            statuses.putAll(nonDefault);
+            for (Long accountId : windows.keySet()) {
+                scanned.putIfAbsent(accountId, null);
+            }
+            for (Map.Entry<Long, Window> e : scanned.entrySet()) {
+                windows.compute(e.getKey(), (id, existing) -> {
+                    Window window = existing == null ? new Window() : existing;
+                    window.reload(e.getValue(), now, generation);
+                    return window;
+                });
+            }
+            loaded = true;
+            LOGGER.info(() -> "Velocity windows rebuilt from " + rows + " debits for " + scanned.size() + " accounts");
+        } finally {
+            rebuilding = 0;
+            // windows created while the scan ran were not reloaded and already hold what was posted to them
+            for (Window window : windows.values()) {
+                window.dropPosted();
+            }
+        }
+    }
+
+    /**
+     * Drop the windows of accounts that sent nothing in the last day and have nothing in flight.
+     */
+    public void purgeIdle() {
+        long now = clockMillis.getAsLong();
+        for (Long accountId : windows.keySet()) {
+            windows.computeIfPresent(accountId, (id, window) -> window.isIdle(now) ? null : window);
+        }
+    }
+
+    /**
+     * An accepted amount; {@link #cancel()} it if the transfer was not posted, or mark it
+     * {@link #posted()} once it was.
+     */
+    public static final class Reservation {
+        static final Reservation NONE = new Reservation(null, null, 0, 0);
+
+        private final VelocityLimiter limiter;
+        private final Window window;
+        private final long atMillis;
+        private final double amount;
+        // guarded by window
+        private boolean posted;
+
+        private Reservation(VelocityLimiter limiter, Window window, long atMillis, double amount) {
+            this.limiter = limiter;
+            this.window = window;
+            this.atMillis = atMillis;
+            this.amount = amount;
+        }
+
+        public void cancel() {
+            if (window != null) {
+                window.cancel(this);
+            }
+        }
+
+        public void posted() {
+            if (window != null) {
+                window.settle(this, limiter.rebuilding);
+            }
+        }
+    }
+
+    /**
+     * Sliding sums for one account. Slot {@code s} of a ring holds the amounts sent during the
+     * absolute slot number {@code s}; {@code newest} is the latest slot number written or cleared.
+     * {@code pending} are the reservations a rebuild's scan may not see: not yet settled, or posted
+     * while a rebuild that has not reached this window yet was running. A transfer committed just before
+     * the scan started but settled after it may be counted twice until the next rebuild; none is missed.
+     */
+    static final class Window {
+        private final double[] hour = new double[HOUR_SLOTS];
+        private final double[] day = new double[DAY_SLOTS];
+        private long newestHourSlot;
+        private long newestDaySlot;
+        private final List<Reservation> pending = new ArrayList<>();
+        private long reloadedBy;
+
+        synchronized boolean tryAdd(long now, Reservation reservation, VelocityLimits.Tier tier) {
+            advance(now);
+            double amount = reservation.amount;
+            if (sum(hour) + amount > tier.getHourlyCap() || sum(day) + amount > tier.getDailyCap()) {
+                return false;
+            }
+            hour[(int) (newestHourSlot % HOUR_SLOTS)] += amount;
+            day[(int) (newestDaySlot % DAY_SLOTS)] += amount;
+            pending.add(reservation);
+            return true;
+        }
+
+        synchronized void cancel(Reservation reservation) {
+            if (pending.remove(reservation)) {
+                remove(reservation.atMillis, reservation.amount);
+            }
+        }
+
+        synchronized void settle(Reservation reservation, long rebuilding) {
+            if (rebuilding != 0 && reloadedBy != rebuilding) {
+                reservation.posted = true;
+            } else {
+                pending.remove(reservation);
+            }
+        }
+
+        // take the sums a rebuild scanned (none if the account sent nothing) and add back what it missed
+        synchronized void reload(Window scanned, long now, long generation) {
+            if (scanned == null) {
+                Arrays.fill(hour, 0);
+                Arrays.fill(day, 0);
+                newestHourSlot = 0;
+                newestDaySlot = 0;
+            } else {
+                System.arraycopy(scanned.hour, 0, hour, 0, HOUR_SLOTS);
+                System.arraycopy(scanned.day, 0, day, 0, DAY_SLOTS);
+                newestHourSlot = scanned.newestHourSlot;
+                newestDaySlot = scanned.newestDaySlot;
+            }
+            advance(now);
+            Iterator<Reservation> it = pending.iterator();
+            while (it.hasNext()) {
+                Reservation reservation = it.next();
+                add(reservation.atMillis, now, reservation.amount);
+                if (reservation.posted) {
+                    it.remove();
+                }
+            }
+            reloadedBy = generation;
+        }
+
+        synchronized void dropPosted() {
+            pending.removeIf(reservation -> reservation.posted);
+        }
+
+        synchronized void add(long at, long now, double amount) {
+            advance(Math.max(at, now));
+            long hourSlot = at / HOUR_SLOT_MILLIS;
+            if (hourSlot > newestHourSlot - HOUR_SLOTS) {
+                hour[(int) (hourSlot % HOUR_SLOTS)] += amount;
+            }
+            long daySlot = at / DAY_SLOT_MILLIS;
+            if (daySlot > newestDaySlot - DAY_SLOTS) {
+                day[(int) (daySlot % DAY_SLOTS)] += amount;
+            }
+        }
+
+        synchronized void remove(long at, double amount) {
+            long hourSlot = at / HOUR_SLOT_MILLIS;
+            if (hourSlot > newestHourSlot - HOUR_SLOTS) {
+                hour[(int) (hourSlot % HOUR_SLOTS)] -= amount;
+            }
+            long daySlot = at / DAY_SLOT_MILLIS;
+            if (daySlot > newestDaySlot - DAY_SLOTS) {
+                day[(int) (daySlot % DAY_SLOTS)] -= amount;
+            }
+        }
+
+        synchronized double[] sums(long now) {
+            advance(now);
+            return new double[]{sum(hour), sum(day)};
+        }
+
+        synchronized boolean isIdle(long now) {
+            advance(now);
+            return sum(day) <= 0 && pending.isEmpty();
+        }
+
+        private void advance(long now) {
+            newestHourSlot = clear(hour, newestHourSlot, now / HOUR_SLOT_MILLIS);
+            newestDaySlot = clear(day, newestDaySlot, now / DAY_SLOT_MILLIS);
+        }
+
+        // zero the slots that fall out of the window when it moves up to slot 'to'
+        private static long clear(double[] ring, long from, long to) {
+            if (to <= from) {
+                return from;
+            }
+            long first = Math.max(from + 1, to - ring.length + 1);
+            for (long s = first; s <= to; s++) {
+                ring[(int) (s % ring.length)] = 0;
+            }
+            return to;
+        }
+
+        private static double sum(double[] ring) {
+            double total = 0;
+            for (double v : ring) {
+                total += v;
+            }
+            return total;
+        }
+    }
+}
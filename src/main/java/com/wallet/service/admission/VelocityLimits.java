@@ -0,0 +1,98 @@
+package com.wallet.service.admission;
+
+import javax.annotation.concurrent.Immutable;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Outbound caps per account status and currency: the most an account may send in any hour and in any day,
+ * in the currency of the transfer. A status and currency without a tier is not capped.
+ */
+@Immutable
+public final class VelocityLimits {
+
+    private static final VelocityLimits NONE = new VelocityLimits(Map.of());
+
+    private final Map<String, Tier> tiers;
+
+    private VelocityLimits(Map<String, Tier> tiers) {
+        this.tiers = Map.copyOf(tiers);
+    }
+
+    public static VelocityLimits none() {
+        return NONE;
+    }
+
+    /**
+     * Caps for ACTIVE accounts in the currencies whose amounts are of about the same size; other currencies
+     * need their own tiers, see {@link #parse}.
+     */
+    public static VelocityLimits defaults() {
+        return none()
+                .withTier("ACTIVE", "USD", 10_000, 50_000)
+                .withTier("ACTIVE", "EUR", 10_000, 50_000)
+                .withTier("ACTIVE", "GBP", 10_000, 50_000);
+    }
+
+    /**
+     * @param spec comma-separated {@code STATUS:CURRENCY:HOURLY:DAILY} tiers, e.g.
+     *             {@code ACTIVE:USD:10000:50000,VIP:USD:100000:500000}; blank for no caps
+     * @throws IllegalArgumentException if a tier is malformed
+     */
+    public static VelocityLimits parse(String spec) {
+        VelocityLimits limits = none();
+        for (String tier : spec.split(",")) {
+            if (tier.isBlank()) {
+                continue;
+            }
+            String[] parts = tier.trim().split(":");
+            if (parts.length != 4) {
+                throw new IllegalArgumentException("Velocity tier must be STATUS:CURRENCY:HOURLY:DAILY: " + tier);
+            }
+            limits = limits.withTier(parts[0].trim(), parts[1].trim(),
+                    Double.parseDouble(parts[2].trim()), Double.parseDouble(parts[3].trim()));
+        }
+        return limits;
+    }
+
+    public VelocityLimits withTier(String status, String currency, double hourlyCap, double dailyCap) {
+        if (hourlyCap < 0 || dailyCap < 0) {
+            throw new IllegalArgumentException("Caps must not be negative");
+        }
+        Map<String, Tier> next = new HashMap<>(tiers);
+        next.put(key(status, currency), new Tier(hourlyCap, dailyCap));
+        return new VelocityLimits(next);
+    }
+
+    public Optional<Tier> tier(String status, String currency) {
+        return Optional.ofNullable(tiers.get(key(status, currency)));
+    }
+
+    private static String key(String status, String currency) {
+        return status + "/" + currency;
+    }
+
+    public boolean isEmpty() {
+        return tiers.isEmpty();
+    }
+
+    @Immutable
+    public static final class Tier {
+        private final double hourlyCap;
+        private final double dailyCap;
+
+        private Tier(double hourlyCap, double dailyCap) {
+            this.hourlyCap = hourlyCap;
+            this.dailyCap = dailyCap;
+        }
+
+        public double getHourlyCap() {
+            return hourlyCap;
+        }
+
+        public double getDailyCap() {
+            return dailyCap;
+        }
+    }
+}
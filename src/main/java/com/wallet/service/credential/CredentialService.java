@@ -0,0 +1,223 @@
+package com.wallet.service.credential;
+
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import com.wallet.Exceptin.AdmissionRejectedException;
+import com.wallet.Exceptin.AdmissionRejectedException.Reason;
+import com.wallet.model.Account;
+import com.wallet.service.AccountService;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+/**
+ * Registers and authenticates accounts without letting password hashing compete with transfers.
+ * <p>
+ * Every hash and verification runs on a small dedicated pool with a bounded queue; when the queue is
+ * full the call is shed at once with {@link AdmissionRejectedException} ({@code OVERLOADED}) instead of
+ * queueing CPU work behind a login burst. The pool only hashes: the inserts and updates that follow a
+ * hash run on a separate executor, so a slow database cannot hold hashing threads. The work factor comes from {@link PasswordHasher}, calibrated
+ * when the service starts; hashes made with less work are upgraded on the next successful login.
+ * Email lookups for display go through a short-TTL cache that holds accounts without their password
+ * hash, so a stale entry on one node can never let a changed password in. Authentication always reads
+ * the account from the database, and an unknown email still costs one verification, so known and
+ * unknown emails take the same path.
+ */
+@Singleton
+public class CredentialService implements AutoCloseable {
+
+    public static final int DEFAULT_QUEUE_LIMIT = 64;
+    public static final Duration DEFAULT_CACHE_TTL = Duration.ofSeconds(30);
+    public static final int DEFAULT_MAX_CACHED = 10_000;
+
+    private final AccountService accountService;
+    private final PasswordHasher hasher;
+    private final ThreadPoolExecutor executor;
+    private final Executor databaseExecutor;
+    private final long ttlNanos;
+    private final int maxCached;
+    private final LongSupplier nanoClock;
+    private final Map<String, CachedAccount> byEmail = new ConcurrentHashMap<>();
+    private final String unknownAccountHash;
+
+    private final LongAdder shed = new LongAdder();
+
+    @Inject
+    public CredentialService(AccountService accountService) {
+        // a quarter of the cores at most, so logins can never take more than that from transfers
+        this(accountService, PasswordHasher.DEFAULT, Math.max(1, Runtime.getRuntime().availableProcessors() / 4),
+                DEFAULT_QUEUE_LIMIT, DEFAULT_CACHE_TTL);
+    }
+
+    public CredentialService(AccountService accountService, PasswordHasher hasher, int threads, int queueLimit,
+                             Duration cacheTtl) {
+        this(accountService, calibrated(hasher), hashingPool(threads, queueLimit), cacheTtl, DEFAULT_MAX_CACHED,
+                System::nanoTime);
+    }
+
+    CredentialService(AccountService accountService, PasswordHasher hasher, ThreadPoolExecutor executor,
+                      Duration cacheTtl, int maxCached, LongSupplier nanoClock) {
+        this(accountService, hasher, executor, Executors.newVirtualThreadPerTaskExecutor(), cacheTtl, maxCached,
+                nanoClock);
+    }
+
+    CredentialService(AccountService accountService, PasswordHasher hasher, ThreadPoolExecutor executor,
+                      Executor databaseExecutor, Duration cacheTtl, int maxCached, LongSupplier nanoClock) {
+        this.accountService = accountService;
+        this.hasher = hasher;
+        this.executor = executor;
+        this.databaseExecutor = databaseExecutor;
+        this.ttlNanos = cacheTtl.toNanos();
+        this.maxCached = maxCached;
+        this.nanoClock = nanoClock;
+        this.unknownAccountHash = hasher.hash("unknown-account".toCharArray());
+    }
+
+    private static PasswordHasher calibrated(PasswordHasher hasher) {
+        hasher.calibrate();
+        return hasher;
+    }
+
+    private static ThreadPoolExecutor hashingPool(int threads, int queueLimit) {
+        return new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(queueLimit),
+                Thread.ofPlatform().name("credential-hash-", 0).daemon().factory(),
+                new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    /**
+     * Hash {@code password} and insert {@code account} with it; any password already on {@code account}
+     * is ignored.
+     *
+     * @throws AdmissionRejectedException if the hashing queue is full
+     */
+    public CompletableFuture<Account> register(Account account, char[] password) {
+        char[] secret = password.clone();
+        return submit(() -> {
+            try {
+                return hasher.hash(secret);
+            } finally {
+                Arrays.fill(secret, '\0');
+            }
+        }).thenApplyAsync(hash -> accountService.addAccount(account.withPassword(hash)), databaseExecutor);
+    }
+
+    /**
+     * @return the account if {@code password} matches, empty if it does not or the email is unknown
+     * @throws AdmissionRejectedException if the hashing queue is full
+     */
+    public CompletableFuture<Optional<Account>> authenticate(String email, char[] password) {
+        Optional<Account> account = accountService.findByEmail(email);
+        String stored = account.map(Account::getPassword).orElse(unknownAccountHash);
+        char[] secret = password.clone();
+        // the hash to keep for the account: stored, or an upgrade of it; empty if the password does not match
+        CompletableFuture<Optional<String>> verified = submit(() -> {
+            try {
+                if (!hasher.verify(secret, stored) || account.isEmpty()) {
+                    return Optional.<String>empty();
+                }
+                return Optional.of(hasher.needsRehash(stored) ? hasher.hash(secret) : stored);
+            } finally {
+                Arrays.fill(secret, '\0');
+            }
+        });
+        return verified.thenCompose(hash -> {
+            if (hash.isEmpty() || hash.get().equals(stored)) {
+                return CompletableFuture.completedFuture(hash.isEmpty() ? Optional.<Account>empty() : account);
+            }
+            return CompletableFuture.supplyAsync(() -> {
+                accountService.updatePassword(account.get().getId(), hash.get());
+                return Optional.of(account.get().withPassword(hash.get()));
+            }, databaseExecutor);
+        });
+    }
+
+    /**
+     * Account by email without its password hash; hits are cached for the TTL, misses always go to the
+     * database. Use {@link #authenticate} to check a password.
+     */
+    public Optional<Account> findByEmail(String email) {
+        long now = nanoClock.getAsLong();
+        CachedAccount cached = byEmail.get(email);
+        if (cached != null && cached.expiresAt - now > 0) {
+            return Optional.of(cached.account);
+        }
+        Optional<Account> account = accountService.findByEmail(email).map(found -> found.withPassword(null));
+        if (account.isPresent()) {
+            byEmail.put(email, new CachedAccount(account.get(), now + ttlNanos));
+            evictIfFull(now);
+        } else {
+            byEmail.remove(email);
+        }
+        return account;
+    }
+
+    public void invalidate(String email) {
+        byEmail.remove(email);
+    }
+
+    /**
+     * @return calls shed because the hashing queue was full
+     */
+    public long getShedCount() {
+        return shed.sum();
+    }
+
+    public int getQueueDepth() {
+        return executor.getQueue().size();
+    }
+
+    @Override
+    public void close() {
+        executor.shutdown();
+    }
+
+    private <T> CompletableFuture<T> submit(Supplier<T> work) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        try {
+            executor.execute(() -> {
+                try {
+                    result.complete(work.get());
+                } catch (RuntimeException e) {
+                    result.completeExceptionally(e);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            shed.increment();
+            throw new AdmissionRejectedException(Reason.OVERLOADED, "Credential hashing capacity exceeded, retry later");
+        }
+        return result;
+    }
+
+    private void evictIfFull(long now) {
+        if (byEmail.size() <= maxCached) {
+            return;
+        }
+        byEmail.values().removeIf(cached -> cached.expiresAt - now <= 0);
+        if (byEmail.size() > maxCached) {
+            byEmail.clear();
+        }
+    }
+
+    private static final class CachedAccount {
+        final Account account;
+        final long expiresAt;
+
+        CachedAccount(Account account, long expiresAt) {
+            this.account = account;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
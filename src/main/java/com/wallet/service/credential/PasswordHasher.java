@@ -0,0 +1,122 @@
+package com.wallet.service.credential;
+
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.PBEKeySpec;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.time.Duration;
+import java.util.Base64;
+
+/**
+ * PBKDF2-HMAC-SHA256 password hashes in the form {@code pbkdf2-sha256$<iterations>$<salt>$<hash>}.
+ * <p>
+ * The work factor is adaptive: {@link #calibrate()} measures this machine and picks the iteration count
+ * that makes one hash take about {@code targetTime}, clamped to {@code [minIterations, maxIterations]}.
+ * Each hash records its own iteration count, so older hashes keep verifying and
+ * {@link #needsRehash} tells the caller when to upgrade one.
+ */
+public class PasswordHasher {
+
+    // OWASP's floor for PBKDF2-HMAC-SHA256
+    public static final PasswordHasher DEFAULT = new PasswordHasher(Duration.ofMillis(100), 600_000, 5_000_000);
+
+    private static final String ALGORITHM = "PBKDF2WithHmacSHA256";
+    private static final String PREFIX = "pbkdf2-sha256";
+    private static final int SALT_BYTES = 16;
+    private static final int HASH_BITS = 256;
+    private static final int PROBE_ITERATIONS = 20_000;
+
+    private static final SecureRandom RANDOM = new SecureRandom();
+    private static final Base64.Encoder ENCODER = Base64.getEncoder().withoutPadding();
+    private static final Base64.Decoder DECODER = Base64.getDecoder();
+
+    private final long targetNanos;
+    private final int minIterations;
+    private final int maxIterations;
+    private volatile int iterations;
+
+    public PasswordHasher(Duration targetTime, int minIterations, int maxIterations) {
+        if (minIterations < 1 || maxIterations < minIterations) {
+            throw new IllegalArgumentException("Need 1 <= minIterations <= maxIterations");
+        }
+        this.targetNanos = targetTime.toNanos();
+        this.minIterations = minIterations;
+        this.maxIterations = maxIterations;
+        this.iterations = minIterations;
+    }
+
+    /**
+     * Re-measure the cost of one iteration and set the work factor for new hashes.
+     *
+     * @return the new iteration count
+     */
+    public int calibrate() {
+        long best = Long.MAX_VALUE;
+        char[] probe = "calibration".toCharArray();
+        byte[] salt = new byte[SALT_BYTES];
+        for (int i = 0; i < 3; i++) {
+            long start = System.nanoTime();
+            derive(probe, salt, PROBE_ITERATIONS);
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        double perIteration = Math.max(1, best) / (double) PROBE_ITERATIONS;
+        iterations = (int) Math.max(minIterations, Math.min(maxIterations, targetNanos / perIteration));
+        return iterations;
+    }
+
+    /**
+     * @return the iteration count used for new hashes
+     */
+    public int getIterations() {
+        return iterations;
+    }
+
+    public String hash(char[] password) {
+        byte[] salt = new byte[SALT_BYTES];
+        RANDOM.nextBytes(salt);
+        int work = iterations;
+        return PREFIX + '$' + work + '$' + ENCODER.encodeToString(salt) + '$'
+                + ENCODER.encodeToString(derive(password, salt, work));
+    }
+
+    /**
+     * Check {@code password} against an encoded hash in constant time. Malformed hashes never match.
+     */
+    public boolean verify(char[] password, String encoded) {
+        String[] parts = encoded == null ? null : encoded.split("\\$");
+        if (parts == null || parts.length != 4 || !PREFIX.equals(parts[0])) {
+            return false;
+        }
+        try {
+            int work = Integer.parseInt(parts[1]);
+            byte[] expected = DECODER.decode(parts[3]);
+            return work > 0 && MessageDigest.isEqual(expected, derive(password, DECODER.decode(parts[2]), work));
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    /**
+     * @return true if {@code encoded} was made with less work than new hashes get
+     */
+    public boolean needsRehash(String encoded) {
+        String[] parts = encoded.split("\\$");
+        try {
+            return parts.length != 4 || Integer.parseInt(parts[1]) < iterations;
+        } catch (NumberFormatException e) {
+            return true;
+        }
+    }
+
+    private static byte[] derive(char[] password, byte[] salt, int iterations) {
+        PBEKeySpec spec = new PBEKeySpec(password, salt, iterations, HASH_BITS);
+        try {
+            return SecretKeyFactory.getInstance(ALGORITHM).generateSecret(spec).getEncoded();
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(ALGORITHM + " is not available", e);
+        } finally {
+            spec.clearPassword();
+        }
+    }
+}
@@ -0,0 +1,205 @@
+package com.wallet.service.fx;
+
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import com.wallet.Exceptin.SQLRuntimeException;
+import com.wallet.database.plan.QueryCatalog;
+import com.wallet.database.util.SqlTemplate;
+import com.wallet.model.FxRate;
+import org.intellij.lang.annotations.Language;
+
+import java.math.BigDecimal;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * The latest rate of every currency pair in WALLET_FX_RATE, held in an immutable {@link Snapshot}.
+ * <p>
+ * Readers take the current snapshot from a volatile field and never lock. {@link #refresh()} reads the
+ * latest row of every pair and swaps in a new snapshot if any of them changed; refreshes and publishes are
+ * serialised, so no update is lost. It does not read only the versions above the snapshot's: each instance
+ * takes RATE_VERSIONs from its own cached block of WALLET_FX_RATE_SEQ, so a rate can commit after one with
+ * a higher version and would be skipped. A transfer posts with the version of the
+ * rate it was quoted, so a swap in the middle of a transfer changes nothing for it.
+ * <p>
+ * Rates published by other processes are only seen after the next {@link #refresh()}, which {@link #start()}
+ * runs every refresh interval. {@code wallet_pkg.transfer_fx} refuses a rate version once a newer rate of
+ * the pair has been published for longer than its grace period (30 seconds), so the interval must stay
+ * well below that.
+ */
+@Singleton
+public class FxRateCache implements AutoCloseable {
+
+    private static final Logger LOGGER = Logger.getLogger(FxRateCache.class.getName());
+
+    public static final Duration DEFAULT_REFRESH_INTERVAL = Duration.ofSeconds(1);
+
+    // the table is small and the correlated max is served by ix_fx_rate_pair; read by every refresh
+    @Language("SQL")
+    private static final String LATEST_RATES_SQL = QueryCatalog.registerFullScan("FxRateCache.latestRates",
+            "select r.RATE_VERSION, r.BASE_CCY, r.QUOTE_CCY, r.RATE from WALLET_FX_RATE r "
+                    + "where r.RATE_VERSION = (select max(m.RATE_VERSION) from WALLET_FX_RATE m "
+                    + "where m.BASE_CCY = r.BASE_CCY and m.QUOTE_CCY = r.QUOTE_CCY)");
+
+    @Language("SQL")
+    private static final String INSERT_SQL =
+            "insert into WALLET_FX_RATE (BASE_CCY, QUOTE_CCY, RATE) values (?, ?, ?)";
+
+    private final SqlTemplate sqlTemplate;
+    private volatile Snapshot snapshot;
+    private ScheduledExecutorService refresher;
+
+    @Inject
+    public FxRateCache(SqlTemplate sqlTemplate) {
+        this.sqlTemplate = sqlTemplate;
+    }
+
+    /**
+     * @return the latest rate between {@code fromCurrency} and {@code toCurrency}, quoted in either
+     * direction; the newer one if both directions were published
+     */
+    public Optional<FxRate> quote(String fromCurrency, String toCurrency) {
+        Snapshot current = current();
+        FxRate direct = current.rates.get(pair(fromCurrency, toCurrency));
+        FxRate inverse = current.rates.get(pair(toCurrency, fromCurrency));
+        if (direct == null) {
+            return Optional.ofNullable(inverse);
+        }
+        return Optional.of(inverse == null || direct.getVersion() > inverse.getVersion() ? direct : inverse);
+    }
+
+    /**
+     * Store a new rate for {@code baseCurrency}/{@code quoteCurrency} and make it visible to readers.
+     *
+     * @return the published rate with its version
+     */
+    public synchronized FxRate publish(String baseCurrency, String quoteCurrency, BigDecimal rate) {
+        long version = sqlTemplate.insertAndGetKey(INSERT_SQL, "RATE_VERSION", baseCurrency, quoteCurrency, rate)
+                .orElseThrow(() -> new SQLRuntimeException("No rate version generated for "
+                        + baseCurrency + "/" + quoteCurrency));
+        refresh();
+        return new FxRate(version, baseCurrency, quoteCurrency, rate);
+    }
+
+    /**
+     * Load the latest rate of each pair and make it visible if any pair's rate changed.
+     */
+    public synchronized void refresh() {
+        List<FxRate> rows = sqlTemplate.select(LATEST_RATES_SQL, FxRateCache::mapRate);
+        Snapshot current = snapshot;
+
+        Map<String, FxRate> rates = new HashMap<>();
+        long version = 0;
+        boolean changed = current == null || current.rates.size() != rows.size();
+        for (FxRate rate : rows) {
+            String pair = pair(rate.getBaseCurrency(), rate.getQuoteCurrency());
+            rates.put(pair, rate);
+            version = Math.max(version, rate.getVersion());
+            FxRate previous = current == null ? null : current.rates.get(pair);
+            changed |= previous == null || previous.getVersion() != rate.getVersion();
+        }
+        if (!changed) {
+            return;
+        }
+        snapshot = new Snapshot(version, rates);
+
+        long loaded = version;
+        LOGGER.fine(() -> "FX rates at version " + loaded + ": " + rows.size() + " pairs loaded");
+    }
+
+    /**
+     * Load the rates now and refresh them every {@link #DEFAULT_REFRESH_INTERVAL}.
+     */
+    public void start() {
+        start(DEFAULT_REFRESH_INTERVAL);
+    }
+
+    /**
+     * Load the rates now and refresh them every {@code interval}; a failed refresh is logged and retried
+     * on the next one.
+     */
+    public void start(Duration interval) {
+        refresh();
+        synchronized (this) {
+            if (refresher != null) {
+                return;
+            }
+            refresher = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "fx-rate-refresh");
+                t.setDaemon(true);
+                return t;
+            });
+            refresher.scheduleWithFixedDelay(this::refreshQuietly, interval.toMillis(), interval.toMillis(),
+                    TimeUnit.MILLISECONDS);
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        if (refresher != null) {
+            refresher.shutdownNow();
+            refresher = null;
+        }
+    }
+
+    // a throwing task would cancel the schedule
+    private void refreshQuietly() {
+        try {
+            refresh();
+        } catch (RuntimeException e) {
+            LOGGER.log(Level.WARNING, "FX rate refresh failed", e);
+        }
+    }
+
+    /**
+     * @return the snapshot readers currently see
+     */
+    public Snapshot current() {
+        Snapshot current = snapshot;
+        if (current == null) {
+            refresh();
+            current = snapshot;
+        }
+        return current;
+    }
+
+    private static FxRate mapRate(ResultSet rs) throws SQLException {
+        return new FxRate(rs.getLong(1), rs.getString(2), rs.getString(3), rs.getBigDecimal(4));
+    }
+
+    private static String pair(String baseCurrency, String quoteCurrency) {
+        return baseCurrency + "/" + quoteCurrency;
+    }
+
+    /**
+     * Every pair's latest rate as of {@link #getVersion()}, the highest RATE_VERSION applied.
+     */
+    public static final class Snapshot {
+        private final long version;
+        private final Map<String, FxRate> rates;
+
+        private Snapshot(long version, Map<String, FxRate> rates) {
+            this.version = version;
+            this.rates = Collections.unmodifiableMap(rates);
+        }
+
+        public long getVersion() {
+            return version;
+        }
+
+        public int size() {
+            return rates.size();
+        }
+    }
+}
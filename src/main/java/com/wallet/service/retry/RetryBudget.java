@@ -0,0 +1,86 @@
+package com.wallet.service.retry;
+
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Caps retries to a fraction of the calls seen in the current time window (plus a small floor),
+ * so that during an outage retries cannot multiply the load on the database.
+ * <p>
+ * The budget is state shared by whoever spends it: Guice binds one instance per injector, and a
+ * {@link TransferRetrier} built by hand gets a budget of its own.
+ */
+@Singleton
+public class RetryBudget {
+
+    public static final Duration DEFAULT_WINDOW = Duration.ofSeconds(10);
+    public static final double DEFAULT_RETRY_RATIO = 0.1;
+    public static final long DEFAULT_MIN_RETRIES_PER_WINDOW = 10;
+
+    private final long windowNanos;
+    private final double retryRatio;
+    private final long minRetriesPerWindow;
+    private final AtomicReference<Window> current;
+
+    @Inject
+    public RetryBudget() {
+        this(DEFAULT_WINDOW, DEFAULT_RETRY_RATIO, DEFAULT_MIN_RETRIES_PER_WINDOW);
+    }
+
+    public RetryBudget(Duration window, double retryRatio, long minRetriesPerWindow) {
+        this.windowNanos = window.toNanos();
+        this.retryRatio = retryRatio;
+        this.minRetriesPerWindow = minRetriesPerWindow;
+        this.current = new AtomicReference<>(new Window(System.nanoTime()));
+    }
+
+    /**
+     * Record a first attempt; every call earns {@code retryRatio} retries for the window.
+     */
+    public void recordCall() {
+        window().calls.incrementAndGet();
+    }
+
+    /**
+     * Try to spend one retry from the budget.
+     *
+     * @return false when the window's budget is exhausted and the caller should give up
+     */
+    public boolean tryAcquireRetry() {
+        Window w = window();
+        long allowed = Math.max(minRetriesPerWindow, (long) (w.calls.get() * retryRatio));
+        while (true) {
+            long used = w.retries.get();
+            if (used >= allowed) {
+                return false;
+            }
+            if (w.retries.compareAndSet(used, used + 1)) {
+                return true;
+            }
+        }
+    }
+
+    private Window window() {
+        Window w = current.get();
+        long now = System.nanoTime();
+        if (now - w.startNanos < windowNanos) {
+            return w;
+        }
+        Window fresh = new Window(now);
+        return current.compareAndSet(w, fresh) ? fresh : current.get();
+    }
+
+    private static final class Window {
+        final long startNanos;
+        final AtomicLong calls = new AtomicLong();
+        final AtomicLong retries = new AtomicLong();
+
+        Window(long startNanos) {
+            this.startNanos = startNanos;
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package com.wallet.service.retry;
+
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Exponential backoff with full jitter: the delay before attempt {@code n} is drawn uniformly
+ * from {@code [0, min(maxDelay, baseDelay * 2^(n-1))]}, so retrying callers spread out
+ * instead of hitting the database again in lock-step.
+ */
+public class RetryPolicy {
+
+    public static final RetryPolicy DEFAULT = new RetryPolicy(4, Duration.ofMillis(20), Duration.ofMillis(1000));
+
+    private final int maxAttempts;
+    private final long baseDelayNanos;
+    private final long maxDelayNanos;
+
+    public RetryPolicy(int maxAttempts, Duration baseDelay, Duration maxDelay) {
+        if (maxAttempts < 1) {
+            throw new IllegalArgumentException("maxAttempts must be at least 1");
+        }
+        this.maxAttempts = maxAttempts;
+        this.baseDelayNanos = baseDelay.toNanos();
+        this.maxDelayNanos = maxDelay.toNanos();
+    }
+
+    public int getMaxAttempts() {
+        return maxAttempts;
+    }
+
+    /**
+     * @param retry 1 for the first retry, 2 for the second, ...
+     * @return how long to sleep before that retry, in nanoseconds
+     */
+    public long delayNanos(int retry) {
+        if (baseDelayNanos <= 0 || maxDelayNanos <= 0) {
+            return 0;
+        }
+        int shift = Math.min(retry - 1, 30);
+        long ceiling = baseDelayNanos > (maxDelayNanos >> shift) ? maxDelayNanos : baseDelayNanos << shift;
+        return ThreadLocalRandom.current().nextLong(ceiling + 1);
+    }
+}
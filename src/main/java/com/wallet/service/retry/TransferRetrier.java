@@ -0,0 +1,102 @@
+package com.wallet.service.retry;
+
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import com.wallet.Exceptin.SQLRuntimeException;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Re-runs an idempotent database call when it fails with a transient Oracle error.
+ * Transfers are keyed by REQUEST_ID, so re-submitting one that may already have committed is safe:
+ * wallet_pkg returns without posting twice.
+ */
+@Singleton
+public class TransferRetrier {
+
+    private final RetryPolicy policy;
+    private final RetryBudget budget;
+
+    private final LongAdder calls = new LongAdder();
+    private final LongAdder retries = new LongAdder();
+    private final LongAdder exhausted = new LongAdder();
+    private final LongAdder budgetRejections = new LongAdder();
+
+    public TransferRetrier() {
+        this(new RetryBudget());
+    }
+
+    @Inject
+    public TransferRetrier(RetryBudget budget) {
+        this(RetryPolicy.DEFAULT, budget);
+    }
+
+    public TransferRetrier(RetryPolicy policy, RetryBudget budget) {
+        this.policy = policy;
+        this.budget = budget;
+    }
+
+    /**
+     * Run {@code call}, retrying transient failures with jittered exponential backoff.
+     * Non-retryable failures, and the last failure once attempts or budget run out, are rethrown as-is.
+     */
+    public void run(Runnable call) {
+        calls.increment();
+        budget.recordCall();
+
+        int attempt = 1;
+        while (true) {
+            try {
+                call.run();
+                return;
+            } catch (SQLRuntimeException e) {
+                if (!TransientErrorClassifier.isRetryable(e)) {
+                    throw e;
+                }
+                if (attempt >= policy.getMaxAttempts()) {
+                    exhausted.increment();
+                    throw e;
+                }
+                if (!budget.tryAcquireRetry()) {
+                    budgetRejections.increment();
+                    throw e;
+                }
+                if (!sleep(policy.delayNanos(attempt))) {
+                    throw e;
+                }
+                retries.increment();
+                attempt++;
+            }
+        }
+    }
+
+    private boolean sleep(long nanos) {
+        if (nanos <= 0) {
+            return true;
+        }
+        try {
+            TimeUnit.NANOSECONDS.sleep(nanos);
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    public long getCallCount() {
+        return calls.sum();
+    }
+
+    public long getRetryCount() {
+        return retries.sum();
+    }
+
+    public long getExhaustedCount() {
+        return exhausted.sum();
+    }
+
+    public long getBudgetRejectionCount() {
+        return budgetRejections.sum();
+    }
+}
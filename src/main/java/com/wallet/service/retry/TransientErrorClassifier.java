@@ -0,0 +1,54 @@
+package com.wallet.service.retry;
+
+import com.wallet.Exceptin.SQLRuntimeException;
+
+import java.sql.SQLException;
+import java.sql.SQLRecoverableException;
+import java.sql.SQLTransientException;
+import java.util.Set;
+
+/**
+ * Decides whether a failed database call may be retried.
+ * Only errors that leave no partial work behind (the statement was rolled back or never ran)
+ * are retryable; business errors raised by wallet_pkg (-20xxx) are always fatal.
+ */
+public final class TransientErrorClassifier {
+
+    private static final Set<Integer> RETRYABLE_CODES = Set.of(
+            60,     // ORA-00060 deadlock detected while waiting for resource
+            8177,   // ORA-08177 can't serialize access for this transaction
+            54,     // ORA-00054 resource busy and acquire with NOWAIT specified
+            30006,  // ORA-30006 resource busy; acquire with WAIT timeout expired
+            2049,   // ORA-02049 timeout: distributed transaction waiting for lock
+            3113,   // ORA-03113 end-of-file on communication channel
+            3114,   // ORA-03114 not connected to ORACLE
+            3135,   // ORA-03135 connection lost contact
+            12514,  // ORA-12514 listener does not currently know of service
+            12541,  // ORA-12541 no listener
+            17002,  // JDBC IO error / connection reset
+            17008,  // JDBC closed connection
+            17410   // JDBC no more data to read from socket
+    );
+
+    private TransientErrorClassifier() {
+    }
+
+    public static boolean isRetryable(Throwable failure) {
+        Throwable cause = failure instanceof SQLRuntimeException ? failure.getCause() : failure;
+        if (!(cause instanceof SQLException)) {
+            return false;
+        }
+        SQLException e = (SQLException) cause;
+        if (e.getErrorCode() >= 20000 && e.getErrorCode() <= 20999) {
+            return false;
+        }
+        if (RETRYABLE_CODES.contains(e.getErrorCode())) {
+            return true;
+        }
+        if (e instanceof SQLTransientException || e instanceof SQLRecoverableException) {
+            return true;
+        }
+        // SQLState class 08 = connection exception
+        return e.getSQLState() != null && e.getSQLState().startsWith("08");
+    }
+}
@@ -0,0 +1,74 @@
+package com.wallet.service.statement;
+
+import com.wallet.model.JournalEntry;
+import com.wallet.model.Leg;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+
+/**
+ * Compact big-endian statement encoding.
+ * <pre>
+ * header : int magic 'WSTM', byte version, long accountId, long fromMicros, long toMicros, decimal opening
+ * line   : byte 1, long entryId, long tsMicros, byte side (0 debit, 1 credit), decimal amount,
+ *          decimal balance, utf requestId
+ * trailer: byte 0, long lines, decimal closing
+ * decimal: byte scale, byte length, two's-complement unscaled value
+ * </pre>
+ */
+public class BinaryStatementWriter implements StatementWriter {
+
+    public static final int MAGIC = 0x5753544D;
+    public static final byte VERSION = 1;
+
+    private final DataOutputStream out;
+
+    public BinaryStatementWriter(OutputStream out) {
+        this.out = new DataOutputStream(new BufferedOutputStream(out, 8192));
+    }
+
+    @Override
+    public void begin(long accountId, Instant from, Instant to, BigDecimal openingBalance) throws IOException {
+        out.writeInt(MAGIC);
+        out.writeByte(VERSION);
+        out.writeLong(accountId);
+        out.writeLong(micros(from));
+        out.writeLong(micros(to));
+        writeDecimal(openingBalance);
+    }
+
+    @Override
+    public void line(JournalEntry entry, BigDecimal runningBalance) throws IOException {
+        out.writeByte(1);
+        out.writeLong(entry.getEntryId());
+        out.writeLong(micros(entry.getTsCreated()));
+        out.writeByte(entry.getSide() == Leg.Side.CREDIT ? 1 : 0);
+        writeDecimal(entry.getAmount());
+        writeDecimal(runningBalance);
+        out.writeUTF(entry.getRequestId());
+    }
+
+    @Override
+    public void end(BigDecimal closingBalance, long lines) throws IOException {
+        out.writeByte(0);
+        out.writeLong(lines);
+        writeDecimal(closingBalance);
+        out.flush();
+    }
+
+    private void writeDecimal(BigDecimal value) throws IOException {
+        byte[] unscaled = value.unscaledValue().toByteArray();
+        out.writeByte(value.scale());
+        out.writeByte(unscaled.length);
+        out.write(unscaled);
+    }
+
+    private static long micros(Instant instant) {
+        return ChronoUnit.MICROS.between(Instant.EPOCH, instant);
+    }
+}
@@ -0,0 +1,75 @@
+package com.wallet.service.statement;
+
+import com.wallet.model.JournalEntry;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+
+/**
+ * RFC 4180 CSV: one header row, an opening-balance row, one row per posting and a closing-balance row.
+ */
+public class CsvStatementWriter implements StatementWriter {
+
+    private final Writer out;
+
+    public CsvStatementWriter(OutputStream out) {
+        this.out = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), 8192);
+    }
+
+    @Override
+    public void begin(long accountId, Instant from, Instant to, BigDecimal openingBalance) throws IOException {
+        out.write("entry_id,ts_created,request_id,side,amount,currency,balance,description\r\n");
+        out.write(",");
+        out.write(from.toString());
+        out.write(",,OPENING,,,");
+        out.write(openingBalance.toPlainString());
+        out.write(",\r\n");
+    }
+
+    @Override
+    public void line(JournalEntry entry, BigDecimal runningBalance) throws IOException {
+        out.write(Long.toString(entry.getEntryId()));
+        out.write(',');
+        out.write(entry.getTsCreated().toString());
+        out.write(',');
+        writeField(entry.getRequestId());
+        out.write(',');
+        out.write(entry.getSide().name());
+        out.write(',');
+        out.write(entry.getAmount().toPlainString());
+        out.write(',');
+        out.write(entry.getCurrency());
+        out.write(',');
+        out.write(runningBalance.toPlainString());
+        out.write(',');
+        writeField(entry.getDescription());
+        out.write("\r\n");
+    }
+
+    @Override
+    public void end(BigDecimal closingBalance, long lines) throws IOException {
+        out.write(",,,CLOSING,,,");
+        out.write(closingBalance.toPlainString());
+        out.write(",\r\n");
+        out.flush();
+    }
+
+    private void writeField(String value) throws IOException {
+        if (value == null) {
+            return;
+        }
+        if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0 && value.indexOf('\r') < 0) {
+            out.write(value);
+            return;
+        }
+        out.write('"');
+        out.write(value.replace("\"", "\"\""));
+        out.write('"');
+    }
+}
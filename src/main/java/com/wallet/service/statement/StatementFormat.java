@@ -0,0 +1,20 @@
+package com.wallet.service.statement;
+
+import java.io.OutputStream;
+
+public enum StatementFormat {
+    CSV {
+        @Override
+        public StatementWriter newWriter(OutputStream out) {
+            return new CsvStatementWriter(out);
+        }
+    },
+    BINARY {
+        @Override
+        public StatementWriter newWriter(OutputStream out) {
+            return new BinaryStatementWriter(out);
+        }
+    };
+
+    public abstract StatementWriter newWriter(OutputStream out);
+}
@@ -0,0 +1,252 @@
+package com.wallet.service.statement;
+
+import com.google.inject.Inject;
+import com.wallet.Exceptin.WalletException;
+import com.wallet.database.plan.QueryCatalog;
+import com.wallet.database.util.SqlTemplate;
+import com.wallet.model.JournalEntry;
+import com.wallet.model.Leg;
+import org.intellij.lang.annotations.Language;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Streams per-account statements out of WALLET_POSTING_V.
+ * <p>
+ * The account and time predicates reach ix_journal_account_ts and ix_transfer_from_ts / ix_transfer_to_ts
+ * through the view; the sums are answered from those indexes alone. Postings are read in timestamp order
+ * with a bounded fetch size and written straight to the caller's stream, so memory use does not depend on
+ * the number of postings.
+ * The running balance starts from an opening-balance anchor and is carried forward row by row.
+ */
+public class StatementService {
+
+    private static final Logger LOG = Logger.getLogger(StatementService.class.getName());
+    private static final int FETCH_SIZE = 500;
+
+    @Language("SQL")
+    private static final String SUM_BETWEEN_SQL = QueryCatalog.register("StatementService.sumBetween",
+            "select " +
+            "coalesce(sum(case when j.SIDE = 'CREDIT' then j.AMOUNT else -j.AMOUNT end), 0) " +
+            "from WALLET_POSTING_V j " +
+            "where j.ACCOUNT_ID = ? and j.TS_CREATED >= ? and j.TS_CREATED < ?");
+
+    @Language("SQL")
+    private static final String SUM_BEFORE_SQL = QueryCatalog.register("StatementService.sumBefore",
+            "select " +
+            "coalesce(sum(case when j.SIDE = 'CREDIT' then j.AMOUNT else -j.AMOUNT end), 0) " +
+            "from WALLET_POSTING_V j " +
+            "where j.ACCOUNT_ID = ? and j.TS_CREATED < ?");
+
+    // the three branches of the view are merged with a sort; ENTRY_ID keeps postings of one instant in order
+    @Language("SQL")
+    private static final String POSTINGS_SQL = QueryCatalog.register("StatementService.postings",
+            "select " +
+            "j.ENTRY_ID, j.REQUEST_ID, j.TS_CREATED, j.POSTING_SEQ, j.CURRENCY, j.AMOUNT, j.SIDE, j.DESCRIPTION " +
+            "from WALLET_POSTING_V j " +
+            "where j.ACCOUNT_ID = ? and j.TS_CREATED >= ? and j.TS_CREATED < ? " +
+            "order by j.TS_CREATED, j.ENTRY_ID");
+
+    private final SqlTemplate sqlTemplate;
+
+    @Inject
+    public StatementService(SqlTemplate sqlTemplate) {
+        this.sqlTemplate = sqlTemplate;
+    }
+
+    /**
+     * Write the statement for {@code [from, to)} computing the opening balance from the full journal history.
+     */
+    public StatementSummary writeStatement(long accountId, Instant from, Instant to,
+                                           StatementFormat format, OutputStream out) {
+        return writeStatement(accountId, from, to, null, format, out);
+    }
+
+    /**
+     * Write the statement for {@code [from, to)}.
+     *
+     * @param anchor a known balance at or before {@code from} (typically the previous statement's closing
+     *               balance); only postings between the anchor and {@code from} are summed to open the
+     *               statement. When null, all postings before {@code from} are summed.
+     */
+    public StatementSummary writeStatement(long accountId, Instant from, Instant to, BalanceAnchor anchor,
+                                           StatementFormat format, OutputStream out) {
+        BigDecimal opening = openingBalance(accountId, from, anchor);
+        StatementWriter writer = format.newWriter(out);
+        BigDecimal[] balance = {opening};
+
+        try {
+            writer.begin(accountId, from, to, opening);
+            long lines = sqlTemplate.forEach(POSTINGS_SQL, FETCH_SIZE, rs -> {
+                JournalEntry entry = new JournalEntry(
+                        rs.getLong("ENTRY_ID"),
+                        rs.getString("REQUEST_ID"),
+                        rs.getTimestamp("TS_CREATED").toInstant(),
+                        rs.getInt("POSTING_SEQ"),
+                        accountId,
+                        rs.getString("CURRENCY"),
+                        rs.getBigDecimal("AMOUNT"),
+                        Leg.Side.valueOf(rs.getString("SIDE")),
+                        rs.getString("DESCRIPTION"));
+                balance[0] = balance[0].add(entry.getSignedAmount());
+                try {
+                    writer.line(entry, balance[0]);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }, accountId, Timestamp.from(from), Timestamp.from(to));
+            writer.end(balance[0], lines);
+            return new StatementSummary(accountId, opening, balance[0], lines);
+        } catch (IOException | UncheckedIOException e) {
+            throw new WalletException("Failed to write statement for account " + accountId, e);
+        }
+    }
+
+    /**
+     * Generate statements for many accounts in parallel. At most {@code parallelism} statements run at
+     * once, so at most that many connections are in use; submission blocks when the workers are busy,
+     * so the account list can be arbitrarily long.
+     *
+     * @param sink opens the output stream for an account; the stream is closed after its statement is written
+     * @return the number written and, per failed account, a {@link WalletException} whose cause is the failure
+     */
+    public BatchResult writeStatements(Collection<Long> accountIds, Instant from, Instant to, StatementFormat format,
+                                       Function<Long, OutputStream> sink, int parallelism) {
+        ExecutorService workers = Executors.newFixedThreadPool(parallelism);
+        Semaphore slots = new Semaphore(parallelism * 2);
+        AtomicLong written = new AtomicLong();
+        Map<Long, WalletException> failed = new ConcurrentHashMap<>();
+
+        try {
+            for (Long accountId : accountIds) {
+                slots.acquire();
+                workers.execute(() -> {
+                    try (OutputStream out = sink.apply(accountId)) {
+                        writeStatement(accountId, from, to, format, out);
+                        written.incrementAndGet();
+                    } catch (Exception e) {
+                        WalletException failure = e instanceof WalletException
+                                ? (WalletException) e
+                                : new WalletException("Failed to write statement for account " + accountId, e);
+                        LOG.log(Level.WARNING, failure.getMessage(), failure);
+                        failed.put(accountId, failure);
+                    } finally {
+                        slots.release();
+                    }
+                });
+            }
+            workers.shutdown();
+            workers.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            workers.shutdownNow();
+            Thread.currentThread().interrupt();
+            throw new WalletException("Statement run interrupted", e);
+        }
+        return new BatchResult(written.get(), failed);
+    }
+
+    private BigDecimal openingBalance(long accountId, Instant from, BalanceAnchor anchor) {
+        if (anchor == null) {
+            return sqlTemplate.selectScalar(SUM_BEFORE_SQL, BigDecimal.class, accountId, Timestamp.from(from))
+                    .orElse(BigDecimal.ZERO);
+        }
+        if (anchor.getAsOf().isAfter(from)) {
+            throw new IllegalArgumentException("Balance anchor must not be after the statement start");
+        }
+        BigDecimal movement = anchor.getAsOf().equals(from)
+                ? BigDecimal.ZERO
+                : sqlTemplate.selectScalar(SUM_BETWEEN_SQL, BigDecimal.class,
+                        accountId, Timestamp.from(anchor.getAsOf()), Timestamp.from(from)).orElse(BigDecimal.ZERO);
+        return anchor.getBalance().add(movement);
+    }
+
+    /**
+     * Balance of an account at a point in time, used to open a statement without scanning all history.
+     */
+    public static final class BalanceAnchor {
+        private final Instant asOf;
+        private final BigDecimal balance;
+
+        public BalanceAnchor(Instant asOf, BigDecimal balance) {
+            this.asOf = asOf;
+            this.balance = balance;
+        }
+
+        public Instant getAsOf() {
+            return asOf;
+        }
+
+        public BigDecimal getBalance() {
+            return balance;
+        }
+    }
+
+    public static final class StatementSummary {
+        private final long accountId;
+        private final BigDecimal openingBalance;
+        private final BigDecimal closingBalance;
+        private final long lines;
+
+        public StatementSummary(long accountId, BigDecimal openingBalance, BigDecimal closingBalance, long lines) {
+            this.accountId = accountId;
+            this.openingBalance = openingBalance;
+            this.closingBalance = closingBalance;
+            this.lines = lines;
+        }
+
+        public long getAccountId() {
+            return accountId;
+        }
+
+        public BigDecimal getOpeningBalance() {
+            return openingBalance;
+        }
+
+        public BigDecimal getClosingBalance() {
+            return closingBalance;
+        }
+
+        public long getLines() {
+            return lines;
+        }
+    }
+
+    public static final class BatchResult {
+        private final long written;
+        private final Map<Long, WalletException> failures;
+
+        public BatchResult(long written, Map<Long, WalletException> failures) {
+            this.written = written;
+            this.failures = Map.copyOf(failures);
+        }
+
+        public long getWritten() {
+            return written;
+        }
+
+        public List<Long> getFailedAccounts() {
+            return List.copyOf(failures.keySet());
+        }
+
+        public Map<Long, WalletException> getFailures() {
+            return failures;
+        }
+    }
+}
@@ -0,0 +1,23 @@
+package com.wallet.service.statement;
+
+import com.wallet.model.JournalEntry;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.time.Instant;
+
+/**
+ * Encodes one account statement onto an output stream as postings arrive.
+ * Implementations buffer at most a few kilobytes and never hold the whole statement.
+ */
+public interface StatementWriter {
+
+    void begin(long accountId, Instant from, Instant to, BigDecimal openingBalance) throws IOException;
+
+    void line(JournalEntry entry, BigDecimal runningBalance) throws IOException;
+
+    /**
+     * Write the trailer and flush. The underlying stream is left open; it belongs to the caller.
+     */
+    void end(BigDecimal closingBalance, long lines) throws IOException;
+}
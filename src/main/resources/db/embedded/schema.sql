@@ -0,0 +1,245 @@
+-- H2 (MODE=Oracle) equivalent of db/migration V1..V12 for the embedded backend.
+-- Keep in step with the Flyway migrations; wallet_pkg is provided by EmbeddedWalletPkg.
+
+create table WALLET_ACCOUNT
+(
+    ID       number primary key,
+    CURRENCY varchar2(3)  not null,
+    STATUS   varchar2(20) not null check (STATUS in ('ACTIVE','FROZEN','CLOSED')),
+    BALANCE  number       not null,
+    LAST_CLIENT_SEQ number,
+    HELD_AMOUNT number default 0 not null constraint ck_account_held check (HELD_AMOUNT >= 0)
+);
+
+-- steps by AccountService.ACCOUNT_ID_BLOCK; the V9 primary key layouts are Oracle-only and not mirrored
+create sequence ACCOUNT_ID_SEQ start with 1 increment by 100;
+
+create table account
+(
+    id        number default ACCOUNT_ID_SEQ.nextval primary key,
+    fName     varchar2(50)  not null,
+    lName     varchar2(50)  not null,
+    email     varchar2(200) not null unique,
+    password  varchar2(100) not null,
+    wallet_id number references WALLET_ACCOUNT (ID)
+);
+
+create index ix_account_wallet on account (wallet_id);
+
+create index ix_account_name on account (lName, fName);
+
+create index ix_account_fname on account (fName);
+
+create sequence WALLET_ENTRY_SEQ start with 1 increment by 2;
+
+create sequence WALLET_FX_RATE_SEQ start with 1;
+
+create table WALLET_FX_RATE
+(
+    RATE_VERSION number default WALLET_FX_RATE_SEQ.nextval primary key,
+    BASE_CCY     varchar2(3) not null,
+    QUOTE_CCY    varchar2(3) not null,
+    RATE         number      not null check (RATE > 0),
+    TS_CREATED   timestamp with time zone default current_timestamp not null,
+    constraint ck_fx_rate_pair check (BASE_CCY != QUOTE_CCY)
+);
+
+create index ix_fx_rate_pair on WALLET_FX_RATE (BASE_CCY, QUOTE_CCY, RATE_VERSION);
+
+create table WALLET_JOURNAL
+(
+    ENTRY_ID    number default WALLET_ENTRY_SEQ.nextval primary key,
+    REQUEST_ID  varchar2(64) not null,
+    TS_CREATED  timestamp with time zone default current_timestamp not null,
+    POSTING_SEQ number        not null check (POSTING_SEQ >= 1),
+    ACCOUNT_ID  number        not null references WALLET_ACCOUNT (ID),
+    CURRENCY    varchar2(3)   not null,
+    AMOUNT      number        not null check (AMOUNT > 0),
+    SIDE        varchar2(6)   not null check (SIDE in ('DEBIT','CREDIT')),
+    DESCRIPTION varchar2(200),
+    RATE_VERSION number constraint fk_journal_fx_rate references WALLET_FX_RATE (RATE_VERSION),
+    constraint uq_journal_request unique (REQUEST_ID, POSTING_SEQ)
+);
+
+create index ix_journal_account_ts on WALLET_JOURNAL (ACCOUNT_ID, TS_CREATED, SIDE, AMOUNT);
+
+create index ix_journal_ts on WALLET_JOURNAL (TS_CREATED);
+
+create table WALLET_TRANSFER
+(
+    ENTRY_ID        number default WALLET_ENTRY_SEQ.nextval primary key,
+    REQUEST_ID      varchar2(64) not null,
+    TS_CREATED      timestamp with time zone default current_timestamp not null,
+    FROM_ACCOUNT_ID number       not null references WALLET_ACCOUNT (ID),
+    TO_ACCOUNT_ID   number       not null references WALLET_ACCOUNT (ID),
+    CURRENCY        varchar2(3)  not null,
+    AMOUNT          number       not null check (AMOUNT > 0),
+    DESCRIPTION     varchar2(200),
+    CREDIT_ENTRY_ID number,
+    CREDIT_TS_CREATED timestamp with time zone,
+    constraint uq_transfer_request unique (REQUEST_ID),
+    constraint ck_transfer_parties check (FROM_ACCOUNT_ID != TO_ACCOUNT_ID),
+    constraint ck_transfer_credit_id check (CREDIT_ENTRY_ID between ENTRY_ID + 1 and ENTRY_ID + 64)
+);
+
+create index ix_transfer_from_ts on WALLET_TRANSFER (FROM_ACCOUNT_ID, TS_CREATED, AMOUNT);
+
+-- H2 has no function-based indexes; Oracle's is on coalesce(CREDIT_TS_CREATED, TS_CREATED)
+create index ix_transfer_to_ts on WALLET_TRANSFER (TO_ACCOUNT_ID, TS_CREATED, AMOUNT);
+
+create index ix_transfer_ts on WALLET_TRANSFER (TS_CREATED);
+
+create view WALLET_POSTING_V as
+select j.ENTRY_ID,
+       j.ENTRY_ID as SOURCE_ENTRY_ID,
+       j.REQUEST_ID,
+       j.TS_CREATED,
+       j.POSTING_SEQ,
+       j.ACCOUNT_ID,
+       j.CURRENCY,
+       j.AMOUNT,
+       j.SIDE,
+       j.DESCRIPTION,
+       j.RATE_VERSION
+from WALLET_JOURNAL j
+union all
+select t.ENTRY_ID,
+       t.ENTRY_ID,
+       t.REQUEST_ID,
+       t.TS_CREATED,
+       1,
+       t.FROM_ACCOUNT_ID,
+       t.CURRENCY,
+       t.AMOUNT,
+       'DEBIT',
+       coalesce(t.DESCRIPTION, 'Transfer out'),
+       cast(null as number)
+from WALLET_TRANSFER t
+union all
+select coalesce(t.CREDIT_ENTRY_ID, t.ENTRY_ID + 1),
+       t.ENTRY_ID,
+       t.REQUEST_ID,
+       coalesce(t.CREDIT_TS_CREATED, t.TS_CREATED),
+       2,
+       t.TO_ACCOUNT_ID,
+       t.CURRENCY,
+       t.AMOUNT,
+       'CREDIT',
+       coalesce(t.DESCRIPTION, 'Transfer in'),
+       cast(null as number)
+from WALLET_TRANSFER t;
+
+create view WALLET_BALANCE_V as
+select a.id,
+       a.currency,
+       coalesce(sum(case when j.side = 'CREDIT' then j.amount else -j.amount end), 0) as ledger_balance,
+       a.balance                                                                      as materialized_balance
+from WALLET_ACCOUNT a
+         left join WALLET_POSTING_V j on j.account_id = a.id and j.currency = a.currency
+group by a.id, a.currency, a.balance;
+
+create table WALLET_JOURNAL_OFFSET
+(
+    SUBSCRIBER    varchar2(100) primary key,
+    LAST_ENTRY_ID number        not null,
+    TS_UPDATED    timestamp with time zone default current_timestamp not null
+);
+
+create table WALLET_OUTBOX
+(
+    EVENT_ID   number generated by default as identity primary key,
+    REQUEST_ID varchar2(64)   not null,
+    EVENT_TYPE varchar2(50)   not null,
+    PAYLOAD    varchar2(4000) not null,
+    TS_CREATED timestamp with time zone default current_timestamp not null
+);
+
+create table WALLET_ACCRUAL_CHUNK
+(
+    RUN_ID     varchar2(40) not null,
+    CHUNK_FROM number       not null,
+    CHUNK_TO   number       not null,
+    ACCOUNTS   number       not null,
+    TOTAL      number       not null,
+    TS_POSTED  timestamp with time zone default current_timestamp not null,
+    SETTLED    number(1)    default 0 not null constraint ck_accrual_chunk_settled check (SETTLED in (0, 1)),
+    constraint pk_accrual_chunk primary key (RUN_ID, CHUNK_FROM)
+);
+
+create sequence WALLET_HOLD_SEQ start with 1;
+
+create table WALLET_HOLD
+(
+    HOLD_ID            number default WALLET_HOLD_SEQ.nextval primary key,
+    REQUEST_ID         varchar2(64) not null constraint uq_hold_request unique,
+    ACCOUNT_ID         number       not null constraint fk_hold_account references WALLET_ACCOUNT (ID),
+    CURRENCY           varchar2(3)  not null,
+    AMOUNT             number       not null check (AMOUNT > 0),
+    STATUS             varchar2(10) default 'ACTIVE' not null
+        constraint ck_hold_status check (STATUS in ('ACTIVE', 'CAPTURED', 'RELEASED', 'EXPIRED')),
+    EXPIRES_AT         timestamp with time zone not null,
+    CAPTURE_REQUEST_ID varchar2(64),
+    TS_CREATED         timestamp with time zone default current_timestamp not null,
+    TS_CLOSED          timestamp with time zone
+);
+
+create index ix_hold_status_expiry on WALLET_HOLD (STATUS, EXPIRES_AT);
+
+create index ix_hold_account on WALLET_HOLD (ACCOUNT_ID);
+
+create sequence WALLET_SCHEDULE_SEQ start with 1;
+
+create table WALLET_SCHEDULE
+(
+    SCHEDULE_ID     number default WALLET_SCHEDULE_SEQ.nextval primary key,
+    SCHEDULE_KEY    varchar2(64) not null constraint uq_schedule_key unique,
+    FROM_ACCOUNT_ID number       not null constraint fk_schedule_from references WALLET_ACCOUNT (ID),
+    TO_ACCOUNT_ID   number       not null constraint fk_schedule_to references WALLET_ACCOUNT (ID),
+    CURRENCY        varchar2(3)  not null,
+    AMOUNT          number       not null check (AMOUNT > 0),
+    PERIOD          varchar2(10) not null
+        constraint ck_schedule_period check (PERIOD in ('ONCE', 'DAILY', 'WEEKLY', 'MONTHLY')),
+    START_AT        timestamp with time zone not null,
+    END_AT          timestamp with time zone,
+    SPREAD_SECONDS  number       not null check (SPREAD_SECONDS >= 0),
+    OCCURRENCE      number default 0 not null,
+    NEXT_RUN_AT     timestamp with time zone not null,
+    DUE_AT          timestamp with time zone not null,
+    STATUS          varchar2(10) default 'ACTIVE' not null
+        constraint ck_schedule_status check (STATUS in ('ACTIVE', 'DONE', 'CANCELLED')),
+    LAST_ERROR_CODE number,
+    TS_LAST_RUN     timestamp with time zone,
+    TS_CREATED      timestamp with time zone default current_timestamp not null
+);
+
+create index ix_schedule_status_due on WALLET_SCHEDULE (STATUS, DUE_AT);
+
+create index ix_schedule_from on WALLET_SCHEDULE (FROM_ACCOUNT_ID);
+
+create index ix_schedule_to on WALLET_SCHEDULE (TO_ACCOUNT_ID);
+
+create alias NUMTODSINTERVAL for 'com.wallet.database.embedded.EmbeddedDatabase.numToDsInterval';
+
+create schema WALLET_PKG;
+
+create alias WALLET_PKG.TRANSFER for 'com.wallet.database.embedded.EmbeddedWalletPkg.transfer';
+
+create alias WALLET_PKG.TRANSFER_FX for 'com.wallet.database.embedded.EmbeddedWalletPkg.transferFx';
+
+create alias WALLET_PKG.TRANSFER_MULTI for 'com.wallet.database.embedded.EmbeddedWalletPkg.transferMulti';
+
+create alias WALLET_PKG.PLACE_HOLD for 'com.wallet.database.embedded.EmbeddedWalletPkg.placeHold';
+
+create alias WALLET_PKG.CAPTURE_HOLD for 'com.wallet.database.embedded.EmbeddedWalletPkg.captureHold';
+
+create alias WALLET_PKG.RELEASE_HOLD for 'com.wallet.database.embedded.EmbeddedWalletPkg.releaseHold';
+
+create alias WALLET_PKG.EXPIRE_HOLDS for 'com.wallet.database.embedded.EmbeddedWalletPkg.expireHolds';
+
+create alias WALLET_PKG.RUN_SCHEDULES for 'com.wallet.database.embedded.EmbeddedWalletPkg.runSchedules';
+
+create alias WALLET_PKG.POST_ACCRUALS for 'com.wallet.database.embedded.EmbeddedWalletPkg.postAccruals';
+
+create alias WALLET_PKG.SETTLE_ACCRUALS for 'com.wallet.database.embedded.EmbeddedWalletPkg.settleAccruals';
+
+create alias WALLET_PKG.CONVERT_JOURNAL for 'com.wallet.database.embedded.EmbeddedWalletPkg.convertJournal';
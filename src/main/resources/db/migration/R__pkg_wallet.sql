@@ -4,8 +4,95 @@ create or replace package wallet_pkg authid definer as
         p_from       in WALLET_ACCOUNT.ID%type,
         p_to         in WALLET_ACCOUNT.ID%type,
         p_currency   in WALLET_ACCOUNT.CURRENCY%type,
+        p_amount     in number,
+        p_lock_wait  in varchar2 default null,
+        p_client_seq in number default null
+    );
+
+    procedure transfer_multi(
+        p_request_id in varchar2,
+        p_currency   in WALLET_ACCOUNT.CURRENCY%type,
+        p_accounts   in WALLET_NUM_TAB,
+        p_sides      in WALLET_SIDE_TAB,
+        p_amounts    in WALLET_NUM_TAB
+    );
+
+    -- debits p_amount in p_from's currency and credits p_to in its own currency at the rate stored under
+    -- p_rate_version, which must quote the two currencies in either direction
+    procedure transfer_fx(
+        p_request_id   in varchar2,
+        p_from         in WALLET_ACCOUNT.ID%type,
+        p_to           in WALLET_ACCOUNT.ID%type,
+        p_amount       in number,
+        p_rate_version in WALLET_FX_RATE.RATE_VERSION%type,
+        p_lock_wait    in varchar2 default null
+    );
+
+    -- reserves p_amount of p_account's available balance (BALANCE - HELD_AMOUNT) for p_ttl_seconds without
+    -- posting; returns the hold id, the same one again when p_request_id is replayed
+    function place_hold(
+        p_request_id  in varchar2,
+        p_account     in WALLET_ACCOUNT.ID%type,
+        p_currency    in WALLET_ACCOUNT.CURRENCY%type,
+        p_amount      in number,
+        p_ttl_seconds in number
+    ) return WALLET_HOLD.HOLD_ID%type;
+
+    -- closes an active hold and posts p_amount, at most the held amount, from its account to p_to as the
+    -- transfer p_request_id; the part not captured is released
+    procedure capture_hold(
+        p_request_id in varchar2,
+        p_hold_id    in WALLET_HOLD.HOLD_ID%type,
+        p_to         in WALLET_ACCOUNT.ID%type,
         p_amount     in number
     );
+
+    procedure release_hold(
+        p_hold_id in WALLET_HOLD.HOLD_ID%type
+    );
+
+    -- expires those of p_hold_ids that are still active and past EXPIRES_AT; returns how many it expired
+    function expire_holds(
+        p_hold_ids in WALLET_NUM_TAB
+    ) return pls_integer;
+
+    -- posts the next occurrence of each of p_schedule_ids that is still active as the transfer
+    -- 'sched-<id>-<occurrence>' and moves the schedule on to its following occurrence; an occurrence that
+    -- transfer refuses is skipped and its error code kept in LAST_ERROR_CODE. Returns the transfers posted,
+    -- not counting occurrences an earlier run already posted. Locks every account of the batch in id order
+    -- first. The caller holds the schedule rows (ScheduledTransferService claims them with skip locked).
+    function run_schedules(
+        p_schedule_ids in WALLET_NUM_TAB
+    ) return pls_integer;
+
+    -- p_kind: 'INTEREST' credits each account from p_system_account, 'FEE' debits each account to it,
+    -- at most its available balance (BALANCE - HELD_AMOUNT). Locks only the chunk's accounts: the system
+    -- account's balance is moved by settle_accruals, and the chunk's total waits in WALLET_ACCRUAL_CHUNK
+    procedure post_accruals(
+        p_run_id         in varchar2,
+        p_kind           in varchar2,
+        p_currency       in WALLET_ACCOUNT.CURRENCY%type,
+        p_system_account in WALLET_ACCOUNT.ID%type,
+        p_from_id        in WALLET_ACCOUNT.ID%type,
+        p_to_id          in WALLET_ACCOUNT.ID%type,
+        p_rate           in number,
+        p_fixed          in number
+    );
+
+    -- moves the total of every unsettled chunk of p_run_id through p_system_account in one short
+    -- transaction, once the chunks are posted
+    procedure settle_accruals(
+        p_run_id         in varchar2,
+        p_kind           in varchar2,
+        p_system_account in WALLET_ACCOUNT.ID%type
+    );
+
+    -- moves legacy DEBIT/CREDIT pairs of WALLET_JOURNAL into WALLET_TRANSFER, looking at the next p_limit
+    -- journal rows after p_after_entry_id; returns the ENTRY_ID to continue after, or null when done
+    function convert_journal(
+        p_after_entry_id in WALLET_JOURNAL.ENTRY_ID%type,
+        p_limit          in pls_integer
+    ) return number;
 end wallet_pkg;
 /
 
@@ -17,14 +104,87 @@ create or replace package body wallet_pkg as
     c_err_status_invalid     constant pls_integer := -20007;
     c_err_currency_mismatch  constant pls_integer := -20008;
     c_err_duplicate_request  constant pls_integer := -20009;
+    c_err_unbalanced         constant pls_integer := -20010;
+    c_err_lock_unavailable   constant pls_integer := -20011;
+    c_err_stale_sequence     constant pls_integer := -20012;
+    c_err_rate_unavailable   constant pls_integer := -20013;
+    c_err_hold_not_active    constant pls_integer := -20014;
+
+    -- how long a rate version may still be posted with once a newer rate for its pair is published
+    c_fx_quote_grace constant interval day to second := interval '30' second;
+
+    -- furthest a converted credit posting may sit from its debit; see WALLET_TRANSFER.CREDIT_ENTRY_ID
+    c_max_credit_gap constant pls_integer := 64;
+
+    e_resource_busy exception;
+    pragma exception_init(e_resource_busy, -54);
+    e_lock_wait_timeout exception;
+    pragma exception_init(e_lock_wait_timeout, -30006);
+
+    -- p_lock_wait: null = wait indefinitely, 'NOWAIT', 'WAIT <seconds>' or 'SKIP'
+    function lock_clause(p_lock_wait in varchar2) return varchar2 is
+        v_mode varchar2(20) := upper(trim(p_lock_wait));
+    begin
+        if v_mode is null then
+            return null;
+        elsif v_mode = 'NOWAIT' then
+            return ' nowait';
+        elsif v_mode = 'SKIP' then
+            return ' skip locked';
+        elsif regexp_like(v_mode, '^WAIT [0-9]{1,5}$') then
+            return ' ' || lower(v_mode);
+        end if;
+        raise_application_error(c_err_invalid_amount, 'Invalid lock wait policy: ' || p_lock_wait);
+    end lock_clause;
+
+    -- decimal places of amounts in p_currency (ISO 4217 minor units); must match FxRate.scale
+    function fx_scale(p_currency in varchar2) return pls_integer is
+    begin
+        return case
+                   when p_currency in ('BIF', 'CLP', 'DJF', 'GNF', 'ISK', 'JPY', 'KMF', 'KRW', 'PYG', 'RWF',
+                                       'UGX', 'UYI', 'VND', 'VUV', 'XAF', 'XOF', 'XPF') then 0
+                   when p_currency in ('BHD', 'IQD', 'JOD', 'KWD', 'LYD', 'OMR', 'TND') then 3
+                   else 2
+            end;
+    end fx_scale;
+
+    -- written in the caller's transaction, so the event exists if and only if the postings commit
+    procedure enqueue_event(
+        p_request_id in varchar2,
+        p_event_type in varchar2,
+        p_payload    in json_object_t
+    ) is
+    begin
+        insert into WALLET_OUTBOX (REQUEST_ID, EVENT_TYPE, PAYLOAD)
+        values (p_request_id, p_event_type, p_payload.to_string);
+    end enqueue_event;
+
+    -- postings already written for a request, whichever table holds them
+    function count_postings(p_request_id in varchar2) return pls_integer is
+        v_cnt pls_integer;
+    begin
+        select count(*) into v_cnt
+        from WALLET_POSTING_V
+        where REQUEST_ID = p_request_id;
+        return v_cnt;
+    end count_postings;
 
     procedure transfer(
         p_request_id in varchar2,
         p_from       in WALLET_ACCOUNT.ID%type,
         p_to         in WALLET_ACCOUNT.ID%type,
         p_currency   in WALLET_ACCOUNT.CURRENCY%type,
-        p_amount     in number
+        p_amount     in number,
+        p_lock_wait  in varchar2 default null,
+        p_client_seq in number default null
     ) is
+        v_lock_clause varchar2(20) := lock_clause(p_lock_wait);
+        v_accounts    sys_refcursor;
+        v_id          WALLET_ACCOUNT.ID%type;
+        v_currency    WALLET_ACCOUNT.CURRENCY%type;
+        v_status      WALLET_ACCOUNT.STATUS%type;
+        v_balance     number;
+        v_last_seq    WALLET_ACCOUNT.LAST_CLIENT_SEQ%type;
         v_min_id WALLET_ACCOUNT.ID%type;
         v_max_id WALLET_ACCOUNT.ID%type;
         v_locked pls_integer := 0;
@@ -33,6 +193,7 @@ create or replace package body wallet_pkg as
         v_from_status   WALLET_ACCOUNT.STATUS%type;
         v_to_status     WALLET_ACCOUNT.STATUS%type;
         v_from_balance  number;
+        v_from_last_seq WALLET_ACCOUNT.LAST_CLIENT_SEQ%type;
     begin
         if p_request_id is null then
             raise_application_error(c_err_invalid_amount, 'Request id is required');
@@ -45,11 +206,8 @@ create or replace package body wallet_pkg as
         end if;
 
         declare
-            v_cnt pls_integer;
+            v_cnt pls_integer := count_postings(p_request_id);
         begin
-            select count(*) into v_cnt
-            from WALLET_JOURNAL
-            where REQUEST_ID = p_request_id;
             if v_cnt = 2 then
                 return;
             elsif v_cnt = 1 then
@@ -60,25 +218,43 @@ create or replace package body wallet_pkg as
         v_min_id := least(p_from, p_to);
         v_max_id := greatest(p_from, p_to);
 
-        for r in (
-            select id, currency, status, balance
-            from WALLET_ACCOUNT
-            where id in (v_min_id, v_max_id)
-            order by id
-                for update
-            ) loop
+        begin
+            open v_accounts for
+                'select id, currency, status, balance, last_client_seq
+                 from WALLET_ACCOUNT
+                 where id in (:min_id, :max_id)
+                 order by id
+                 for update' || v_lock_clause
+                using v_min_id, v_max_id;
+            loop
+                fetch v_accounts into v_id, v_currency, v_status, v_balance, v_last_seq;
+                exit when v_accounts%notfound;
                 v_locked := v_locked + 1;
-                if r.id = p_from then
-                    v_from_currency := r.currency;
-                    v_from_status   := r.status;
-                    v_from_balance  := r.balance;
+                if v_id = p_from then
+                    v_from_currency := v_currency;
+                    v_from_status   := v_status;
+                    v_from_balance  := v_balance;
+                    v_from_last_seq := v_last_seq;
                 else
-                    v_to_currency := r.currency;
-                    v_to_status   := r.status;
+                    v_to_currency := v_currency;
+                    v_to_status   := v_status;
                 end if;
             end loop;
+            close v_accounts;
+        exception
+            when e_resource_busy or e_lock_wait_timeout then
+                raise_application_error(c_err_lock_unavailable, 'Account locked by another transaction');
+        end;
 
         if v_locked != 2 then
+            if v_lock_clause = ' skip locked' then
+                select count(*) into v_locked
+                from WALLET_ACCOUNT
+                where id in (v_min_id, v_max_id);
+                if v_locked = 2 then
+                    raise_application_error(c_err_lock_unavailable, 'Account locked by another transaction');
+                end if;
+            end if;
             raise_application_error(c_err_acct_missing, 'Account not found');
         end if;
 
@@ -90,10 +266,17 @@ create or replace package body wallet_pkg as
             raise_application_error(c_err_currency_mismatch, 'Currency mismatch');
         end if;
 
+        -- sequenced clients must post in strictly increasing order per source account
+        if p_client_seq is not null and p_client_seq <= v_from_last_seq then
+            raise_application_error(c_err_stale_sequence, 'Client sequence ' || p_client_seq
+                || ' is not after ' || v_from_last_seq);
+        end if;
+
         update WALLET_ACCOUNT
-        set BALANCE = BALANCE - p_amount
+        set BALANCE         = BALANCE - p_amount,
+            LAST_CLIENT_SEQ = coalesce(p_client_seq, LAST_CLIENT_SEQ)
         where ID = p_from
-          and BALANCE >= p_amount;
+          and BALANCE - HELD_AMOUNT >= p_amount;
 
         if sql%rowcount = 0 then
             raise_application_error(c_err_insufficient, 'Insufficient balance');
@@ -103,15 +286,883 @@ create or replace package body wallet_pkg as
         set BALANCE = BALANCE + p_amount
         where ID = p_to;
 
-        insert into WALLET_JOURNAL (REQUEST_ID, POSTING_SEQ, ACCOUNT_ID, CURRENCY, AMOUNT, SIDE, DESCRIPTION)
-        values (p_request_id, 1, p_from, p_currency, p_amount, 'DEBIT', 'Transfer out');
+        -- one row for both sides; WALLET_POSTING_V shows it as the DEBIT and CREDIT postings
+        insert into WALLET_TRANSFER (REQUEST_ID, FROM_ACCOUNT_ID, TO_ACCOUNT_ID, CURRENCY, AMOUNT)
+        values (p_request_id, p_from, p_to, p_currency, p_amount);
 
-        insert into WALLET_JOURNAL (REQUEST_ID, POSTING_SEQ, ACCOUNT_ID, CURRENCY, AMOUNT, SIDE, DESCRIPTION)
-        values (p_request_id, 2, p_to,   p_currency, p_amount, 'CREDIT', 'Transfer in');
+        declare
+            v_event json_object_t := json_object_t();
+        begin
+            v_event.put('requestId', p_request_id);
+            v_event.put('fromAccountId', p_from);
+            v_event.put('toAccountId', p_to);
+            v_event.put('currency', p_currency);
+            v_event.put('amount', p_amount);
+            enqueue_event(p_request_id, 'TRANSFER_COMPLETED', v_event);
+        end;
 
     exception
         when others then
             raise;
     end transfer;
+
+    procedure transfer_multi(
+        p_request_id in varchar2,
+        p_currency   in WALLET_ACCOUNT.CURRENCY%type,
+        p_accounts   in WALLET_NUM_TAB,
+        p_sides      in WALLET_SIDE_TAB,
+        p_amounts    in WALLET_NUM_TAB
+    ) is
+        v_legs          pls_integer;
+        v_debits        number := 0;
+        v_credits       number := 0;
+        v_distinct      pls_integer;
+        v_locked        pls_integer := 0;
+        v_inactive      boolean := false;
+        v_wrong_ccy     boolean := false;
+    begin
+        if p_request_id is null then
+            raise_application_error(c_err_invalid_amount, 'Request id is required');
+        end if;
+        if p_accounts is null or p_sides is null or p_amounts is null
+            or p_accounts.count < 2
+            or p_sides.count != p_accounts.count
+            or p_amounts.count != p_accounts.count then
+            raise_application_error(c_err_invalid_amount, 'At least two legs of matching length are required');
+        end if;
+
+        v_legs := p_accounts.count;
+
+        for i in 1 .. v_legs loop
+            if p_amounts(i) is null or p_amounts(i) <= 0 then
+                raise_application_error(c_err_invalid_amount, 'Amount must be positive');
+            end if;
+            if p_sides(i) = 'DEBIT' then
+                v_debits := v_debits + p_amounts(i);
+            elsif p_sides(i) = 'CREDIT' then
+                v_credits := v_credits + p_amounts(i);
+            else
+                raise_application_error(c_err_invalid_amount, 'Side must be DEBIT or CREDIT');
+            end if;
+        end loop;
+
+        if v_debits != v_credits then
+            raise_application_error(c_err_unbalanced, 'Debits and credits must balance');
+        end if;
+
+        select count(distinct column_value) into v_distinct
+        from table(p_accounts);
+        if v_distinct != v_legs then
+            raise_application_error(c_err_same_account, 'Each account may appear in one leg only');
+        end if;
+
+        declare
+            v_cnt pls_integer := count_postings(p_request_id);
+        begin
+            if v_cnt = v_legs then
+                return;
+            elsif v_cnt > 0 then
+                raise_application_error(c_err_duplicate_request, 'Duplicate or partial request');
+            end if;
+        end;
+
+        -- one statement locks every leg, always in ascending id order, so two
+        -- overlapping multi-leg transfers cannot deadlock each other
+        for r in (
+            select id, currency, status
+            from WALLET_ACCOUNT
+            where id in (select column_value from table(p_accounts))
+            order by id
+                for update
+            ) loop
+                v_locked := v_locked + 1;
+                if r.status != 'ACTIVE' then
+                    v_inactive := true;
+                end if;
+                if r.currency != p_currency then
+                    v_wrong_ccy := true;
+                end if;
+            end loop;
+
+        if v_locked != v_legs then
+            raise_application_error(c_err_acct_missing, 'Account not found');
+        end if;
+
+        if v_inactive then
+            raise_application_error(c_err_status_invalid, 'Account status not active');
+        end if;
+
+        if v_wrong_ccy then
+            raise_application_error(c_err_currency_mismatch, 'Currency mismatch');
+        end if;
+
+        for i in 1 .. v_legs loop
+            if p_sides(i) = 'DEBIT' then
+                update WALLET_ACCOUNT
+                set BALANCE = BALANCE - p_amounts(i)
+                where ID = p_accounts(i)
+                  and BALANCE - HELD_AMOUNT >= p_amounts(i);
+
+                if sql%rowcount = 0 then
+                    raise_application_error(c_err_insufficient, 'Insufficient balance');
+                end if;
+            end if;
+        end loop;
+
+        forall i in 1 .. v_legs
+            update WALLET_ACCOUNT
+            set BALANCE = BALANCE + p_amounts(i)
+            where ID = p_accounts(i)
+              and p_sides(i) = 'CREDIT';
+
+        forall i in 1 .. v_legs
+            insert into WALLET_JOURNAL (REQUEST_ID, POSTING_SEQ, ACCOUNT_ID, CURRENCY, AMOUNT, SIDE, DESCRIPTION)
+            values (p_request_id, i, p_accounts(i), p_currency, p_amounts(i), p_sides(i),
+                    case p_sides(i) when 'DEBIT' then 'Transfer out' else 'Transfer in' end);
+
+        declare
+            v_event    json_object_t := json_object_t();
+            v_leg_list json_array_t := json_array_t();
+            v_leg      json_object_t;
+        begin
+            for i in 1 .. v_legs loop
+                v_leg := json_object_t();
+                v_leg.put('accountId', p_accounts(i));
+                v_leg.put('side', p_sides(i));
+                v_leg.put('amount', p_amounts(i));
+                v_leg_list.append(v_leg);
+            end loop;
+            v_event.put('requestId', p_request_id);
+            v_event.put('currency', p_currency);
+            v_event.put('legs', v_leg_list);
+            enqueue_event(p_request_id, 'MULTI_TRANSFER_COMPLETED', v_event);
+        end;
+
+    exception
+        when others then
+            raise;
+    end transfer_multi;
+
+    procedure transfer_fx(
+        p_request_id   in varchar2,
+        p_from         in WALLET_ACCOUNT.ID%type,
+        p_to           in WALLET_ACCOUNT.ID%type,
+        p_amount       in number,
+        p_rate_version in WALLET_FX_RATE.RATE_VERSION%type,
+        p_lock_wait    in varchar2 default null
+    ) is
+        v_lock_clause   varchar2(20) := lock_clause(p_lock_wait);
+        v_accounts      sys_refcursor;
+        v_id            WALLET_ACCOUNT.ID%type;
+        v_currency      WALLET_ACCOUNT.CURRENCY%type;
+        v_status        WALLET_ACCOUNT.STATUS%type;
+        v_locked        pls_integer := 0;
+        v_from_currency WALLET_ACCOUNT.CURRENCY%type;
+        v_to_currency   WALLET_ACCOUNT.CURRENCY%type;
+        v_from_status   WALLET_ACCOUNT.STATUS%type;
+        v_to_status     WALLET_ACCOUNT.STATUS%type;
+        v_base          WALLET_FX_RATE.BASE_CCY%type;
+        v_quote         WALLET_FX_RATE.QUOTE_CCY%type;
+        v_rate          WALLET_FX_RATE.RATE%type;
+        v_superseded_at WALLET_FX_RATE.TS_CREATED%type;
+        v_credit        number;
+    begin
+        if p_request_id is null then
+            raise_application_error(c_err_invalid_amount, 'Request id is required');
+        end if;
+        if p_from = p_to then
+            raise_application_error(c_err_same_account, 'Source and destination must differ');
+        end if;
+        if p_amount is null or p_amount <= 0 then
+            raise_application_error(c_err_invalid_amount, 'Amount must be positive');
+        end if;
+
+        declare
+            v_cnt pls_integer := count_postings(p_request_id);
+        begin
+            if v_cnt = 2 then
+                return;
+            elsif v_cnt = 1 then
+                raise_application_error(c_err_duplicate_request, 'Duplicate or partial request');
+            end if;
+        end;
+
+        begin
+            select BASE_CCY, QUOTE_CCY, RATE
+            into v_base, v_quote, v_rate
+            from WALLET_FX_RATE
+            where RATE_VERSION = p_rate_version;
+        exception
+            when no_data_found then
+                raise_application_error(c_err_rate_unavailable, 'Unknown rate version ' || p_rate_version);
+        end;
+
+        -- a quote taken just before a newer rate was published still posts; past the grace period the
+        -- caller has to quote again. The grace runs from the pair's latest rate, the one FxRateCache
+        -- quotes: a version in between may have committed late, after its TS_CREATED, and no cache saw it
+        -- as the latest. ix_fx_rate_pair serves both directions.
+        select max(TS_CREATED) keep (dense_rank last order by RATE_VERSION)
+        into v_superseded_at
+        from WALLET_FX_RATE
+        where ((BASE_CCY = v_base and QUOTE_CCY = v_quote) or (BASE_CCY = v_quote and QUOTE_CCY = v_base))
+          and RATE_VERSION > p_rate_version;
+        if v_superseded_at < systimestamp - c_fx_quote_grace then
+            raise_application_error(c_err_rate_unavailable, 'Rate version ' || p_rate_version || ' superseded');
+        end if;
+
+        begin
+            open v_accounts for
+                'select id, currency, status
+                 from WALLET_ACCOUNT
+                 where id in (:min_id, :max_id)
+                 order by id
+                 for update' || v_lock_clause
+                using least(p_from, p_to), greatest(p_from, p_to);
+            loop
+                fetch v_accounts into v_id, v_currency, v_status;
+                exit when v_accounts%notfound;
+                v_locked := v_locked + 1;
+                if v_id = p_from then
+                    v_from_currency := v_currency;
+                    v_from_status   := v_status;
+                else
+                    v_to_currency := v_currency;
+                    v_to_status   := v_status;
+                end if;
+            end loop;
+            close v_accounts;
+        exception
+            when e_resource_busy or e_lock_wait_timeout then
+                raise_application_error(c_err_lock_unavailable, 'Account locked by another transaction');
+        end;
+
+        if v_locked != 2 then
+            if v_lock_clause = ' skip locked' then
+                select count(*) into v_locked
+                from WALLET_ACCOUNT
+                where id in (p_from, p_to);
+                if v_locked = 2 then
+                    raise_application_error(c_err_lock_unavailable, 'Account locked by another transaction');
+                end if;
+            end if;
+            raise_application_error(c_err_acct_missing, 'Account not found');
+        end if;
+
+        if v_from_status != 'ACTIVE' or v_to_status != 'ACTIVE' then
+            raise_application_error(c_err_status_invalid, 'Account status not active');
+        end if;
+
+        if v_from_currency = v_base and v_to_currency = v_quote then
+            v_credit := round(p_amount * v_rate, fx_scale(v_to_currency));
+        elsif v_from_currency = v_quote and v_to_currency = v_base then
+            v_credit := round(p_amount / v_rate, fx_scale(v_to_currency));
+        else
+            raise_application_error(c_err_currency_mismatch, 'Rate version ' || p_rate_version
+                || ' does not quote ' || v_from_currency || '/' || v_to_currency);
+        end if;
+
+        if v_credit <= 0 then
+            raise_application_error(c_err_invalid_amount, 'Converted amount rounds to zero');
+        end if;
+
+        update WALLET_ACCOUNT
+        set BALANCE = BALANCE - p_amount
+        where ID = p_from
+          and BALANCE - HELD_AMOUNT >= p_amount;
+
+        if sql%rowcount = 0 then
+            raise_application_error(c_err_insufficient, 'Insufficient balance');
+        end if;
+
+        update WALLET_ACCOUNT
+        set BALANCE = BALANCE + v_credit
+        where ID = p_to;
+
+        -- two currencies, so two journal rows rather than one WALLET_TRANSFER row
+        insert into WALLET_JOURNAL (REQUEST_ID, POSTING_SEQ, ACCOUNT_ID, CURRENCY, AMOUNT, SIDE, DESCRIPTION,
+                                    RATE_VERSION)
+        values (p_request_id, 1, p_from, v_from_currency, p_amount, 'DEBIT', 'FX transfer out', p_rate_version);
+
+        insert into WALLET_JOURNAL (REQUEST_ID, POSTING_SEQ, ACCOUNT_ID, CURRENCY, AMOUNT, SIDE, DESCRIPTION,
+                                    RATE_VERSION)
+        values (p_request_id, 2, p_to, v_to_currency, v_credit, 'CREDIT', 'FX transfer in', p_rate_version);
+
+        declare
+            v_event json_object_t := json_object_t();
+        begin
+            v_event.put('requestId', p_request_id);
+            v_event.put('fromAccountId', p_from);
+            v_event.put('toAccountId', p_to);
+            v_event.put('fromCurrency', v_from_currency);
+            v_event.put('toCurrency', v_to_currency);
+            v_event.put('debitAmount', p_amount);
+            v_event.put('creditAmount', v_credit);
+            v_event.put('rateVersion', p_rate_version);
+            enqueue_event(p_request_id, 'FX_TRANSFER_COMPLETED', v_event);
+        end;
+    end transfer_fx;
+
+    -- the hold placed under p_request_id, or null; a different hold under the same request id is a duplicate
+    function find_hold(
+        p_request_id in varchar2,
+        p_account    in WALLET_ACCOUNT.ID%type,
+        p_amount     in number
+    ) return WALLET_HOLD.HOLD_ID%type is
+        v_hold_id WALLET_HOLD.HOLD_ID%type;
+        v_account WALLET_HOLD.ACCOUNT_ID%type;
+        v_amount  WALLET_HOLD.AMOUNT%type;
+    begin
+        select HOLD_ID, ACCOUNT_ID, AMOUNT
+        into v_hold_id, v_account, v_amount
+        from WALLET_HOLD
+        where REQUEST_ID = p_request_id;
+
+        if v_account != p_account or v_amount != p_amount then
+            raise_application_error(c_err_duplicate_request, 'Duplicate request');
+        end if;
+        return v_hold_id;
+    exception
+        when no_data_found then
+            return null;
+    end find_hold;
+
+    function place_hold(
+        p_request_id  in varchar2,
+        p_account     in WALLET_ACCOUNT.ID%type,
+        p_currency    in WALLET_ACCOUNT.CURRENCY%type,
+        p_amount      in number,
+        p_ttl_seconds in number
+    ) return WALLET_HOLD.HOLD_ID%type is
+        v_hold_id   WALLET_HOLD.HOLD_ID%type;
+        v_currency  WALLET_ACCOUNT.CURRENCY%type;
+        v_status    WALLET_ACCOUNT.STATUS%type;
+        v_available number;
+    begin
+        if p_request_id is null then
+            raise_application_error(c_err_invalid_amount, 'Request id is required');
+        end if;
+        if p_amount is null or p_amount <= 0 then
+            raise_application_error(c_err_invalid_amount, 'Amount must be positive');
+        end if;
+        if p_ttl_seconds is null or p_ttl_seconds <= 0 then
+            raise_application_error(c_err_invalid_amount, 'Hold lifetime must be positive');
+        end if;
+
+        v_hold_id := find_hold(p_request_id, p_account, p_amount);
+        if v_hold_id is not null then
+            return v_hold_id;
+        end if;
+
+        begin
+            select CURRENCY, STATUS, BALANCE - HELD_AMOUNT
+            into v_currency, v_status, v_available
+            from WALLET_ACCOUNT
+            where ID = p_account
+            for update;
+        exception
+            when no_data_found then
+                raise_application_error(c_err_acct_missing, 'Account not found');
+        end;
+
+        if v_status != 'ACTIVE' then
+            raise_application_error(c_err_status_invalid, 'Account status not active');
+        end if;
+        if v_currency != p_currency then
+            raise_application_error(c_err_currency_mismatch, 'Currency mismatch');
+        end if;
+
+        -- a concurrent replay that passed the first check before we held the lock is caught here
+        v_hold_id := find_hold(p_request_id, p_account, p_amount);
+        if v_hold_id is not null then
+            return v_hold_id;
+        end if;
+
+        if v_available < p_amount then
+            raise_application_error(c_err_insufficient, 'Insufficient balance');
+        end if;
+
+        update WALLET_ACCOUNT
+        set HELD_AMOUNT = HELD_AMOUNT + p_amount
+        where ID = p_account;
+
+        insert into WALLET_HOLD (REQUEST_ID, ACCOUNT_ID, CURRENCY, AMOUNT, EXPIRES_AT)
+        values (p_request_id, p_account, p_currency, p_amount, systimestamp + numtodsinterval(p_ttl_seconds, 'SECOND'))
+        returning HOLD_ID into v_hold_id;
+
+        return v_hold_id;
+    end place_hold;
+
+    procedure capture_hold(
+        p_request_id in varchar2,
+        p_hold_id    in WALLET_HOLD.HOLD_ID%type,
+        p_to         in WALLET_ACCOUNT.ID%type,
+        p_amount     in number
+    ) is
+        v_account         WALLET_HOLD.ACCOUNT_ID%type;
+        v_currency        WALLET_HOLD.CURRENCY%type;
+        v_held            WALLET_HOLD.AMOUNT%type;
+        v_status          WALLET_HOLD.STATUS%type;
+        v_expires_at      WALLET_HOLD.EXPIRES_AT%type;
+        v_capture_request WALLET_HOLD.CAPTURE_REQUEST_ID%type;
+    begin
+        if p_request_id is null then
+            raise_application_error(c_err_invalid_amount, 'Request id is required');
+        end if;
+        if p_amount is null or p_amount <= 0 then
+            raise_application_error(c_err_invalid_amount, 'Amount must be positive');
+        end if;
+
+        begin
+            select ACCOUNT_ID, CURRENCY, AMOUNT, STATUS, EXPIRES_AT, CAPTURE_REQUEST_ID
+            into v_account, v_currency, v_held, v_status, v_expires_at, v_capture_request
+            from WALLET_HOLD
+            where HOLD_ID = p_hold_id
+            for update;
+        exception
+            when no_data_found then
+                raise_application_error(c_err_hold_not_active, 'Hold not found');
+        end;
+
+        if v_status = 'CAPTURED' and v_capture_request = p_request_id then
+            return;
+        end if;
+        if v_status != 'ACTIVE' or v_expires_at <= systimestamp then
+            raise_application_error(c_err_hold_not_active, 'Hold ' || p_hold_id || ' is not active');
+        end if;
+        if p_amount > v_held then
+            raise_application_error(c_err_invalid_amount, 'Capture exceeds the held amount');
+        end if;
+        if count_postings(p_request_id) > 0 then
+            raise_application_error(c_err_duplicate_request, 'Duplicate request');
+        end if;
+
+        -- both accounts in id order before either is updated, the order transfer locks them in
+        for r in (
+            select ID
+            from WALLET_ACCOUNT
+            where ID in (v_account, p_to)
+            order by ID
+            for update
+        ) loop
+            null;
+        end loop;
+
+        update WALLET_ACCOUNT
+        set HELD_AMOUNT = HELD_AMOUNT - v_held
+        where ID = v_account;
+
+        update WALLET_HOLD
+        set STATUS             = 'CAPTURED',
+            CAPTURE_REQUEST_ID = p_request_id,
+            TS_CLOSED          = systimestamp
+        where HOLD_ID = p_hold_id;
+
+        transfer(p_request_id, v_account, p_to, v_currency, p_amount);
+    end capture_hold;
+
+    procedure release_hold(
+        p_hold_id in WALLET_HOLD.HOLD_ID%type
+    ) is
+        v_account WALLET_HOLD.ACCOUNT_ID%type;
+        v_held    WALLET_HOLD.AMOUNT%type;
+        v_status  WALLET_HOLD.STATUS%type;
+    begin
+        begin
+            select ACCOUNT_ID, AMOUNT, STATUS
+            into v_account, v_held, v_status
+            from WALLET_HOLD
+            where HOLD_ID = p_hold_id
+            for update;
+        exception
+            when no_data_found then
+                raise_application_error(c_err_hold_not_active, 'Hold not found');
+        end;
+
+        if v_status in ('RELEASED', 'EXPIRED') then
+            return;
+        elsif v_status != 'ACTIVE' then
+            raise_application_error(c_err_hold_not_active, 'Hold ' || p_hold_id || ' is not active');
+        end if;
+
+        update WALLET_ACCOUNT
+        set HELD_AMOUNT = HELD_AMOUNT - v_held
+        where ID = v_account;
+
+        update WALLET_HOLD
+        set STATUS    = 'RELEASED',
+            TS_CLOSED = systimestamp
+        where HOLD_ID = p_hold_id;
+    end release_hold;
+
+    function expire_holds(
+        p_hold_ids in WALLET_NUM_TAB
+    ) return pls_integer is
+        v_hold_ids WALLET_NUM_TAB;
+        v_accounts WALLET_NUM_TAB;
+        v_amounts  WALLET_NUM_TAB;
+    begin
+        -- hold rows first, then accounts in id order, as capture_hold locks them
+        select HOLD_ID
+        bulk collect into v_hold_ids
+        from WALLET_HOLD
+        where HOLD_ID in (select column_value from table(p_hold_ids))
+          and STATUS = 'ACTIVE'
+          and EXPIRES_AT <= systimestamp
+        order by HOLD_ID
+        for update;
+
+        if v_hold_ids.count = 0 then
+            return 0;
+        end if;
+
+        -- one update per account, however many of its holds expire
+        select ACCOUNT_ID, sum(AMOUNT)
+        bulk collect into v_accounts, v_amounts
+        from WALLET_HOLD
+        where HOLD_ID in (select column_value from table(v_hold_ids))
+        group by ACCOUNT_ID
+        order by ACCOUNT_ID;
+
+        forall i in 1 .. v_accounts.count
+            update WALLET_ACCOUNT
+            set HELD_AMOUNT = HELD_AMOUNT - v_amounts(i)
+            where ID = v_accounts(i);
+
+        update WALLET_HOLD
+        set STATUS    = 'EXPIRED',
+            TS_CLOSED = systimestamp
+        where HOLD_ID in (select column_value from table(v_hold_ids));
+
+        return v_hold_ids.count;
+    end expire_holds;
+
+    function run_schedules(
+        p_schedule_ids in WALLET_NUM_TAB
+    ) return pls_integer is
+        v_posted     pls_integer := 0;
+        v_code       pls_integer;
+        v_next       WALLET_SCHEDULE.NEXT_RUN_AT%type;
+        v_request_id WALLET_TRANSFER.REQUEST_ID%type;
+    begin
+        -- every account of the batch in one pass in id order, so two batches sharing accounts cannot
+        -- deadlock by taking them schedule by schedule
+        for r in (
+            select ID
+            from WALLET_ACCOUNT
+            where ID in (select FROM_ACCOUNT_ID
+                         from WALLET_SCHEDULE
+                         where SCHEDULE_ID in (select column_value from table(p_schedule_ids))
+                           and STATUS = 'ACTIVE'
+                         union
+                         select TO_ACCOUNT_ID
+                         from WALLET_SCHEDULE
+                         where SCHEDULE_ID in (select column_value from table(p_schedule_ids))
+                           and STATUS = 'ACTIVE')
+            order by ID
+            for update
+        ) loop
+            null;
+        end loop;
+
+        for s in (select SCHEDULE_ID, FROM_ACCOUNT_ID, TO_ACCOUNT_ID, CURRENCY, AMOUNT, PERIOD, START_AT, END_AT,
+                         SPREAD_SECONDS, OCCURRENCE
+                  from WALLET_SCHEDULE
+                  where SCHEDULE_ID in (select column_value from table(p_schedule_ids))
+                    and STATUS = 'ACTIVE'
+                  order by SCHEDULE_ID) loop
+            v_code := 0;
+            v_request_id := 'sched-' || s.SCHEDULE_ID || '-' || s.OCCURRENCE;
+            savepoint run_schedule;
+            begin
+                -- with both accounts locked no one else can post it in between; a replay only moves on
+                if count_postings(v_request_id) != 2 then
+                    transfer(v_request_id, s.FROM_ACCOUNT_ID, s.TO_ACCOUNT_ID, s.CURRENCY, s.AMOUNT);
+                    v_posted := v_posted + 1;
+                end if;
+            exception
+                when others then
+                    -- only a refusal skips the occurrence; anything else fails the whole batch
+                    if sqlcode not between -20999 and -20000 then
+                        raise;
+                    end if;
+                    rollback to run_schedule;
+                    v_code := sqlcode;
+            end;
+
+            -- counted from START_AT rather than the last run, so months do not drift after a short one
+            v_next := case s.PERIOD
+                          when 'DAILY' then s.START_AT + numtodsinterval(s.OCCURRENCE + 1, 'DAY')
+                          when 'WEEKLY' then s.START_AT + numtodsinterval(7 * (s.OCCURRENCE + 1), 'DAY')
+                          when 'MONTHLY' then s.START_AT + numtodsinterval(
+                                  add_months(trunc(s.START_AT), s.OCCURRENCE + 1) - trunc(s.START_AT), 'DAY')
+                      end;
+
+            update WALLET_SCHEDULE
+            set OCCURRENCE      = OCCURRENCE + 1,
+                NEXT_RUN_AT     = coalesce(v_next, NEXT_RUN_AT),
+                DUE_AT          = coalesce(v_next + numtodsinterval(SPREAD_SECONDS, 'SECOND'), DUE_AT),
+                STATUS          = case when v_next is null or v_next > END_AT then 'DONE' else STATUS end,
+                LAST_ERROR_CODE = v_code,
+                TS_LAST_RUN     = systimestamp
+            where SCHEDULE_ID = s.SCHEDULE_ID;
+        end loop;
+
+        return v_posted;
+    end run_schedules;
+
+    procedure post_accruals(
+        p_run_id         in varchar2,
+        p_kind           in varchar2,
+        p_currency       in WALLET_ACCOUNT.CURRENCY%type,
+        p_system_account in WALLET_ACCOUNT.ID%type,
+        p_from_id        in WALLET_ACCOUNT.ID%type,
+        p_to_id          in WALLET_ACCOUNT.ID%type,
+        p_rate           in number,
+        p_fixed          in number
+    ) is
+        type t_ids is table of WALLET_ACCOUNT.ID%type;
+        type t_amounts is table of number;
+        v_ids          t_ids;
+        v_amounts      t_amounts;
+        v_total        number := 0;
+        v_description  WALLET_TRANSFER.DESCRIPTION%type;
+        v_sys_currency WALLET_ACCOUNT.CURRENCY%type;
+        v_sys_status   WALLET_ACCOUNT.STATUS%type;
+        v_sys_balance  number;
+        v_unsettled    number;
+    begin
+        if p_run_id is null or length(p_run_id) > 40 then
+            raise_application_error(c_err_invalid_amount, 'Run id is required and at most 40 characters');
+        end if;
+        if p_kind is null or p_kind not in ('INTEREST', 'FEE') then
+            raise_application_error(c_err_invalid_amount, 'Accrual kind must be INTEREST or FEE');
+        end if;
+        if p_rate is null or p_rate < 0 or p_fixed is null or p_fixed < 0
+            or p_from_id is null or p_to_id is null or p_from_id >= p_to_id then
+            raise_application_error(c_err_invalid_amount, 'Invalid accrual arguments');
+        end if;
+
+        -- claim the chunk before touching any account: a repeated or concurrent run of the same
+        -- chunk waits on this row and then finds it already posted
+        begin
+            insert into WALLET_ACCRUAL_CHUNK (RUN_ID, CHUNK_FROM, CHUNK_TO, ACCOUNTS, TOTAL)
+            values (p_run_id, p_from_id, p_to_id, 0, 0);
+        exception
+            when dup_val_on_index then
+                return;
+        end;
+
+        -- the chunk's accounts in id order, the order transfer locks them in; CURRENCY never changes, so
+        -- every account the select below can pick is already held. The system account is left alone, so
+        -- parallel chunks and transfers to or from it do not queue behind each other
+        for r in (
+            select ID
+            from WALLET_ACCOUNT
+            where ID >= p_from_id
+              and ID < p_to_id
+              and ID != p_system_account
+              and CURRENCY = p_currency
+            order by ID
+            for update
+        ) loop
+            null;
+        end loop;
+
+        -- amounts are computed from the locked balances, so a concurrent transfer cannot slip in between
+        select ID,
+               case p_kind
+                   when 'FEE' then least(BALANCE - HELD_AMOUNT, round(BALANCE * p_rate + p_fixed, 2))
+                   else round(BALANCE * p_rate + p_fixed, 2)
+                   end
+            bulk collect into v_ids, v_amounts
+        from WALLET_ACCOUNT
+        where ID >= p_from_id
+          and ID < p_to_id
+          and ID != p_system_account
+          and CURRENCY = p_currency
+          and STATUS = 'ACTIVE'
+          and case p_kind when 'FEE' then BALANCE - HELD_AMOUNT else BALANCE end > 0
+          and round(BALANCE * p_rate + p_fixed, 2) > 0
+        order by ID;
+
+        for i in 1 .. v_ids.count loop
+            v_total := v_total + v_amounts(i);
+        end loop;
+
+        -- read without a lock: the check counts what settled and unsettled chunks of the run have paid, so
+        -- only chunks running at the same time can together pay out more than the system account holds
+        begin
+            select CURRENCY, STATUS, BALANCE
+            into v_sys_currency, v_sys_status, v_sys_balance
+            from WALLET_ACCOUNT
+            where ID = p_system_account;
+        exception
+            when no_data_found then
+                raise_application_error(c_err_acct_missing, 'System account not found');
+        end;
+        select coalesce(sum(TOTAL), 0)
+        into v_unsettled
+        from WALLET_ACCRUAL_CHUNK
+        where RUN_ID = p_run_id
+          and SETTLED = 0;
+
+        if v_sys_status != 'ACTIVE' then
+            raise_application_error(c_err_status_invalid, 'System account status not active');
+        end if;
+        if v_sys_currency != p_currency then
+            raise_application_error(c_err_currency_mismatch, 'Currency mismatch');
+        end if;
+        if p_kind = 'INTEREST' and v_sys_balance - v_unsettled < v_total then
+            raise_application_error(c_err_insufficient, 'Insufficient balance');
+        end if;
+
+        v_description := case p_kind when 'INTEREST' then 'Interest accrual' else 'Fee accrual' end;
+
+        forall i in 1 .. v_ids.count
+            update WALLET_ACCOUNT
+            set BALANCE = BALANCE + case p_kind when 'INTEREST' then v_amounts(i) else -v_amounts(i) end
+            where ID = v_ids(i);
+
+        -- request ids are derived from the run and the account, so each account is posted at most once per run
+        forall i in 1 .. v_ids.count
+            insert into WALLET_TRANSFER (REQUEST_ID, FROM_ACCOUNT_ID, TO_ACCOUNT_ID, CURRENCY, AMOUNT, DESCRIPTION)
+            values (p_run_id || ':' || v_ids(i),
+                    case p_kind when 'INTEREST' then p_system_account else v_ids(i) end,
+                    case p_kind when 'INTEREST' then v_ids(i) else p_system_account end,
+                    p_currency, v_amounts(i), v_description);
+
+        update WALLET_ACCRUAL_CHUNK
+        set ACCOUNTS = v_ids.count,
+            TOTAL    = v_total
+        where RUN_ID = p_run_id
+          and CHUNK_FROM = p_from_id;
+
+        declare
+            v_event json_object_t := json_object_t();
+        begin
+            v_event.put('runId', p_run_id);
+            v_event.put('kind', p_kind);
+            v_event.put('currency', p_currency);
+            v_event.put('fromId', p_from_id);
+            v_event.put('toId', p_to_id);
+            v_event.put('accounts', v_ids.count);
+            v_event.put('total', v_total);
+            enqueue_event(p_run_id || ':' || p_from_id, 'ACCRUAL_POSTED', v_event);
+        end;
+    end post_accruals;
+
+    procedure settle_accruals(
+        p_run_id         in varchar2,
+        p_kind           in varchar2,
+        p_system_account in WALLET_ACCOUNT.ID%type
+    ) is
+        type t_amounts is table of number;
+        v_totals t_amounts;
+        v_total  number := 0;
+    begin
+        if p_kind is null or p_kind not in ('INTEREST', 'FEE') then
+            raise_application_error(c_err_invalid_amount, 'Accrual kind must be INTEREST or FEE');
+        end if;
+
+        -- chunks still posting are not committed and not seen here; the next settle of the run takes them
+        update WALLET_ACCRUAL_CHUNK
+        set SETTLED = 1
+        where RUN_ID = p_run_id
+          and SETTLED = 0
+        returning TOTAL bulk collect into v_totals;
+
+        for i in 1 .. v_totals.count loop
+            v_total := v_total + v_totals(i);
+        end loop;
+        if v_total = 0 then
+            return;
+        end if;
+
+        update WALLET_ACCOUNT
+        set BALANCE = BALANCE + case p_kind when 'INTEREST' then -v_total else v_total end
+        where ID = p_system_account;
+        if sql%rowcount = 0 then
+            raise_application_error(c_err_acct_missing, 'System account not found');
+        end if;
+    end settle_accruals;
+
+    function convert_journal(
+        p_after_entry_id in WALLET_JOURNAL.ENTRY_ID%type,
+        p_limit          in pls_integer
+    ) return number is
+        type t_ids is table of WALLET_JOURNAL.ENTRY_ID%type;
+        v_debit_ids  t_ids;
+        v_credit_ids t_ids;
+        v_last       WALLET_JOURNAL.ENTRY_ID%type;
+    begin
+        if p_after_entry_id is null or p_limit is null or p_limit <= 0 then
+            raise_application_error(c_err_invalid_amount, 'Invalid conversion arguments');
+        end if;
+
+        select max(ENTRY_ID)
+        into v_last
+        from (select ENTRY_ID
+              from WALLET_JOURNAL
+              where ENTRY_ID > p_after_entry_id
+              order by ENTRY_ID
+                  fetch first p_limit rows only);
+
+        if v_last is null then
+            return null;
+        end if;
+
+        -- only pairs the view can reproduce exactly: one DEBIT and one CREDIT of the same amount, no further
+        -- legs, and descriptions that are either the transfer defaults or the same on both sides. Anything
+        -- else stays in WALLET_JOURNAL, where the view reads it unchanged.
+        select d.ENTRY_ID, c.ENTRY_ID
+            bulk collect into v_debit_ids, v_credit_ids
+        from WALLET_JOURNAL d
+                 join WALLET_JOURNAL c on c.REQUEST_ID = d.REQUEST_ID and c.POSTING_SEQ = 2
+        where d.ENTRY_ID > p_after_entry_id
+          and d.ENTRY_ID <= v_last
+          and d.POSTING_SEQ = 1
+          and d.SIDE = 'DEBIT'
+          and c.SIDE = 'CREDIT'
+          and c.ACCOUNT_ID != d.ACCOUNT_ID
+          and c.CURRENCY = d.CURRENCY
+          and c.AMOUNT = d.AMOUNT
+          and c.ENTRY_ID between d.ENTRY_ID + 1 and d.ENTRY_ID + c_max_credit_gap
+          and (c.DESCRIPTION = d.DESCRIPTION
+            or (d.DESCRIPTION = 'Transfer out' and c.DESCRIPTION = 'Transfer in'))
+          and not exists (select 1
+                          from WALLET_JOURNAL x
+                          where x.REQUEST_ID = d.REQUEST_ID
+                            and x.POSTING_SEQ > 2)
+        order by d.ENTRY_ID
+            for update;
+
+        -- the credit posting keeps its own timestamp where it differs from the debit's, as it keeps its ENTRY_ID
+        forall i in 1 .. v_debit_ids.count
+            insert into WALLET_TRANSFER (ENTRY_ID, REQUEST_ID, TS_CREATED, FROM_ACCOUNT_ID, TO_ACCOUNT_ID, CURRENCY,
+                                         AMOUNT, DESCRIPTION, CREDIT_ENTRY_ID, CREDIT_TS_CREATED)
+            select d.ENTRY_ID,
+                   d.REQUEST_ID,
+                   d.TS_CREATED,
+                   d.ACCOUNT_ID,
+                   c.ACCOUNT_ID,
+                   d.CURRENCY,
+                   d.AMOUNT,
+                   case when d.DESCRIPTION = 'Transfer out' and c.DESCRIPTION = 'Transfer in' then null
+                        else d.DESCRIPTION end,
+                   case when c.ENTRY_ID != d.ENTRY_ID + 1 then c.ENTRY_ID end,
+                   case when c.TS_CREATED != d.TS_CREATED then c.TS_CREATED end
+            from WALLET_JOURNAL d,
+                 WALLET_JOURNAL c
+            where d.ENTRY_ID = v_debit_ids(i)
+              and c.ENTRY_ID = v_credit_ids(i);
+
+        forall i in 1 .. v_debit_ids.count
+            delete from WALLET_JOURNAL where ENTRY_ID = v_debit_ids(i);
+
+        forall i in 1 .. v_credit_ids.count
+            delete from WALLET_JOURNAL where ENTRY_ID = v_credit_ids(i);
+
+        return v_last;
+    end convert_journal;
 end wallet_pkg;
 /
@@ -0,0 +1,61 @@
+-- Cross-currency transfers (wallet_pkg.transfer_fx). Every published rate is a row of its own with a new
+-- RATE_VERSION; FxRateCache serves the latest version of each pair and transfer_fx posts with the version
+-- it is given, which is recorded on both postings.
+create sequence WALLET_FX_RATE_SEQ cache 100;
+
+create table WALLET_FX_RATE
+(
+    RATE_VERSION number default WALLET_FX_RATE_SEQ.nextval primary key,
+    BASE_CCY     varchar2(3) not null,
+    QUOTE_CCY    varchar2(3) not null,
+    -- units of QUOTE_CCY for one unit of BASE_CCY
+    RATE         number      not null check (RATE > 0),
+    TS_CREATED   timestamp with time zone default systimestamp not null,
+    constraint ck_fx_rate_pair check (BASE_CCY != QUOTE_CCY)
+);
+
+-- latest rate per pair, for the cache's initial load
+create index ix_fx_rate_pair on WALLET_FX_RATE (BASE_CCY, QUOTE_CCY, RATE_VERSION);
+
+-- null on single-currency postings
+alter table WALLET_JOURNAL add RATE_VERSION number constraint fk_journal_fx_rate references WALLET_FX_RATE (RATE_VERSION);
+
+create or replace view WALLET_POSTING_V as
+select j.ENTRY_ID,
+       j.ENTRY_ID as SOURCE_ENTRY_ID,
+       j.REQUEST_ID,
+       j.TS_CREATED,
+       j.POSTING_SEQ,
+       j.ACCOUNT_ID,
+       j.CURRENCY,
+       j.AMOUNT,
+       j.SIDE,
+       j.DESCRIPTION,
+       j.RATE_VERSION
+from WALLET_JOURNAL j
+union all
+select t.ENTRY_ID,
+       t.ENTRY_ID,
+       t.REQUEST_ID,
+       t.TS_CREATED,
+       1,
+       t.FROM_ACCOUNT_ID,
+       t.CURRENCY,
+       t.AMOUNT,
+       'DEBIT',
+       coalesce(t.DESCRIPTION, 'Transfer out'),
+       cast(null as number)
+from WALLET_TRANSFER t
+union all
+select coalesce(t.CREDIT_ENTRY_ID, t.ENTRY_ID + 1),
+       t.ENTRY_ID,
+       t.REQUEST_ID,
+       coalesce(t.CREDIT_TS_CREATED, t.TS_CREATED),
+       2,
+       t.TO_ACCOUNT_ID,
+       t.CURRENCY,
+       t.AMOUNT,
+       'CREDIT',
+       coalesce(t.DESCRIPTION, 'Transfer in'),
+       cast(null as number)
+from WALLET_TRANSFER t;
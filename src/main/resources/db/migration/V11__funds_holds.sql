@@ -0,0 +1,27 @@
+-- Funds holds (wallet_pkg.place_hold / capture_hold / release_hold / expire_holds). A hold reserves part of
+-- an account's balance without posting anything; HELD_AMOUNT is the sum of the account's ACTIVE holds, kept
+-- in step by wallet_pkg, and every debit checks BALANCE - HELD_AMOUNT. A capture posts one ordinary transfer.
+alter table WALLET_ACCOUNT add HELD_AMOUNT number default 0 not null constraint ck_account_held check (HELD_AMOUNT >= 0);
+
+create sequence WALLET_HOLD_SEQ cache 1000;
+
+create table WALLET_HOLD
+(
+    HOLD_ID            number default WALLET_HOLD_SEQ.nextval primary key,
+    -- idempotency key of place_hold
+    REQUEST_ID         varchar2(64) not null constraint uq_hold_request unique,
+    ACCOUNT_ID         number       not null constraint fk_hold_account references WALLET_ACCOUNT (ID),
+    CURRENCY           varchar2(3)  not null,
+    AMOUNT             number       not null check (AMOUNT > 0),
+    STATUS             varchar2(10) default 'ACTIVE' not null
+        constraint ck_hold_status check (STATUS in ('ACTIVE', 'CAPTURED', 'RELEASED', 'EXPIRED')),
+    EXPIRES_AT         timestamp with time zone not null,
+    -- request id of the transfer a capture posted
+    CAPTURE_REQUEST_ID varchar2(64),
+    TS_CREATED         timestamp with time zone default systimestamp not null,
+    TS_CLOSED          timestamp with time zone
+);
+
+-- open holds by expiry, for HoldService's start-up load
+create index ix_hold_status_expiry on WALLET_HOLD (STATUS, EXPIRES_AT);
+create index ix_hold_account on WALLET_HOLD (ACCOUNT_ID);
@@ -0,0 +1,37 @@
+-- Scheduled and recurring transfers (wallet_pkg.run_schedules). Occurrence n of a schedule falls due at
+-- START_AT plus n periods plus SPREAD_SECONDS, a fixed offset derived from SCHEDULE_KEY so that schedules
+-- sharing a nominal time (midnight, the 1st of the month) are spread over a window instead of all falling
+-- due at once. The occurrence is posted as the transfer 'sched-<SCHEDULE_ID>-<OCCURRENCE>'.
+create sequence WALLET_SCHEDULE_SEQ cache 100;
+
+create table WALLET_SCHEDULE
+(
+    SCHEDULE_ID     number default WALLET_SCHEDULE_SEQ.nextval primary key,
+    -- idempotency key of ScheduledTransferService.create
+    SCHEDULE_KEY    varchar2(64) not null constraint uq_schedule_key unique,
+    FROM_ACCOUNT_ID number       not null constraint fk_schedule_from references WALLET_ACCOUNT (ID),
+    TO_ACCOUNT_ID   number       not null constraint fk_schedule_to references WALLET_ACCOUNT (ID),
+    CURRENCY        varchar2(3)  not null,
+    AMOUNT          number       not null check (AMOUNT > 0),
+    PERIOD          varchar2(10) not null
+        constraint ck_schedule_period check (PERIOD in ('ONCE', 'DAILY', 'WEEKLY', 'MONTHLY')),
+    START_AT        timestamp with time zone not null,
+    -- no occurrence is due after END_AT; null runs until cancelled
+    END_AT          timestamp with time zone,
+    SPREAD_SECONDS  number       not null check (SPREAD_SECONDS >= 0),
+    -- the next occurrence to run, counted from 0, and its nominal and spread times
+    OCCURRENCE      number default 0 not null,
+    NEXT_RUN_AT     timestamp with time zone not null,
+    DUE_AT          timestamp with time zone not null,
+    STATUS          varchar2(10) default 'ACTIVE' not null
+        constraint ck_schedule_status check (STATUS in ('ACTIVE', 'DONE', 'CANCELLED')),
+    -- 0, or the wallet_pkg error code that refused the last occurrence
+    LAST_ERROR_CODE number,
+    TS_LAST_RUN     timestamp with time zone,
+    TS_CREATED      timestamp with time zone default systimestamp not null
+);
+
+-- due schedules, for the scheduler's claim
+create index ix_schedule_status_due on WALLET_SCHEDULE (STATUS, DUE_AT);
+create index ix_schedule_from on WALLET_SCHEDULE (FROM_ACCOUNT_ID);
+create index ix_schedule_to on WALLET_SCHEDULE (TO_ACCOUNT_ID);
@@ -0,0 +1,8 @@
+-- wallet_pkg.post_accruals no longer moves a chunk's total through the system account; settle_accruals
+-- does it once per run for the chunks not settled yet. Chunks posted before this were settled with the
+-- chunk itself.
+alter table WALLET_ACCRUAL_CHUNK add (SETTLED number(1) default 1 not null);
+
+alter table WALLET_ACCRUAL_CHUNK modify (SETTLED default 0);
+
+alter table WALLET_ACCRUAL_CHUNK add constraint ck_accrual_chunk_settled check (SETTLED in (0, 1));
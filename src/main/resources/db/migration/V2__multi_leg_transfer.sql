@@ -0,0 +1,22 @@
+create or replace type WALLET_NUM_TAB as table of number;
+/
+
+create or replace type WALLET_SIDE_TAB as table of varchar2(6);
+/
+
+-- a multi-leg transfer writes one posting per leg, so POSTING_SEQ is no longer capped at 2
+declare
+    v_name user_constraints.constraint_name%type;
+begin
+    select constraint_name
+    into v_name
+    from user_constraints
+    where table_name = 'WALLET_JOURNAL'
+      and constraint_type = 'C'
+      and search_condition_vc like 'POSTING_SEQ in%';
+
+    execute immediate 'alter table WALLET_JOURNAL drop constraint ' || v_name;
+end;
+/
+
+alter table WALLET_JOURNAL add constraint ck_journal_posting_seq check (POSTING_SEQ >= 1);
@@ -0,0 +1,6 @@
+create table WALLET_JOURNAL_OFFSET
+(
+    SUBSCRIBER    varchar2(100) primary key,
+    LAST_ENTRY_ID number        not null,
+    TS_UPDATED    timestamp with time zone default systimestamp not null
+);
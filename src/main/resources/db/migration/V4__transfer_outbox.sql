@@ -0,0 +1,8 @@
+create table WALLET_OUTBOX
+(
+    EVENT_ID   number generated by default as identity primary key,
+    REQUEST_ID varchar2(64)   not null,
+    EVENT_TYPE varchar2(50)   not null,
+    PAYLOAD    varchar2(4000) not null,
+    TS_CREATED timestamp with time zone default systimestamp not null
+);
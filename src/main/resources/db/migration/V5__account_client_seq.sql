@@ -0,0 +1,2 @@
+-- last client sequence number applied per source account (null until a sequenced transfer is posted)
+alter table WALLET_ACCOUNT add LAST_CLIENT_SEQ number;
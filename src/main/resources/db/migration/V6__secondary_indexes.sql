@@ -0,0 +1,19 @@
+-- Secondary and covering indexes for the service queries; QueryPlanInspector checks they are used.
+-- REQUEST_ID lookups on WALLET_JOURNAL are already served by uq_journal_request (REQUEST_ID, POSTING_SEQ).
+
+-- foreign key to WALLET_ACCOUNT: without it, deleting or re-keying a wallet locks the whole account table
+create index ix_account_wallet on account (wallet_id);
+
+-- AccountService.findByName: one branch of its union per name column
+create index ix_account_name on account (lName, fName);
+create index ix_account_fname on account (fName);
+
+-- time-range scans across all accounts (reconciliation, retention)
+create index ix_journal_ts on WALLET_JOURNAL (TS_CREATED);
+
+-- covering version of ix_journal_account_ts: the statement sums read SIDE and AMOUNT from the index
+-- without visiting the table. Built under a new name and swapped in so the statement hints keep working;
+-- both steps run online so postings are not blocked behind a table lock while the index builds.
+create index ix_journal_account_ts_cov on WALLET_JOURNAL (ACCOUNT_ID, TS_CREATED, SIDE, AMOUNT) online;
+drop index ix_journal_account_ts online;
+alter index ix_journal_account_ts_cov rename to ix_journal_account_ts;
@@ -0,0 +1,12 @@
+-- one row per ID-range chunk of an accrual run, written in the chunk's own transaction,
+-- so a re-run skips exactly the chunks that committed
+create table WALLET_ACCRUAL_CHUNK
+(
+    RUN_ID     varchar2(40) not null,
+    CHUNK_FROM number       not null,
+    CHUNK_TO   number       not null,
+    ACCOUNTS   number       not null,
+    TOTAL      number       not null,
+    TS_POSTED  timestamp with time zone default systimestamp not null,
+    constraint pk_accrual_chunk primary key (RUN_ID, CHUNK_FROM)
+);
@@ -0,0 +1,93 @@
+-- Single-row journal format: a two-party transfer is one WALLET_TRANSFER row instead of a DEBIT and a CREDIT
+-- row in WALLET_JOURNAL. Multi-leg postings stay in WALLET_JOURNAL. WALLET_POSTING_V presents both as the
+-- per-side postings readers have always seen.
+
+-- ENTRY_IDs for both tables come from one sequence stepping by 2; a transfer's credit posting is shown as
+-- ENTRY_ID + 1, which the sequence never hands out. Started above every identity value already used.
+declare
+    v_start number;
+begin
+    select coalesce(max(ENTRY_ID), 0) + 1000 into v_start from WALLET_JOURNAL;
+    execute immediate 'create sequence WALLET_ENTRY_SEQ start with ' || v_start || ' increment by 2 cache 1000';
+end;
+/
+
+alter table WALLET_JOURNAL modify ENTRY_ID drop identity;
+
+alter table WALLET_JOURNAL modify ENTRY_ID default WALLET_ENTRY_SEQ.nextval;
+
+create table WALLET_TRANSFER
+(
+    ENTRY_ID        number default WALLET_ENTRY_SEQ.nextval primary key,
+    REQUEST_ID      varchar2(64) not null,
+    TS_CREATED      timestamp with time zone default systimestamp not null,
+    FROM_ACCOUNT_ID number       not null references WALLET_ACCOUNT (ID),
+    TO_ACCOUNT_ID   number       not null references WALLET_ACCOUNT (ID),
+    CURRENCY        varchar2(3)  not null,
+    AMOUNT          number       not null check (AMOUNT > 0),
+    -- null shows as 'Transfer out' / 'Transfer in'
+    DESCRIPTION     varchar2(200),
+    -- set only on rows converted from WALLET_JOURNAL: the legacy credit posting keeps its ENTRY_ID.
+    -- Kept close to ENTRY_ID so JournalTailer can still range-scan the primary key.
+    CREDIT_ENTRY_ID number,
+    -- set only on converted rows whose legacy credit posting was written at a different time than the debit
+    CREDIT_TS_CREATED timestamp with time zone,
+    constraint uq_transfer_request unique (REQUEST_ID),
+    constraint ck_transfer_parties check (FROM_ACCOUNT_ID != TO_ACCOUNT_ID),
+    constraint ck_transfer_credit_id check (CREDIT_ENTRY_ID between ENTRY_ID + 1 and ENTRY_ID + 64)
+);
+
+-- the account/time indexes carry AMOUNT so statement sums are answered from the index, as on WALLET_JOURNAL
+create index ix_transfer_from_ts on WALLET_TRANSFER (FROM_ACCOUNT_ID, TS_CREATED, AMOUNT);
+
+-- on the credit side's timestamp as WALLET_POSTING_V shows it, so the view's time predicate can range-scan it
+create index ix_transfer_to_ts on WALLET_TRANSFER (TO_ACCOUNT_ID, coalesce(CREDIT_TS_CREATED, TS_CREATED), AMOUNT);
+
+create index ix_transfer_ts on WALLET_TRANSFER (TS_CREATED);
+
+-- SOURCE_ENTRY_ID is the primary key of the underlying row, so ENTRY_ID range reads can be pushed into both tables
+create or replace view WALLET_POSTING_V as
+select j.ENTRY_ID,
+       j.ENTRY_ID as SOURCE_ENTRY_ID,
+       j.REQUEST_ID,
+       j.TS_CREATED,
+       j.POSTING_SEQ,
+       j.ACCOUNT_ID,
+       j.CURRENCY,
+       j.AMOUNT,
+       j.SIDE,
+       j.DESCRIPTION
+from WALLET_JOURNAL j
+union all
+select t.ENTRY_ID,
+       t.ENTRY_ID,
+       t.REQUEST_ID,
+       t.TS_CREATED,
+       1,
+       t.FROM_ACCOUNT_ID,
+       t.CURRENCY,
+       t.AMOUNT,
+       'DEBIT',
+       coalesce(t.DESCRIPTION, 'Transfer out')
+from WALLET_TRANSFER t
+union all
+select coalesce(t.CREDIT_ENTRY_ID, t.ENTRY_ID + 1),
+       t.ENTRY_ID,
+       t.REQUEST_ID,
+       coalesce(t.CREDIT_TS_CREATED, t.TS_CREATED),
+       2,
+       t.TO_ACCOUNT_ID,
+       t.CURRENCY,
+       t.AMOUNT,
+       'CREDIT',
+       coalesce(t.DESCRIPTION, 'Transfer in')
+from WALLET_TRANSFER t;
+
+create or replace view WALLET_BALANCE_V as
+select a.id,
+       a.currency,
+       coalesce(sum(case when j.side = 'CREDIT' then j.amount else -j.amount end), 0) as ledger_balance,
+       a.balance                                                                      as materialized_balance
+from WALLET_ACCOUNT a
+         left join WALLET_POSTING_V j on j.account_id = a.id and j.currency = a.currency
+group by a.id, a.currency, a.balance;
@@ -0,0 +1,54 @@
+-- account.id is assigned by AccountService from blocks of ACCOUNT_ID_SEQ (IdAllocator): one nextval reserves
+-- the next 100 ids, so the sequence steps by the block size. Inserts without an id still get one.
+declare
+    v_start number;
+begin
+    select coalesce(max(id), 0) + 1 into v_start from account;
+    execute immediate 'create sequence ACCOUNT_ID_SEQ start with ' || v_start || ' increment by 100 cache 20';
+end;
+/
+
+alter table account modify id drop identity;
+
+alter table account modify id default ACCOUNT_ID_SEQ.nextval;
+
+-- Optional primary key layouts against hot right-hand leaf blocks, picked with the Flyway placeholders
+-- accountIdIndex and entryIdIndex (WALLET_ACCOUNT_ID_INDEX / WALLET_ENTRY_ID_INDEX for DatabaseMigrator):
+--   STANDARD  ordinary b-tree, the default
+--   REVERSE   reverse-key index. Equality lookups only, so account.id alone: JournalTailer range-scans ENTRY_ID
+--   HASH      global hash-partitioned index, 16 partitions. Range scans still work, one per partition.
+--             Needs the partitioning option.
+-- The new index is built invisible next to the old one, then swapped in under the primary key.
+declare
+    procedure layout_pk(p_table varchar2, p_column varchar2, p_layout varchar2, p_reverse_allowed boolean) is
+        v_constraint user_constraints.constraint_name%type;
+        v_index      user_constraints.index_name%type;
+        v_new_index  varchar2(128) := 'PK_' || p_table || '_HASH';
+    begin
+        select constraint_name, index_name
+        into v_constraint, v_index
+        from user_constraints
+        where table_name = p_table
+          and constraint_type = 'P';
+
+        if p_layout = 'STANDARD' then
+            null;
+        elsif p_layout = 'REVERSE' and p_reverse_allowed then
+            execute immediate 'alter index ' || v_index || ' rebuild reverse online';
+        elsif p_layout = 'HASH' then
+            execute immediate 'create unique index ' || v_new_index || ' on ' || p_table || ' (' || p_column || ')'
+                || ' global partition by hash (' || p_column || ') partitions 16 invisible online';
+            execute immediate 'alter table ' || p_table || ' drop constraint ' || v_constraint || ' drop index';
+            execute immediate 'alter index ' || v_new_index || ' visible';
+            execute immediate 'alter table ' || p_table || ' add constraint PK_' || p_table
+                || ' primary key (' || p_column || ') using index ' || v_new_index;
+        else
+            raise_application_error(-20004, 'Unsupported index layout ' || p_layout || ' for ' || p_table);
+        end if;
+    end;
+begin
+    layout_pk('ACCOUNT', 'ID', upper('${accountIdIndex}'), true);
+    layout_pk('WALLET_JOURNAL', 'ENTRY_ID', upper('${entryIdIndex}'), false);
+    layout_pk('WALLET_TRANSFER', 'ENTRY_ID', upper('${entryIdIndex}'), false);
+end;
+/
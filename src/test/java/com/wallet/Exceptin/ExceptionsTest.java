@@ -1,7 +1,10 @@
 package com.wallet.Exceptin;
 
+import com.wallet.model.TransferStatus;
 import org.junit.jupiter.api.Test;
 
+import java.sql.SQLException;
+
 import static org.junit.jupiter.api.Assertions.*;
 
 class ExceptionsTest {
@@ -26,5 +29,23 @@ class ExceptionsTest {
         assertSame(cause, asWallet.getCause());
         assertTrue(asWallet instanceof WalletException);
     }
-}
 
+    @Test
+    void transferRejections_are_stackless() {
+        InsufficientBalanceException ex = new InsufficientBalanceException("low", new RuntimeException("root"));
+        assertEquals(0, ex.getStackTrace().length);
+        assertEquals(TransferStatus.INSUFFICIENT_BALANCE, ex.getStatus());
+    }
+
+    @Test
+    void sqlRuntimeException_of_skips_stack_for_application_errors() {
+        SQLRuntimeException rejected = SQLRuntimeException.of("Procedure call failed", "{call p}",
+                new SQLException("ORA-20006", "72000", 20006));
+        assertEquals("Procedure call failed: {call p}", rejected.getMessage());
+        assertEquals(0, rejected.getStackTrace().length);
+
+        SQLRuntimeException fault = SQLRuntimeException.of("Procedure call failed", "{call p}",
+                new SQLException("ORA-00060", "61000", 60));
+        assertTrue(fault.getStackTrace().length > 0);
+    }
+}
@@ -0,0 +1,291 @@
+package com.wallet.database.embedded;
+
+import com.wallet.Exceptin.InsufficientBalanceException;
+import com.wallet.Exceptin.LockUnavailableException;
+import com.wallet.Exceptin.WalletException;
+import com.wallet.database.util.SqlTemplate;
+import com.wallet.model.Leg;
+import com.wallet.model.TransferResult;
+import com.wallet.model.TransferStatus;
+import com.wallet.service.LockWaitPolicy;
+import com.wallet.service.WalletService;
+import com.wallet.service.admission.AccountRateLimiter;
+import com.wallet.service.admission.AdaptiveConcurrencyLimit;
+import com.wallet.service.admission.AdmissionController;
+import com.wallet.service.retry.TransferRetrier;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class EmbeddedWalletPkgTest {
+
+    private EmbeddedDatabase database;
+    private SqlTemplate sqlTemplate;
+    private WalletService service;
+
+    @BeforeEach
+    void setUp() {
+        database = EmbeddedDatabase.startIsolated();
+        sqlTemplate = new SqlTemplate(database);
+        // admission control is exercised elsewhere; keep it out of the way of the concurrency tests
+        AdmissionController admission = new AdmissionController(
+                new AccountRateLimiter(1, Integer.MAX_VALUE, 16_000),
+                new AdaptiveConcurrencyLimit(Integer.MAX_VALUE, Integer.MAX_VALUE, Integer.MAX_VALUE));
+        service = new WalletService(sqlTemplate, new TransferRetrier(), admission);
+
+        database.createAccount(1, "USD", "ACTIVE", new BigDecimal("100"));
+        database.createAccount(2, "USD", "ACTIVE", new BigDecimal("100"));
+        database.createAccount(3, "USD", "ACTIVE", new BigDecimal("100"));
+        database.createAccount(4, "EUR", "ACTIVE", new BigDecimal("100"));
+        database.createAccount(5, "USD", "FROZEN", new BigDecimal("100"));
+    }
+
+    @AfterEach
+    void tearDown() {
+        database.shutdown();
+    }
+
+    private BigDecimal balance(long accountId) {
+        return sqlTemplate.selectScalar("select BALANCE from WALLET_ACCOUNT where ID = ?", BigDecimal.class, accountId)
+                .orElseThrow();
+    }
+
+    private long postings(String requestId) {
+        return sqlTemplate.count("WALLET_POSTING_V", "REQUEST_ID = ?", requestId);
+    }
+
+    @Nested
+    @DisplayName("transfer")
+    class Transfer {
+
+        @Test
+        @DisplayName("should move funds and write both postings and an outbox event")
+        void transfer_postsBothLegs() {
+            service.transfer("req-1", 1L, 2L, "USD", 30.0);
+
+            assertEquals(0, new BigDecimal("70").compareTo(balance(1)));
+            assertEquals(0, new BigDecimal("130").compareTo(balance(2)));
+            assertEquals(2, postings("req-1"));
+            assertEquals(1, sqlTemplate.count("WALLET_OUTBOX", "REQUEST_ID = ? and EVENT_TYPE = 'TRANSFER_COMPLETED'", "req-1"));
+        }
+
+        @Test
+        @DisplayName("should post a replayed request only once")
+        void transfer_isIdempotent() {
+            service.transfer("req-1", 1L, 2L, "USD", 30.0);
+            service.transfer("req-1", 1L, 2L, "USD", 30.0);
+
+            assertEquals(0, new BigDecimal("70").compareTo(balance(1)));
+            assertEquals(2, postings("req-1"));
+        }
+
+        @Test
+        @DisplayName("should reject a request id that already has a single posting, as wallet_pkg does")
+        void transfer_rejectsPartialRequest() {
+            sqlTemplate.insert("insert into WALLET_JOURNAL (REQUEST_ID, POSTING_SEQ, ACCOUNT_ID, CURRENCY, AMOUNT, SIDE) "
+                    + "values ('half', 1, 3, 'USD', 5, 'CREDIT')");
+
+            assertEquals("Duplicate request",
+                    assertThrows(WalletException.class, () -> service.transfer("half", 1L, 2L, "USD", 5.0)).getMessage());
+            assertEquals(1, postings("half"));
+            assertEquals(0, new BigDecimal("100").compareTo(balance(1)));
+        }
+
+        @Test
+        @DisplayName("should map procedure errors to the same exceptions as Oracle")
+        void transfer_mapsErrorCodes() {
+            assertEquals("Account not found",
+                    assertThrows(WalletException.class, () -> service.transfer("a", 1L, 99L, "USD", 1.0)).getMessage());
+            assertEquals("Source and destination accounts must differ",
+                    assertThrows(WalletException.class, () -> service.transfer("b", 1L, 1L, "USD", 1.0)).getMessage());
+            assertEquals("Invalid amount",
+                    assertThrows(WalletException.class, () -> service.transfer("c", 1L, 2L, "USD", -1.0)).getMessage());
+            assertEquals("Account is not active",
+                    assertThrows(WalletException.class, () -> service.transfer("d", 1L, 5L, "USD", 1.0)).getMessage());
+            assertEquals("Currency mismatch",
+                    assertThrows(WalletException.class, () -> service.transfer("e", 1L, 4L, "USD", 1.0)).getMessage());
+            assertThrows(InsufficientBalanceException.class, () -> service.transfer("f", 1L, 2L, "USD", 500.0));
+
+            assertEquals(0, sqlTemplate.count("WALLET_POSTING_V", null));
+            assertEquals(0, new BigDecimal("100").compareTo(balance(1)));
+        }
+
+        @Test
+        @DisplayName("should fail fast with NOWAIT and SKIP when an account row is locked")
+        void transfer_lockWaitPolicies() throws Exception {
+            try (Connection holder = database.get()) {
+                holder.setAutoCommit(false);
+                try (PreparedStatement lock = holder.prepareStatement("select ID from WALLET_ACCOUNT where ID = 2 for update")) {
+                    lock.executeQuery().close();
+                }
+
+                assertThrows(LockUnavailableException.class,
+                        () -> service.transfer("nowait", 1L, 2L, "USD", 1.0, LockWaitPolicy.NOWAIT));
+                assertThrows(LockUnavailableException.class,
+                        () -> service.transfer("skip", 1L, 2L, "USD", 1.0, LockWaitPolicy.SKIP));
+                assertThrows(LockUnavailableException.class,
+                        () -> service.transfer("wait", 1L, 2L, "USD", 1.0, LockWaitPolicy.waitSeconds(1)));
+
+                holder.rollback();
+            }
+
+            service.transfer("after", 1L, 2L, "USD", 1.0, LockWaitPolicy.NOWAIT);
+            assertEquals(2, postings("after"));
+            assertEquals(0, postings("nowait") + postings("skip") + postings("wait"));
+        }
+    }
+
+    @Nested
+    @DisplayName("transferMulti")
+    class TransferMulti {
+
+        @Test
+        @DisplayName("should post every leg atomically")
+        void transferMulti_postsAllLegs() {
+            service.transferMulti("split-1", List.of(
+                    Leg.debit(1L, "USD", 50.0),
+                    Leg.credit(2L, "USD", 45.0),
+                    Leg.credit(3L, "USD", 5.0)));
+
+            assertEquals(0, new BigDecimal("50").compareTo(balance(1)));
+            assertEquals(0, new BigDecimal("145").compareTo(balance(2)));
+            assertEquals(0, new BigDecimal("105").compareTo(balance(3)));
+            assertEquals(3, postings("split-1"));
+        }
+
+        @Test
+        @DisplayName("should reject unbalanced legs without posting")
+        void transferMulti_rejectsUnbalanced() {
+            WalletException e = assertThrows(WalletException.class, () -> service.transferMulti("split-2", List.of(
+                    Leg.debit(1L, "USD", 50.0),
+                    Leg.credit(2L, "USD", 40.0))));
+
+            assertEquals("Debits and credits must balance", e.getMessage());
+            assertEquals(0, postings("split-2"));
+        }
+
+        @Test
+        @DisplayName("should leave every balance untouched when one debit is short")
+        void transferMulti_insufficientLegRollsBack() {
+            assertThrows(InsufficientBalanceException.class, () -> service.transferMulti("split-3", List.of(
+                    Leg.debit(1L, "USD", 50.0),
+                    Leg.debit(2L, "USD", 150.0),
+                    Leg.credit(3L, "USD", 200.0))));
+
+            assertEquals(0, new BigDecimal("100").compareTo(balance(1)));
+            assertEquals(0, new BigDecimal("100").compareTo(balance(3)));
+            assertEquals(0, postings("split-3"));
+        }
+    }
+
+    @Nested
+    @DisplayName("tryTransfer")
+    class TryTransfer {
+
+        @Test
+        @DisplayName("should report completion and business rejections as results")
+        void tryTransfer_returnsStatus() {
+            assertEquals(TransferResult.completed("ok"), service.tryTransfer("ok", 1L, 2L, "USD", 10.0));
+            assertEquals(TransferStatus.INSUFFICIENT_BALANCE, service.tryTransfer("low", 1L, 2L, "USD", 500.0).getStatus());
+            assertEquals(TransferStatus.ACCOUNT_NOT_FOUND, service.tryTransfer("gone", 1L, 99L, "USD", 1.0).getStatus());
+            assertEquals(TransferStatus.CURRENCY_MISMATCH, service.tryTransfer("ccy", 1L, 4L, "USD", 1.0).getStatus());
+            assertEquals(TransferStatus.UNBALANCED, service.tryTransferMulti("split", List.of(
+                    Leg.debit(1L, "USD", 5.0),
+                    Leg.credit(2L, "USD", 4.0))).getStatus());
+
+            assertEquals(2, sqlTemplate.count("WALLET_POSTING_V", null));
+        }
+
+        @Test
+        @DisplayName("should report admission shedding as a result")
+        void tryTransfer_rateLimited() {
+            WalletService limited = new WalletService(sqlTemplate, new TransferRetrier(), new AdmissionController(
+                    new AccountRateLimiter(16, 0.001, 1), new AdaptiveConcurrencyLimit(4, 1, 4)));
+
+            assertTrue(limited.tryTransfer("first", 1L, 2L, "USD", 1.0).isCompleted());
+            assertEquals(TransferStatus.RATE_LIMITED, limited.tryTransfer("second", 1L, 2L, "USD", 1.0).getStatus());
+        }
+    }
+
+    @Nested
+    @DisplayName("concurrency")
+    class Concurrency {
+
+        @Test
+        @DisplayName("should conserve money and keep the ledger in step under crossing transfers")
+        void crossingTransfers_conserveTotal() throws Exception {
+            int threads = 8;
+            int perThread = 50;
+            ExecutorService pool = Executors.newFixedThreadPool(threads);
+            CountDownLatch start = new CountDownLatch(1);
+            AtomicInteger insufficient = new AtomicInteger();
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                int worker = t;
+                futures.add(pool.submit(() -> {
+                    start.await();
+                    for (int i = 0; i < perThread; i++) {
+                        // workers alternate direction so every pair of accounts is locked from both ends
+                        long from = (worker + i) % 3 + 1;
+                        long to = worker % 2 == 0 ? from % 3 + 1 : (from + 1) % 3 + 1;
+                        try {
+                            service.transfer("w" + worker + "-" + i, from, to, "USD", 7.0);
+                        } catch (InsufficientBalanceException e) {
+                            insufficient.incrementAndGet();
+                        }
+                    }
+                    return null;
+                }));
+            }
+            start.countDown();
+            for (Future<?> f : futures) {
+                f.get(60, TimeUnit.SECONDS);
+            }
+            pool.shutdown();
+
+            BigDecimal total = balance(1).add(balance(2)).add(balance(3));
+            assertEquals(0, new BigDecimal("300").compareTo(total));
+            assertEquals(2L * (threads * perThread - insufficient.get()), sqlTemplate.count("WALLET_POSTING_V", null));
+            assertEquals(0, sqlTemplate.count("WALLET_BALANCE_V", "LEDGER_BALANCE + 100 != MATERIALIZED_BALANCE and ID <= 3"));
+        }
+
+        @Test
+        @DisplayName("should post a request submitted concurrently from many threads exactly once")
+        void concurrentDuplicates_postOnce() throws Exception {
+            int threads = 8;
+            ExecutorService pool = Executors.newFixedThreadPool(threads);
+            CountDownLatch start = new CountDownLatch(1);
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                futures.add(pool.submit(() -> {
+                    start.await();
+                    return service.transfer("dup", 1L, 2L, "USD", 10.0);
+                }));
+            }
+            start.countDown();
+            for (Future<?> f : futures) {
+                f.get(60, TimeUnit.SECONDS);
+            }
+            pool.shutdown();
+
+            assertEquals(2, postings("dup"));
+            assertEquals(0, new BigDecimal("90").compareTo(balance(1)));
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package com.wallet.database.plan;
+
+import com.wallet.database.embedded.EmbeddedDatabase;
+import com.wallet.database.plan.QueryCatalog.RegisteredQuery;
+import com.wallet.database.plan.QueryPlanInspector.Finding;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class QueryPlanInspectorTest {
+
+    private EmbeddedDatabase database;
+
+    @BeforeEach
+    void setUp() {
+        database = EmbeddedDatabase.startIsolated();
+        for (long id = 1; id <= 20; id++) {
+            database.createAccount(id, "USD", "ACTIVE", BigDecimal.TEN);
+        }
+    }
+
+    @AfterEach
+    void tearDown() {
+        database.shutdown();
+    }
+
+    private static List<Finding> fullScans(List<Finding> findings) {
+        return findings.stream().filter(f -> f.getKind() == Finding.Kind.FULL_SCAN).collect(Collectors.toList());
+    }
+
+    @Test
+    @DisplayName("should find no unexpected full scans in the service queries")
+    void serviceQueries_useIndexes() {
+        List<RegisteredQuery> queries = QueryPlanInspector.serviceQueries();
+        assertTrue(queries.stream().anyMatch(q -> q.getName().equals("StatementService.postings")));
+
+        List<Finding> findings = new QueryPlanInspector(database, 0).inspect(queries);
+
+        assertEquals(List.of(), fullScans(findings), findings.toString());
+    }
+
+    @Test
+    @DisplayName("should flag a full scan of a table above the threshold only")
+    void unindexedPredicate_isFlagged() {
+        RegisteredQuery byStatus = new RegisteredQuery("test.byStatus",
+                "select ID from WALLET_ACCOUNT where STATUS = ?", false);
+
+        List<Finding> findings = fullScans(new QueryPlanInspector(database, 10).inspect(List.of(byStatus)));
+        assertEquals(1, findings.size());
+        assertEquals("PUBLIC.WALLET_ACCOUNT", findings.get(0).getTable());
+        assertEquals(20, findings.get(0).getTableRows());
+
+        assertEquals(List.of(), fullScans(new QueryPlanInspector(database, 20).inspect(List.of(byStatus))));
+    }
+
+    @Test
+    @DisplayName("should not flag statements registered as full scans")
+    void expectedFullScan_isNotFlagged() {
+        RegisteredQuery all = new RegisteredQuery("test.all", "select ID from WALLET_ACCOUNT", true);
+
+        assertEquals(List.of(), new QueryPlanInspector(database, 0).inspect(List.of(all)));
+    }
+
+    @Test
+    @DisplayName("should report a statement that cannot be explained instead of failing")
+    void badStatement_isReported() {
+        RegisteredQuery broken = new RegisteredQuery("test.broken", "select NO_SUCH_COLUMN from WALLET_ACCOUNT", false);
+
+        List<Finding> findings = new QueryPlanInspector(database, 0).inspect(List.of(broken));
+
+        assertEquals(1, findings.size());
+        assertEquals(Finding.Kind.NOT_EXPLAINED, findings.get(0).getKind());
+    }
+}
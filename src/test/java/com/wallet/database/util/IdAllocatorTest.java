@@ -0,0 +1,109 @@
+package com.wallet.database.util;
+
+import com.google.inject.Provider;
+import com.wallet.database.embedded.EmbeddedDatabase;
+import com.wallet.model.Account;
+import com.wallet.service.AccountService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class IdAllocatorTest {
+
+    private EmbeddedDatabase database;
+    private final AtomicInteger roundTrips = new AtomicInteger();
+    private SqlTemplate sqlTemplate;
+
+    @BeforeEach
+    void setUp() {
+        database = EmbeddedDatabase.startIsolated();
+        Provider<Connection> counting = () -> {
+            roundTrips.incrementAndGet();
+            return database.get();
+        };
+        sqlTemplate = new SqlTemplate(counting);
+    }
+
+    @AfterEach
+    void tearDown() {
+        database.shutdown();
+    }
+
+    @Test
+    @DisplayName("should reserve a whole block with one sequence round trip")
+    void block_isOneRoundTrip() {
+        IdAllocator ids = new IdAllocator(sqlTemplate, AccountService.ACCOUNT_ID_SEQUENCE, AccountService.ACCOUNT_ID_BLOCK);
+
+        long[] first = ids.nextIds(AccountService.ACCOUNT_ID_BLOCK);
+        assertEquals(1, roundTrips.get());
+        for (int i = 1; i < first.length; i++) {
+            assertEquals(first[i - 1] + 1, first[i]);
+        }
+
+        long next = ids.nextId();
+        assertEquals(2, roundTrips.get());
+        assertEquals(first[0] + AccountService.ACCOUNT_ID_BLOCK, next);
+    }
+
+    @Test
+    @DisplayName("should hand out unique ids to platform and virtual threads alike")
+    void concurrentThreads_getUniqueIds() throws Exception {
+        IdAllocator ids = new IdAllocator(sqlTemplate, AccountService.ACCOUNT_ID_SEQUENCE, 10);
+        Set<Long> seen = ConcurrentHashMap.newKeySet();
+        int perTask = 500;
+
+        for (ExecutorService executor : List.of(Executors.newFixedThreadPool(4), Executors.newVirtualThreadPerTaskExecutor())) {
+            try (executor) {
+                List<Future<?>> tasks = new ArrayList<>();
+                for (int t = 0; t < 8; t++) {
+                    tasks.add(executor.submit(() -> {
+                        for (int i = 0; i < perTask; i++) {
+                            assertTrue(seen.add(ids.nextId()));
+                        }
+                    }));
+                }
+                for (Future<?> task : tasks) {
+                    task.get();
+                }
+            }
+        }
+
+        assertEquals(16 * perTask, seen.size());
+    }
+
+    @Test
+    @DisplayName("should batch-insert accounts with pre-assigned ids")
+    void addAccounts_usesAssignedIds() {
+        database.createAccount(7, "USD", "ACTIVE", BigDecimal.ZERO);
+        AccountService accounts = new AccountService(sqlTemplate);
+        List<Account> input = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            input.add(new Account(0, "First" + i, "Last" + i, "user" + i + "@example.com", "hash", 7));
+        }
+
+        roundTrips.set(0);
+        List<Account> added = accounts.addAccounts(input);
+
+        // one nextval, one batch
+        assertEquals(2, roundTrips.get());
+        for (Account account : added) {
+            assertEquals(account.getEmail(), accounts.findById(account.getId()).orElseThrow().getEmail());
+        }
+        Account single = accounts.addAccount(new Account(0, "Ada", "Lovelace", "ada@example.com", "hash", 7));
+        assertEquals(added.get(4).getId() + 1, single.getId());
+    }
+}
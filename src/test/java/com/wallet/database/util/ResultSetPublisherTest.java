@@ -0,0 +1,193 @@
+package com.wallet.database.util;
+
+import com.google.inject.Provider;
+import com.wallet.Exceptin.SQLRuntimeException;
+import com.wallet.database.embedded.EmbeddedDatabase;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ResultSetPublisherTest {
+
+    private static final String SELECT_IDS = "select ID from WALLET_ACCOUNT order by ID";
+
+    private EmbeddedDatabase database;
+    private final AtomicInteger opened = new AtomicInteger();
+    private final AtomicInteger closed = new AtomicInteger();
+    private SqlTemplate sqlTemplate;
+
+    @BeforeEach
+    void setUp() {
+        database = EmbeddedDatabase.startIsolated();
+        for (long id = 1; id <= 50; id++) {
+            database.createAccount(id, "USD", "ACTIVE", BigDecimal.ONE);
+        }
+        Provider<Connection> tracking = () -> {
+            opened.incrementAndGet();
+            Connection target = database.get();
+            return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+                    new Class<?>[]{Connection.class}, (proxy, method, args) -> {
+                        if (method.getName().equals("close")) {
+                            closed.incrementAndGet();
+                        }
+                        try {
+                            return method.invoke(target, args);
+                        } catch (InvocationTargetException e) {
+                            throw e.getCause();
+                        }
+                    });
+        };
+        sqlTemplate = new SqlTemplate(tracking);
+    }
+
+    @AfterEach
+    void tearDown() {
+        database.shutdown();
+    }
+
+    private Flow.Publisher<Long> ids() {
+        return sqlTemplate.publish(SELECT_IDS, 10, rs -> rs.getLong("ID"));
+    }
+
+    private void awaitClosed() throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (closed.get() < opened.get() && System.nanoTime() < deadline) {
+            Thread.sleep(5);
+        }
+        assertEquals(opened.get(), closed.get());
+    }
+
+    @Test
+    @DisplayName("should not touch the database before the first request")
+    void noDemand_noQuery() throws Exception {
+        RecordingSubscriber subscriber = new RecordingSubscriber();
+        ids().subscribe(subscriber);
+        Thread.sleep(50);
+
+        assertEquals(0, opened.get());
+        subscriber.subscription.cancel();
+    }
+
+    @Test
+    @DisplayName("should emit no more rows than requested")
+    void emitsOnlyRequestedRows() throws Exception {
+        RecordingSubscriber subscriber = new RecordingSubscriber();
+        ids().subscribe(subscriber);
+
+        subscriber.requestAndAwait(2);
+        Thread.sleep(50);
+        assertEquals(List.of(1L, 2L), subscriber.rows);
+
+        subscriber.requestAndAwait(3);
+        Thread.sleep(50);
+        assertEquals(List.of(1L, 2L, 3L, 4L, 5L), subscriber.rows);
+        assertFalse(subscriber.done.isDone());
+
+        subscriber.subscription.cancel();
+        awaitClosed();
+    }
+
+    @Test
+    @DisplayName("should complete after the last row and close the connection")
+    void unboundedDemand_completes() throws Exception {
+        RecordingSubscriber subscriber = new RecordingSubscriber();
+        ids().subscribe(subscriber);
+        subscriber.subscription.request(Long.MAX_VALUE);
+
+        assertNull(subscriber.done.get(5, TimeUnit.SECONDS));
+        assertEquals(50, subscriber.rows.size());
+        assertEquals(Long.valueOf(50), subscriber.rows.get(49));
+        awaitClosed();
+    }
+
+    @Test
+    @DisplayName("should release the connection when the subscriber cancels mid-stream")
+    void cancel_releasesConnection() throws Exception {
+        RecordingSubscriber subscriber = new RecordingSubscriber();
+        ids().subscribe(subscriber);
+        subscriber.requestAndAwait(5);
+
+        subscriber.subscription.cancel();
+        subscriber.subscription.request(10);
+
+        awaitClosed();
+        assertEquals(1, opened.get());
+        assertEquals(5, subscriber.rows.size());
+        assertFalse(subscriber.done.isDone());
+    }
+
+    @Test
+    @DisplayName("should signal a failing query as SQLRuntimeException")
+    void badSql_signalsError() throws Exception {
+        RecordingSubscriber subscriber = new RecordingSubscriber();
+        sqlTemplate.<Long>publish("select NO_SUCH_COLUMN from WALLET_ACCOUNT", 10, rs -> rs.getLong(1))
+                .subscribe(subscriber);
+        subscriber.subscription.request(1);
+
+        Throwable error = subscriber.done.handle((ignored, e) -> e).get(5, TimeUnit.SECONDS);
+        assertInstanceOf(SQLRuntimeException.class, error);
+        awaitClosed();
+    }
+
+    @Test
+    @DisplayName("should signal a non-positive request as IllegalArgumentException")
+    void nonPositiveRequest_signalsError() throws Exception {
+        RecordingSubscriber subscriber = new RecordingSubscriber();
+        ids().subscribe(subscriber);
+        subscriber.requestAndAwait(1);
+        subscriber.subscription.request(0);
+
+        Throwable error = subscriber.done.handle((ignored, e) -> e).get(5, TimeUnit.SECONDS);
+        assertInstanceOf(IllegalArgumentException.class, error);
+        awaitClosed();
+    }
+
+    private static final class RecordingSubscriber implements Flow.Subscriber<Long> {
+        final List<Long> rows = new CopyOnWriteArrayList<>();
+        final CompletableFuture<Void> done = new CompletableFuture<>();
+        volatile Flow.Subscription subscription;
+        private volatile CountDownLatch pending = new CountDownLatch(0);
+
+        void requestAndAwait(int n) throws InterruptedException {
+            pending = new CountDownLatch(n);
+            subscription.request(n);
+            assertTrue(pending.await(5, TimeUnit.SECONDS));
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            this.subscription = subscription;
+        }
+
+        @Override
+        public void onNext(Long item) {
+            rows.add(item);
+            pending.countDown();
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            done.completeExceptionally(throwable);
+        }
+
+        @Override
+        public void onComplete() {
+            done.complete(null);
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package com.wallet.diagnostics;
+
+import com.wallet.Exceptin.InsufficientBalanceException;
+import com.wallet.database.embedded.EmbeddedDatabase;
+import com.wallet.database.util.SqlTemplate;
+import com.wallet.model.Leg;
+import com.wallet.model.TransferStatus;
+import com.wallet.service.LockWaitPolicy;
+import com.wallet.service.WalletService;
+import jdk.jfr.Recording;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RecordingAnalyzerTest {
+
+    private EmbeddedDatabase database;
+    private SqlTemplate sqlTemplate;
+    private WalletService service;
+    private Path file;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        database = EmbeddedDatabase.startIsolated();
+        sqlTemplate = new SqlTemplate(database);
+        service = new WalletService(sqlTemplate);
+        for (long id = 1; id <= 3; id++) {
+            database.createAccount(id, "USD", "ACTIVE", new BigDecimal("100"));
+        }
+        file = Files.createTempFile("wallet", ".jfr");
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        database.shutdown();
+        Files.deleteIfExists(file);
+    }
+
+    private RecordingAnalyzer.Report record(Runnable workload) throws Exception {
+        try (Recording recording = new Recording()) {
+            recording.enable(TransferEvent.NAME).withThreshold(Duration.ZERO);
+            recording.enable(SqlEvent.NAME).withThreshold(Duration.ZERO);
+            recording.start();
+            workload.run();
+            recording.stop();
+            recording.dump(file);
+        }
+        return new RecordingAnalyzer(3).analyze(file);
+    }
+
+    @Test
+    @DisplayName("should count transfers per outcome and attribute their SQL time")
+    void transfersByOutcome() throws Exception {
+        RecordingAnalyzer.Report report = record(() -> {
+            service.transfer("t1", 1, 2, "USD", 10);
+            service.tryTransfer("t2", 2, 3, "USD", 5, LockWaitPolicy.WAIT);
+            service.tryTransfer("t3", 3, 1, "USD", 500, LockWaitPolicy.WAIT);
+            assertThrows(InsufficientBalanceException.class, () -> service.transfer("t4", 1, 2, "USD", 500));
+            service.transferMulti("m1", List.of(Leg.debit(1, "USD", 4), Leg.credit(2, "USD", 3),
+                    Leg.credit(3, "USD", 1)));
+        });
+
+        Map<String, RecordingAnalyzer.OutcomeStats> outcomes = report.getOutcomes().stream()
+                .collect(Collectors.toMap(RecordingAnalyzer.OutcomeStats::getOutcome, Function.identity()));
+        assertEquals(3, outcomes.get(TransferStatus.COMPLETED.name()).getCount());
+        assertEquals(2, outcomes.get(TransferStatus.INSUFFICIENT_BALANCE.name()).getCount());
+        assertEquals(2, outcomes.size());
+
+        assertEquals(3, report.getSlowest().size());
+        for (RecordingAnalyzer.SlowTransfer transfer : report.getSlowest()) {
+            assertEquals(1, transfer.getStatements(), transfer.getRequestId());
+            assertTrue(transfer.getSqlNanos() <= transfer.getDurationNanos());
+        }
+        assertTrue(report.getSlowest().get(0).getDurationNanos() >= report.getSlowest().get(2).getDurationNanos());
+    }
+
+    @Test
+    @DisplayName("should group statements by fingerprint and count failures and rows")
+    void statementsByFingerprint() throws Exception {
+        RecordingAnalyzer.Report report = record(() -> {
+            for (int i = 0; i < 4; i++) {
+                sqlTemplate.select("select ID from WALLET_ACCOUNT where ID in (?, ?)", rs -> rs.getLong(1), 1L, 2L);
+            }
+            service.tryTransfer("t1", 1, 2, "USD", 500, LockWaitPolicy.WAIT);
+        });
+
+        Map<String, RecordingAnalyzer.StatementStats> statements = report.getStatements().stream()
+                .collect(Collectors.toMap(RecordingAnalyzer.StatementStats::getFingerprint, Function.identity()));
+        RecordingAnalyzer.StatementStats select = statements.get("select ID from WALLET_ACCOUNT where ID in (?, ...)");
+        assertEquals(4, select.getCount());
+        assertEquals(8, select.getRows());
+        assertEquals(0, select.getErrors());
+        RecordingAnalyzer.StatementStats call = statements.get("{call wallet_pkg.transfer(?, ?, ?, ?, ?, ?, ?)}");
+        assertEquals(1, call.getErrors());
+    }
+
+    @Test
+    @DisplayName("should fold literals, whitespace and bind lists into one fingerprint")
+    void fingerprint() {
+        assertEquals("select * from T where A = ? and B in (?, ...) and C = ?",
+                SqlFingerprint.normalise("select *\n  from T where A = 42 and B in (?,?, ?) and C = 'it''s'"));
+        assertEquals("select COL1 from T2 where X = ?", SqlFingerprint.normalise("select COL1 from T2 where X = 1.5"));
+    }
+}
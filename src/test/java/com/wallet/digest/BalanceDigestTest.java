@@ -0,0 +1,163 @@
+package com.wallet.digest;
+
+import com.wallet.database.embedded.EmbeddedDatabase;
+import com.wallet.database.util.SqlTemplate;
+import com.wallet.model.JournalEntry;
+import com.wallet.model.Leg;
+import com.wallet.service.WalletService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BalanceDigestTest {
+
+    @Test
+    @DisplayName("should multiply modulo 2^61 - 1 exactly")
+    void multiplyMod_matchesBigInteger() {
+        Random random = new Random(7);
+        BigInteger modulus = BigInteger.valueOf(BalanceDigest.MODULUS);
+        for (int i = 0; i < 10_000; i++) {
+            long a = (random.nextLong() >>> 3) % BalanceDigest.MODULUS;
+            long b = i == 0 ? BalanceDigest.MODULUS - 1 : (random.nextLong() >>> 3) % BalanceDigest.MODULUS;
+            long expected = BigInteger.valueOf(a).multiply(BigInteger.valueOf(b)).mod(modulus).longValue();
+            assertEquals(expected, BalanceDigest.multiplyMod(a, b));
+        }
+    }
+
+    @Test
+    @DisplayName("should find the diverging ranges reading one level of the other tree per call")
+    void diff_findsDivergingRanges() {
+        BalanceDigest primary = new BalanceDigest(10, 10);
+        BalanceDigest backup = new BalanceDigest(10, 10);
+        for (long id = 0; id < 5_000; id += 7) {
+            primary.apply(id, "USD", new BigDecimal("12.50"));
+            backup.apply(id, "USD", new BigDecimal("12.50"));
+        }
+        assertEquals(primary.root(), backup.root());
+
+        backup.apply(5, "USD", new BigDecimal("0.01"));
+        backup.apply(537, "USD", new BigDecimal("-3"));
+        backup.apply(1_000_000, "EUR", BigDecimal.ONE);
+
+        AtomicInteger calls = new AtomicInteger();
+        DigestSource remote = new DigestSource() {
+            @Override
+            public int depth() {
+                return backup.depth();
+            }
+
+            @Override
+            public long leafWidth() {
+                return backup.leafWidth();
+            }
+
+            @Override
+            public long[] nodes(int[] positions) {
+                calls.incrementAndGet();
+                return backup.nodes(positions);
+            }
+        };
+
+        List<BalanceDigest.Range> ranges = primary.diff(remote);
+        assertEquals(List.of(primary.range(0), primary.range(53), primary.range(1023)), ranges);
+        assertEquals(530, ranges.get(1).getFromId());
+        assertEquals(539, ranges.get(1).getToId());
+        assertEquals(Long.MAX_VALUE, ranges.get(2).getToId());
+        assertEquals(11, calls.get());
+        assertThrows(IllegalArgumentException.class, () -> primary.diff(new BalanceDigest(10, 20)));
+    }
+
+    @Nested
+    @DisplayName("with the embedded database")
+    class Embedded {
+
+        private EmbeddedDatabase database;
+        private SqlTemplate sqlTemplate;
+        private WalletService wallet;
+        private Path file;
+
+        @BeforeEach
+        void setUp() throws IOException {
+            database = EmbeddedDatabase.startIsolated();
+            sqlTemplate = new SqlTemplate(database);
+            wallet = new WalletService(sqlTemplate);
+            file = Files.createTempFile("balance", ".digest");
+            database.createAccount(1, "USD", "ACTIVE", new BigDecimal("100"));
+            database.createAccount(2, "USD", "ACTIVE", new BigDecimal("100"));
+            database.createAccount(3, "USD", "ACTIVE", new BigDecimal("100"));
+            database.createAccount(700, "USD", "ACTIVE", new BigDecimal("100"));
+        }
+
+        @AfterEach
+        void tearDown() throws IOException {
+            database.shutdown();
+            Files.deleteIfExists(file);
+        }
+
+        // what JournalTailer would deliver after the offset
+        private List<JournalEntry> postingsAfter(long offset) {
+            return sqlTemplate.select("select ENTRY_ID, REQUEST_ID, TS_CREATED, POSTING_SEQ, ACCOUNT_ID, CURRENCY, "
+                            + "AMOUNT, SIDE, DESCRIPTION from WALLET_POSTING_V where ENTRY_ID > ? order by ENTRY_ID",
+                    rs -> new JournalEntry(rs.getLong(1), rs.getString(2), rs.getTimestamp(3).toInstant(),
+                            rs.getInt(4), rs.getLong(5), rs.getString(6), rs.getBigDecimal(7),
+                            Leg.Side.valueOf(rs.getString(8)), rs.getString(9)), offset);
+        }
+
+        @Test
+        @DisplayName("should follow the journal to the same tree a rebuild from the balances gives")
+        void onEntries_matchesRebuild() {
+            BalanceDigest incremental = BalanceDigest.rebuild(sqlTemplate, 8, 100);
+            long before = incremental.root();
+
+            wallet.transfer("t-1", 1, 2, "USD", 10.25);
+            wallet.transfer("t-2", 2, 700, "USD", 40);
+            wallet.transferMulti("m-1", List.of(Leg.debit(3, "USD", 30), Leg.credit(1, "USD", 20),
+                    Leg.credit(700, "USD", 10)));
+            List<JournalEntry> entries = postingsAfter(incremental.getOffset());
+            incremental.onEntries(entries.subList(0, 3));
+            incremental.onEntries(entries);
+            incremental.onEntries(entries);
+
+            BalanceDigest rebuilt = BalanceDigest.rebuild(sqlTemplate, 8, 100);
+            assertNotEquals(before, incremental.root());
+            assertEquals(rebuilt.root(), incremental.root());
+            assertEquals(rebuilt.getOffset(), incremental.getOffset());
+            assertEquals(List.of(), incremental.diff(rebuilt));
+
+            // a balance changed behind the journal's back shows up in its range only
+            sqlTemplate.update("update WALLET_ACCOUNT set BALANCE = BALANCE + 1 where ID = ?", 700);
+            assertEquals(List.of(incremental.range(7)), incremental.diff(BalanceDigest.rebuild(sqlTemplate, 8, 100)));
+        }
+
+        @Test
+        @DisplayName("should save the leaves and offset to a file and load the same tree")
+        void save_load_roundTrip() throws IOException {
+            wallet.transfer("t-1", 1, 700, "USD", 5);
+            BalanceDigest digest = BalanceDigest.rebuild(sqlTemplate, 16, 1024);
+            digest.save(file);
+
+            BalanceDigest loaded = BalanceDigest.load(file);
+            assertEquals(digest.root(), loaded.root());
+            assertEquals(digest.getOffset(), loaded.getOffset());
+            assertTrue(digest.getOffset() > 0);
+            // header plus the one non-empty leaf of 65536
+            assertEquals(4 + 1 + 1 + 8 + 8 + 4 + 12, Files.size(file));
+
+            Files.write(file, new byte[]{1, 2, 3, 4, 5});
+            assertThrows(IOException.class, () -> BalanceDigest.load(file));
+        }
+    }
+}
@@ -0,0 +1,160 @@
+package com.wallet.journal;
+
+import com.wallet.database.embedded.EmbeddedDatabase;
+import com.wallet.database.util.SqlTemplate;
+import com.wallet.model.JournalEntry;
+import com.wallet.service.retry.TransferRetrier;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class JournalConverterTest {
+
+    private static final Instant WRITTEN = Instant.parse("2024-03-01T12:00:00Z");
+
+    private EmbeddedDatabase database;
+    private SqlTemplate sqlTemplate;
+
+    @BeforeEach
+    void setUp() {
+        database = EmbeddedDatabase.startIsolated();
+        sqlTemplate = new SqlTemplate(database);
+        for (long id = 1; id <= 3; id++) {
+            database.createAccount(id, "USD", "ACTIVE", new BigDecimal("100"));
+        }
+        // as V8 does for an existing journal: new ids start above the legacy ones
+        sqlTemplate.update("alter sequence WALLET_ENTRY_SEQ restart with 1001");
+
+        legacy(10, "a", 1, 1, "DEBIT", "5", "Transfer out");
+        legacy(11, "a", 2, 2, "CREDIT", "5", "Transfer in");
+        // two transfers written concurrently, so their ids interleave
+        legacy(12, "b", 1, 1, "DEBIT", "7", "Transfer out");
+        legacy(13, "c", 1, 2, "DEBIT", "3", "Transfer out");
+        legacy(14, "c", 2, 3, "CREDIT", "3", "Transfer in");
+        legacy(15, "b", 2, 3, "CREDIT", "7", "Transfer in");
+        legacy(16, "m", 1, 1, "DEBIT", "4", "Transfer out");
+        legacy(17, "m", 2, 2, "CREDIT", "2", "Transfer in");
+        legacy(18, "m", 3, 3, "CREDIT", "2", "Transfer in");
+        legacy(19, "far", 1, 2, "DEBIT", "1", "Transfer out");
+        legacy(20, "acc", 1, 1, "DEBIT", "0.25", "Interest accrual");
+        legacy(21, "acc", 2, 3, "CREDIT", "0.25", "Interest accrual");
+        legacy(200, "far", 2, 1, "CREDIT", "1", "Transfer in");
+    }
+
+    @AfterEach
+    void tearDown() {
+        database.shutdown();
+    }
+
+    // each legacy posting was written a millisecond per ENTRY_ID after WRITTEN
+    private void legacy(long entryId, String requestId, int postingSeq, long accountId, String side, String amount,
+                        String description) {
+        sqlTemplate.insert("insert into WALLET_JOURNAL (ENTRY_ID, REQUEST_ID, TS_CREATED, POSTING_SEQ, ACCOUNT_ID, "
+                        + "CURRENCY, AMOUNT, SIDE, DESCRIPTION) values (?, ?, ?, ?, ?, 'USD', ?, ?, ?)",
+                entryId, requestId, Timestamp.from(WRITTEN.plusMillis(entryId)), postingSeq, accountId,
+                new BigDecimal(amount), side, description);
+    }
+
+    private List<String> postings() {
+        return sqlTemplate.select("select ENTRY_ID, REQUEST_ID, POSTING_SEQ, ACCOUNT_ID, AMOUNT, SIDE, DESCRIPTION, "
+                        + "TS_CREATED from WALLET_POSTING_V order by ENTRY_ID",
+                rs -> rs.getLong(1) + " " + rs.getString(2) + " " + rs.getInt(3) + " " + rs.getLong(4) + " "
+                        + rs.getBigDecimal(5).stripTrailingZeros().toPlainString() + " " + rs.getString(6) + " "
+                        + rs.getString(7) + " " + rs.getTimestamp(8).toInstant());
+    }
+
+    private long convertAll() {
+        return new JournalConverter(sqlTemplate, new TransferRetrier(), 3, Duration.ZERO).convert(0);
+    }
+
+    @Test
+    @DisplayName("should move convertible pairs to WALLET_TRANSFER without changing the postings readers see")
+    void conversion_keepsPostingView() {
+        List<String> before = postings();
+
+        assertEquals(200, convertAll());
+
+        assertEquals(before, postings());
+        assertEquals(4, sqlTemplate.count("WALLET_TRANSFER", null));
+        // the multi-leg posting and the pair too far apart stay where they are
+        assertEquals(5, sqlTemplate.count("WALLET_JOURNAL", null));
+        assertEquals(15L, sqlTemplate.selectScalar("select CREDIT_ENTRY_ID from WALLET_TRANSFER where REQUEST_ID = 'b'",
+                Number.class).orElseThrow().longValue());
+        assertTrue(sqlTemplate.exists("WALLET_TRANSFER", "REQUEST_ID = 'a' and DESCRIPTION is null"));
+        assertTrue(sqlTemplate.exists("WALLET_TRANSFER", "REQUEST_ID = 'acc' and DESCRIPTION = 'Interest accrual'"));
+        // the credit keeps the time it was written, not the debit's
+        assertEquals(WRITTEN.plusMillis(15), sqlTemplate.selectOne(
+                "select CREDIT_TS_CREATED from WALLET_TRANSFER where REQUEST_ID = 'b'",
+                rs -> rs.getTimestamp(1).toInstant()).orElseThrow());
+    }
+
+    @Test
+    @DisplayName("should be safe to run again and leave balances in the ledger view unchanged")
+    void rerun_isNoOp() {
+        List<BigDecimal> ledger = sqlTemplate.select("select LEDGER_BALANCE from WALLET_BALANCE_V order by ID",
+                rs -> rs.getBigDecimal(1));
+        convertAll();
+        assertEquals(200, convertAll());
+
+        assertEquals(4, sqlTemplate.count("WALLET_TRANSFER", null));
+        List<BigDecimal> after = sqlTemplate.select("select LEDGER_BALANCE from WALLET_BALANCE_V order by ID",
+                rs -> rs.getBigDecimal(1));
+        for (int i = 0; i < ledger.size(); i++) {
+            assertEquals(0, ledger.get(i).compareTo(after.get(i)));
+        }
+    }
+
+    @Test
+    @DisplayName("should treat a replay of a converted request as already posted")
+    void replayOfConvertedRequest_isIdempotent() {
+        convertAll();
+
+        sqlTemplate.callProcedure("{call wallet_pkg.transfer(?, ?, ?, ?, ?)}", "a", 1L, 2L, "USD", new BigDecimal("5"));
+        sqlTemplate.callProcedure("{call wallet_pkg.transfer(?, ?, ?, ?, ?)}", "n", 1L, 2L, "USD", new BigDecimal("6"));
+
+        assertEquals(0, new BigDecimal("94").compareTo(sqlTemplate.selectScalar(
+                "select BALANCE from WALLET_ACCOUNT where ID = 1", BigDecimal.class).orElseThrow()));
+        assertEquals(List.of("1001 n 1 1 6 DEBIT Transfer out", "1002 n 2 2 6 CREDIT Transfer in"),
+                sqlTemplate.select("select ENTRY_ID, REQUEST_ID, POSTING_SEQ, ACCOUNT_ID, AMOUNT, SIDE, DESCRIPTION "
+                                + "from WALLET_POSTING_V where REQUEST_ID = 'n' order by ENTRY_ID",
+                        rs -> rs.getLong(1) + " " + rs.getString(2) + " " + rs.getInt(3) + " " + rs.getLong(4) + " "
+                                + rs.getBigDecimal(5).stripTrailingZeros().toPlainString() + " " + rs.getString(6)
+                                + " " + rs.getString(7)));
+    }
+
+    @Test
+    @DisplayName("should let the tailer deliver every posting once, in ENTRY_ID order, across converted rows")
+    void tailer_readsThroughView() {
+        convertAll();
+        List<Long> delivered = new ArrayList<>();
+        JournalTailer tailer = new JournalTailer(sqlTemplate, 2, Duration.ofMillis(1), Duration.ofMillis(1),
+                Duration.ZERO);
+        tailer.subscribe(new JournalSubscriber() {
+            @Override
+            public String name() {
+                return "test";
+            }
+
+            @Override
+            public void onEntries(List<JournalEntry> entries) {
+                entries.forEach(e -> delivered.add(e.getEntryId()));
+            }
+        });
+
+        while (tailer.pollOnce() > 0) {
+            // drain
+        }
+
+        assertEquals(List.of(10L, 11L, 12L, 13L, 14L, 15L, 16L, 17L, 18L, 19L, 20L, 21L, 200L), delivered);
+    }
+}
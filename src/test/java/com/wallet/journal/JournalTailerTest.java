@@ -0,0 +1,225 @@
+package com.wallet.journal;
+
+import com.wallet.database.embedded.EmbeddedDatabase;
+import com.wallet.database.util.SqlTemplate;
+import com.wallet.model.JournalEntry;
+import com.wallet.model.Leg;
+import com.wallet.service.WalletService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class JournalTailerTest {
+
+    private EmbeddedDatabase database;
+    private SqlTemplate sqlTemplate;
+    private WalletService wallet;
+
+    @BeforeEach
+    void setUp() {
+        database = EmbeddedDatabase.startIsolated();
+        sqlTemplate = new SqlTemplate(database);
+        wallet = new WalletService(sqlTemplate);
+        database.createAccount(1, "USD", "ACTIVE", new BigDecimal("100"));
+        database.createAccount(2, "USD", "ACTIVE", new BigDecimal("100"));
+    }
+
+    @AfterEach
+    void tearDown() {
+        database.shutdown();
+    }
+
+    private JournalTailer tailer() {
+        return new JournalTailer(sqlTemplate, 100, Duration.ofMillis(10), Duration.ofMillis(100), Duration.ofMinutes(1));
+    }
+
+    // a transfer old enough to be past the tailer's commit lag
+    private void settledTransfer(String requestId, double amount) {
+        wallet.transfer(requestId, 1, 2, "USD", amount);
+        settle(requestId);
+    }
+
+    private void settle(String requestId) {
+        sqlTemplate.update("update WALLET_TRANSFER set TS_CREATED = ? where REQUEST_ID = ?",
+                Timestamp.from(Instant.now().minus(Duration.ofMinutes(5))), requestId);
+    }
+
+    private long persistedOffset(String subscriberName) {
+        JournalTailer restarted = tailer();
+        restarted.subscribe(new Recorder(subscriberName));
+        return restarted.getOffset(subscriberName);
+    }
+
+    private static List<String> postings(List<JournalEntry> entries) {
+        List<String> result = new ArrayList<>();
+        for (JournalEntry e : entries) {
+            result.add(e.getRequestId() + "/" + e.getSide());
+        }
+        return result;
+    }
+
+    private static class Recorder implements JournalSubscriber {
+        private final String name;
+        private final List<JournalEntry> received = new ArrayList<>();
+        private int failuresLeft;
+
+        Recorder(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public String name() {
+            return name;
+        }
+
+        @Override
+        public void onEntries(List<JournalEntry> entries) {
+            if (failuresLeft > 0) {
+                failuresLeft--;
+                throw new IllegalStateException("subscriber down");
+            }
+            received.addAll(entries);
+        }
+    }
+
+    @Test
+    @DisplayName("should deliver settled postings in ENTRY_ID order and persist the subscriber's offset")
+    void pollOnce_deliversAndPersistsOffset() {
+        settledTransfer("t-1", 10);
+        settledTransfer("t-2", 20);
+        JournalTailer tailer = tailer();
+        Recorder recorder = new Recorder("recorder");
+        tailer.subscribe(recorder);
+
+        assertEquals(4, tailer.pollOnce());
+        assertEquals(List.of("t-1/DEBIT", "t-1/CREDIT", "t-2/DEBIT", "t-2/CREDIT"), postings(recorder.received));
+        long last = recorder.received.get(3).getEntryId();
+        assertEquals(last, tailer.getOffset("recorder"));
+        assertEquals(0, tailer.pollOnce());
+        assertEquals(4, recorder.received.size());
+
+        // a new tailer resumes from the persisted offset
+        JournalTailer restarted = tailer();
+        restarted.subscribe(new Recorder("recorder"));
+        assertEquals(last, restarted.getOffset("recorder"));
+        assertEquals(0, restarted.pollOnce());
+    }
+
+    @Test
+    @DisplayName("should stop a batch at the first posting younger than the commit lag")
+    void pollOnce_cutsAtUnsettledPosting() {
+        settledTransfer("t-1", 10);
+        wallet.transfer("t-2", 1, 2, "USD", 20);
+        settledTransfer("t-3", 30);
+        JournalTailer tailer = tailer();
+        Recorder recorder = new Recorder("recorder");
+        tailer.subscribe(recorder);
+
+        assertEquals(2, tailer.pollOnce());
+        assertEquals(List.of("t-1/DEBIT", "t-1/CREDIT"), postings(recorder.received));
+
+        settle("t-2");
+        assertEquals(4, tailer.pollOnce());
+        assertEquals(List.of("t-1/DEBIT", "t-1/CREDIT", "t-2/DEBIT", "t-2/CREDIT", "t-3/DEBIT", "t-3/CREDIT"),
+                postings(recorder.received));
+    }
+
+    @Test
+    @DisplayName("should redeliver to a failing subscriber without holding back or repeating the others")
+    void pollOnce_redeliversAfterFailure() {
+        settledTransfer("t-1", 10);
+        JournalTailer tailer = tailer();
+        Recorder healthy = new Recorder("healthy");
+        Recorder flaky = new Recorder("flaky");
+        flaky.failuresLeft = 1;
+        tailer.subscribe(healthy);
+        tailer.subscribe(flaky);
+
+        assertEquals(0, tailer.pollOnce());
+        assertEquals(2, healthy.received.size());
+        assertEquals(0, flaky.received.size());
+        assertEquals(0, tailer.getOffset("flaky"));
+
+        settledTransfer("t-2", 20);
+        assertEquals(4, tailer.pollOnce());
+        assertEquals(List.of("t-1/DEBIT", "t-1/CREDIT", "t-2/DEBIT", "t-2/CREDIT"), postings(healthy.received));
+        assertEquals(postings(healthy.received), postings(flaky.received));
+        assertEquals(tailer.getOffset("healthy"), tailer.getOffset("flaky"));
+    }
+
+    @Test
+    @DisplayName("should resume a subscriber that keeps its own checkpoint after the given offset")
+    void subscribe_withOwnOffset() {
+        settledTransfer("t-1", 10);
+        settledTransfer("t-2", 20);
+        JournalTailer tailer = tailer();
+        Recorder first = new Recorder("first");
+        tailer.subscribe(first);
+        tailer.pollOnce();
+
+        Recorder resumed = new Recorder("resumed");
+        tailer.subscribe(resumed, first.received.get(1).getEntryId());
+        settledTransfer("t-3", 30);
+        tailer.pollOnce();
+
+        assertEquals(List.of("t-2/DEBIT", "t-2/CREDIT", "t-3/DEBIT", "t-3/CREDIT"), postings(resumed.received));
+        assertEquals(Leg.Side.CREDIT, resumed.received.get(3).getSide());
+        assertEquals(6, first.received.size());
+    }
+
+    @Test
+    @DisplayName("should deliver a posting that commits after the offset has moved past it")
+    void pollOnce_deliversLatePosting() {
+        settledTransfer("t-1", 10);
+        settledTransfer("t-2", 20);
+        settledTransfer("t-3", 30);
+        // t-2 stands in for a transaction still open while t-3 is read
+        sqlTemplate.update("create table LATE_TRANSFER as select * from WALLET_TRANSFER where REQUEST_ID = 't-2'");
+        sqlTemplate.update("delete from WALLET_TRANSFER where REQUEST_ID = 't-2'");
+        JournalTailer tailer = tailer();
+        Recorder recorder = new Recorder("recorder");
+        tailer.subscribe(recorder);
+
+        assertEquals(4, tailer.pollOnce());
+        assertEquals(List.of("t-1/DEBIT", "t-1/CREDIT", "t-3/DEBIT", "t-3/CREDIT"), postings(recorder.received));
+        assertEquals(1, tailer.openGaps("recorder"));
+        long t1Credit = recorder.received.get(1).getEntryId();
+
+        // the persisted offset stays below the gap, so a restart reads it again
+        assertEquals(t1Credit, persistedOffset("recorder"));
+
+        sqlTemplate.update("insert into WALLET_TRANSFER select * from LATE_TRANSFER");
+        assertEquals(0, tailer.pollOnce());
+        assertEquals(List.of("t-1/DEBIT", "t-1/CREDIT", "t-3/DEBIT", "t-3/CREDIT", "t-2/DEBIT", "t-2/CREDIT"),
+                postings(recorder.received));
+        assertEquals(0, tailer.openGaps("recorder"));
+        assertEquals(recorder.received.get(3).getEntryId(), persistedOffset("recorder"));
+    }
+
+    @Test
+    @DisplayName("should give up on a gap once it has been open for the gap timeout")
+    void pollOnce_expiresGap() {
+        settledTransfer("t-1", 10);
+        settledTransfer("t-2", 20);
+        settledTransfer("t-3", 30);
+        sqlTemplate.update("delete from WALLET_TRANSFER where REQUEST_ID = 't-2'");
+        JournalTailer tailer = new JournalTailer(sqlTemplate, 100, Duration.ofMillis(10), Duration.ofMillis(100),
+                Duration.ofMinutes(1), Duration.ZERO);
+        Recorder recorder = new Recorder("recorder");
+        tailer.subscribe(recorder);
+
+        assertEquals(4, tailer.pollOnce());
+        assertEquals(0, tailer.openGaps("recorder"));
+        assertEquals(tailer.getOffset("recorder"), persistedOffset("recorder"));
+    }
+}
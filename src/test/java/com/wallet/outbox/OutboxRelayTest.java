@@ -0,0 +1,135 @@
+package com.wallet.outbox;
+
+import com.wallet.Exceptin.WalletException;
+import com.wallet.database.embedded.EmbeddedDatabase;
+import com.wallet.database.util.SqlTemplate;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class OutboxRelayTest {
+
+    private EmbeddedDatabase database;
+    private SqlTemplate sqlTemplate;
+    private final List<OutboxEvent> published = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        database = EmbeddedDatabase.startIsolated();
+        sqlTemplate = new SqlTemplate(database);
+        for (int i = 1; i <= 5; i++) {
+            sqlTemplate.update("insert into WALLET_OUTBOX (REQUEST_ID, EVENT_TYPE, PAYLOAD) values (?, ?, ?)",
+                    "req-" + i, "TRANSFER_POSTED", "{\"n\":" + i + "}");
+        }
+    }
+
+    @AfterEach
+    void tearDown() {
+        database.shutdown();
+    }
+
+    private OutboxRelay relay(OutboxPublisher publisher) {
+        return new OutboxRelay(sqlTemplate, publisher, 1, 3, Duration.ofMillis(10));
+    }
+
+    private long outboxSize() {
+        return sqlTemplate.count("WALLET_OUTBOX", "1 = 1");
+    }
+
+    private static List<String> requestIds(List<OutboxEvent> events) {
+        List<String> ids = new ArrayList<>();
+        for (OutboxEvent event : events) {
+            ids.add(event.getRequestId());
+        }
+        return ids;
+    }
+
+    @Test
+    @DisplayName("should publish claimed batches and delete them from the outbox")
+    void drainOnce_publishesAndDeletes() {
+        OutboxRelay relay = relay(published::addAll);
+
+        assertEquals(3, relay.drainOnce());
+        assertEquals(2, outboxSize());
+        assertEquals(2, relay.drainOnce());
+        assertEquals(0, relay.drainOnce());
+
+        assertEquals(0, outboxSize());
+        assertEquals(5, relay.getPublishedCount());
+        List<String> ids = requestIds(published);
+        ids.sort(null);
+        assertEquals(List.of("req-1", "req-2", "req-3", "req-4", "req-5"), ids);
+        assertEquals("TRANSFER_POSTED", published.get(0).getEventType());
+    }
+
+    @Test
+    @DisplayName("should leave a batch in the outbox when publishing fails")
+    void drainOnce_keepsBatchOnPublishFailure() {
+        OutboxRelay failing = relay(events -> {
+            throw new IllegalStateException("broker down");
+        });
+
+        WalletException ex = assertThrows(WalletException.class, failing::drainOnce);
+        assertTrue(ex.getCause() instanceof IllegalStateException);
+        assertEquals(5, outboxSize());
+        assertEquals(0, failing.getPublishedCount());
+
+        OutboxRelay relay = relay(published::addAll);
+        assertEquals(3, relay.drainOnce());
+        assertEquals(2, relay.drainOnce());
+        assertEquals(0, outboxSize());
+    }
+
+    @Test
+    @DisplayName("should skip events another worker has claimed")
+    void drainOnce_skipsLockedEvents() {
+        OutboxRelay relay = relay(published::addAll);
+
+        sqlTemplate.executeInTransactionVoid(ctx -> {
+            List<Long> claimed = ctx.select("select EVENT_ID from WALLET_OUTBOX where REQUEST_ID in (?, ?) for update",
+                    rs -> rs.getLong(1), "req-1", "req-2");
+            assertEquals(2, claimed.size());
+
+            assertEquals(3, relay.drainOnce());
+            assertEquals(0, relay.drainOnce());
+        });
+
+        assertEquals(List.of("req-3", "req-4", "req-5"), sorted(requestIds(published)));
+        assertEquals(2, outboxSize());
+        assertEquals(2, relay.drainOnce());
+        assertEquals(0, outboxSize());
+    }
+
+    @Test
+    @DisplayName("should drain the outbox from background workers")
+    void start_drainsInBackground() throws InterruptedException {
+        List<OutboxEvent> received = new ArrayList<>();
+        try (OutboxRelay relay = new OutboxRelay(sqlTemplate, events -> {
+            synchronized (received) {
+                received.addAll(events);
+            }
+        }, 2, 2, Duration.ofMillis(10))) {
+            relay.start();
+            long deadline = System.nanoTime() + Duration.ofSeconds(5).toNanos();
+            while (relay.getPublishedCount() < 5 && System.nanoTime() < deadline) {
+                Thread.sleep(10);
+            }
+            assertEquals(5, relay.getPublishedCount());
+        }
+        assertEquals(0, outboxSize());
+        assertEquals(5, received.size());
+    }
+
+    private static List<String> sorted(List<String> values) {
+        List<String> copy = new ArrayList<>(values);
+        copy.sort(null);
+        return copy;
+    }
+}
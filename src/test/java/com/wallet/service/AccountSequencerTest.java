@@ -0,0 +1,122 @@
+package com.wallet.service;
+
+import com.wallet.database.embedded.EmbeddedDatabase;
+import com.wallet.database.util.SqlTemplate;
+import com.wallet.model.TransferResult;
+import com.wallet.model.TransferStatus;
+import com.wallet.service.admission.AccountRateLimiter;
+import com.wallet.service.admission.AdaptiveConcurrencyLimit;
+import com.wallet.service.admission.AdmissionController;
+import com.wallet.service.retry.TransferRetrier;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AccountSequencerTest {
+
+    private EmbeddedDatabase database;
+    private SqlTemplate sqlTemplate;
+    private WalletService walletService;
+
+    @BeforeEach
+    void setUp() {
+        database = EmbeddedDatabase.startIsolated();
+        sqlTemplate = new SqlTemplate(database);
+        walletService = new WalletService(sqlTemplate, new TransferRetrier(), new AdmissionController(
+                new AccountRateLimiter(1, Integer.MAX_VALUE, 16_000),
+                new AdaptiveConcurrencyLimit(Integer.MAX_VALUE, Integer.MAX_VALUE, Integer.MAX_VALUE)));
+        database.createAccount(1, "USD", "ACTIVE", new BigDecimal("1000"));
+        database.createAccount(2, "USD", "ACTIVE", new BigDecimal("1000"));
+    }
+
+    @AfterEach
+    void tearDown() {
+        database.shutdown();
+    }
+
+    private long lastSequence(long accountId) {
+        return sqlTemplate.selectScalar("select LAST_CLIENT_SEQ from WALLET_ACCOUNT where ID = ?", Number.class, accountId)
+                .map(Number::longValue)
+                .orElse(-1L);
+    }
+
+    @Test
+    @DisplayName("should apply a reordered burst in client sequence order")
+    void burst_isAppliedInSequenceOrder() throws Exception {
+        List<Runnable> drains = new ArrayList<>();
+        AccountSequencer sequencer = new AccountSequencer(walletService, drains::add);
+
+        CompletableFuture<TransferResult> third = sequencer.submit(3, "r3", 1L, 2L, "USD", 1.0);
+        CompletableFuture<TransferResult> first = sequencer.submit(1, "r1", 1L, 2L, "USD", 1.0);
+        CompletableFuture<TransferResult> second = sequencer.submit(2, "r2", 1L, 2L, "USD", 1.0);
+        assertEquals(1, drains.size());
+        drains.get(0).run();
+
+        assertTrue(first.get().isCompleted());
+        assertTrue(second.get().isCompleted());
+        assertTrue(third.get().isCompleted());
+        assertEquals(3, lastSequence(1));
+        assertEquals(0, sequencer.activeAccounts());
+    }
+
+    @Test
+    @DisplayName("should reject a sequence that is not after the last applied one")
+    void lateSequence_isStale() throws Exception {
+        AccountSequencer sequencer = new AccountSequencer(walletService, Runnable::run);
+
+        assertTrue(sequencer.submit(5, "r5", 1L, 2L, "USD", 1.0).get().isCompleted());
+        assertEquals(TransferStatus.STALE_SEQUENCE, sequencer.submit(4, "r4", 1L, 2L, "USD", 1.0).get().getStatus());
+        assertEquals(TransferStatus.STALE_SEQUENCE, sequencer.submit(5, "r5-other", 1L, 2L, "USD", 1.0).get().getStatus());
+        // a replay of an applied request is still idempotent
+        assertTrue(sequencer.submit(5, "r5", 1L, 2L, "USD", 1.0).get().isCompleted());
+        assertEquals(1, sqlTemplate.count("WALLET_POSTING_V", "REQUEST_ID like 'r%' and SIDE = 'DEBIT'"));
+    }
+
+    @Test
+    @DisplayName("should only ever advance the stored sequence under concurrent submitters")
+    void concurrentSubmitters_neverGoBackwards() throws Exception {
+        ExecutorService submitters = Executors.newFixedThreadPool(8);
+        AccountSequencer sequencer = new AccountSequencer(walletService);
+        List<CompletableFuture<TransferResult>> results = new ArrayList<>();
+        List<Future<CompletableFuture<TransferResult>>> submitted = new ArrayList<>();
+        for (int seq = 1; seq <= 200; seq++) {
+            long clientSeq = seq;
+            submitted.add(submitters.submit(() -> sequencer.submit(clientSeq, "c" + clientSeq, 1L, 2L, "USD", 1.0)));
+        }
+        for (Future<CompletableFuture<TransferResult>> future : submitted) {
+            results.add(future.get(10, TimeUnit.SECONDS));
+        }
+        submitters.shutdown();
+
+        long completed = 0;
+        long maxCompleted = 0;
+        for (int i = 0; i < results.size(); i++) {
+            TransferStatus status = results.get(i).get(30, TimeUnit.SECONDS).getStatus();
+            assertTrue(status == TransferStatus.COMPLETED || status == TransferStatus.STALE_SEQUENCE);
+            if (status == TransferStatus.COMPLETED) {
+                completed++;
+                maxCompleted = i + 1;
+            }
+        }
+
+        assertEquals(maxCompleted, lastSequence(1));
+        assertEquals(2 * completed, sqlTemplate.count("WALLET_POSTING_V", null));
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (sequencer.activeAccounts() > 0 && System.nanoTime() < deadline) {
+            Thread.sleep(5);
+        }
+        assertEquals(0, sequencer.activeAccounts());
+    }
+}
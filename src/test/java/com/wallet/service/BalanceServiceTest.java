@@ -0,0 +1,138 @@
+package com.wallet.service;
+
+import com.google.inject.Provider;
+import com.wallet.database.embedded.EmbeddedDatabase;
+import com.wallet.database.util.SqlTemplate;
+import com.wallet.model.WalletBalance;
+import com.wallet.service.admission.AdmissionController;
+import com.wallet.service.fx.FxRateCache;
+import com.wallet.service.retry.TransferRetrier;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BalanceServiceTest {
+
+    private EmbeddedDatabase database;
+    private final AtomicInteger roundTrips = new AtomicInteger();
+    private final AtomicLong clock = new AtomicLong();
+    private SqlTemplate sqlTemplate;
+    private BalanceService balanceService;
+
+    @BeforeEach
+    void setUp() {
+        database = EmbeddedDatabase.startIsolated();
+        for (long id = 1; id <= 1200; id++) {
+            database.createAccount(id, "USD", "ACTIVE", BigDecimal.valueOf(id));
+        }
+        Provider<Connection> counting = () -> {
+            roundTrips.incrementAndGet();
+            return database.get();
+        };
+        sqlTemplate = new SqlTemplate(counting);
+        balanceService = new BalanceService(sqlTemplate, Duration.ofMillis(500), 10_000, clock::get);
+    }
+
+    @AfterEach
+    void tearDown() {
+        database.shutdown();
+    }
+
+    private static List<Long> range(long from, long to) {
+        List<Long> ids = new ArrayList<>();
+        for (long id = from; id <= to; id++) {
+            ids.add(id);
+        }
+        return ids;
+    }
+
+    @Test
+    @DisplayName("should read 200 wallets in one statement, in request order")
+    void manyWallets_oneRoundTrip() {
+        List<Long> ids = range(1, 200);
+        Collections.reverse(ids);
+
+        Map<Long, WalletBalance> balances = balanceService.getBalances(ids);
+
+        assertEquals(1, roundTrips.get());
+        assertEquals(200, balances.size());
+        assertEquals(ids, new ArrayList<>(balances.keySet()));
+        assertEquals(0, BigDecimal.valueOf(17).compareTo(balances.get(17L).getBalance()));
+    }
+
+    @Test
+    @DisplayName("should chunk IN-lists above the bind limit and skip unknown ids")
+    void largeRequest_isChunked() {
+        List<Long> ids = range(1, 1205);
+
+        Map<Long, WalletBalance> balances = balanceService.getBalances(ids);
+
+        assertEquals(2, roundTrips.get());
+        assertEquals(1200, balances.size());
+        assertFalse(balances.containsKey(1201L));
+    }
+
+    @Test
+    @DisplayName("should serve repeated reads from the near-cache until the TTL passes")
+    void repeatedReads_hitCache() {
+        balanceService.getBalances(range(1, 10));
+        balanceService.getBalances(range(1, 10));
+        assertEquals(1, roundTrips.get());
+
+        balanceService.getBalances(range(5, 12));
+        assertEquals(2, roundTrips.get());
+
+        clock.addAndGet(Duration.ofMillis(501).toNanos());
+        balanceService.getBalances(range(1, 10));
+        assertEquals(3, roundTrips.get());
+
+        balanceService.invalidate(3);
+        balanceService.getBalances(range(1, 10));
+        assertEquals(4, roundTrips.get());
+    }
+
+    @Test
+    @DisplayName("should shed a slice of a full cache rather than all of it")
+    void fullCache_evictsSlice() {
+        BalanceService small = new BalanceService(sqlTemplate, Duration.ofMillis(500), 100, clock::get);
+
+        small.getBalances(range(1, 100));
+        assertEquals(100, small.cachedCount());
+
+        small.getBalances(range(101, 101));
+        assertEquals(90, small.cachedCount());
+
+        // expired entries go first, and here alone make enough room
+        clock.addAndGet(Duration.ofMillis(501).toNanos());
+        small.getBalances(range(200, 210));
+        assertEquals(11, small.cachedCount());
+    }
+
+    @Test
+    @DisplayName("should drop both accounts of a posted transfer from the near-cache")
+    void transfer_invalidatesBothAccounts() {
+        WalletService wallet = new WalletService(sqlTemplate, new TransferRetrier(), new AdmissionController(),
+                new FxRateCache(sqlTemplate), balanceService);
+        balanceService.getBalances(range(1, 3));
+
+        wallet.transfer("t-1", 2, 3, "USD", 1.5);
+        Map<Long, WalletBalance> balances = balanceService.getBalances(range(1, 3));
+
+        assertEquals(0, new BigDecimal("1").compareTo(balances.get(1L).getBalance()));
+        assertEquals(0, new BigDecimal("0.5").compareTo(balances.get(2L).getBalance()));
+        assertEquals(0, new BigDecimal("4.5").compareTo(balances.get(3L).getBalance()));
+    }
+}
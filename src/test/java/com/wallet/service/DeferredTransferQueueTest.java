@@ -0,0 +1,98 @@
+package com.wallet.service;
+
+import com.wallet.Exceptin.LockUnavailableException;
+import com.wallet.Exceptin.WalletException;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DeferredTransferQueueTest {
+
+    /**
+     * Reports the accounts as locked for the first {@code busyAttempts} calls.
+     */
+    private static class ContendedWalletService extends WalletService {
+        private final int busyAttempts;
+        private final AtomicInteger calls = new AtomicInteger();
+        private volatile LockWaitPolicy lastPolicy;
+
+        ContendedWalletService(int busyAttempts) {
+            super(null);
+            this.busyAttempts = busyAttempts;
+        }
+
+        @Override
+        public String transfer(String requestId, long fromAccountId, long toAccountId,
+                               String currency, double amount, LockWaitPolicy lockWait) {
+            lastPolicy = lockWait;
+            if (calls.incrementAndGet() <= busyAttempts) {
+                throw new LockUnavailableException("Account locked by another transfer", null);
+            }
+            return requestId;
+        }
+    }
+
+    @Test
+    @DisplayName("should complete a contended transfer on a later attempt with the same request id")
+    void retriesContendedTransfer() throws Exception {
+        ContendedWalletService wallet = new ContendedWalletService(2);
+        try (DeferredTransferQueue queue = new DeferredTransferQueue(wallet, LockWaitPolicy.NOWAIT, 10, 5, Duration.ofMillis(1))) {
+            CompletableFuture<String> result = queue.transfer("req-1", 1L, 2L, "USD", 10.0);
+
+            assertEquals("req-1", result.get(5, TimeUnit.SECONDS));
+            assertEquals(3, wallet.calls.get());
+            assertEquals(LockWaitPolicy.NOWAIT, wallet.lastPolicy);
+            assertEquals(0, queue.getPendingCount());
+        }
+    }
+
+    @Test
+    @DisplayName("should fail with LockUnavailableException once attempts run out")
+    void givesUpAfterMaxAttempts() {
+        ContendedWalletService wallet = new ContendedWalletService(Integer.MAX_VALUE);
+        try (DeferredTransferQueue queue = new DeferredTransferQueue(wallet, LockWaitPolicy.NOWAIT, 10, 3, Duration.ofMillis(1))) {
+            CompletableFuture<String> result = queue.transfer("req-2", 1L, 2L, "USD", 10.0);
+
+            ExecutionException ex = assertThrows(ExecutionException.class, () -> result.get(5, TimeUnit.SECONDS));
+            assertTrue(ex.getCause() instanceof LockUnavailableException);
+            assertEquals(3, wallet.calls.get());
+        }
+    }
+
+    @Test
+    @DisplayName("should reject contended transfers when the queue is full")
+    void rejectsWhenFull() {
+        ContendedWalletService wallet = new ContendedWalletService(Integer.MAX_VALUE);
+        try (DeferredTransferQueue queue = new DeferredTransferQueue(wallet, LockWaitPolicy.NOWAIT, 0, 3, Duration.ofSeconds(10))) {
+            CompletableFuture<String> result = queue.transfer("req-3", 1L, 2L, "USD", 10.0);
+
+            ExecutionException ex = assertThrows(ExecutionException.class, () -> result.get(1, TimeUnit.SECONDS));
+            assertTrue(ex.getCause() instanceof WalletException);
+        }
+    }
+
+    @Test
+    @DisplayName("should fail transfers still waiting for a retry when the queue is closed")
+    void closeFailsDeferredTransfers() {
+        ContendedWalletService wallet = new ContendedWalletService(Integer.MAX_VALUE);
+        DeferredTransferQueue queue = new DeferredTransferQueue(wallet, LockWaitPolicy.NOWAIT, 10, 3, Duration.ofSeconds(10));
+        CompletableFuture<String> first = queue.transfer("req-4", 1L, 2L, "USD", 10.0);
+        CompletableFuture<String> second = queue.transfer("req-5", 1L, 2L, "USD", 10.0);
+        assertEquals(2, queue.getPendingCount());
+
+        queue.close();
+
+        ExecutionException ex = assertThrows(ExecutionException.class, () -> first.get(1, TimeUnit.SECONDS));
+        assertTrue(ex.getCause() instanceof LockUnavailableException);
+        assertTrue(second.isCompletedExceptionally());
+        assertEquals(0, queue.getPendingCount());
+        assertEquals(2, wallet.calls.get());
+    }
+}
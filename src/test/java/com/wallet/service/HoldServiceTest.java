@@ -0,0 +1,264 @@
+package com.wallet.service;
+
+import com.wallet.Exceptin.InsufficientBalanceException;
+import com.wallet.Exceptin.TransferRejectedException;
+import com.wallet.database.embedded.EmbeddedDatabase;
+import com.wallet.database.util.SqlTemplate;
+import com.wallet.model.TransferStatus;
+import com.wallet.model.WalletBalance;
+import com.wallet.service.retry.TransferRetrier;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HoldServiceTest {
+
+    private final AtomicLong clock = new AtomicLong();
+
+    @Nested
+    @DisplayName("timing wheel")
+    class Wheel {
+
+        @Test
+        @DisplayName("should fire a timeout at the end of its tick, including after extra rotations")
+        void advance_firesOnDeadline() {
+            HashedTimingWheel<String> wheel = new HashedTimingWheel<>(100, 8, 0);
+            wheel.schedule("soon", 50);
+            wheel.schedule("a", 250);
+            wheel.schedule("later", 1_050);
+
+            assertEquals(List.of("soon"), wheel.advance(200));
+            assertEquals(List.of(), wheel.advance(299));
+            assertEquals(List.of("a"), wheel.advance(300));
+            assertEquals(List.of(), wheel.advance(1_099));
+            assertEquals(List.of("later"), wheel.advance(1_100));
+            assertEquals(0, wheel.pending());
+        }
+
+        @Test
+        @DisplayName("should not fire a cancelled timeout and fire a past deadline on the next tick")
+        void cancel_andPastDeadline() {
+            HashedTimingWheel<String> wheel = new HashedTimingWheel<>(100, 8, 1_000);
+            HashedTimingWheel.Timeout<String> cancelled = wheel.schedule("cancelled", 1_200);
+            wheel.schedule("overdue", 10);
+
+            assertTrue(cancelled.cancel());
+            assertFalse(cancelled.cancel());
+            assertEquals(1, wheel.pending());
+            assertEquals(List.of("overdue"), wheel.advance(5_000));
+            assertEquals(0, wheel.pending());
+        }
+    }
+
+    @Nested
+    @DisplayName("with the embedded database")
+    class Embedded {
+
+        private EmbeddedDatabase database;
+        private SqlTemplate sqlTemplate;
+        private HoldService holds;
+        private WalletService wallet;
+
+        @BeforeEach
+        void setUp() {
+            database = EmbeddedDatabase.startIsolated();
+            sqlTemplate = new SqlTemplate(database);
+            // EXPIRES_AT is on the database clock, which the wheel must share when it loads active holds
+            clock.set(System.currentTimeMillis());
+            holds = service();
+            wallet = new WalletService(sqlTemplate);
+            database.createAccount(1, "USD", "ACTIVE", new BigDecimal("100"));
+            database.createAccount(2, "USD", "ACTIVE", new BigDecimal("100"));
+        }
+
+        @AfterEach
+        void tearDown() {
+            holds.close();
+            database.shutdown();
+        }
+
+        private HoldService service() {
+            return new HoldService(sqlTemplate, new TransferRetrier(), Duration.ofSeconds(1), 2, clock::get);
+        }
+
+        private WalletBalance balance(long accountId) {
+            return new BalanceService(sqlTemplate).getBalances(List.of(accountId)).get(accountId);
+        }
+
+        private WalletBalance cachedBalance(BalanceService balances, long accountId) {
+            return balances.getBalances(List.of(accountId)).get(accountId);
+        }
+
+        private long holdsWithStatus(String status) {
+            return sqlTemplate.count("WALLET_HOLD", "STATUS = ?", status);
+        }
+
+        // moves the wheel's clock forward and the holds' EXPIRES_AT back, as if the time had passed for both
+        private void elapse(Duration duration) {
+            clock.addAndGet(duration.toMillis());
+            sqlTemplate.update("update WALLET_HOLD set EXPIRES_AT = dateadd('MILLISECOND', ?, EXPIRES_AT)",
+                    -duration.toMillis());
+        }
+
+        @Test
+        @DisplayName("should take a hold out of the available balance for transfers and further holds")
+        void placeHold_reducesAvailable() {
+            long holdId = holds.placeHold("auth-1", 1, "USD", 70, Duration.ofMinutes(10));
+
+            assertEquals(holdId, holds.placeHold("auth-1", 1, "USD", 70, Duration.ofMinutes(10)));
+            assertEquals(0, new BigDecimal("30").compareTo(balance(1).getAvailableBalance()));
+            assertEquals(TransferStatus.INSUFFICIENT_BALANCE,
+                    wallet.tryTransfer("t-1", 1, 2, "USD", 40).getStatus());
+            assertThrows(InsufficientBalanceException.class,
+                    () -> holds.placeHold("auth-2", 1, "USD", 31, Duration.ofMinutes(10)));
+            TransferRejectedException e = assertThrows(TransferRejectedException.class,
+                    () -> holds.placeHold("auth-1", 1, "USD", 5, Duration.ofMinutes(10)));
+            assertEquals(TransferStatus.DUPLICATE_REQUEST, e.getStatus());
+            assertEquals(0, sqlTemplate.count("WALLET_POSTING_V", null));
+        }
+
+        @Test
+        @DisplayName("should post a capture as one transfer and release what was not captured")
+        void capture_postsTransfer() {
+            long holdId = holds.placeHold("auth-1", 1, "USD", 70, Duration.ofMinutes(10));
+
+            holds.capture("cap-1", holdId, 2, 50);
+            holds.capture("cap-1", holdId, 2, 50);
+
+            assertEquals(0, new BigDecimal("50").compareTo(balance(1).getAvailableBalance()));
+            assertEquals(0, BigDecimal.ZERO.compareTo(balance(1).getHeldAmount()));
+            assertEquals(0, new BigDecimal("150").compareTo(balance(2).getBalance()));
+            assertEquals(1, sqlTemplate.count("WALLET_TRANSFER", "REQUEST_ID = ?", "cap-1"));
+            assertEquals(0, holds.getPendingCount());
+
+            TransferRejectedException e = assertThrows(TransferRejectedException.class,
+                    () -> holds.capture("cap-2", holdId, 2, 10));
+            assertEquals(TransferStatus.HOLD_NOT_ACTIVE, e.getStatus());
+        }
+
+        @Test
+        @DisplayName("should drop cached balances of the accounts a hold touches")
+        void placeCaptureRelease_invalidateCachedBalances() {
+            BalanceService cached = new BalanceService(sqlTemplate, Duration.ofMinutes(1), 100);
+            HoldService cachingHolds = new HoldService(sqlTemplate, new TransferRetrier(), cached,
+                    Duration.ofSeconds(1), HoldService.DEFAULT_SWEEP_INTERVAL, 2, clock::get);
+            cached.getBalances(List.of(1L, 2L));
+
+            long first = cachingHolds.placeHold("auth-1", 1, "USD", 70, Duration.ofMinutes(10));
+            assertEquals(0, new BigDecimal("30").compareTo(cachedBalance(cached, 1).getAvailableBalance()));
+
+            cachingHolds.capture("cap-1", first, 2, 50);
+            assertEquals(0, new BigDecimal("50").compareTo(cachedBalance(cached, 1).getAvailableBalance()));
+            assertEquals(0, new BigDecimal("150").compareTo(cachedBalance(cached, 2).getBalance()));
+
+            long second = cachingHolds.placeHold("auth-2", 1, "USD", 20, Duration.ofMinutes(10));
+            assertEquals(0, new BigDecimal("30").compareTo(cachedBalance(cached, 1).getAvailableBalance()));
+            cachingHolds.release(second);
+            assertEquals(0, new BigDecimal("50").compareTo(cachedBalance(cached, 1).getAvailableBalance()));
+            cachingHolds.close();
+        }
+
+        @Test
+        @DisplayName("should leave the hold active when the capture transfer is refused")
+        void capture_refusedTransfer_keepsHold() {
+            database.createAccount(3, "EUR", "ACTIVE", BigDecimal.ZERO);
+            long holdId = holds.placeHold("auth-1", 1, "USD", 70, Duration.ofMinutes(10));
+
+            TransferRejectedException e = assertThrows(TransferRejectedException.class,
+                    () -> holds.capture("cap-1", holdId, 3, 50));
+            assertEquals(TransferStatus.CURRENCY_MISMATCH, e.getStatus());
+            assertEquals(0, new BigDecimal("70").compareTo(balance(1).getHeldAmount()));
+            assertEquals(1, holdsWithStatus("ACTIVE"));
+
+            holds.release(holdId);
+            holds.release(holdId);
+            assertEquals(0, new BigDecimal("100").compareTo(balance(1).getAvailableBalance()));
+            assertEquals(1, holdsWithStatus("RELEASED"));
+        }
+
+        @Test
+        @DisplayName("should expire due holds in batches and skip the ones already captured")
+        void expireDue_inBatches() {
+            List<Long> ids = new ArrayList<>();
+            for (int i = 0; i < 5; i++) {
+                ids.add(holds.placeHold("auth-" + i, i % 2 + 1, "USD", 10, Duration.ofSeconds(60)));
+            }
+            holds.capture("cap-0", ids.get(0), 2, 10);
+
+            elapse(Duration.ofSeconds(59));
+            assertEquals(0, holds.expireDue());
+
+            elapse(Duration.ofSeconds(2));
+            assertEquals(4, holds.expireDue());
+            assertEquals(4, holdsWithStatus("EXPIRED"));
+            assertEquals(0, BigDecimal.ZERO.compareTo(balance(1).getHeldAmount()));
+            assertEquals(0, BigDecimal.ZERO.compareTo(balance(2).getHeldAmount()));
+            assertEquals(0, holds.getPendingCount());
+        }
+
+        @Test
+        @DisplayName("should pick up active holds placed elsewhere")
+        void scheduleActive_loadsHolds() {
+            holds.placeHold("auth-1", 1, "USD", 10, Duration.ofSeconds(30));
+            holds.placeHold("auth-2", 2, "USD", 10, Duration.ofSeconds(30));
+
+            HoldService restarted = service();
+            assertEquals(2, restarted.scheduleActive());
+            assertEquals(2, restarted.getPendingCount());
+
+            elapse(Duration.ofSeconds(32));
+            assertEquals(2, restarted.expireDue());
+            assertEquals(2, holdsWithStatus("EXPIRED"));
+        }
+
+        @Test
+        @DisplayName("should leave a hold the database does not see as due and expire it once the sweep reschedules it")
+        void expireDue_notYetDue_sweepReschedules() {
+            long holdId = holds.placeHold("auth-1", 1, "USD", 10, Duration.ofSeconds(30));
+            // the wheel's clock runs ahead of the database's
+            clock.addAndGet(Duration.ofSeconds(32).toMillis());
+
+            assertEquals(0, holds.expireDue());
+            assertEquals(1, holdsWithStatus("ACTIVE"));
+            assertEquals(0, holds.getPendingCount());
+
+            assertEquals(1, holds.sweep());
+            assertEquals(1, holds.getPendingCount());
+            assertEquals(1, holds.sweep());
+            assertEquals(1, holds.getPendingCount());
+            elapse(Duration.ofSeconds(31));
+            assertEquals(1, holds.expireDue());
+            assertEquals(1, holdsWithStatus("EXPIRED"));
+            assertEquals(0, new BigDecimal("100").compareTo(balance(1).getAvailableBalance()));
+            assertThrows(TransferRejectedException.class, () -> holds.capture("cap-1", holdId, 2, 10));
+        }
+
+        @Test
+        @DisplayName("should sweep in overdue holds placed after start and leave ones due after the next sweep")
+        void sweep_schedulesOverdueHolds() {
+            HoldService elsewhere = service();
+            elsewhere.placeHold("auth-1", 1, "USD", 10, Duration.ofSeconds(30));
+            elsewhere.placeHold("auth-2", 2, "USD", 10, Duration.ofMinutes(10));
+            elsewhere.close();
+            elapse(Duration.ofSeconds(31));
+
+            assertEquals(0, holds.expireDue());
+            assertEquals(1, holds.sweep());
+            assertEquals(1, holds.getPendingCount());
+            clock.addAndGet(Duration.ofSeconds(1).toMillis());
+            assertEquals(1, holds.expireDue());
+            assertEquals(1, holdsWithStatus("EXPIRED"));
+            assertEquals(1, holdsWithStatus("ACTIVE"));
+        }
+    }
+}
@@ -0,0 +1,177 @@
+package com.wallet.service;
+
+import com.wallet.database.embedded.EmbeddedDatabase;
+import com.wallet.database.util.SqlTemplate;
+import com.wallet.model.TransferResult;
+import com.wallet.model.TransferStatus;
+import com.wallet.service.admission.AccountRateLimiter;
+import com.wallet.service.admission.AdaptiveConcurrencyLimit;
+import com.wallet.service.admission.AdmissionController;
+import com.wallet.service.retry.TransferRetrier;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PartitionedTransferExecutorTest {
+
+    private EmbeddedDatabase database;
+    private SqlTemplate sqlTemplate;
+    private WalletService walletService;
+
+    @BeforeEach
+    void setUp() {
+        database = EmbeddedDatabase.startIsolated();
+        sqlTemplate = new SqlTemplate(database);
+        walletService = new WalletService(sqlTemplate, new TransferRetrier(), new AdmissionController(
+                new AccountRateLimiter(1, Integer.MAX_VALUE, 16_000),
+                new AdaptiveConcurrencyLimit(Integer.MAX_VALUE, Integer.MAX_VALUE, Integer.MAX_VALUE)));
+        for (long id = 1; id <= 8; id++) {
+            database.createAccount(id, "USD", "ACTIVE", new BigDecimal("100"));
+            database.createAccount(100 + id, "EUR", "ACTIVE", new BigDecimal("100"));
+        }
+    }
+
+    @AfterEach
+    void tearDown() {
+        database.shutdown();
+    }
+
+    private BigDecimal total(String currency) {
+        return sqlTemplate.selectScalar("select sum(BALANCE) from WALLET_ACCOUNT where CURRENCY = ?",
+                BigDecimal.class, currency).orElseThrow();
+    }
+
+    @Test
+    @DisplayName("should run transfers from one account in submission order")
+    void sameSourceAccount_keepsOrder() throws Exception {
+        try (PartitionedTransferExecutor executor = new PartitionedTransferExecutor(walletService, 4, 64)) {
+            List<CompletableFuture<TransferResult>> results = new ArrayList<>();
+            for (int i = 0; i < 15; i++) {
+                results.add(executor.submit("seq-" + i, 1L, 2L + i % 3, "USD", 10.0));
+            }
+
+            for (int i = 0; i < 15; i++) {
+                TransferStatus expected = i < 10 ? TransferStatus.COMPLETED : TransferStatus.INSUFFICIENT_BALANCE;
+                assertEquals(expected, results.get(i).get(10, TimeUnit.SECONDS).getStatus());
+            }
+        }
+    }
+
+    @Test
+    @DisplayName("should conserve money per currency with many accounts in parallel")
+    void parallelCurrencies_conserveTotals() throws Exception {
+        List<CompletableFuture<TransferResult>> results = new ArrayList<>();
+        try (PartitionedTransferExecutor executor = new PartitionedTransferExecutor(walletService, 4, 1024)) {
+            for (int i = 0; i < 400; i++) {
+                long from = i % 8 + 1;
+                long to = (i * 3 + 1) % 8 + 1;
+                if (from == to) {
+                    to = from % 8 + 1;
+                }
+                results.add(executor.submit("usd-" + i, from, to, "USD", 3.0));
+                results.add(executor.submit("eur-" + i, 100 + from, 100 + to, "EUR", 3.0));
+            }
+            for (CompletableFuture<TransferResult> result : results) {
+                TransferStatus status = result.get(30, TimeUnit.SECONDS).getStatus();
+                assertTrue(status == TransferStatus.COMPLETED || status == TransferStatus.INSUFFICIENT_BALANCE);
+            }
+        }
+
+        assertEquals(0, new BigDecimal("800").compareTo(total("USD")));
+        assertEquals(0, new BigDecimal("800").compareTo(total("EUR")));
+    }
+
+    @Test
+    @DisplayName("should report OVERLOADED when a partition queue is full")
+    void fullQueue_isOverloaded() throws Exception {
+        try (PartitionedTransferExecutor executor = new PartitionedTransferExecutor(walletService, 1, 1);
+             Connection holder = database.get()) {
+            holder.setAutoCommit(false);
+            try (PreparedStatement lock = holder.prepareStatement("select ID from WALLET_ACCOUNT where ID = 2 for update")) {
+                lock.executeQuery().close();
+            }
+
+            CompletableFuture<TransferResult> blocked = executor.submit("blocked", 1L, 2L, "USD", 1.0);
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while (executor.pending() > 0 && System.nanoTime() < deadline) {
+                Thread.sleep(5);
+            }
+            CompletableFuture<TransferResult> queued = executor.submit("queued", 3L, 4L, "USD", 1.0);
+            CompletableFuture<TransferResult> shed = executor.submit("shed", 5L, 6L, "USD", 1.0);
+
+            assertEquals(TransferStatus.OVERLOADED, shed.get(1, TimeUnit.SECONDS).getStatus());
+
+            holder.rollback();
+            assertTrue(blocked.get(10, TimeUnit.SECONDS).isCompleted());
+            assertTrue(queued.get(10, TimeUnit.SECONDS).isCompleted());
+        }
+    }
+
+    private static long workerThreads() {
+        return Thread.getAllStackTraces().keySet().stream()
+                .filter(t -> t.getName().startsWith("transfer-") && t.isAlive())
+                .count();
+    }
+
+    @Test
+    @DisplayName("should reject unknown currencies without starting workers and share queues past the cap")
+    void currencies_validatedAndCapped() throws Exception {
+        long before = workerThreads();
+        try (PartitionedTransferExecutor executor = new PartitionedTransferExecutor(walletService, 2, 16, 1,
+                Duration.ofSeconds(5))) {
+            assertEquals(TransferStatus.CURRENCY_MISMATCH,
+                    executor.submit("bogus", 1L, 2L, "XYZ123", 1.0).get(1, TimeUnit.SECONDS).getStatus());
+            assertEquals(before, workerThreads());
+
+            assertTrue(executor.submit("usd", 1L, 2L, "USD", 1.0).get(10, TimeUnit.SECONDS).isCompleted());
+            assertTrue(executor.submit("eur", 101L, 102L, "EUR", 1.0).get(10, TimeUnit.SECONDS).isCompleted());
+            // accounts are USD and EUR only, so this reaches wallet_pkg and is refused there
+            assertEquals(TransferStatus.CURRENCY_MISMATCH,
+                    executor.submit("gbp", 1L, 2L, "GBP", 1.0).get(10, TimeUnit.SECONDS).getStatus());
+            // USD has its own queues, EUR and GBP share the overflow set
+            assertEquals(before + 4, workerThreads());
+        }
+    }
+
+    @Test
+    @DisplayName("should not block on close when a queue stays full, failing what is left queued")
+    void close_doesNotBlockOnFullQueue() throws Exception {
+        PartitionedTransferExecutor executor = new PartitionedTransferExecutor(walletService, 1, 1, 4,
+                Duration.ofMillis(200));
+        try (Connection holder = database.get()) {
+            holder.setAutoCommit(false);
+            try (PreparedStatement lock = holder.prepareStatement("select ID from WALLET_ACCOUNT where ID = 2 for update")) {
+                lock.executeQuery().close();
+            }
+            CompletableFuture<TransferResult> blocked = executor.submit("blocked", 1L, 2L, "USD", 1.0);
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while (executor.pending() > 0 && System.nanoTime() < deadline) {
+                Thread.sleep(5);
+            }
+            CompletableFuture<TransferResult> queued = executor.submit("queued", 3L, 4L, "USD", 1.0);
+
+            long start = System.nanoTime();
+            executor.close();
+            assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(2));
+
+            holder.rollback();
+            // the transfer in progress ends either way; the interrupt may or may not reach the database call
+            blocked.exceptionally(e -> null).get(10, TimeUnit.SECONDS);
+            ExecutionException ex = assertThrows(ExecutionException.class, () -> queued.get(10, TimeUnit.SECONDS));
+            assertTrue(ex.getCause() instanceof IllegalStateException);
+        }
+    }
+}
@@ -0,0 +1,206 @@
+package com.wallet.service;
+
+import com.wallet.database.embedded.EmbeddedDatabase;
+import com.wallet.database.util.SqlTemplate;
+import com.wallet.service.ScheduledTransferService.Period;
+import com.wallet.service.retry.TransferRetrier;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ScheduledTransferServiceTest {
+
+    private static final Instant MIDNIGHT = Instant.parse("2026-01-31T00:00:00Z");
+    private static final Duration WINDOW = Duration.ofHours(1);
+
+    private final AtomicLong clock = new AtomicLong(MIDNIGHT.toEpochMilli());
+    private EmbeddedDatabase database;
+    private SqlTemplate sqlTemplate;
+    private ScheduledTransferService schedules;
+
+    @BeforeEach
+    void setUp() {
+        database = EmbeddedDatabase.startIsolated();
+        sqlTemplate = new SqlTemplate(database);
+        schedules = new ScheduledTransferService(sqlTemplate, new TransferRetrier(), WINDOW, Duration.ofSeconds(1),
+                10, clock::get);
+        database.createAccount(1, "USD", "ACTIVE", new BigDecimal("100"));
+        database.createAccount(2, "USD", "ACTIVE", new BigDecimal("100"));
+    }
+
+    @AfterEach
+    void tearDown() {
+        schedules.close();
+        database.shutdown();
+    }
+
+    private BigDecimal balance(long accountId) {
+        return sqlTemplate.selectScalar("select BALANCE from WALLET_ACCOUNT where ID = ?", BigDecimal.class, accountId)
+                .orElseThrow();
+    }
+
+    private <T> T column(long scheduleId, String column, Class<T> type) {
+        return sqlTemplate.selectScalar("select " + column + " from WALLET_SCHEDULE where SCHEDULE_ID = ?", type,
+                scheduleId).orElse(null);
+    }
+
+    private Instant nextRun(long scheduleId) {
+        return sqlTemplate.selectOne("select NEXT_RUN_AT from WALLET_SCHEDULE where SCHEDULE_ID = ?",
+                rs -> rs.getTimestamp(1).toInstant(), scheduleId).orElseThrow();
+    }
+
+    private void advanceTo(Instant instant) {
+        clock.set(instant.toEpochMilli());
+    }
+
+    @Test
+    @DisplayName("should give each key a stable offset inside the window and spread keys across it")
+    void spreadOffset_withinWindow() {
+        Set<Long> offsets = new HashSet<>();
+        for (int i = 0; i < 200; i++) {
+            long offset = schedules.spreadOffset("standing-order-" + i);
+            assertTrue(offset >= 0 && offset < WINDOW.getSeconds());
+            assertEquals(offset, schedules.spreadOffset("standing-order-" + i));
+            offsets.add(offset / 60);
+        }
+        // 200 keys over 60 one-minute slots
+        assertTrue(offsets.size() > 45, "offsets fell into " + offsets.size() + " minutes");
+    }
+
+    @Test
+    @DisplayName("should return the one schedule to every concurrent create of the same key")
+    void create_concurrentSameKey() throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        try {
+            CountDownLatch start = new CountDownLatch(1);
+            List<Future<Long>> creates = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                creates.add(pool.submit(() -> {
+                    start.await();
+                    return schedules.create("rent", 1, 2, "USD", 10, Period.DAILY, MIDNIGHT, null);
+                }));
+            }
+            start.countDown();
+            Set<Long> ids = new HashSet<>();
+            for (Future<Long> create : creates) {
+                ids.add(create.get());
+            }
+            assertEquals(1, ids.size());
+            assertEquals(1, sqlTemplate.count("WALLET_SCHEDULE", null));
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    @Test
+    @DisplayName("should run a daily schedule at its spread time once per day with deterministic request ids")
+    void runDue_daily() {
+        long id = schedules.create("rent", 1, 2, "USD", 10, Period.DAILY, MIDNIGHT, null);
+        assertEquals(id, schedules.create("rent", 1, 2, "USD", 99, Period.WEEKLY, MIDNIGHT, null));
+        Instant due = MIDNIGHT.plusSeconds(schedules.spreadOffset("rent"));
+
+        advanceTo(due.minusMillis(1));
+        assertEquals(0, schedules.runDue());
+
+        advanceTo(due);
+        assertEquals(1, schedules.runDue());
+        assertEquals(0, schedules.runDue());
+        assertEquals(1, sqlTemplate.count("WALLET_TRANSFER", "REQUEST_ID = ?", "sched-" + id + "-0"));
+        assertEquals(MIDNIGHT.plus(Duration.ofDays(1)), nextRun(id));
+
+        // three occurrences late: each missed occurrence is posted once
+        advanceTo(due.plus(Duration.ofDays(3)));
+        assertEquals(1, schedules.runDue());
+        assertEquals(1, schedules.runDue());
+        assertEquals(1, schedules.runDue());
+        assertEquals(0, schedules.runDue());
+        assertEquals(0, new BigDecimal("60").compareTo(balance(1)));
+        assertEquals(4, schedules.getPostedCount());
+        assertEquals(4, column(id, "OCCURRENCE", Number.class).intValue());
+    }
+
+    @Test
+    @DisplayName("should not post an occurrence twice when its transfer already went through")
+    void runDue_replayedOccurrence() {
+        long id = schedules.create("gym", 1, 2, "USD", 25, Period.ONCE, MIDNIGHT, null);
+        new WalletService(sqlTemplate).transfer("sched-" + id + "-0", 1, 2, "USD", 25);
+
+        advanceTo(MIDNIGHT.plus(WINDOW));
+        assertEquals(1, schedules.runDue());
+        assertEquals(0, schedules.getPostedCount());
+        assertEquals(0, new BigDecimal("75").compareTo(balance(1)));
+        assertEquals("DONE", column(id, "STATUS", String.class));
+        assertEquals(0, column(id, "LAST_ERROR_CODE", Number.class).intValue());
+    }
+
+    @Test
+    @DisplayName("should skip a refused occurrence, keep its error code and stop after the end date")
+    void runDue_refusedAndEnded() {
+        long id = schedules.create("loan", 1, 2, "USD", 60, Period.WEEKLY, MIDNIGHT,
+                MIDNIGHT.plus(Duration.ofDays(10)));
+
+        advanceTo(MIDNIGHT.plus(WINDOW));
+        assertEquals(1, schedules.runDue());
+        advanceTo(MIDNIGHT.plus(Duration.ofDays(7)).plus(WINDOW));
+        assertEquals(1, schedules.runDue());
+
+        assertEquals(0, new BigDecimal("40").compareTo(balance(1)));
+        assertEquals(1, schedules.getPostedCount());
+        assertEquals(-20006, column(id, "LAST_ERROR_CODE", Number.class).intValue());
+        assertEquals("DONE", column(id, "STATUS", String.class));
+        assertEquals(0, sqlTemplate.count("WALLET_TRANSFER", "REQUEST_ID = ?", "sched-" + id + "-1"));
+    }
+
+    @Test
+    @DisplayName("should keep a month-end schedule on the last day of each month")
+    void runDue_monthEnd() {
+        long id = schedules.create("salary", 2, 1, "USD", 1, Period.MONTHLY, MIDNIGHT, null);
+
+        advanceTo(MIDNIGHT.plus(WINDOW));
+        schedules.runDue();
+        assertEquals(Instant.parse("2026-02-28T00:00:00Z"), nextRun(id));
+
+        advanceTo(Instant.parse("2026-02-28T00:00:00Z").plus(WINDOW));
+        schedules.runDue();
+        assertEquals(Instant.parse("2026-03-31T00:00:00Z"), nextRun(id));
+        assertFalse(schedules.cancel(id + 1));
+        assertTrue(schedules.cancel(id));
+    }
+
+    @Test
+    @DisplayName("should skip schedules another poller has claimed")
+    void runDue_skipsClaimed() {
+        long claimed = schedules.create("a", 1, 2, "USD", 1, Period.ONCE, MIDNIGHT, null);
+        long free = schedules.create("b", 1, 2, "USD", 1, Period.ONCE, MIDNIGHT, null);
+        advanceTo(MIDNIGHT.plus(WINDOW));
+
+        sqlTemplate.executeInTransactionVoid(ctx -> {
+            List<Long> locked = ctx.select("select SCHEDULE_ID from WALLET_SCHEDULE where SCHEDULE_ID = ? for update",
+                    rs -> rs.getLong(1), claimed);
+            assertEquals(List.of(claimed), locked);
+
+            assertEquals(1, schedules.runDue());
+        });
+
+        assertEquals("ACTIVE", column(claimed, "STATUS", String.class));
+        assertEquals("DONE", column(free, "STATUS", String.class));
+        assertEquals(1, schedules.runDue());
+        assertEquals("DONE", column(claimed, "STATUS", String.class));
+    }
+}
@@ -4,7 +4,9 @@ import com.google.inject.Provider;
 import com.wallet.Exceptin.InsufficientBalanceException;
 import com.wallet.Exceptin.SQLRuntimeException;
 import com.wallet.Exceptin.WalletException;
+import com.wallet.database.util.SqlArray;
 import com.wallet.database.util.SqlTemplate;
+import com.wallet.model.Leg;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Nested;
@@ -14,8 +16,12 @@ import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 
 import java.sql.SQLException;
+import java.util.List;
 
 import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
 
 @ExtendWith(MockitoExtension.class)
 class WalletServiceTest {
@@ -84,6 +90,48 @@ class WalletServiceTest {
         }
     }
 
+    @Nested
+    @DisplayName("multi-leg transfer")
+    class TransferMulti {
+
+        @Test
+        @DisplayName("should return requestId when all legs share a currency")
+        void transferMulti_success_returnsRequestId() {
+            String result = service.transferMulti("req-multi", List.of(
+                    Leg.debit(1L, "USD", 100.0),
+                    Leg.credit(2L, "USD", 97.0),
+                    Leg.credit(3L, "USD", 3.0)));
+
+            assertEquals("req-multi", result);
+            verify(sqlTemplate).callProcedure(eq("{call wallet_pkg.transfer_multi(?, ?, ?, ?, ?)}"),
+                    eq("req-multi"), eq("USD"),
+                    eq(SqlArray.of(SqlArray.NUM_TAB, List.of(1L, 2L, 3L))),
+                    eq(SqlArray.of(SqlArray.SIDE_TAB, List.of("DEBIT", "CREDIT", "CREDIT"))),
+                    eq(SqlArray.of(SqlArray.NUM_TAB, List.of(100.0, 97.0, 3.0))));
+        }
+
+        @Test
+        @DisplayName("should reject fewer than two legs without calling the database")
+        void transferMulti_rejectsSingleLeg() {
+            WalletException ex = assertThrows(WalletException.class,
+                    () -> service.transferMulti("req-1", List.of(Leg.debit(1L, "USD", 10.0))));
+
+            assertTrue(ex.getMessage().contains("at least two legs"));
+            verifyNoInteractions(sqlTemplate);
+        }
+
+        @Test
+        @DisplayName("should reject mixed currencies without calling the database")
+        void transferMulti_rejectsMixedCurrencies() {
+            WalletException ex = assertThrows(WalletException.class, () -> service.transferMulti("req-2", List.of(
+                    Leg.debit(1L, "USD", 10.0),
+                    Leg.credit(2L, "EUR", 10.0))));
+
+            assertTrue(ex.getMessage().contains("Currency mismatch"));
+            verifyNoInteractions(sqlTemplate);
+        }
+    }
+
     @Nested
     @DisplayName("SQL error mapping")
     class ErrorMapping {
@@ -0,0 +1,189 @@
+package com.wallet.service.accrual;
+
+import com.wallet.Exceptin.WalletException;
+import com.wallet.database.embedded.EmbeddedDatabase;
+import com.wallet.database.util.SqlTemplate;
+import com.wallet.service.retry.TransferRetrier;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.time.LocalDate;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AccrualEngineTest {
+
+    private static final long SYSTEM_ACCOUNT = 1;
+    private static final LocalDate DAY = LocalDate.of(2026, 10, 19);
+
+    private EmbeddedDatabase database;
+    private SqlTemplate sqlTemplate;
+    private AccrualEngine engine;
+
+    @BeforeEach
+    void setUp() {
+        database = EmbeddedDatabase.startIsolated();
+        sqlTemplate = new SqlTemplate(database);
+        engine = new AccrualEngine(sqlTemplate, new TransferRetrier(), 10, 4);
+        database.createAccount(SYSTEM_ACCOUNT, "USD", "ACTIVE", new BigDecimal("1000000"));
+        // accounts 100..199 hold 100..199 USD
+        for (long id = 100; id < 200; id++) {
+            database.createAccount(id, "USD", "ACTIVE", BigDecimal.valueOf(id));
+        }
+    }
+
+    @AfterEach
+    void tearDown() {
+        database.shutdown();
+    }
+
+    private BigDecimal balance(long accountId) {
+        return sqlTemplate.selectScalar("select BALANCE from WALLET_ACCOUNT where ID = ?", BigDecimal.class, accountId)
+                .orElseThrow();
+    }
+
+    private BigDecimal totalBalance() {
+        return sqlTemplate.selectScalar("select sum(BALANCE) from WALLET_ACCOUNT", BigDecimal.class).orElseThrow();
+    }
+
+    @Test
+    @DisplayName("should pay interest to every account from the system account with per-account request ids")
+    void interest_isPostedPerAccount() {
+        BigDecimal before = totalBalance();
+
+        AccrualResult result = engine.run(Accrual.interest(DAY, "USD", SYSTEM_ACCOUNT, new BigDecimal("0.01")));
+
+        assertEquals(100, result.getAccounts());
+        // sum of round(id * 0.01, 2) for 100..199
+        assertEquals(0, new BigDecimal("149.50").compareTo(result.getTotal()));
+        assertEquals(0, new BigDecimal("151.50").compareTo(balance(150)));
+        assertEquals(0, new BigDecimal("999850.50").compareTo(balance(SYSTEM_ACCOUNT)));
+        assertEquals(0, before.compareTo(totalBalance()));
+        assertEquals(200, sqlTemplate.count("WALLET_POSTING_V", "REQUEST_ID like 'INTEREST:USD:2026-10-19:%'"));
+        assertTrue(sqlTemplate.exists("WALLET_POSTING_V",
+                "REQUEST_ID = 'INTEREST:USD:2026-10-19:150' and SIDE = 'CREDIT' and ACCOUNT_ID = 150"));
+    }
+
+    @Test
+    @DisplayName("should post nothing when the same run is repeated")
+    void rerun_isIdempotent() {
+        Accrual accrual = Accrual.interest(DAY, "USD", SYSTEM_ACCOUNT, new BigDecimal("0.01"));
+        AccrualResult first = engine.run(accrual);
+
+        AccrualResult second = engine.run(accrual);
+
+        // ids 1..199 in chunks of 10
+        assertEquals(20, first.getChunksPosted());
+        assertEquals(0, second.getChunksPosted());
+        assertEquals(20, second.getChunksSkipped());
+        assertEquals(0, first.getTotal().compareTo(second.getTotal()));
+        assertEquals(0, new BigDecimal("151.50").compareTo(balance(150)));
+        assertEquals(200, sqlTemplate.count("WALLET_POSTING_V", null));
+    }
+
+    @Test
+    @DisplayName("should resume with the chunk boundaries the run started with")
+    void interruptedRun_resumes() {
+        Accrual accrual = Accrual.interest(DAY, "USD", SYSTEM_ACCOUNT, new BigDecimal("0.01"));
+        // an earlier invocation with 50-wide chunks got as far as committing [150, 200)
+        sqlTemplate.callProcedure("{call wallet_pkg.post_accruals(?, ?, ?, ?, ?, ?, ?, ?)}", accrual.getRunId(),
+                "INTEREST", "USD", SYSTEM_ACCOUNT, 150L, 200L, new BigDecimal("0.01"), BigDecimal.ZERO);
+
+        AccrualResult result = engine.run(accrual);
+
+        assertEquals(3, result.getChunksPosted());
+        assertEquals(1, result.getChunksSkipped());
+        assertEquals(100, result.getAccounts());
+        assertEquals(0, new BigDecimal("149.50").compareTo(result.getTotal()));
+        assertEquals(0, new BigDecimal("999850.50").compareTo(balance(SYSTEM_ACCOUNT)));
+        assertEquals(200, sqlTemplate.count("WALLET_POSTING_V", null));
+    }
+
+    @Test
+    @DisplayName("should refuse to resume a run whose checkpointed chunks disagree on the width")
+    void mixedChunkWidths_areRejected() {
+        Accrual accrual = Accrual.interest(DAY, "USD", SYSTEM_ACCOUNT, new BigDecimal("0.01"));
+        sqlTemplate.callProcedure("{call wallet_pkg.post_accruals(?, ?, ?, ?, ?, ?, ?, ?)}", accrual.getRunId(),
+                "INTEREST", "USD", SYSTEM_ACCOUNT, 100L, 150L, new BigDecimal("0.01"), BigDecimal.ZERO);
+        sqlTemplate.callProcedure("{call wallet_pkg.post_accruals(?, ?, ?, ?, ?, ?, ?, ?)}", accrual.getRunId(),
+                "INTEREST", "USD", SYSTEM_ACCOUNT, 150L, 160L, new BigDecimal("0.01"), BigDecimal.ZERO);
+
+        WalletException e = assertThrows(WalletException.class, () -> engine.run(accrual));
+
+        assertTrue(e.getMessage().contains("different widths"));
+        assertEquals(2, sqlTemplate.count("WALLET_ACCRUAL_CHUNK", null));
+    }
+
+    @Test
+    @DisplayName("should cap fees at the available balance and skip inactive, foreign-currency and empty accounts")
+    void fee_onlyChargesEligibleAccounts() {
+        sqlTemplate.update("update WALLET_ACCOUNT set STATUS = 'FROZEN' where ID = 101");
+        sqlTemplate.update("update WALLET_ACCOUNT set BALANCE = 0 where ID = 102");
+        sqlTemplate.update("update WALLET_ACCOUNT set HELD_AMOUNT = BALANCE where ID = 103");
+        sqlTemplate.update("update WALLET_ACCOUNT set HELD_AMOUNT = 20 where ID = 104");
+        database.createAccount(300, "EUR", "ACTIVE", new BigDecimal("500"));
+
+        AccrualResult result = engine.run(Accrual.fee(DAY, "USD", SYSTEM_ACCOUNT, BigDecimal.ZERO, new BigDecimal("150")));
+
+        assertEquals(97, result.getAccounts());
+        assertEquals(0, BigDecimal.ZERO.compareTo(balance(100)));
+        assertEquals(0, new BigDecimal("103").compareTo(balance(103)));
+        assertEquals(0, new BigDecimal("20").compareTo(balance(104)));
+        assertEquals(0, new BigDecimal("49").compareTo(balance(199)));
+        assertEquals(0, new BigDecimal("101").compareTo(balance(101)));
+        assertEquals(0, new BigDecimal("500").compareTo(balance(300)));
+        assertEquals(0, new BigDecimal("1000000").add(result.getTotal()).compareTo(balance(SYSTEM_ACCOUNT)));
+    }
+
+    @Test
+    @DisplayName("should leave failed chunks unposted, report them, and post them on the next run")
+    void underfundedSystemAccount_failsChunks() {
+        sqlTemplate.update("update WALLET_ACCOUNT set BALANCE = 5 where ID = ?", SYSTEM_ACCOUNT);
+
+        WalletException e = assertThrows(WalletException.class,
+                () -> engine.run(Accrual.interest(DAY, "USD", SYSTEM_ACCOUNT, new BigDecimal("0.01"))));
+
+        assertTrue(e.getMessage().contains("run it again to resume"));
+        assertTrue(sqlTemplate.count("WALLET_ACCRUAL_CHUNK", null) < 20);
+        assertTrue(balance(SYSTEM_ACCOUNT).signum() >= 0);
+        // every committed chunk is whole: two postings per account it paid
+        assertEquals(2 * sqlTemplate.selectScalar("select coalesce(sum(ACCOUNTS), 0) from WALLET_ACCRUAL_CHUNK", Number.class)
+                .orElseThrow().longValue(), sqlTemplate.count("WALLET_POSTING_V", null));
+
+        sqlTemplate.update("update WALLET_ACCOUNT set BALANCE = BALANCE + 1000 where ID = ?", SYSTEM_ACCOUNT);
+        AccrualResult resumed = engine.run(Accrual.interest(DAY, "USD", SYSTEM_ACCOUNT, new BigDecimal("0.01")));
+        assertEquals(100, resumed.getAccounts());
+        assertEquals(0, new BigDecimal("855.50").compareTo(balance(SYSTEM_ACCOUNT)));
+    }
+
+    @Test
+    @DisplayName("should post a chunk while the system account is locked and move its total on settlement")
+    void chunk_leavesSystemAccountToSettlement() throws Exception {
+        Accrual accrual = Accrual.interest(DAY, "USD", SYSTEM_ACCOUNT, new BigDecimal("0.01"));
+        try (Connection holder = database.get()) {
+            holder.setAutoCommit(false);
+            try (PreparedStatement lock = holder.prepareStatement("select ID from WALLET_ACCOUNT where ID = ? for update")) {
+                lock.setLong(1, SYSTEM_ACCOUNT);
+                lock.executeQuery().close();
+            }
+
+            sqlTemplate.callProcedure("{call wallet_pkg.post_accruals(?, ?, ?, ?, ?, ?, ?, ?)}", accrual.getRunId(),
+                    "INTEREST", "USD", SYSTEM_ACCOUNT, 150L, 200L, new BigDecimal("0.01"), BigDecimal.ZERO);
+            holder.rollback();
+        }
+
+        // sum of round(id * 0.01, 2) for 150..199
+        assertEquals(0, new BigDecimal("1000000").compareTo(balance(SYSTEM_ACCOUNT)));
+        assertEquals(1, sqlTemplate.count("WALLET_ACCRUAL_CHUNK", "SETTLED = 0"));
+
+        sqlTemplate.callProcedure("{call wallet_pkg.settle_accruals(?, ?, ?)}", accrual.getRunId(), "INTEREST",
+                SYSTEM_ACCOUNT);
+        assertEquals(0, new BigDecimal("999912.75").compareTo(balance(SYSTEM_ACCOUNT)));
+        assertEquals(0, sqlTemplate.count("WALLET_ACCRUAL_CHUNK", "SETTLED = 0"));
+    }
+}
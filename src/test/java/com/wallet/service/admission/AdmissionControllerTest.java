@@ -0,0 +1,154 @@
+package com.wallet.service.admission;
+
+import com.wallet.Exceptin.AdmissionRejectedException;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AdmissionControllerTest {
+
+    @Test
+    @DisplayName("should reject an account once its burst is spent without affecting other accounts")
+    void rateLimitsPerAccount() {
+        AccountRateLimiter limiter = new AccountRateLimiter(1024, 0.001, 3);
+
+        assertTrue(limiter.tryAcquire(42L));
+        assertTrue(limiter.tryAcquire(42L));
+        assertTrue(limiter.tryAcquire(42L));
+        assertFalse(limiter.tryAcquire(42L));
+
+        assertTrue(limiter.tryAcquire(43L));
+    }
+
+    @Test
+    @DisplayName("should keep refilling an account that draws faster than it earns a whole thousandth")
+    void rateLimitsPerAccount_keepsFractionalRefill() {
+        AtomicLong clock = new AtomicLong(1_000_000);
+        AccountRateLimiter limiter = new AccountRateLimiter(16, 0.5, 3, clock::get);
+
+        // half a thousandth per millisecond: none of these calls refills a whole unit on its own
+        assertTrue(limiter.tryAcquire(42L));
+        clock.incrementAndGet();
+        assertTrue(limiter.tryAcquire(42L));
+        clock.incrementAndGet();
+        assertTrue(limiter.tryAcquire(42L));
+        clock.incrementAndGet();
+        assertFalse(limiter.tryAcquire(42L));
+
+        // the refill since the first call was not lost on the calls in between
+        clock.set(1_000_000 + 1_999);
+        assertFalse(limiter.tryAcquire(42L));
+        clock.incrementAndGet();
+        assertTrue(limiter.tryAcquire(42L));
+        assertFalse(limiter.tryAcquire(42L));
+    }
+
+    @Test
+    @DisplayName("should reject when the in-flight limit is reached and admit again after release")
+    void enforcesConcurrencyLimit() {
+        AdaptiveConcurrencyLimit limit = new AdaptiveConcurrencyLimit(2, 1, 10);
+
+        assertTrue(limit.tryAcquire());
+        assertTrue(limit.tryAcquire());
+        assertFalse(limit.tryAcquire());
+
+        limit.release(1_000_000);
+        assertTrue(limit.tryAcquire());
+    }
+
+    @Test
+    @DisplayName("should shrink the limit when latency rises above the baseline")
+    void shrinksOnSlowCalls() {
+        AdaptiveConcurrencyLimit limit = new AdaptiveConcurrencyLimit(20, 2, 50);
+
+        limit.tryAcquire();
+        limit.release(1_000_000);
+        for (int i = 0; i < 10; i++) {
+            limit.tryAcquire();
+            limit.release(50_000_000);
+        }
+
+        assertTrue(limit.getLimit() < 20);
+    }
+
+    @Test
+    @DisplayName("should not lose limit updates when samples arrive concurrently")
+    void concurrentSamples_noLostUpdates() throws InterruptedException {
+        int threads = 8;
+        int perThread = 5_000;
+        AdaptiveConcurrencyLimit limit = new AdaptiveConcurrencyLimit(10, 1, 100_000);
+        double expected = 10;
+        for (int i = 0; i < threads * perThread; i++) {
+            expected += 1.0 / expected;
+        }
+
+        CountDownLatch start = new CountDownLatch(1);
+        Thread[] workers = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            workers[t] = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                for (int i = 0; i < perThread; i++) {
+                    limit.onSample(1_000_000);
+                }
+            });
+            workers[t].start();
+        }
+        start.countDown();
+        for (Thread worker : workers) {
+            worker.join();
+        }
+
+        assertEquals((int) expected, limit.getLimit());
+    }
+
+    @Test
+    @DisplayName("should sample the last attempt's latency and not the backoff between attempts")
+    void permit_samplesAttemptsOnly() throws InterruptedException {
+        AdaptiveConcurrencyLimit limit = new AdaptiveConcurrencyLimit(20, 2, 50);
+        AdmissionController controller = new AdmissionController(new AccountRateLimiter(1024, 1_000, 1_000), limit);
+        Runnable call = () -> {
+            try {
+                Thread.sleep(5);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        };
+
+        try (AdmissionController.Permit permit = controller.acquire(7L, "USD", 10)) {
+            permit.timed(call).run();
+        }
+        int limitAfterBaseline = limit.getLimit();
+        try (AdmissionController.Permit permit = controller.acquire(7L, "USD", 10)) {
+            Runnable attempt = permit.timed(call);
+            attempt.run();
+            // a retry backoff far above the baseline
+            Thread.sleep(50);
+            attempt.run();
+        }
+
+        assertTrue(limit.getLimit() >= limitAfterBaseline);
+        assertEquals(0, limit.getInFlight());
+    }
+
+    @Test
+    @DisplayName("should fail fast with a distinct exception carrying the rejection reason")
+    void rejectsWithReason() {
+        AdmissionController controller = new AdmissionController(
+                new AccountRateLimiter(1024, 0.001, 1), new AdaptiveConcurrencyLimit(10, 1, 10));
+
+        controller.acquire(7L).close();
+        AdmissionRejectedException ex = assertThrows(AdmissionRejectedException.class, () -> controller.acquire(7L));
+
+        assertEquals(AdmissionRejectedException.Reason.RATE_LIMITED, ex.getReason());
+        assertEquals(0, ex.getStackTrace().length);
+        assertEquals(1, controller.getRateLimitedCount());
+    }
+}
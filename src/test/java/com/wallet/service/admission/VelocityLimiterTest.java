@@ -0,0 +1,241 @@
+package com.wallet.service.admission;
+
+import com.wallet.Exceptin.AdmissionRejectedException;
+import com.wallet.database.embedded.EmbeddedDatabase;
+import com.wallet.database.util.SqlTemplate;
+import com.wallet.model.Leg;
+import com.wallet.model.TransferStatus;
+import com.wallet.service.LockWaitPolicy;
+import com.wallet.service.WalletService;
+import com.wallet.service.retry.TransferRetrier;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class VelocityLimiterTest {
+
+    private static final VelocityLimits LIMITS = VelocityLimits.none()
+            .withTier("ACTIVE", "USD", 100, 150)
+            .withTier("VIP", "USD", 1_000, 5_000);
+
+    // the start of a 5-minute slot, so the windows move at known points
+    private final AtomicLong clock = new AtomicLong(Duration.ofDays(20_000).toMillis());
+
+    @Nested
+    @DisplayName("in memory")
+    class InMemory {
+
+        private VelocityLimiter limiter;
+
+        @BeforeEach
+        void setUp() {
+            limiter = new VelocityLimiter(null, LIMITS, clock::get);
+        }
+
+        @Test
+        @DisplayName("should enforce the hourly cap and admit again once the hour has slid past")
+        void hourlyCap() {
+            limiter.reserve(1L, "USD", 60);
+            limiter.reserve(1L, "USD", 40);
+            AdmissionRejectedException e = assertThrows(AdmissionRejectedException.class, () -> limiter.reserve(1L, "USD", 1));
+            assertEquals(TransferStatus.VELOCITY_LIMITED, e.getStatus());
+
+            clock.addAndGet(Duration.ofMinutes(60).toMillis());
+            limiter.reserve(1L, "USD", 50);
+            assertArrayEquals(new double[]{50, 150}, limiter.outflow(1L));
+            // the daily cap still counts the first hour
+            assertThrows(AdmissionRejectedException.class, () -> limiter.reserve(1L, "USD", 1));
+
+            clock.addAndGet(Duration.ofHours(24).toMillis());
+            assertArrayEquals(new double[]{0, 0}, limiter.outflow(1L));
+            limiter.purgeIdle();
+            limiter.reserve(1L, "USD", 100);
+        }
+
+        @Test
+        @DisplayName("should give a cancelled reservation back")
+        void cancel_restoresBudget() {
+            VelocityLimiter.Reservation reservation = limiter.reserve(1L, "USD", 100);
+            reservation.cancel();
+
+            assertArrayEquals(new double[]{0, 0}, limiter.outflow(1L));
+            limiter.reserve(1L, "USD", 100);
+        }
+
+        @Test
+        @DisplayName("should apply the tier of the account status and leave statuses without a tier uncapped")
+        void tiersByStatus() {
+            limiter.statusChanged(2L, "VIP");
+            limiter.reserve(2L, "USD", 900);
+            limiter.statusChanged(3L, "FROZEN");
+            limiter.reserve(3L, "USD", 1_000_000);
+
+            limiter.statusChanged(2L, "ACTIVE");
+            assertThrows(AdmissionRejectedException.class, () -> limiter.reserve(2L, "USD", 1));
+        }
+
+        @Test
+        @DisplayName("should cap each currency by its own tier and leave currencies without one uncapped")
+        void tiersByCurrency() {
+            VelocityLimiter perCurrency = new VelocityLimiter(null,
+                    VelocityLimits.parse("ACTIVE:USD:100:150, ACTIVE:JPY:15000:22500"), clock::get);
+            perCurrency.reserve(1L, "JPY", 15_000);
+            assertThrows(AdmissionRejectedException.class, () -> perCurrency.reserve(1L, "JPY", 1));
+            perCurrency.reserve(2L, "USD", 100);
+            perCurrency.reserve(3L, "CHF", 1_000_000);
+        }
+    }
+
+    @Nested
+    @DisplayName("with the embedded database")
+    class Embedded {
+
+        private EmbeddedDatabase database;
+        private SqlTemplate sqlTemplate;
+
+        @BeforeEach
+        void setUp() {
+            database = EmbeddedDatabase.startIsolated();
+            sqlTemplate = new SqlTemplate(database);
+            for (long id = 1; id <= 3; id++) {
+                database.createAccount(id, "USD", "ACTIVE", new BigDecimal("1000"));
+            }
+            clock.set(System.currentTimeMillis());
+        }
+
+        @AfterEach
+        void tearDown() {
+            database.shutdown();
+        }
+
+        private WalletService service(VelocityLimiter limiter) {
+            return new WalletService(sqlTemplate, new TransferRetrier(), new AdmissionController(
+                    new AccountRateLimiter(1024, 1_000, 1_000), new AdaptiveConcurrencyLimit(8, 1, 8), limiter));
+        }
+
+        @Test
+        @DisplayName("should rebuild the windows from recent debits in one scan")
+        void rebuild_fromJournal() {
+            WalletService unlimited = service(VelocityLimiter.unlimited());
+            unlimited.transfer("a", 1, 2, "USD", 30);
+            unlimited.transfer("b", 1, 3, "USD", 20);
+            unlimited.transfer("c", 2, 3, "USD", 5);
+
+            VelocityLimiter limiter = new VelocityLimiter(sqlTemplate, LIMITS, clock::get);
+            limiter.rebuild();
+
+            assertArrayEquals(new double[]{50, 50}, limiter.outflow(1L));
+            assertArrayEquals(new double[]{5, 5}, limiter.outflow(2L));
+            assertArrayEquals(new double[]{0, 0}, limiter.outflow(3L));
+        }
+
+        @Test
+        @DisplayName("should reject over the cap before calling wallet_pkg and not count failed transfers")
+        void walletService_checksCaps() {
+            VelocityLimiter limiter = new VelocityLimiter(sqlTemplate, LIMITS, clock::get);
+            limiter.start();
+            WalletService service = service(limiter);
+
+            assertTrue(service.tryTransfer("a", 1, 2, "USD", 80, LockWaitPolicy.WAIT).isCompleted());
+            assertEquals(TransferStatus.VELOCITY_LIMITED,
+                    service.tryTransfer("b", 1, 2, "USD", 30, LockWaitPolicy.WAIT).getStatus());
+            assertEquals(TransferStatus.ACCOUNT_NOT_FOUND,
+                    service.tryTransfer("c", 1, 99, "USD", 20, LockWaitPolicy.WAIT).getStatus());
+            assertTrue(service.tryTransfer("d", 1, 2, "USD", 20, LockWaitPolicy.WAIT).isCompleted());
+
+            assertFalse(sqlTemplate.exists("WALLET_POSTING_V", "REQUEST_ID = 'b'"));
+            assertArrayEquals(new double[]{100, 100}, limiter.outflow(1L));
+        }
+
+        @Test
+        @DisplayName("should cap every debited account of a multi-leg transfer and hand back the others on refusal")
+        void walletService_capsEveryDebitLeg() {
+            VelocityLimiter limiter = new VelocityLimiter(sqlTemplate, LIMITS, clock::get);
+            limiter.start();
+            WalletService service = service(limiter);
+
+            assertTrue(service.tryTransferMulti("a", List.of(Leg.debit(1, "USD", 90), Leg.debit(2, "USD", 10),
+                    Leg.credit(3, "USD", 100))).isCompleted());
+            assertArrayEquals(new double[]{90, 90}, limiter.outflow(1L));
+            assertArrayEquals(new double[]{10, 10}, limiter.outflow(2L));
+
+            // splitting a payment across legs does not get around the cap
+            assertEquals(TransferStatus.VELOCITY_LIMITED, service.tryTransferMulti("b", List.of(
+                    Leg.debit(2, "USD", 50), Leg.debit(1, "USD", 12), Leg.credit(3, "USD", 62))).getStatus());
+            assertArrayEquals(new double[]{90, 90}, limiter.outflow(1L));
+            assertArrayEquals(new double[]{10, 10}, limiter.outflow(2L));
+            assertFalse(sqlTemplate.exists("WALLET_POSTING_V", "REQUEST_ID = 'b'"));
+        }
+
+        @Test
+        @DisplayName("should load the windows on the first reservation")
+        void reserve_loadsLazily() {
+            service(VelocityLimiter.unlimited()).transfer("a", 1, 2, "USD", 95);
+            VelocityLimiter limiter = new VelocityLimiter(sqlTemplate, LIMITS, clock::get);
+
+            limiter.reserve(1L, "USD", 5);
+            assertArrayEquals(new double[]{100, 100}, limiter.outflow(1L));
+            assertThrows(AdmissionRejectedException.class, () -> limiter.reserve(1L, "USD", 1));
+        }
+
+        @Test
+        @DisplayName("should admit uncapped while the windows cannot be loaded")
+        void reserve_admitsWhenLoadFails() {
+            VelocityLimiter limiter = new VelocityLimiter(sqlTemplate, LIMITS, clock::get);
+            database.shutdown();
+
+            assertSame(VelocityLimiter.Reservation.NONE, limiter.reserve(1L, "USD", 1_000));
+            assertSame(VelocityLimiter.Reservation.NONE, limiter.reserve(1L, "USD", 1_000));
+        }
+
+        @Test
+        @DisplayName("should rebuild the windows on its own once started")
+        void start_rebuildsOnSchedule() throws InterruptedException {
+            VelocityLimiter limiter = new VelocityLimiter(sqlTemplate, LIMITS, System::currentTimeMillis);
+            limiter.start(Duration.ofMillis(20));
+            try {
+                service(VelocityLimiter.unlimited()).transfer("a", 1, 2, "USD", 30);
+                long deadline = System.currentTimeMillis() + 5_000;
+                while (limiter.outflow(1L)[0] < 30 && System.currentTimeMillis() < deadline) {
+                    Thread.sleep(10);
+                }
+                assertArrayEquals(new double[]{30, 30}, limiter.outflow(1L));
+            } finally {
+                limiter.close();
+            }
+        }
+
+        @Test
+        @DisplayName("should keep in-flight reservations across a rebuild")
+        void rebuild_keepsInFlightReservations() {
+            VelocityLimiter limiter = new VelocityLimiter(sqlTemplate, LIMITS, clock::get);
+            limiter.start();
+            WalletService service = service(limiter);
+            assertTrue(service.tryTransfer("a", 1, 2, "USD", 30, LockWaitPolicy.WAIT).isCompleted());
+            VelocityLimiter.Reservation inFlight = limiter.reserve(1L, "USD", 50);
+            VelocityLimiter.Reservation cancelled = limiter.reserve(2L, "USD", 40);
+
+            limiter.rebuild();
+
+            // the posted 30 comes from the scan, the in-flight 50 is carried over
+            assertArrayEquals(new double[]{80, 80}, limiter.outflow(1L));
+            assertArrayEquals(new double[]{40, 40}, limiter.outflow(2L));
+            assertThrows(AdmissionRejectedException.class, () -> limiter.reserve(1L, "USD", 21));
+
+            inFlight.cancel();
+            cancelled.cancel();
+            limiter.rebuild();
+            assertArrayEquals(new double[]{30, 30}, limiter.outflow(1L));
+            assertArrayEquals(new double[]{0, 0}, limiter.outflow(2L));
+        }
+    }
+}
@@ -0,0 +1,179 @@
+package com.wallet.service.credential;
+
+import com.google.inject.Provider;
+import com.wallet.Exceptin.AdmissionRejectedException;
+import com.wallet.database.embedded.EmbeddedDatabase;
+import com.wallet.database.util.SqlTemplate;
+import com.wallet.model.Account;
+import com.wallet.service.AccountService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.time.Duration;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CredentialServiceTest {
+
+    private static final String EMAIL = "ada@example.com";
+
+    private EmbeddedDatabase database;
+    private final AtomicInteger roundTrips = new AtomicInteger();
+    private final Set<String> roundTripThreads = ConcurrentHashMap.newKeySet();
+    private final AtomicLong clock = new AtomicLong();
+    private AccountService accountService;
+    private PasswordHasher hasher;
+    private ThreadPoolExecutor executor;
+    private CredentialService credentials;
+
+    @BeforeEach
+    void setUp() {
+        database = EmbeddedDatabase.startIsolated();
+        database.createAccount(7, "USD", "ACTIVE", BigDecimal.ZERO);
+        Provider<Connection> counting = () -> {
+            roundTrips.incrementAndGet();
+            roundTripThreads.add(Thread.currentThread().getName());
+            return database.get();
+        };
+        accountService = new AccountService(new SqlTemplate(counting));
+        hasher = new PasswordHasher(Duration.ofMillis(1), 1_000, 1_000);
+        executor = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(1),
+                r -> new Thread(r, "credential-hash-test"));
+        credentials = new CredentialService(accountService, hasher, executor, Duration.ofSeconds(30), 100, clock::get);
+    }
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+        database.shutdown();
+    }
+
+    private Account register(String password) throws Exception {
+        return credentials.register(new Account(0, "Ada", "Lovelace", EMAIL, null, 7), password.toCharArray())
+                .get(5, TimeUnit.SECONDS);
+    }
+
+    @Nested
+    @DisplayName("authenticate")
+    class Authenticate {
+
+        @Test
+        @DisplayName("should accept the registered password and store only its hash")
+        void registeredPassword_matches() throws Exception {
+            Account account = register("correct horse");
+
+            Optional<Account> login = credentials.authenticate(EMAIL, "correct horse".toCharArray()).get(5, TimeUnit.SECONDS);
+
+            assertTrue(login.isPresent());
+            assertEquals(account.getId(), login.get().getId());
+            assertTrue(login.get().getPassword().startsWith("pbkdf2-sha256$1000$"));
+            assertFalse(login.get().getPassword().contains("correct horse"));
+        }
+
+        @Test
+        @DisplayName("should reject a wrong password and an unknown email alike")
+        void wrongPasswordOrEmail_isEmpty() throws Exception {
+            register("correct horse");
+
+            assertEquals(Optional.empty(), credentials.authenticate(EMAIL, "battery staple".toCharArray()).get(5, TimeUnit.SECONDS));
+            assertEquals(Optional.empty(), credentials.authenticate("nobody@example.com", "correct horse".toCharArray()).get(5, TimeUnit.SECONDS));
+        }
+
+        @Test
+        @DisplayName("should upgrade a hash made with fewer iterations on login")
+        void weakHash_isUpgraded() throws Exception {
+            PasswordHasher weak = new PasswordHasher(Duration.ofMillis(1), 500, 500);
+            accountService.addAccount(new Account(0, "Ada", "Lovelace", EMAIL, weak.hash("pw".toCharArray()), 7));
+
+            assertTrue(credentials.authenticate(EMAIL, "pw".toCharArray()).get(5, TimeUnit.SECONDS).isPresent());
+
+            String stored = accountService.findByEmail(EMAIL).orElseThrow().getPassword();
+            assertTrue(stored.startsWith("pbkdf2-sha256$1000$"));
+            assertTrue(credentials.authenticate(EMAIL, "pw".toCharArray()).get(5, TimeUnit.SECONDS).isPresent());
+        }
+    }
+
+    @Test
+    @DisplayName("should keep database calls off the hashing pool")
+    void databaseWork_offHashingPool() throws Exception {
+        register("pw");
+        PasswordHasher stronger = new PasswordHasher(Duration.ofMillis(1), 2_000, 2_000);
+        CredentialService upgrading = new CredentialService(accountService, stronger, executor,
+                Duration.ofSeconds(30), 100, clock::get);
+        assertTrue(upgrading.authenticate(EMAIL, "pw".toCharArray()).get(5, TimeUnit.SECONDS).isPresent());
+
+        assertTrue(accountService.findByEmail(EMAIL).orElseThrow().getPassword().startsWith("pbkdf2-sha256$2000$"));
+        assertFalse(roundTripThreads.contains("credential-hash-test"), roundTripThreads.toString());
+    }
+
+    @Test
+    @DisplayName("should check passwords against the database, not a cached hash")
+    void passwordChangedElsewhere_appliesAtOnce() throws Exception {
+        Account account = register("old");
+        assertTrue(credentials.findByEmail(EMAIL).isPresent());
+        assertTrue(credentials.authenticate(EMAIL, "old".toCharArray()).get(5, TimeUnit.SECONDS).isPresent());
+
+        // another node changes the password; this node's cache is not told
+        accountService.updatePassword(account.getId(), hasher.hash("new".toCharArray()));
+
+        assertEquals(Optional.empty(), credentials.authenticate(EMAIL, "old".toCharArray()).get(5, TimeUnit.SECONDS));
+        assertTrue(credentials.authenticate(EMAIL, "new".toCharArray()).get(5, TimeUnit.SECONDS).isPresent());
+        assertNull(credentials.findByEmail(EMAIL).orElseThrow().getPassword());
+    }
+
+    @Test
+    @DisplayName("should serve email lookups from the cache until the TTL passes")
+    void emailLookup_isCached() throws Exception {
+        register("pw");
+        roundTrips.set(0);
+
+        credentials.findByEmail(EMAIL);
+        credentials.findByEmail(EMAIL);
+        assertEquals(1, roundTrips.get());
+
+        clock.addAndGet(Duration.ofSeconds(31).toNanos());
+        credentials.findByEmail(EMAIL);
+        assertEquals(2, roundTrips.get());
+    }
+
+    @Test
+    @DisplayName("should shed calls instead of queueing past the limit")
+    void fullQueue_isShed() throws Exception {
+        register("pw");
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        executor.execute(() -> {
+            started.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+
+        CompletableFuture<Optional<Account>> queued = credentials.authenticate(EMAIL, "pw".toCharArray());
+        AdmissionRejectedException e = assertThrows(AdmissionRejectedException.class,
+                () -> credentials.authenticate(EMAIL, "pw".toCharArray()));
+
+        assertEquals(AdmissionRejectedException.Reason.OVERLOADED, e.getReason());
+        assertEquals(1, credentials.getShedCount());
+        release.countDown();
+        assertTrue(queued.get(5, TimeUnit.SECONDS).isPresent());
+    }
+}
@@ -0,0 +1,42 @@
+package com.wallet.service.credential;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PasswordHasherTest {
+
+    @Test
+    @DisplayName("should salt every hash and verify only the right password")
+    void hashAndVerify() {
+        PasswordHasher hasher = new PasswordHasher(Duration.ofMillis(1), 1_000, 1_000);
+
+        String first = hasher.hash("secret".toCharArray());
+        String second = hasher.hash("secret".toCharArray());
+
+        assertNotEquals(first, second);
+        assertTrue(hasher.verify("secret".toCharArray(), first));
+        assertFalse(hasher.verify("Secret".toCharArray(), first));
+        assertFalse(hasher.verify("secret".toCharArray(), "plaintext"));
+        assertFalse(hasher.verify("secret".toCharArray(), "pbkdf2-sha256$x$y$z"));
+        assertTrue(first.length() <= 100);
+    }
+
+    @Test
+    @DisplayName("should calibrate within bounds and flag hashes made with less work")
+    void calibrate_staysWithinBounds() {
+        PasswordHasher hasher = new PasswordHasher(Duration.ofMillis(5), 2_000, 50_000);
+        String before = new PasswordHasher(Duration.ofMillis(1), 1_000, 1_000).hash("pw".toCharArray());
+
+        int iterations = hasher.calibrate();
+
+        assertTrue(iterations >= 2_000 && iterations <= 50_000);
+        assertEquals(iterations, hasher.getIterations());
+        assertTrue(hasher.needsRehash(before));
+        assertFalse(hasher.needsRehash(hasher.hash("pw".toCharArray())));
+        assertTrue(hasher.verify("pw".toCharArray(), before));
+    }
+}
@@ -0,0 +1,208 @@
+package com.wallet.service.fx;
+
+import com.wallet.Exceptin.SQLRuntimeException;
+import com.wallet.Exceptin.TransferRejectedException;
+import com.wallet.database.embedded.EmbeddedDatabase;
+import com.wallet.database.util.SqlTemplate;
+import com.wallet.model.FxRate;
+import com.wallet.model.TransferResult;
+import com.wallet.model.TransferStatus;
+import com.wallet.service.WalletService;
+import com.wallet.service.admission.AdmissionController;
+import com.wallet.service.retry.TransferRetrier;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FxRateCacheTest {
+
+    private EmbeddedDatabase database;
+    private SqlTemplate sqlTemplate;
+    private FxRateCache rates;
+    private WalletService service;
+
+    @BeforeEach
+    void setUp() {
+        database = EmbeddedDatabase.startIsolated();
+        sqlTemplate = new SqlTemplate(database);
+        rates = new FxRateCache(sqlTemplate);
+        service = new WalletService(sqlTemplate, new TransferRetrier(), new AdmissionController(), rates);
+
+        database.createAccount(1, "USD", "ACTIVE", new BigDecimal("100"));
+        database.createAccount(2, "EUR", "ACTIVE", new BigDecimal("100"));
+        database.createAccount(3, "GBP", "ACTIVE", new BigDecimal("100"));
+    }
+
+    @AfterEach
+    void tearDown() {
+        database.shutdown();
+    }
+
+    private BigDecimal balance(long accountId) {
+        return sqlTemplate.selectScalar("select BALANCE from WALLET_ACCOUNT where ID = ?", BigDecimal.class, accountId)
+                .orElseThrow();
+    }
+
+    @Test
+    @DisplayName("should serve the latest rate of a pair in both directions and swap in a new snapshot per publish")
+    void publish_swapsSnapshot() {
+        FxRate first = rates.publish("EUR", "USD", new BigDecimal("1.10"));
+        FxRateCache.Snapshot before = rates.current();
+        FxRate second = rates.publish("EUR", "USD", new BigDecimal("1.08"));
+
+        assertTrue(second.getVersion() > first.getVersion());
+        assertEquals(first.getVersion(), before.getVersion());
+        assertEquals(second.getVersion(), rates.current().getVersion());
+        assertEquals(second.getVersion(), rates.quote("EUR", "USD").orElseThrow().getVersion());
+        assertEquals(second.getVersion(), rates.quote("USD", "EUR").orElseThrow().getVersion());
+        assertTrue(rates.quote("USD", "GBP").isEmpty());
+
+        // a fresh cache loads only the latest version of each pair
+        FxRateCache reloaded = new FxRateCache(sqlTemplate);
+        assertEquals(1, reloaded.current().size());
+        assertEquals(0, new BigDecimal("1.08").compareTo(reloaded.quote("EUR", "USD").orElseThrow().getRate()));
+    }
+
+    @Test
+    @DisplayName("should post both legs in their own currency with the rate version and replay idempotently")
+    void transferFx_postsWithRateVersion() {
+        FxRate rate = rates.publish("EUR", "USD", new BigDecimal("1.25"));
+
+        service.transferFx("fx-1", 1, 2, "USD", "EUR", 10);
+        service.transferFx("fx-1", 1, 2, "USD", "EUR", 10);
+        service.transferFx("fx-2", 2, 1, "EUR", "USD", 4);
+
+        assertEquals(0, new BigDecimal("95").compareTo(balance(1)));
+        assertEquals(0, new BigDecimal("104").compareTo(balance(2)));
+        assertEquals(0, new BigDecimal("8.00").compareTo(rate.convert(new BigDecimal("10"), "USD")));
+
+        List<Object[]> postings = sqlTemplate.select(
+                "select CURRENCY, AMOUNT, SIDE, RATE_VERSION from WALLET_POSTING_V where REQUEST_ID = ? order by POSTING_SEQ",
+                rs -> new Object[]{rs.getString(1), rs.getBigDecimal(2), rs.getString(3), rs.getLong(4)}, "fx-1");
+        assertEquals(2, postings.size());
+        assertEquals("USD", postings.get(0)[0]);
+        assertEquals("DEBIT", postings.get(0)[2]);
+        assertEquals("EUR", postings.get(1)[0]);
+        assertEquals(0, new BigDecimal("8").compareTo((BigDecimal) postings.get(1)[1]));
+        assertEquals(rate.getVersion(), postings.get(0)[3]);
+        assertEquals(rate.getVersion(), postings.get(1)[3]);
+        assertEquals(1, sqlTemplate.count("WALLET_OUTBOX", "REQUEST_ID = ? and EVENT_TYPE = 'FX_TRANSFER_COMPLETED'", "fx-1"));
+    }
+
+    @Test
+    @DisplayName("should reject a pair without a rate before calling wallet_pkg")
+    void transferFx_rateUnavailable() {
+        TransferRejectedException e = assertThrows(TransferRejectedException.class,
+                () -> service.transferFx("fx-1", 1, 3, "USD", "GBP", 10));
+        assertEquals(TransferStatus.RATE_UNAVAILABLE, e.getStatus());
+
+        TransferResult result = service.tryTransferFx("fx-2", 1, 3, "USD", "GBP", 10);
+        assertEquals(TransferStatus.RATE_UNAVAILABLE, result.getStatus());
+        assertEquals(0, sqlTemplate.count("WALLET_POSTING_V", "REQUEST_ID in ('fx-1', 'fx-2')"));
+    }
+
+    @Test
+    @DisplayName("should reject a rate that does not quote the account currencies and an overdraft")
+    void transferFx_rejections() {
+        rates.publish("EUR", "USD", new BigDecimal("1.25"));
+
+        assertEquals(TransferStatus.CURRENCY_MISMATCH, service.tryTransferFx("fx-1", 1, 3, "USD", "EUR", 10).getStatus());
+        assertEquals(TransferStatus.INSUFFICIENT_BALANCE,
+                service.tryTransferFx("fx-2", 1, 2, "USD", "EUR", 500).getStatus());
+        assertEquals(0, new BigDecimal("100").compareTo(balance(1)));
+    }
+
+    @Test
+    @DisplayName("should refuse a rate version superseded for longer than the grace period")
+    void transferFx_supersededRate() {
+        FxRate old = rates.publish("EUR", "USD", new BigDecimal("1.25"));
+        FxRate newer = rates.publish("USD", "EUR", new BigDecimal("0.80"));
+        String call = "{call wallet_pkg.transfer_fx(?, ?, ?, ?, ?)}";
+
+        // just superseded: a quote taken a moment ago still posts
+        sqlTemplate.callProcedure(call, "fx-1", 1L, 2L, new BigDecimal("10"), old.getVersion());
+
+        sqlTemplate.update("update WALLET_FX_RATE set TS_CREATED = TS_CREATED - interval '1' minute "
+                + "where RATE_VERSION = ?", newer.getVersion());
+        SQLRuntimeException e = assertThrows(SQLRuntimeException.class,
+                () -> sqlTemplate.callProcedure(call, "fx-2", 1L, 2L, new BigDecimal("10"), old.getVersion()));
+        assertEquals(20013, ((SQLException) e.getCause()).getErrorCode());
+        sqlTemplate.callProcedure(call, "fx-3", 1L, 2L, new BigDecimal("10"), newer.getVersion());
+        assertEquals(0, new BigDecimal("80").compareTo(balance(1)));
+    }
+
+    @Test
+    @DisplayName("should load a rate that commits after one with a higher version")
+    void refresh_loadsLateVersion() {
+        rates.publish("EUR", "USD", new BigDecimal("1.10"));
+        FxRate later = rates.publish("EUR", "USD", new BigDecimal("1.08"));
+
+        // taken from another instance's sequence block before 'later', committed after it
+        sqlTemplate.update("insert into WALLET_FX_RATE (RATE_VERSION, BASE_CCY, QUOTE_CCY, RATE) values (?, 'GBP', 'USD', 1.3)",
+                later.getVersion() - 100);
+        rates.refresh();
+
+        assertEquals(later.getVersion() - 100, rates.quote("USD", "GBP").orElseThrow().getVersion());
+        assertEquals(later.getVersion(), rates.current().getVersion());
+    }
+
+    @Test
+    @DisplayName("should count the grace period from the pair's latest rate")
+    void transferFx_graceFromLatestRate() {
+        FxRate quoted = rates.publish("EUR", "USD", new BigDecimal("1.25"));
+        String insert = "insert into WALLET_FX_RATE (RATE_VERSION, BASE_CCY, QUOTE_CCY, RATE, TS_CREATED) "
+                + "values (?, 'EUR', 'USD', 1.24, ?)";
+        // a version inserted a minute ago that committed only now, then the latest rate
+        sqlTemplate.update(insert, quoted.getVersion() + 50,
+                Timestamp.from(Instant.now().minus(Duration.ofMinutes(1))));
+        sqlTemplate.update(insert, quoted.getVersion() + 60, Timestamp.from(Instant.now()));
+
+        sqlTemplate.callProcedure("{call wallet_pkg.transfer_fx(?, ?, ?, ?, ?)}", "fx-1", 1L, 2L,
+                new BigDecimal("10"), quoted.getVersion());
+        assertEquals(0, new BigDecimal("90").compareTo(balance(1)));
+    }
+
+    @Test
+    @DisplayName("should round the credit to the minor units of the credited currency")
+    void transferFx_roundsToCurrencyScale() {
+        database.createAccount(4, "JPY", "ACTIVE", BigDecimal.ZERO);
+        database.createAccount(5, "KWD", "ACTIVE", BigDecimal.ZERO);
+        rates.publish("USD", "JPY", new BigDecimal("150.1234"));
+        rates.publish("USD", "KWD", new BigDecimal("0.30712"));
+
+        service.transferFx("fx-1", 1, 4, "USD", "JPY", 10.05);
+        service.transferFx("fx-2", 1, 5, "USD", "KWD", 10);
+
+        assertEquals(0, new BigDecimal("1509").compareTo(balance(4)));
+        assertEquals(0, new BigDecimal("3.071").compareTo(balance(5)));
+        assertEquals(0, new BigDecimal("1509").compareTo(
+                rates.quote("USD", "JPY").orElseThrow().convert(new BigDecimal("10.05"), "USD")));
+        assertEquals(3, FxRate.scale("KWD"));
+    }
+
+    @Test
+    @DisplayName("should pick up rates published by another process on its own")
+    void start_refreshesPeriodically() throws InterruptedException {
+        rates.start(Duration.ofMillis(10));
+        try {
+            sqlTemplate.update("insert into WALLET_FX_RATE (BASE_CCY, QUOTE_CCY, RATE) values ('GBP', 'USD', 1.3)");
+            long deadline = System.nanoTime() + Duration.ofSeconds(5).toNanos();
+            while (rates.quote("USD", "GBP").isEmpty() && System.nanoTime() < deadline) {
+                Thread.sleep(10);
+            }
+            assertTrue(rates.quote("USD", "GBP").isPresent());
+        } finally {
+            rates.close();
+        }
+    }
+}
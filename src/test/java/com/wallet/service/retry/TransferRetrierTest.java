@@ -0,0 +1,94 @@
+package com.wallet.service.retry;
+
+import com.wallet.Exceptin.SQLRuntimeException;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TransferRetrierTest {
+
+    private static final RetryPolicy NO_DELAY = new RetryPolicy(3, Duration.ZERO, Duration.ZERO);
+
+    private static SQLRuntimeException sqlFailure(int errorCode) {
+        return new SQLRuntimeException("Procedure call failed", new SQLException("DB error", null, errorCode));
+    }
+
+    @Test
+    @DisplayName("should retry a deadlock and succeed on the next attempt")
+    void retriesTransientFailure() {
+        TransferRetrier retrier = new TransferRetrier(NO_DELAY, new RetryBudget());
+        AtomicInteger attempts = new AtomicInteger();
+
+        retrier.run(() -> {
+            if (attempts.incrementAndGet() == 1) {
+                throw sqlFailure(60);
+            }
+        });
+
+        assertEquals(2, attempts.get());
+        assertEquals(1, retrier.getRetryCount());
+    }
+
+    @Test
+    @DisplayName("should not retry business errors raised by wallet_pkg")
+    void doesNotRetryBusinessError() {
+        TransferRetrier retrier = new TransferRetrier(NO_DELAY, new RetryBudget());
+        AtomicInteger attempts = new AtomicInteger();
+
+        assertThrows(SQLRuntimeException.class, () -> retrier.run(() -> {
+            attempts.incrementAndGet();
+            throw sqlFailure(20006);
+        }));
+
+        assertEquals(1, attempts.get());
+        assertEquals(0, retrier.getRetryCount());
+    }
+
+    @Test
+    @DisplayName("should give up after the configured number of attempts")
+    void givesUpAfterMaxAttempts() {
+        TransferRetrier retrier = new TransferRetrier(NO_DELAY, new RetryBudget());
+        AtomicInteger attempts = new AtomicInteger();
+
+        assertThrows(SQLRuntimeException.class, () -> retrier.run(() -> {
+            attempts.incrementAndGet();
+            throw sqlFailure(8177);
+        }));
+
+        assertEquals(3, attempts.get());
+        assertEquals(1, retrier.getExhaustedCount());
+    }
+
+    @Test
+    @DisplayName("should stop retrying once the window budget is spent")
+    void stopsWhenBudgetExhausted() {
+        RetryBudget budget = new RetryBudget(Duration.ofMinutes(1), 0.0, 1);
+        TransferRetrier retrier = new TransferRetrier(NO_DELAY, budget);
+        AtomicInteger attempts = new AtomicInteger();
+
+        assertThrows(SQLRuntimeException.class, () -> retrier.run(() -> {
+            attempts.incrementAndGet();
+            throw sqlFailure(60);
+        }));
+
+        assertEquals(2, attempts.get());
+        assertEquals(1, retrier.getBudgetRejectionCount());
+    }
+
+    @Test
+    @DisplayName("should keep jittered delays within the exponential ceiling")
+    void delayStaysWithinCeiling() {
+        RetryPolicy policy = new RetryPolicy(5, Duration.ofMillis(10), Duration.ofMillis(50));
+
+        for (int i = 0; i < 100; i++) {
+            assertTrue(policy.delayNanos(1) <= Duration.ofMillis(10).toNanos());
+            assertTrue(policy.delayNanos(2) <= Duration.ofMillis(20).toNanos());
+            assertTrue(policy.delayNanos(10) <= Duration.ofMillis(50).toNanos());
+        }
+    }
+}
@@ -0,0 +1,150 @@
+package com.wallet.service.statement;
+
+import com.wallet.Exceptin.WalletException;
+import com.wallet.database.embedded.EmbeddedDatabase;
+import com.wallet.database.util.SqlTemplate;
+import com.wallet.service.WalletService;
+import com.wallet.service.admission.AccountRateLimiter;
+import com.wallet.service.admission.AdaptiveConcurrencyLimit;
+import com.wallet.service.admission.AdmissionController;
+import com.wallet.service.retry.TransferRetrier;
+import com.wallet.service.statement.StatementService.BalanceAnchor;
+import com.wallet.service.statement.StatementService.BatchResult;
+import com.wallet.service.statement.StatementService.StatementSummary;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class StatementServiceTest {
+
+    private static final Instant FROM = Instant.parse("2026-09-01T00:00:00Z");
+    private static final Instant TO = Instant.parse("2026-10-01T00:00:00Z");
+    private static final Instant NEXT = Instant.parse("2026-11-01T00:00:00Z");
+
+    private EmbeddedDatabase database;
+    private SqlTemplate sqlTemplate;
+    private WalletService wallet;
+    private StatementService statements;
+
+    @BeforeEach
+    void setUp() {
+        database = EmbeddedDatabase.startIsolated();
+        sqlTemplate = new SqlTemplate(database);
+        wallet = new WalletService(sqlTemplate, new TransferRetrier(), new AdmissionController(
+                new AccountRateLimiter(1, Integer.MAX_VALUE, 16_000),
+                new AdaptiveConcurrencyLimit(Integer.MAX_VALUE, Integer.MAX_VALUE, Integer.MAX_VALUE)));
+        statements = new StatementService(sqlTemplate);
+        database.createAccount(1, "USD", "ACTIVE", new BigDecimal("100000"));
+        database.createAccount(2, "USD", "ACTIVE", new BigDecimal("100000"));
+    }
+
+    @AfterEach
+    void tearDown() {
+        database.shutdown();
+    }
+
+    private void transferAt(String requestId, double amount, Instant at) {
+        wallet.transfer(requestId, 1, 2, "USD", amount);
+        sqlTemplate.update("update WALLET_TRANSFER set TS_CREATED = ? where REQUEST_ID = ?", Timestamp.from(at), requestId);
+    }
+
+    private StatementSummary write(Instant from, Instant to, BalanceAnchor anchor, ByteArrayOutputStream out) {
+        return statements.writeStatement(1, from, to, anchor, StatementFormat.CSV, out);
+    }
+
+    @Test
+    @DisplayName("should include postings at the start of the period and leave those at its end to the next one")
+    void periodBoundaries() {
+        transferAt("before", 1, FROM.minusMillis(1));
+        transferAt("at-start", 2, FROM);
+        transferAt("last", 4, TO.minusMillis(1));
+        transferAt("at-end", 8, TO);
+
+        StatementSummary first = write(FROM, TO, null, new ByteArrayOutputStream());
+        assertEquals(0, new BigDecimal("-1").compareTo(first.getOpeningBalance()));
+        assertEquals(0, new BigDecimal("-7").compareTo(first.getClosingBalance()));
+        assertEquals(2, first.getLines());
+
+        StatementSummary second = write(TO, NEXT, null, new ByteArrayOutputStream());
+        assertEquals(0, first.getClosingBalance().compareTo(second.getOpeningBalance()));
+        assertEquals(0, new BigDecimal("-15").compareTo(second.getClosingBalance()));
+        assertEquals(1, second.getLines());
+    }
+
+    @Test
+    @DisplayName("should open from a balance anchor the same as from the full history")
+    void anchorMatchesFullHistory() {
+        transferAt("old", 50, FROM.minus(Duration.ofDays(40)));
+        transferAt("mid", 3, FROM.plus(Duration.ofDays(10)));
+        transferAt("late", 5, TO.plus(Duration.ofDays(1)));
+
+        StatementSummary first = write(FROM, TO, null, new ByteArrayOutputStream());
+        StatementSummary fromClosing = write(TO, NEXT, new BalanceAnchor(TO, first.getClosingBalance()),
+                new ByteArrayOutputStream());
+        StatementSummary fromOpening = write(TO, NEXT, new BalanceAnchor(FROM, first.getOpeningBalance()),
+                new ByteArrayOutputStream());
+        StatementSummary fromHistory = write(TO, NEXT, null, new ByteArrayOutputStream());
+
+        assertEquals(0, new BigDecimal("-53").compareTo(fromHistory.getOpeningBalance()));
+        assertEquals(0, fromHistory.getOpeningBalance().compareTo(fromClosing.getOpeningBalance()));
+        assertEquals(0, fromHistory.getOpeningBalance().compareTo(fromOpening.getOpeningBalance()));
+        assertEquals(0, new BigDecimal("-58").compareTo(fromClosing.getClosingBalance()));
+        assertThrows(IllegalArgumentException.class,
+                () -> write(FROM, TO, new BalanceAnchor(FROM.plusMillis(1), BigDecimal.ZERO), new ByteArrayOutputStream()));
+    }
+
+    @Test
+    @DisplayName("should carry the running balance across fetch batches")
+    void runningBalanceAcrossFetches() {
+        int count = 1_201;
+        for (int i = 0; i < count; i++) {
+            transferAt("t-" + i, 1, FROM.plusSeconds(i));
+        }
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        StatementSummary summary = write(FROM, TO, new BalanceAnchor(FROM, new BigDecimal("10000")), out);
+
+        assertEquals(count, summary.getLines());
+        assertEquals(0, new BigDecimal("8799").compareTo(summary.getClosingBalance()));
+        String[] rows = out.toString(StandardCharsets.UTF_8).split("\r\n");
+        assertEquals(count + 3, rows.length);
+        for (int i = 0; i < count; i++) {
+            String balance = rows[i + 2].split(",")[6];
+            assertEquals(0, BigDecimal.valueOf(9999 - i).compareTo(new BigDecimal(balance)), "row " + i);
+        }
+    }
+
+    @Test
+    @DisplayName("should report each failed account with the failure as the cause")
+    void writeStatements_keepsFailureCause() {
+        transferAt("t-1", 1, FROM);
+        UncheckedIOException broken = new UncheckedIOException(new IOException("disk full"));
+
+        BatchResult result = statements.writeStatements(List.of(1L, 2L), FROM, TO, StatementFormat.CSV,
+                accountId -> {
+                    if (accountId == 2L) {
+                        throw broken;
+                    }
+                    return OutputStream.nullOutputStream();
+                }, 2);
+
+        assertEquals(1, result.getWritten());
+        assertEquals(List.of(2L), result.getFailedAccounts());
+        WalletException failure = result.getFailures().get(2L);
+        assertSame(broken, failure.getCause());
+    }
+}
@@ -0,0 +1,83 @@
+package com.wallet.service.statement;
+
+import com.wallet.model.JournalEntry;
+import com.wallet.model.Leg;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class StatementWriterTest {
+
+    private static final Instant FROM = Instant.parse("2026-09-01T00:00:00Z");
+    private static final Instant TO = Instant.parse("2026-10-01T00:00:00Z");
+
+    private static JournalEntry entry(long id, Leg.Side side, String amount, String description) {
+        return new JournalEntry(id, "req-" + id, FROM.plusSeconds(id), 1, 7L, "USD",
+                new BigDecimal(amount), side, description);
+    }
+
+    @Test
+    @DisplayName("CSV should carry running balances and quote descriptions containing commas")
+    void csvWritesRunningBalance() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        StatementWriter writer = StatementFormat.CSV.newWriter(out);
+
+        writer.begin(7L, FROM, TO, new BigDecimal("100.00"));
+        writer.line(entry(1, Leg.Side.DEBIT, "30.00", "Coffee, beans"), new BigDecimal("70.00"));
+        writer.end(new BigDecimal("70.00"), 1);
+
+        String[] rows = out.toString(StandardCharsets.UTF_8).split("\r\n");
+        assertEquals(4, rows.length);
+        assertTrue(rows[1].endsWith("OPENING,,,100.00,"));
+        assertTrue(rows[2].startsWith("1,"));
+        assertTrue(rows[2].endsWith(",DEBIT,30.00,USD,70.00,\"Coffee, beans\""));
+        assertTrue(rows[3].endsWith("CLOSING,,,70.00,"));
+    }
+
+    @Test
+    @DisplayName("binary format should round-trip header, lines and trailer")
+    void binaryRoundTrips() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        StatementWriter writer = StatementFormat.BINARY.newWriter(out);
+
+        writer.begin(7L, FROM, TO, new BigDecimal("100.00"));
+        writer.line(entry(1, Leg.Side.CREDIT, "5.25", null), new BigDecimal("105.25"));
+        writer.end(new BigDecimal("105.25"), 1);
+
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(out.toByteArray()));
+        assertEquals(BinaryStatementWriter.MAGIC, in.readInt());
+        assertEquals(BinaryStatementWriter.VERSION, in.readByte());
+        assertEquals(7L, in.readLong());
+        in.readLong();
+        in.readLong();
+        assertEquals(new BigDecimal("100.00"), readDecimal(in));
+
+        assertEquals(1, in.readByte());
+        assertEquals(1L, in.readLong());
+        in.readLong();
+        assertEquals(1, in.readByte());
+        assertEquals(new BigDecimal("5.25"), readDecimal(in));
+        assertEquals(new BigDecimal("105.25"), readDecimal(in));
+        assertEquals("req-1", in.readUTF());
+
+        assertEquals(0, in.readByte());
+        assertEquals(1L, in.readLong());
+        assertEquals(new BigDecimal("105.25"), readDecimal(in));
+        assertEquals(-1, in.read());
+    }
+
+    private static BigDecimal readDecimal(DataInputStream in) throws Exception {
+        int scale = in.readByte();
+        byte[] unscaled = new byte[in.readByte()];
+        in.readFully(unscaled);
+        return new BigDecimal(new java.math.BigInteger(unscaled), scale);
+    }
+}